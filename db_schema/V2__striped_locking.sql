@@ -0,0 +1,61 @@
+-- Support for the striped write locking mode, see StripedWriteLocking.
+--
+-- In that mode writers to unrelated streams run in parallel, so an event with ID N+1 could be committed
+-- before the event with ID N. Writers register their lowest allocated ID as an advisory lock (held until the
+-- end of their transaction) *before* allocating, and readers never go past the lowest registered ID.
+--
+-- Advisory locks used by NGES live in the two-integer form:
+--   (1313293651 'NGES', 0..N)  - write stripes
+--   (1313293651 'NGES', -1)    - ID allocation
+--   (1313406976 'NI' | high 16 bits of the ID, low 32 bits of the ID) - event ID in flight
+-- Other advisory locks, e.g. of the application or the bigint ones of the global locking mode, are ignored.
+
+create or replace function nges_register_in_flight(p_event_id bigint) returns void as $$
+begin
+  if p_event_id >= 281474976710656 then
+    raise exception 'Event ID % is beyond the range of in-flight locks', p_event_id;
+  end if;
+  perform pg_advisory_xact_lock((1313406976 | (p_event_id >> 32))::integer,
+                                (p_event_id & 4294967295)::bit(32)::integer);
+end;
+$$ language plpgsql;
+
+create or replace function nges_allocate_event_ids(p_count integer) returns setof bigint as $$
+declare
+  v_next bigint;
+begin
+  -- Session-level, released as soon as the IDs are allocated rather than on commit. OTHERS doesn't cover
+  -- cancellation (e.g. statement_timeout), which must not leave it locked either.
+  begin
+    perform pg_advisory_lock(1313293651, -1);
+    select case when is_called then last_value + 1 else last_value end into v_next
+      from event_log_event_id_seq;
+    perform nges_register_in_flight(v_next);
+    return query select nextval('event_log_event_id_seq') from generate_series(1, p_count);
+    perform pg_advisory_unlock(1313293651, -1);
+  exception when others or query_canceled then
+    perform pg_advisory_unlock(1313293651, -1);
+    raise;
+  end;
+end;
+$$ language plpgsql;
+
+create or replace function nges_read_watermark() returns bigint as $$
+declare
+  v_allocated bigint;
+  v_in_flight bigint;
+begin
+  -- Sequence first: anything allocated up to this point is either committed, rolled back, or still
+  -- registered in pg_locks below.
+  select case when is_called then last_value else last_value - 1 end into v_allocated
+    from event_log_event_id_seq;
+  select min(((l.classid::bigint & 65535) << 32) | l.objid::bigint) into v_in_flight
+    from pg_locks l
+    where l.locktype = 'advisory'
+      and l.objsubid = 2
+      and l.classid::bigint >> 16 = 20041
+      and l.granted
+      and l.database = (select oid from pg_database where datname = current_database());
+  return least(v_allocated, v_in_flight - 1);
+end;
+$$ language plpgsql;
@@ -0,0 +1,69 @@
+-- Server-side equivalent of JdbcEventStore.saveInTransaction: locks, verifies leases, creates or updates the
+-- stream and inserts the events in a single call. See AppendFunctionDao.
+--
+-- Raises SQLSTATE 'NG001' on conflict. Returns no rows if any of the leases is not owned by p_lease_owner.
+
+create or replace function nges_append_events(
+    p_stream_id uuid,
+    p_stream_type varchar,
+    p_last_sequence bigint,
+    p_lease_keys varchar[],
+    p_lease_owner varchar,
+    p_types varchar[],
+    p_correlation_ids uuid[],
+    p_payloads json[])
+  returns table(event_id bigint, seq_no bigint) as $$
+declare
+  v_last_sequence bigint := p_last_sequence;
+  v_lease_count integer := coalesce(array_length(p_lease_keys, 1), 0);
+  v_event_count integer := coalesce(array_length(p_types, 1), 0);
+  v_stream_type varchar;
+  v_ids bigint[];
+begin
+  -- Same lock as GlobalWriteLocking (0xCAFEBABE)
+  perform pg_advisory_xact_lock(-889275714);
+
+  if v_lease_count > 0 and (select count(*) from lease l
+                            where l.lease_key = any(p_lease_keys)
+                              and l.owner_key = p_lease_owner
+                              and l.expiration_date > current_timestamp) <> v_lease_count then
+    return;
+  end if;
+
+  if v_last_sequence = -1 then -- AUTO_GENERATE_SEQUENCE
+    select coalesce(max(e.seq_no), 0) into v_last_sequence from event_log e where e.stream_id = p_stream_id;
+  end if;
+
+  if v_last_sequence = 0 then -- NEW_STREAM or AUTO_GENERATE_SEQUENCE with none in DB
+    select s.stream_type into v_stream_type from event_stream_list s where s.stream_id = p_stream_id;
+    if v_stream_type = p_stream_type then
+      raise exception 'The stream already exists: % of type %', p_stream_id, p_stream_type using errcode = 'NG001';
+    elsif found then
+      raise exception 'Another stream with this key already exists' using errcode = 'NG001';
+    end if;
+    insert into event_stream_list(stream_id, stream_type) values (p_stream_id, p_stream_type);
+  end if;
+
+  with inserted as (
+    insert into event_log(stream_id, type, correlation_id, seq_no, payload)
+    select p_stream_id, t.type, t.correlation_id, v_last_sequence + t.ord, t.payload
+      from unnest(p_types, p_correlation_ids, p_payloads) with ordinality as t(type, correlation_id, payload, ord)
+      order by t.ord
+    returning event_log.event_id
+  )
+  select array_agg(i.event_id order by i.event_id) into v_ids from inserted i;
+
+  update event_stream_list set
+    last_event_id = v_ids[v_event_count],
+    last_transaction_time = current_timestamp,
+    last_seq_no = v_last_sequence + v_event_count
+  where stream_id = p_stream_id and coalesce(last_seq_no, 0) = v_last_sequence;
+  if not found then
+    raise exception 'Uninitialized stream or concurrent modification: %', p_stream_id using errcode = 'NG001';
+  end if;
+
+  return query select ids.id, v_last_sequence + ids.ord
+    from unnest(v_ids) with ordinality as ids(id, ord)
+    order by ids.ord;
+end;
+$$ language plpgsql;
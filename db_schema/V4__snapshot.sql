@@ -0,0 +1,11 @@
+-- Snapshots of stream state, see JdbcSnapshotStore. A snapshot at seq_no N replaces replaying the events of
+-- the stream up to and including N.
+
+create table snapshot (
+  stream_id uuid not null,
+  seq_no bigint not null,
+  type varchar not null,
+  transaction_time timestamptz default current_timestamp,
+  payload json,
+  primary key (stream_id, seq_no)
+);
@@ -0,0 +1,4 @@
+-- Support reads filtered by event type and stream type, see EventFilter.
+
+create index event_log_by_type_event_id on event_log(type, event_id);
+create index event_stream_list_by_stream_type on event_stream_list(stream_type);
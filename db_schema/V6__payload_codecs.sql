@@ -0,0 +1,17 @@
+-- Alternative payload storage, see PayloadCodec. Only one of payload, payload_jsonb and payload_bytes is set
+-- for an event, payload_codec says which one (null for the original json column).
+
+alter table event_log add column payload_jsonb jsonb;
+alter table event_log add column payload_bytes bytea;
+alter table event_log add column payload_codec varchar;
+
+-- Preset dictionaries for deflate compression, trained per event type. A compressed payload refers to its
+-- dictionary by the Adler-32 checksum, as stored in the deflate stream itself.
+create table payload_dictionary (
+  checksum bigint not null primary key,
+  event_type varchar not null,
+  created timestamptz default current_timestamp,
+  dictionary bytea not null
+);
+
+create index payload_dictionary_by_type on payload_dictionary(event_type, created);
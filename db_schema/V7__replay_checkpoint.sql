@@ -0,0 +1,7 @@
+-- Progress of projection rebuilds, see ReplayEngine. All events up to event_id have been handled.
+
+create table replay_checkpoint (
+  name varchar not null primary key,
+  event_id bigint not null,
+  updated timestamptz default current_timestamp
+);
@@ -0,0 +1,54 @@
+-- Optional: turn event_log into a table range-partitioned by event_id, so that old partitions can be archived
+-- to segment files and dropped, see EventLogArchiver. Requires PostgreSQL 11 or later.
+--
+-- Not a versioned migration: run it by hand after all of V*.sql, while nothing writes to the store. The existing
+-- table becomes the first partition (its rows are not copied, only scanned once to validate the bounds), and the
+-- first partition for new events is created with room for 1000000 events. Create more in time with
+-- EventLogArchiver.createPartitions(), inserts beyond the last partition fail.
+
+alter table event_log rename to event_log_legacy;
+alter index event_log_pkey rename to event_log_legacy_pkey;
+alter index event_log_by_stream_seq rename to event_log_legacy_by_stream_seq;
+alter index event_log_by_transaction_time rename to event_log_legacy_by_transaction_time;
+alter index event_log_by_type_event_id rename to event_log_legacy_by_type_event_id;
+
+create table event_log (like event_log_legacy including defaults) partition by range (event_id);
+alter table event_log add primary key (event_id);
+create index event_log_by_stream_seq on event_log(stream_id, seq_no);
+create index event_log_by_transaction_time on event_log(transaction_time);
+create index event_log_by_type_event_id on event_log(type, event_id);
+
+-- Keep the sequence when the old table is dropped with its partition.
+alter sequence event_log_event_id_seq owned by event_log.event_id;
+
+do $$
+declare
+  v_next bigint;
+begin
+  select coalesce(max(event_id), 0) + 1 into v_next from event_log_legacy;
+  execute format('alter table event_log_legacy add constraint event_log_legacy_bounds check (event_id < %s)',
+                 v_next);
+  execute format('alter table event_log attach partition event_log_legacy for values from (minvalue) to (%s)',
+                 v_next);
+  alter table event_log_legacy drop constraint event_log_legacy_bounds;
+  execute format('create table event_log_%1$s partition of event_log for values from (%1$s) to (%2$s)',
+                 v_next, v_next + 1000000);
+end
+$$;
+
+-- Partitions archived to segment files. Events with event_id from from_event_id (inclusive) to to_event_id
+-- (exclusive) are in the segment file, and stream_filter is a serialized Bloom filter of their stream IDs.
+-- from_transaction_time and to_transaction_time bound the transaction times of the events, null without any.
+
+create table event_log_archive (
+  segment varchar not null primary key,
+  from_event_id bigint not null,
+  to_event_id bigint not null,
+  event_count bigint not null,
+  stream_filter bytea not null,
+  from_transaction_time timestamptz,
+  to_transaction_time timestamptz,
+  archived timestamptz default current_timestamp
+);
+
+create index event_log_archive_by_to_event_id on event_log_archive(to_event_id);
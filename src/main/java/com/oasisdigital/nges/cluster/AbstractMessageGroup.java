@@ -1,34 +1,68 @@
 package com.oasisdigital.nges.cluster;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
-import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.base.Preconditions;
 import com.google.common.eventbus.Subscribe;
 
 /**
- * Base abstract class for the message group, using Guava {@link AsyncEventBus} for notifying subscribers
- * about new messages. Subscribers are plugged in directly to the bus, receiving messages on methods annotated
- * with {@link Subscribe}. For more information see
+ * Base abstract class for the message group, using {@link SubscriberDispatcher} for notifying subscribers
+ * about new messages. Subscribers are plugged in directly to the dispatcher, receiving messages on methods
+ * annotated with Guava's {@link Subscribe}, like with Guava's event bus. For more information see
  * <a href="https://github.com/google/guava/wiki/EventBusExplained">Guava docs</a>.
  */
 abstract public class AbstractMessageGroup implements MessageGroup {
+    public static final int DEFAULT_DISPATCH_PARALLELISM = 4;
+    public static final int DEFAULT_SUBSCRIBER_QUEUE_CAPACITY = 1024;
+    public static final BackpressurePolicy DEFAULT_BACKPRESSURE_POLICY = BackpressurePolicy.BLOCK;
 
     protected ScheduledExecutorService executor;
-    protected AsyncEventBus eventBus;
+    protected SubscriberDispatcher dispatcher;
+
+    private int dispatchParallelism = DEFAULT_DISPATCH_PARALLELISM;
+    private int subscriberQueueCapacity = DEFAULT_SUBSCRIBER_QUEUE_CAPACITY;
+    private BackpressurePolicy backpressurePolicy = DEFAULT_BACKPRESSURE_POLICY;
 
     @Override
     public void registerSubscriber(Object subscriber) {
-        eventBus.register(subscriber);
+        dispatcher.register(subscriber);
     }
 
     /**
      * @throws IllegalArgumentException
-     *             if the subscriber is not registered with the event bus.
+     *             if the subscriber is not registered with the dispatcher.
      */
     @Override
     public void unregisterSubscriber(Object subscriber) {
-        eventBus.unregister(subscriber);
+        dispatcher.unregister(subscriber);
+    }
+
+    /**
+     * Set the number of threads delivering messages to subscribers, the size of every subscriber's queue
+     * and what to do when one is full. Must be called before {@link #initialize()}.
+     *
+     * @see SubscriberDispatcher
+     */
+    synchronized public void setDispatch(int parallelism, int queueCapacity, BackpressurePolicy policy) {
+        Preconditions.checkArgument(parallelism > 0);
+        Preconditions.checkArgument(queueCapacity > 0);
+        Preconditions.checkNotNull(policy);
+        Preconditions.checkState(dispatcher == null, "Must be called before initialize()");
+
+        this.dispatchParallelism = parallelism;
+        this.subscriberQueueCapacity = queueCapacity;
+        this.backpressurePolicy = policy;
+    }
+
+    /**
+     * @return queue depth and latency of every subscriber
+     */
+    public List<SubscriberStats> getSubscriberStats() {
+        SubscriberDispatcher dispatcher = this.dispatcher;
+        return dispatcher == null ? Collections.emptyList() : dispatcher.getStats();
     }
 
     synchronized public void initialize() throws Exception {
@@ -36,11 +70,13 @@ abstract public class AbstractMessageGroup implements MessageGroup {
             throw new IllegalStateException("Already initialized");
         }
         executor = Executors.newScheduledThreadPool(1);
-        eventBus = new AsyncEventBus(executor);
+        dispatcher = new SubscriberDispatcher(dispatchParallelism, subscriberQueueCapacity,
+                backpressurePolicy);
     }
 
     synchronized public void destroy() {
         executor.shutdownNow();
+        dispatcher.shutdown();
     }
 
 }
@@ -0,0 +1,19 @@
+package com.oasisdigital.nges.cluster;
+
+/**
+ * What {@link SubscriberDispatcher} does with a message for a subscriber whose queue is full.
+ */
+public enum BackpressurePolicy {
+    /**
+     * Discard the message for that subscriber, without delaying the others. Fits notifications that are
+     * repeated anyway, like {@link EventUpdate}.
+     */
+    DROP,
+
+    /**
+     * Make the thread posting the message wait until there is room. No message is lost, but a slow
+     * subscriber slows down the posting thread, and with it the other subscribers. Subscribers that post
+     * messages to the group themselves may end up waiting for each other.
+     */
+    BLOCK
+}
@@ -0,0 +1,49 @@
+package com.oasisdigital.nges.cluster;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.oasisdigital.nges.event.Event;
+
+/**
+ * <p>
+ * {@link EventUpdate} carrying the events just saved, so that receivers don't need to query the store to
+ * learn what they are. Only sent when the events are small, see
+ * {@link com.oasisdigital.nges.event.internal.EventStoreStatusPublisher#setMaxEventBytes(int)}.
+ * </p>
+ *
+ * <p>
+ * The events are all the events with IDs after {@link #getAfterEventId()} up to {@link #getEventId()}, sorted
+ * by ID: there are no other events in between. A receiver whose position is before
+ * {@link #getAfterEventId()} has missed something (e.g. a plain {@link EventUpdate}, a lost message or a hole
+ * in event IDs) and should fall back to reading from the store.
+ * </p>
+ */
+public class EventsAppended extends EventUpdate {
+    private static final long serialVersionUID = 1L;
+
+    private final long afterEventId;
+    private final List<Event> events;
+
+    public EventsAppended(long afterEventId, List<Event> events) {
+        super(events.get(events.size() - 1).getEventId());
+        this.afterEventId = afterEventId;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    public long getAfterEventId() {
+        return afterEventId;
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return true if the events connect to given position, that is if every event after the position up to
+     *         {@link #getEventId()} is included
+     */
+    public boolean connectsTo(long position) {
+        return position >= afterEventId;
+    }
+}
@@ -8,10 +8,10 @@ public class InMemoryMessageGroup extends AbstractMessageGroup implements Messag
 
     @Override
     public void publish(Object message) {
-        if (eventBus == null) {
+        if (dispatcher == null) {
             throw new IllegalStateException("Message group not initialized, call initialize() first.");
         }
-        eventBus.post(message);
+        dispatcher.post(message);
     }
 
 }
@@ -44,7 +44,7 @@ public class JGroupsMessageGroup extends AbstractMessageGroup {
                 channel.setReceiver(new ReceiverAdapter() {
                     @Override
                     public void receive(Message msg) {
-                        eventBus.post(msg.getObject());
+                        dispatcher.post(msg.getObject());
                     }
                 });
                 channel.connect(clusterName);
@@ -0,0 +1,364 @@
+package com.oasisdigital.nges.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * MessageGroup on PostgreSQL <code>LISTEN/NOTIFY</code>, for environments where JGroups multicast is not
+ * available. All the processes using the same database and channel form the group. Like with JGroups, the
+ * messages are also delivered to the subscribers of the process that published them.
+ * </p>
+ *
+ * <p>
+ * Messages are published with <code>pg_notify</code> on a connection from the data source and received on
+ * one dedicated connection, which is polled every {@link #setPollInterval(long)} and drained of all pending
+ * notifications at once. When that connection is lost, it is opened again after
+ * {@link #setReconnectDelay(long)}. Messages sent in the meantime are lost, which the store's heartbeat makes
+ * up for.
+ * </p>
+ *
+ * <p>
+ * Messages must be {@link java.io.Serializable}. They are sent as Base64 text, which must fit in
+ * {@link #MAX_PAYLOAD_BYTES}: an {@link EventsAppended} that doesn't is sent as a plain {@link EventUpdate},
+ * other messages that don't are rejected.
+ * </p>
+ *
+ * <p>
+ * Any database role can notify the channel, so only the classes of the store's own messages are
+ * deserialized: {@link EventUpdate}, {@link EventsAppended} and what they're made of, plus strings and boxed
+ * numbers. Classes of other messages need to be allowed with {@link #allowMessageClasses(Class...)}.
+ * Notifications with any other class are ignored.
+ * </p>
+ */
+public class PostgresMessageGroup extends AbstractMessageGroup {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresMessageGroup.class);
+
+    public static final String DEFAULT_CHANNEL = "nges_events";
+    public static final long DEFAULT_POLL_INTERVAL = 10;
+    public static final long DEFAULT_RECONNECT_DELAY = 1000;
+
+    /**
+     * The longest payload of a notification in the default server configuration.
+     */
+    public static final int MAX_PAYLOAD_BYTES = 7999;
+
+    // Check that an idle listening connection is still alive at this interval
+    private static final long CONNECTION_CHECK_INTERVAL_MS = 1000;
+
+    private static final Pattern CHANNEL_PATTERN = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    // @formatter:off
+    private static final Set<String> DEFAULT_ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+            EventUpdate.class.getName(),
+            EventsAppended.class.getName(),
+            "com.oasisdigital.nges.event.Event",
+            "java.util.UUID",
+            "java.util.ArrayList",
+            "java.util.Arrays$ArrayList",
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList",
+            "java.lang.Object",
+            "java.lang.String",
+            "java.lang.Number",
+            "java.lang.Long",
+            "java.lang.Integer",
+            "java.lang.Boolean"));
+    // @formatter:on
+
+    private final DataSource dataSource;
+
+    private String channel = DEFAULT_CHANNEL;
+
+    private long pollIntervalMs = DEFAULT_POLL_INTERVAL;
+
+    private long reconnectDelayMs = DEFAULT_RECONNECT_DELAY;
+
+    private volatile boolean running;
+
+    private final Set<String> allowedClasses = new HashSet<>(DEFAULT_ALLOWED_CLASSES);
+
+    private Thread listener;
+
+    public PostgresMessageGroup(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Connects and starts listening before returning, so that the messages published after this call are
+     * received.
+     *
+     * @throws SQLException
+     *             if the listening connection cannot be opened
+     */
+    @Override
+    synchronized public void initialize() throws Exception {
+        super.initialize();
+
+        Connection connection = connect();
+        running = true;
+        listener = new Thread(() -> listen(connection), "nges-pg-listen-" + channel);
+        listener.setDaemon(true);
+        listener.start();
+        log.info("Listening for notifications on channel {}", channel);
+    }
+
+    @Override
+    synchronized public void destroy() {
+        try {
+            running = false;
+            if (listener != null) {
+                listener.interrupt();
+                // Let it release the connection, without waiting for long on a dead network
+                listener.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            super.destroy();
+        }
+    }
+
+    @Override
+    public void publish(Object message) {
+        if (!running) {
+            throw new IllegalStateException("Message group not initialized, call initialize() first.");
+        }
+        Preconditions.checkArgument(isAllowed(message.getClass().getName()),
+                "Message class not allowed, see allowMessageClasses(): %s", message.getClass());
+        String payload = encode(message);
+        if (payload.length() > MAX_PAYLOAD_BYTES) {
+            if (!(message instanceof EventUpdate)) {
+                throw new IllegalArgumentException("Message too large to notify: " + payload.length()
+                        + " bytes when encoded, at most " + MAX_PAYLOAD_BYTES + " allowed");
+            }
+            // Receivers read the events from the store instead
+            payload = encode(new EventUpdate(((EventUpdate) message).getEventId()));
+        }
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("select pg_notify(?, ?)")) {
+            statement.setString(1, channel);
+            statement.setString(2, payload);
+            statement.execute();
+        } catch (SQLException ex) {
+            // Like with JGroups, whatever the message is about has already happened. Failing the caller
+            // wouldn't change it.
+            log.error("Unable to notify channel " + channel, ex);
+        }
+    }
+
+    /**
+     * Must be called before {@link #initialize()}. The channel is an unquoted identifier, in lower case.
+     */
+    public void setChannel(String channel) {
+        Preconditions.checkArgument(channel != null && CHANNEL_PATTERN.matcher(channel).matches(),
+                "Invalid channel name: %s", channel);
+        Preconditions.checkState(listener == null, "Must be called before initialize()");
+
+        this.channel = channel;
+    }
+
+    /**
+     * How long to wait for notifications after finding none, in milliseconds. It is the longest delay of a
+     * message over the time it takes the database to send it. Checking for notifications doesn't query the
+     * database, so it's fine to keep it short. Must be called before {@link #initialize()}.
+     */
+    public void setPollInterval(long pollIntervalMs) {
+        Preconditions.checkArgument(pollIntervalMs > 0);
+        Preconditions.checkState(listener == null, "Must be called before initialize()");
+
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * How long to wait before opening the listening connection again after it's lost, in milliseconds.
+     * Must be called before {@link #initialize()}.
+     */
+    public void setReconnectDelay(long reconnectDelayMs) {
+        Preconditions.checkArgument(reconnectDelayMs >= 0);
+        Preconditions.checkState(listener == null, "Must be called before initialize()");
+
+        this.reconnectDelayMs = reconnectDelayMs;
+    }
+
+    /**
+     * Allow receiving messages of given classes, in addition to the store's own messages. Classes of their
+     * serializable fields and superclasses need to be allowed too, except for strings, primitives,
+     * <code>java.time</code> and the classes allowed by default. Must be called before {@link #initialize()}.
+     */
+    public void allowMessageClasses(Class<?>... messageClasses) {
+        Preconditions.checkState(listener == null, "Must be called before initialize()");
+
+        for (Class<?> messageClass : messageClasses) {
+            allowedClasses.add(messageClass.getName());
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    private Connection connect() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(true);
+            // Makes the connection easy to find among the others in pg_stat_activity
+            statement.execute("set application_name = 'nges_listen_" + channel + "'");
+            statement.execute("listen " + channel);
+            return connection;
+        } catch (SQLException e) {
+            close(connection);
+            throw e;
+        }
+    }
+
+    private void listen(Connection initialConnection) {
+        Connection connection = initialConnection;
+        long lastCheckNanos = System.nanoTime();
+        try {
+            while (running) {
+                try {
+                    if (connection == null) {
+                        connection = connect();
+                        log.info("Listening for notifications on channel {} again", channel);
+                    }
+                    PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications();
+                    if (notifications != null && notifications.length > 0) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                        lastCheckNanos = System.nanoTime();
+                    } else if (System.nanoTime() - lastCheckNanos > TimeUnit.MILLISECONDS
+                            .toNanos(CONNECTION_CHECK_INTERVAL_MS)) {
+                        // Fails if the connection is gone, which merely checking for notifications doesn't
+                        try (Statement statement = connection.createStatement()) {
+                            statement.execute("select 1");
+                        }
+                        lastCheckNanos = System.nanoTime();
+                    } else {
+                        Thread.sleep(pollIntervalMs);
+                    }
+                } catch (SQLException e) {
+                    log.warn("Unable to listen on channel " + channel + ", reconnecting in "
+                            + reconnectDelayMs + " ms", e);
+                    if (connection != null) {
+                        close(connection);
+                        connection = null;
+                    }
+                    Thread.sleep(reconnectDelayMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Destroyed
+        } finally {
+            if (connection != null) {
+                release(connection);
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        Object message;
+        try (ObjectInputStream in = new AllowListObjectInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(payload)))) {
+            message = in.readObject();
+        } catch (IOException | ClassNotFoundException | IllegalArgumentException e) {
+            log.warn("Ignoring unreadable notification on channel " + channel, e);
+            return;
+        }
+        dispatcher.post(message);
+    }
+
+    private boolean isAllowed(String className) {
+        // Arrays like "[J" or "[Ljava.util.UUID;", possibly nested
+        String name = className.replaceFirst("^\\[+", "");
+        if (name.length() < className.length()) {
+            if (name.length() == 1) {
+                return true;
+            }
+            name = name.substring(1, name.length() - 1);
+        }
+        return allowedClasses.contains(name) || name.startsWith("java.time.");
+    }
+
+    /**
+     * Refuses to load the classes that are not allowed, before any of their code (like
+     * <code>readObject</code>) can run.
+     */
+    private class AllowListObjectInputStream extends ObjectInputStream {
+        AllowListObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Class not allowed in notifications");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy classes not allowed in notifications");
+        }
+    }
+
+    private static String encode(Object message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize message " + message, e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Return the connection to the pool as it was before {@link #connect()}.
+     */
+    private void release(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("unlisten *");
+            statement.execute("reset application_name");
+        } catch (SQLException e) {
+            log.warn("Unable to stop listening on channel " + channel, e);
+        }
+        close(connection);
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug("Unable to close connection", e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.oasisdigital.nges.cluster;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Bounded queue on an array, without locks, for any number of producers and one consumer at a time.
+ * </p>
+ *
+ * <p>
+ * Every slot has a sequence number telling whether it's free for the producer at given position (equal to
+ * the position) or holds an element for the consumer at given position (one more than the position). A
+ * producer claims its position by advancing the tail, then publishes the element by advancing the slot's
+ * sequence. The consumer frees the slot by advancing its sequence by the capacity, to the position of the
+ * next lap.
+ * </p>
+ */
+class RingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only changed by the consumer, read by anyone for the size
+    private volatile long head;
+
+    /**
+     * @param capacity
+     *            minimum capacity, rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30);
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(size, 1);
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            long sequence = sequences.get(index(position));
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                // The consumer hasn't freed the slot from the previous lap yet
+                return false;
+            } else {
+                // Claimed by another producer in the meantime
+                position = tail.get();
+            }
+        }
+        elements.set(index(position), element);
+        sequences.set(index(position), position + 1);
+        return true;
+    }
+
+    /**
+     * Must be called by one consumer at a time.
+     *
+     * @return the oldest element, or null if there are none published yet
+     */
+    E poll() {
+        long position = head;
+        int index = index(position);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.set(index, null);
+        sequences.set(index, position + capacity());
+        head = position + 1;
+        return element;
+    }
+
+    boolean isEmpty() {
+        long position = head;
+        return sequences.get(index(position)) != position + 1;
+    }
+
+    /**
+     * @return the number of elements, including the ones being offered at the moment
+     */
+    int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    private int index(long position) {
+        return (int) position & mask;
+    }
+}
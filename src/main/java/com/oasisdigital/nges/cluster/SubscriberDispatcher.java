@@ -0,0 +1,287 @@
+package com.oasisdigital.nges.cluster;
+
+import static java.util.stream.Collectors.toList;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.primitives.Primitives;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * <p>
+ * Delivers messages to subscribers with methods annotated with Guava's {@link Subscribe}, like Guava's
+ * <code>AsyncEventBus</code>: a message goes to every method whose parameter type it is an instance of.
+ * </p>
+ *
+ * <p>
+ * Every subscriber has its own bounded queue (a {@link RingBuffer}). Posting a message only puts it in the
+ * queues of the interested subscribers, and a pool of <code>parallelism</code> threads delivers from the
+ * queues. A subscriber receives messages in the order they were posted, one at a time, while other
+ * subscribers are served by the other threads, so a slow subscriber doesn't delay the rest as long as there
+ * are enough threads. When a queue is full, the {@link BackpressurePolicy} decides. A subscriber posting to a
+ * full queue of its own never blocks (it would wait for itself), the message is dropped instead.
+ * </p>
+ *
+ * <p>
+ * Subscriber methods are resolved once per subscriber and message type and called through method handles.
+ * Exceptions thrown by them are logged.
+ * </p>
+ */
+public class SubscriberDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(SubscriberDispatcher.class);
+
+    // Messages delivered to one subscriber before letting the others have the thread
+    private static final int DRAIN_BATCH_SIZE = 64;
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final ThreadLocal<Subscription> delivering = new ThreadLocal<>();
+
+    private final int queueCapacity;
+    private final BackpressurePolicy policy;
+    private final ExecutorService executor;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    // Interested subscriptions by message type, cleared when the subscriptions change
+    private final Map<Class<?>, Subscription[]> routes = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+
+    public SubscriberDispatcher(int parallelism, int queueCapacity, BackpressurePolicy policy) {
+        Preconditions.checkArgument(parallelism > 0);
+        Preconditions.checkArgument(queueCapacity > 0);
+        Preconditions.checkNotNull(policy);
+
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("nges-dispatch-%d").build());
+    }
+
+    /**
+     * Register all {@link Subscribe} methods of the subscriber, including the inherited ones. Registering a
+     * subscriber again has no effect.
+     *
+     * @throws IllegalArgumentException
+     *             if a subscriber method doesn't have exactly one parameter
+     */
+    public synchronized void register(Object subscriber) {
+        if (find(subscriber) != null) {
+            return;
+        }
+        subscriptions.add(new Subscription(subscriber, findHandlers(subscriber)));
+        routes.clear();
+    }
+
+    /**
+     * Stop delivering messages to the subscriber, including the ones already in its queue.
+     *
+     * @throws IllegalArgumentException
+     *             if the subscriber is not registered
+     */
+    public synchronized void unregister(Object subscriber) {
+        Subscription subscription = find(subscriber);
+        Preconditions.checkArgument(subscription != null, "Subscriber not registered: %s", subscriber);
+
+        subscription.active = false;
+        subscriptions.remove(subscription);
+        routes.clear();
+    }
+
+    public void post(Object message) {
+        Subscription[] route = routes.computeIfAbsent(message.getClass(), this::route);
+        long postNanos = System.nanoTime();
+        for (Subscription subscription : route) {
+            subscription.enqueue(new Envelope(message, postNanos));
+        }
+    }
+
+    public List<SubscriberStats> getStats() {
+        return subscriptions.stream().map(Subscription::getStats).collect(toList());
+    }
+
+    /**
+     * Stop the delivery threads. Messages left in the queues are discarded.
+     */
+    public void shutdown() {
+        shutdown = true;
+        executor.shutdownNow();
+    }
+
+    private Subscription find(Object subscriber) {
+        return subscriptions.stream().filter(s -> s.subscriber == subscriber).findFirst().orElse(null);
+    }
+
+    private Subscription[] route(Class<?> messageType) {
+        return subscriptions.stream().filter(s -> s.getHandlers(messageType).length > 0)
+                .toArray(Subscription[]::new);
+    }
+
+    private static List<Handler> findHandlers(Object subscriber) {
+        List<Handler> handlers = new ArrayList<>();
+        // An overridden method is only called once, like with Guava
+        Set<List<Object>> signatures = new HashSet<>();
+        for (Class<?> type : TypeToken.of(subscriber.getClass()).getTypes().rawTypes()) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(Subscribe.class) || method.isSynthetic()) {
+                    continue;
+                }
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                Preconditions.checkArgument(parameterTypes.length == 1,
+                        "Method %s has @Subscribe annotation but has %s parameters, must have exactly 1",
+                        method, parameterTypes.length);
+                if (signatures.add(Arrays.asList(method.getName(), parameterTypes[0]))) {
+                    handlers.add(new Handler(subscriber, method));
+                }
+            }
+        }
+        return handlers;
+    }
+
+    private static class Envelope {
+        final Object message;
+        final long postNanos;
+
+        Envelope(Object message, long postNanos) {
+            this.message = message;
+            this.postNanos = postNanos;
+        }
+    }
+
+    private static class Handler {
+        final Class<?> messageType;
+        final MethodHandle method;
+
+        Handler(Object subscriber, Method method) {
+            this.messageType = Primitives.wrap(method.getParameterTypes()[0]);
+            try {
+                method.setAccessible(true);
+                this.method = MethodHandles.lookup().unreflect(method).bindTo(subscriber)
+                        .asType(MethodType.methodType(void.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Unable to access subscriber method " + method, e);
+            }
+        }
+    }
+
+    /**
+     * A subscriber with its queue. Only one thread at a time delivers messages to it, the one that set
+     * <code>scheduled</code>.
+     */
+    private class Subscription {
+        final Object subscriber;
+        final List<Handler> handlers;
+        final Map<Class<?>, MethodHandle[]> handlersByType = new ConcurrentHashMap<>();
+        final RingBuffer<Envelope> queue = new RingBuffer<>(queueCapacity);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicLong dropped = new AtomicLong();
+        volatile boolean active = true;
+
+        // Only updated by the delivering thread
+        volatile long delivered;
+        volatile long totalLatencyNanos;
+        volatile long maxLatencyNanos;
+
+        Subscription(Object subscriber, List<Handler> handlers) {
+            this.subscriber = subscriber;
+            this.handlers = handlers;
+        }
+
+        MethodHandle[] getHandlers(Class<?> messageType) {
+            return handlersByType.computeIfAbsent(messageType,
+                    type -> handlers.stream().filter(handler -> handler.messageType.isAssignableFrom(type))
+                            .map(handler -> handler.method).toArray(MethodHandle[]::new));
+        }
+
+        void enqueue(Envelope envelope) {
+            while (!queue.offer(envelope)) {
+                if (policy == BackpressurePolicy.DROP || delivering.get() == this || !active || shutdown) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                scheduleDelivery();
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+            scheduleDelivery();
+        }
+
+        void scheduleDelivery() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    // Shut down
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        void deliver() {
+            delivering.set(this);
+            try {
+                Envelope envelope;
+                for (int i = 0; i < DRAIN_BATCH_SIZE && active && (envelope = queue.poll()) != null; i++) {
+                    deliver(envelope);
+                }
+            } finally {
+                delivering.remove();
+                scheduled.set(false);
+            }
+            // Left over from the batch, or enqueued after the last poll while it was still scheduled
+            if (active && !queue.isEmpty()) {
+                scheduleDelivery();
+            }
+        }
+
+        void deliver(Envelope envelope) {
+            for (MethodHandle handler : getHandlers(envelope.message.getClass())) {
+                try {
+                    handler.invokeExact(envelope.message);
+                } catch (Throwable e) {
+                    log.error("Subscriber " + describe() + " failed on " + envelope.message, e);
+                }
+            }
+            long latencyNanos = System.nanoTime() - envelope.postNanos;
+            delivered++;
+            totalLatencyNanos += latencyNanos;
+            if (latencyNanos > maxLatencyNanos) {
+                maxLatencyNanos = latencyNanos;
+            }
+        }
+
+        SubscriberStats getStats() {
+            long delivered = this.delivered;
+            long meanLatencyNanos = delivered == 0 ? 0 : totalLatencyNanos / delivered;
+            return new SubscriberStats(describe(), queue.size(), queue.capacity(), delivered, dropped.get(),
+                    TimeUnit.NANOSECONDS.toMicros(meanLatencyNanos),
+                    TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos));
+        }
+
+        String describe() {
+            return subscriber.getClass().getName() + "@"
+                    + Integer.toHexString(System.identityHashCode(subscriber));
+        }
+    }
+}
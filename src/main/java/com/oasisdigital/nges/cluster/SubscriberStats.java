@@ -0,0 +1,65 @@
+package com.oasisdigital.nges.cluster;
+
+/**
+ * Snapshot of the metrics of one subscriber registered with {@link SubscriberDispatcher}. The latency is the
+ * time from posting a message to the end of its handling, so it includes both the time in the queue and in
+ * the subscriber.
+ */
+public class SubscriberStats {
+    private final String subscriber;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long delivered;
+    private final long dropped;
+    private final long meanLatencyMicros;
+    private final long maxLatencyMicros;
+
+    public SubscriberStats(String subscriber, int queueDepth, int queueCapacity, long delivered, long dropped,
+            long meanLatencyMicros, long maxLatencyMicros) {
+        this.subscriber = subscriber;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.delivered = delivered;
+        this.dropped = dropped;
+        this.meanLatencyMicros = meanLatencyMicros;
+        this.maxLatencyMicros = maxLatencyMicros;
+    }
+
+    /**
+     * @return class name and identity hash code of the subscriber
+     */
+    public String getSubscriber() {
+        return subscriber;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getMeanLatencyMicros() {
+        return meanLatencyMicros;
+    }
+
+    public long getMaxLatencyMicros() {
+        return maxLatencyMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriberStats [subscriber=" + subscriber + ", queueDepth=" + queueDepth + ", queueCapacity="
+                + queueCapacity + ", delivered=" + delivered + ", dropped=" + dropped + ", meanLatencyMicros="
+                + meanLatencyMicros + ", maxLatencyMicros=" + maxLatencyMicros + "]";
+    }
+}
@@ -66,6 +66,19 @@ public class Event implements Serializable {
         this.payload = payload;
     }
 
+    /**
+     * Create a copy of another event.
+     */
+    public Event(Event other) {
+        this.eventId = other.eventId;
+        this.streamId = other.streamId;
+        this.type = other.type;
+        this.correlationId = other.correlationId;
+        this.sequence = other.sequence;
+        this.transactionTime = other.transactionTime;
+        this.payload = other.getPayload();
+    }
+
     public void setEventId(long eventId) {
         this.eventId = eventId;
     }
@@ -0,0 +1,73 @@
+package com.oasisdigital.nges.event;
+
+import static java.util.Arrays.asList;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Restricts reads to events of certain types and/or from streams of certain types, see
+ * {@link EventStore#getEventsForAllStreams(long, int, EventFilter)}. The filter is applied by the database,
+ * so events that don't match are never transferred. An empty set of types means no restriction.
+ */
+public class EventFilter {
+    /**
+     * Filter matching all events.
+     */
+    public static final EventFilter ALL = new EventFilter(Collections.emptySet(), Collections.emptySet());
+
+    private final Set<String> eventTypes;
+    private final Set<String> streamTypes;
+
+    private EventFilter(Set<String> eventTypes, Set<String> streamTypes) {
+        this.eventTypes = Collections.unmodifiableSet(eventTypes);
+        this.streamTypes = Collections.unmodifiableSet(streamTypes);
+    }
+
+    /**
+     * Only events of given types.
+     */
+    public static EventFilter eventTypes(String... eventTypes) {
+        return ALL.withEventTypes(asList(eventTypes));
+    }
+
+    /**
+     * Only events from streams of given types.
+     */
+    public static EventFilter streamTypes(String... streamTypes) {
+        return ALL.withStreamTypes(asList(streamTypes));
+    }
+
+    /**
+     * Copy of this filter, restricted to events of given types.
+     */
+    public EventFilter withEventTypes(Collection<String> eventTypes) {
+        return new EventFilter(new LinkedHashSet<>(eventTypes), streamTypes);
+    }
+
+    /**
+     * Copy of this filter, restricted to events from streams of given types.
+     */
+    public EventFilter withStreamTypes(Collection<String> streamTypes) {
+        return new EventFilter(eventTypes, new LinkedHashSet<>(streamTypes));
+    }
+
+    public Set<String> getEventTypes() {
+        return eventTypes;
+    }
+
+    public Set<String> getStreamTypes() {
+        return streamTypes;
+    }
+
+    public boolean isEmpty() {
+        return eventTypes.isEmpty() && streamTypes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "EventFilter [eventTypes=" + eventTypes + ", streamTypes=" + streamTypes + "]";
+    }
+}
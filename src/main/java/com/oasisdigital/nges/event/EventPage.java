@@ -0,0 +1,61 @@
+package com.oasisdigital.nges.event;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * One page of events read with {@link EventStore#readStream(java.util.UUID, ReadDirection, String, int)} or
+ * {@link EventStore#readAllStreams(ReadDirection, String, int)}, in the order of the read direction.
+ * </p>
+ *
+ * <p>
+ * The page carries opaque position tokens for keyset pagination: reading on in the same direction from
+ * {@link #getNextToken()} returns the following page, and reading in the {@link ReadDirection#reverse()
+ * reverse} direction from {@link #getPreviousToken()} returns the events before this page. A token is only
+ * valid for the kind of read that produced it, i.e. for the same stream or for all streams.
+ * </p>
+ */
+public class EventPage {
+    private final List<Event> events;
+    private final ReadDirection direction;
+    private final String previousToken;
+    private final String nextToken;
+
+    public EventPage(List<Event> events, ReadDirection direction, String previousToken, String nextToken) {
+        this.events = Collections.unmodifiableList(events);
+        this.direction = direction;
+        this.previousToken = previousToken;
+        this.nextToken = nextToken;
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    public ReadDirection getDirection() {
+        return direction;
+    }
+
+    /**
+     * Position before the first event of this page (in the read direction). If the page is empty, the
+     * position it was read from.
+     */
+    public String getPreviousToken() {
+        return previousToken;
+    }
+
+    /**
+     * Position after the last event of this page (in the read direction). If the page is empty, the position
+     * it was read from.
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    @Override
+    public String toString() {
+        return "EventPage [events=" + events.size() + ", direction=" + direction + ", previousToken="
+                + previousToken + ", nextToken=" + nextToken + "]";
+    }
+}
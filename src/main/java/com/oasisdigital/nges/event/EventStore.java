@@ -1,9 +1,12 @@
 package com.oasisdigital.nges.event;
 
+import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Interface for the event store. Supports appending and querying events, as well as some auxiliary queries
@@ -71,11 +74,45 @@ public interface EventStore extends LeaseManager {
     List<Long> save(List<Event> events, String streamType, long lastSequence, Collection<String> leaseKeys,
             String leaseOwnerKey) throws EventStoreException;
 
+    /**
+     * <p>
+     * Append events to multiple streams atomically, in one transaction. Every stream has its own stream type
+     * and expected last sequence, with the same meaning as in {@link #save(List, String, long)}. All the new
+     * events get one consistent block of IDs, in the iteration order of the map.
+     * </p>
+     *
+     * <p>
+     * If any of the streams is in conflict, none of them is appended and the conflicts for all streams are
+     * reported in one {@link MultiStreamConflict}.
+     * </p>
+     *
+     * @return IDs of the newly saved events for every stream, in the same order as the input.
+     * @throws MultiStreamConflict
+     */
+    Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends) throws EventStoreException;
+
+    /**
+     * Like {@link #saveAll(Map)}, but it only saves the events if all of the given lease keys are owned by
+     * the given owner. If any of the leases is missing, no events are saved and this method returns an empty
+     * map.
+     *
+     * @see #lease(String, String, long)
+     */
+    Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends, Collection<String> leaseKeys,
+            String leaseOwnerKey) throws EventStoreException;
+
     /**
      * Get a single event by ID. Throws {@link EventStoreException} if the event does not exist.
      */
     Event getEvent(long eventId) throws EventStoreException;
 
+    /**
+     * Get a number of events by ID, in one query. Events that don't exist are left out.
+     *
+     * @return the events by ID, sorted by ID
+     */
+    Map<Long, Event> getEvents(Collection<Long> eventIds) throws EventStoreException;
+
     /**
      * Get a number of most recent events.
      */
@@ -86,11 +123,106 @@ public interface EventStore extends LeaseManager {
      */
     List<Event> getEventsForAllStreams(long afterEventId, int limit) throws EventStoreException;
 
+    /**
+     * Like {@link #getEventsForAllStreams(long, int)}, but only returns events matching the filter. Up to
+     * <code>limit</code> matching events are returned, however many events in between don't match.
+     */
+    List<Event> getEventsForAllStreams(long afterEventId, int limit, EventFilter filter)
+            throws EventStoreException;
+
+    /**
+     * <p>
+     * Stream all events after given event ID, sorted by event ID. Unlike
+     * {@link #getEventsForAllStreams(long, int)}, it doesn't need to be called page by page: the events are
+     * read lazily with a single query, <code>fetchSize</code> at a time, so even a replay of the whole log
+     * runs in constant memory.
+     * </p>
+     *
+     * <p>
+     * The stream holds a database connection and must be closed, preferably with try-with-resources. It only
+     * includes events visible at the time of the call.
+     * </p>
+     */
+    Stream<Event> streamEventsForAllStreams(long afterEventId, int fetchSize) throws EventStoreException;
+
+    /**
+     * <p>
+     * Stream all events with transaction time from <code>from</code> (inclusive) to <code>to</code>
+     * (exclusive), sorted by event ID. The events are read lazily, like in
+     * {@link #streamEventsForAllStreams(long, int)}.
+     * </p>
+     *
+     * <p>
+     * Transaction time is the start of the transaction that saved the event, so it is not strictly ordered by
+     * event ID: an event can have a slightly lower transaction time than an event saved before it. The stream
+     * must be closed, preferably with try-with-resources.
+     * </p>
+     */
+    Stream<Event> getEventsBetween(OffsetDateTime from, OffsetDateTime to) throws EventStoreException;
+
     /**
      * Get a number of events for particular stream after given sequence number.
      */
     List<Event> getEventsForStream(UUID streamId, long afterSequenceId, int limit) throws EventStoreException;
 
+    /**
+     * Get a number of events for particular stream before given sequence number, newest first. Use
+     * <code>Long.MAX_VALUE</code> to get the most recent events of the stream.
+     */
+    List<Event> getEventsForStreamBackward(UUID streamId, long beforeSequenceId, int limit)
+            throws EventStoreException;
+
+    /**
+     * Get a number of events before given event ID, newest first. Use <code>Long.MAX_VALUE</code> to get the
+     * most recent events.
+     */
+    List<Event> getEventsForAllStreamsBackward(long beforeEventId, int limit) throws EventStoreException;
+
+    /**
+     * Read a page of events of a stream in given direction, for keyset pagination with the tokens of
+     * {@link EventPage}.
+     *
+     * @param positionToken
+     *            token from a previous page of this stream, or <code>null</code> to start from the beginning
+     *            (forward) or the end (backward) of the stream
+     * @throws IllegalArgumentException
+     *             if the token is invalid or belongs to another stream
+     */
+    EventPage readStream(UUID streamId, ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException;
+
+    /**
+     * Like {@link #readStream(UUID, ReadDirection, String, int)}, but for the whole log.
+     */
+    EventPage readAllStreams(ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException;
+
+    /**
+     * Like {@link #getEventsForStream(UUID, long, int)} for many streams at once, in one query.
+     *
+     * @param afterSequenceIds
+     *            sequence number to read each stream after, by stream ID, 0 to read it from the beginning
+     * @return events by stream ID, in the order of the given IDs. Every given stream is included, with an
+     *         empty list if it doesn't exist or has no more events.
+     */
+    Map<UUID, List<Event>> getEventsForStreams(Map<UUID, Long> afterSequenceIds, int limitPerStream)
+            throws EventStoreException;
+
+    /**
+     * Like {@link #getEventsForAllStreams(long, int)}, but the payloads are not read up front. The payload of
+     * an event is loaded on the first call to {@link Event#getPayload()}, together with the payloads of a
+     * number of following events from the result. Useful for consumers that only look at the event type or
+     * stream and skip most events.
+     */
+    List<Event> getEventHeadersForAllStreams(long afterEventId, int limit) throws EventStoreException;
+
+    /**
+     * Like {@link #getEventsForStream(UUID, long, int)}, but with payloads loaded on demand, see
+     * {@link #getEventHeadersForAllStreams(long, int)}.
+     */
+    List<Event> getEventHeadersForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException;
+
     /**
      * Get the ID of the most recent event.
      */
@@ -111,4 +243,11 @@ public interface EventStore extends LeaseManager {
      * exist.
      */
     EventStream findByStreamId(UUID id) throws EventStoreException;
+
+    /**
+     * Get information about many streams at once, in one query. Streams that don't exist are left out.
+     *
+     * @return the streams by ID
+     */
+    Map<UUID, EventStream> findByStreamIds(Collection<UUID> ids) throws EventStoreException;
 }
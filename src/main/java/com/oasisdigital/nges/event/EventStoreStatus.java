@@ -3,6 +3,7 @@ package com.oasisdigital.nges.event;
 import static java.util.stream.Collectors.toList;
 
 import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,18 +11,26 @@ import java.util.Map;
 import javax.management.JMException;
 import javax.management.ObjectName;
 
+import com.oasisdigital.nges.cluster.AbstractMessageGroup;
+
 /**
  * JMX MBean for the event store. Exposes a number of most recent events as well as the ID of the most recent
- * event.
+ * event. With a message group, also exposes the queue depth and latency of its subscribers.
  */
 public class EventStoreStatus implements EventStoreStatusMBean {
     private static final int LATEST_EVENTS_COUNT = 10;
     private static final String OBJECT_NAME = "EventStore:name=EventStore";
 
     private EventStore eventStore;
+    private AbstractMessageGroup messageGroup;
 
     public EventStoreStatus(EventStore eventStore) {
+        this(eventStore, null);
+    }
+
+    public EventStoreStatus(EventStore eventStore, AbstractMessageGroup messageGroup) {
         this.eventStore = eventStore;
+        this.messageGroup = messageGroup;
     }
 
     public void registerMBean() throws JMException {
@@ -55,4 +64,22 @@ public class EventStoreStatus implements EventStoreStatusMBean {
     public Long getLastEventId() {
         return eventStore.getLastEventId().orElse(null);
     }
+
+    @Override
+    public List<Map<String, Object>> getSubscribers() {
+        if (messageGroup == null) {
+            return Collections.emptyList();
+        }
+        return messageGroup.getSubscriberStats().stream().map(stats -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("subscriber", stats.getSubscriber());
+            result.put("queueDepth", stats.getQueueDepth());
+            result.put("queueCapacity", stats.getQueueCapacity());
+            result.put("delivered", stats.getDelivered());
+            result.put("dropped", stats.getDropped());
+            result.put("meanLatencyMicros", stats.getMeanLatencyMicros());
+            result.put("maxLatencyMicros", stats.getMaxLatencyMicros());
+            return result;
+        }).collect(toList());
+    }
 }
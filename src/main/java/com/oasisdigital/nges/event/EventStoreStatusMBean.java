@@ -9,4 +9,6 @@ public interface EventStoreStatusMBean {
 
     Long getLastEventId();
 
+    List<Map<String, Object>> getSubscribers();
+
 }
@@ -0,0 +1,27 @@
+package com.oasisdigital.nges.event;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Thrown by {@link EventStore#saveAll(Map)} when appending to any of the streams would cause an
+ * {@link EventStoreConflict}. Reports the conflicts for all streams at once; none of the streams is appended.
+ */
+public class MultiStreamConflict extends EventStoreConflict {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<UUID, String> conflicts;
+
+    public MultiStreamConflict(Map<UUID, String> conflicts) {
+        super("Conflicts in " + conflicts.size() + " stream(s): " + conflicts);
+        this.conflicts = Collections.unmodifiableMap(conflicts);
+    }
+
+    /**
+     * @return description of the conflict for every conflicting stream
+     */
+    public Map<UUID, String> getConflicts() {
+        return conflicts;
+    }
+}
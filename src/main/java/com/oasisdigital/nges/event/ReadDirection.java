@@ -0,0 +1,20 @@
+package com.oasisdigital.nges.event;
+
+/**
+ * Direction of a paged read, see {@link EventStore#readStream(java.util.UUID, ReadDirection, String, int)}.
+ */
+public enum ReadDirection {
+    /**
+     * From older to newer events, i.e. by increasing sequence number or event ID.
+     */
+    FORWARD,
+
+    /**
+     * From newer to older events, i.e. by decreasing sequence number or event ID.
+     */
+    BACKWARD;
+
+    public ReadDirection reverse() {
+        return this == FORWARD ? BACKWARD : FORWARD;
+    }
+}
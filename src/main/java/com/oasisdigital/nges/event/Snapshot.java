@@ -0,0 +1,64 @@
+package com.oasisdigital.nges.event;
+
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Serialized state of a stream after applying all its events up to a given sequence number.
+ */
+public class Snapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final UUID streamId;
+    private final long sequence;
+    private final String type;
+    private final String payload;
+    private final OffsetDateTime transactionTime;
+
+    /**
+     * @param streamId
+     *            ID of the stream
+     * @param sequence
+     *            sequence number of the last event reflected in the state
+     * @param type
+     *            type of the snapshot, useful for interpreting the payload, e.g. after the format has changed
+     * @param payload
+     *            JSON state
+     */
+    public Snapshot(UUID streamId, long sequence, String type, String payload) {
+        this(streamId, sequence, type, payload, null);
+    }
+
+    public Snapshot(UUID streamId, long sequence, String type, String payload,
+            OffsetDateTime transactionTime) {
+        this.streamId = streamId;
+        this.sequence = sequence;
+        this.type = type;
+        this.payload = payload;
+        this.transactionTime = transactionTime;
+    }
+
+    public UUID getStreamId() {
+        return streamId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Time when the snapshot was saved, populated when loaded from the store.
+     */
+    public OffsetDateTime getTransactionTime() {
+        return transactionTime;
+    }
+}
@@ -0,0 +1,39 @@
+package com.oasisdigital.nges.event;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Everything needed to rebuild the state of a stream: its latest snapshot (if any), followed by the events
+ * saved after it.
+ */
+public class SnapshotAndEvents {
+    private final Optional<Snapshot> snapshot;
+    private final List<Event> events;
+
+    public SnapshotAndEvents(Optional<Snapshot> snapshot, List<Event> events) {
+        this.snapshot = snapshot;
+        this.events = events;
+    }
+
+    public Optional<Snapshot> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Events after the snapshot, or all events of the stream if there is no snapshot.
+     */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Sequence number of the last event reflected in the result, either through the snapshot or the events.
+     */
+    public long getLastSequence() {
+        if (!events.isEmpty()) {
+            return events.get(events.size() - 1).getSequence();
+        }
+        return snapshot.map(Snapshot::getSequence).orElse(0L);
+    }
+}
@@ -0,0 +1,28 @@
+package com.oasisdigital.nges.event;
+
+/**
+ * Decides when a new snapshot of a stream should be taken.
+ */
+@FunctionalInterface
+public interface SnapshotPolicy {
+
+    /**
+     * @param snapshotSequence
+     *            sequence number of the latest snapshot of the stream, 0 if there is none
+     * @param lastSequence
+     *            sequence number of the last event in the stream
+     * @return true if a new snapshot should be taken at <code>lastSequence</code>
+     */
+    boolean shouldSnapshot(long snapshotSequence, long lastSequence);
+
+    /**
+     * Take a snapshot after every <code>events</code> events, so that rebuilding the state never needs to
+     * read more events than that.
+     */
+    public static SnapshotPolicy everyEvents(int events) {
+        if (events <= 0) {
+            throw new IllegalArgumentException("Number of events must be positive");
+        }
+        return (snapshotSequence, lastSequence) -> lastSequence - snapshotSequence >= events;
+    }
+}
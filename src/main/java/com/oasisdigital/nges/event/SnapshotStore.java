@@ -0,0 +1,48 @@
+package com.oasisdigital.nges.event;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Stores snapshots of stream state, so that rebuilding the state of a long stream doesn't need to replay all
+ * its events.
+ */
+public interface SnapshotStore {
+
+    /**
+     * Save a snapshot. Saving a snapshot for the same stream and sequence again has no effect. Throws
+     * {@link EventStoreException} if the stream has no event with the snapshot's sequence number.
+     */
+    void saveSnapshot(Snapshot snapshot) throws EventStoreException;
+
+    /**
+     * Save the snapshot from the supplier if the {@link SnapshotPolicy} says it's time for one. The supplier
+     * is only called (and the state serialized) in that case.
+     *
+     * @param snapshotSequence
+     *            sequence of the snapshot the current state was loaded from, 0 if there was none (see
+     *            {@link SnapshotAndEvents#getSnapshot()})
+     * @param lastSequence
+     *            sequence of the last event reflected in the current state
+     * @return true if the snapshot has been saved
+     */
+    boolean saveSnapshotIfDue(long snapshotSequence, long lastSequence, Supplier<Snapshot> snapshot)
+            throws EventStoreException;
+
+    /**
+     * Get the most recent snapshot of a stream.
+     */
+    Optional<Snapshot> getLatestSnapshot(UUID streamId) throws EventStoreException;
+
+    /**
+     * Get the most recent snapshot of a stream, along with up to <code>limit</code> events saved after it. It
+     * only takes one query.
+     */
+    SnapshotAndEvents getLatestSnapshotAndEvents(UUID streamId, int limit) throws EventStoreException;
+
+    /**
+     * Delete snapshots of a stream older than the given sequence number.
+     */
+    void deleteSnapshots(UUID streamId, long beforeSequence) throws EventStoreException;
+}
@@ -0,0 +1,38 @@
+package com.oasisdigital.nges.event;
+
+import java.util.List;
+
+/**
+ * Events to append to one stream, used with {@link EventStore#saveAll(java.util.Map)}.
+ */
+public class StreamAppend {
+    private final String streamType;
+    private final long lastSequence;
+    private final List<Event> events;
+
+    /**
+     * @param streamType
+     *            see {@link EventStore#save(List, String, long)}
+     * @param lastSequence
+     *            see {@link EventStore#save(List, String, long)}
+     * @param events
+     *            new events, all for the same stream
+     */
+    public StreamAppend(String streamType, long lastSequence, List<Event> events) {
+        this.streamType = streamType;
+        this.lastSequence = lastSequence;
+        this.events = events;
+    }
+
+    public String getStreamType() {
+        return streamType;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+}
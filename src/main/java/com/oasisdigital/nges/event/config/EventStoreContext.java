@@ -1,14 +1,28 @@
 package com.oasisdigital.nges.event.config;
 
+import java.nio.file.Path;
+import java.util.Optional;
+
 import javax.sql.DataSource;
 
+import com.google.common.base.Preconditions;
+
+import com.oasisdigital.nges.cluster.AbstractMessageGroup;
+import com.oasisdigital.nges.cluster.BackpressurePolicy;
 import com.oasisdigital.nges.cluster.JGroupsMessageGroup;
 import com.oasisdigital.nges.cluster.MessageGroup;
 import com.oasisdigital.nges.event.EventStoreStatus;
 import com.oasisdigital.nges.event.EventStoreStatusHeartbeat;
 import com.oasisdigital.nges.event.EventStore;
+import com.oasisdigital.nges.event.SnapshotPolicy;
+import com.oasisdigital.nges.event.SnapshotStore;
+import com.oasisdigital.nges.event.file.FileEventStore;
 import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
 import com.oasisdigital.nges.event.jdbc.JdbcEventStore;
+import com.oasisdigital.nges.event.jdbc.JdbcSnapshotStore;
+import com.oasisdigital.nges.event.jdbc.PayloadCodec;
+import com.oasisdigital.nges.event.subscription.CatchUpSubscription;
+import com.oasisdigital.nges.event.subscription.EventHandler;
 
 /**
  * <p>
@@ -24,6 +38,11 @@ import com.oasisdigital.nges.event.jdbc.JdbcEventStore;
  * </p>
  *
  * <p>
+ * Another message group can be passed to the constructor instead, for example
+ * {@link com.oasisdigital.nges.cluster.PostgresMessageGroup} where multicast is not available.
+ * </p>
+ *
+ * <p>
  * The configuration can be changed after creation, as long as it's done before calling {@link #initialize()}.
  * </p>
  *
@@ -38,29 +57,81 @@ public class EventStoreContext {
     public static final long DEFAULT_HEARTBEAT_DELAY = 0;
     public static final long DEFAULT_HEARTBEAT_INTERVAL = 5000;
 
-    private final JGroupsMessageGroup messageGroup;
-    private final JdbcEventStore eventStore;
+    private final AbstractMessageGroup messageGroup;
+    private final EventStore eventStore;
+    private final JdbcEventStore jdbcEventStore;
+    private final FileEventStore fileEventStore;
+    private final JdbcSnapshotStore snapshotStore;
     private final EventStoreStatusPublisher statusPublisher;
     private final EventStoreStatusHeartbeat heartbeat;
     private final EventStoreStatus jmx;
 
     public EventStoreContext(DataSource dataSource) {
-        this.messageGroup = new JGroupsMessageGroup();
+        this(dataSource, new JGroupsMessageGroup());
+
+        configureMessageGroup(DEFAULT_JGROUPS_CLUSTER_NAME, DEFAULT_JGROUPS_PORT);
+    }
+
+    /**
+     * Create a context publishing notifications to given message group rather than JGroups. The group is
+     * initialized and destroyed along with the context.
+     */
+    public EventStoreContext(DataSource dataSource, AbstractMessageGroup messageGroup) {
+        this.messageGroup = messageGroup;
         this.statusPublisher = new EventStoreStatusPublisher(messageGroup);
-        this.eventStore = new JdbcEventStore(dataSource, statusPublisher);
+        this.jdbcEventStore = new JdbcEventStore(dataSource, statusPublisher);
+        this.fileEventStore = null;
+        this.eventStore = jdbcEventStore;
+        this.snapshotStore = jdbcEventStore.createSnapshotStore();
         this.heartbeat = new EventStoreStatusHeartbeat(eventStore, statusPublisher);
-        this.jmx = new EventStoreStatus(eventStore);
+        this.jmx = new EventStoreStatus(eventStore, messageGroup);
+
+        configureHeartbeat(DEFAULT_HEARTBEAT_DELAY, DEFAULT_HEARTBEAT_INTERVAL);
+    }
+
+    /**
+     * Create a context with an embedded {@link FileEventStore} in given directory instead of a database. The
+     * configuration specific to the database is not available, and neither is the snapshot store.
+     */
+    public EventStoreContext(Path directory) {
+        this(directory, new JGroupsMessageGroup());
 
         configureMessageGroup(DEFAULT_JGROUPS_CLUSTER_NAME, DEFAULT_JGROUPS_PORT);
+    }
+
+    /**
+     * Create a context with an embedded {@link FileEventStore}, publishing notifications to given message
+     * group rather than JGroups.
+     */
+    public EventStoreContext(Path directory, AbstractMessageGroup messageGroup) {
+        this.messageGroup = messageGroup;
+        this.statusPublisher = new EventStoreStatusPublisher(messageGroup);
+        this.jdbcEventStore = null;
+        this.fileEventStore = new FileEventStore(directory, statusPublisher);
+        this.eventStore = fileEventStore;
+        this.snapshotStore = null;
+        this.heartbeat = new EventStoreStatusHeartbeat(eventStore, statusPublisher);
+        this.jmx = new EventStoreStatus(eventStore, messageGroup);
+
         configureHeartbeat(DEFAULT_HEARTBEAT_DELAY, DEFAULT_HEARTBEAT_INTERVAL);
     }
 
     /**
-     * Must not be called after {@link #initialize()}.
+     * Only available with the default JGroups message group. Must not be called after {@link #initialize()}.
      */
     public void configureMessageGroup(String jgroupsClusterName, int jgroupsMulticastPort) {
-        this.messageGroup.setClusterName(jgroupsClusterName);
-        this.messageGroup.setMulticastPort(jgroupsMulticastPort);
+        jgroupsMessageGroup().setClusterName(jgroupsClusterName);
+        jgroupsMessageGroup().setMulticastPort(jgroupsMulticastPort);
+    }
+
+    /**
+     * Deliver messages to the message group's subscribers on given number of threads, with a queue of given
+     * capacity per subscriber. Must not be called after {@link #initialize()}.
+     *
+     * @see AbstractMessageGroup#setDispatch(int, int, BackpressurePolicy)
+     */
+    public void configureSubscriberDispatch(int parallelism, int queueCapacity, BackpressurePolicy policy) {
+        messageGroup.setDispatch(parallelism, queueCapacity, policy);
     }
 
     /**
@@ -77,10 +148,126 @@ public class EventStoreContext {
         this.heartbeat.setPollingIntervalMs(pollingIntervalMs);
     }
 
+    /**
+     * Send at most one {@link com.oasisdigital.nges.cluster.EventUpdate} notification per given interval,
+     * however many events are saved. Must not be called after {@link #initialize()}.
+     *
+     * @see EventStoreStatusPublisher#setPublishInterval(long)
+     */
+    public void configureEventUpdateInterval(long publishIntervalMs) {
+        statusPublisher.setPublishInterval(publishIntervalMs);
+    }
+
+    /**
+     * Send small saved events along with the notifications, as
+     * {@link com.oasisdigital.nges.cluster.EventsAppended}. Must not be called after {@link #initialize()}.
+     *
+     * @see EventStoreStatusPublisher#setMaxEventBytes(int)
+     */
+    public void configureEventsInNotifications(int maxEventBytes) {
+        statusPublisher.setMaxEventBytes(maxEventBytes);
+    }
+
+    /**
+     * Enable group commit on the event store, gathering concurrent appends into shared transactions. Must not
+     * be called after {@link #initialize()}.
+     *
+     * @see JdbcEventStore#enableGroupCommit(int)
+     */
+    public void configureGroupCommit(int maxBatchSize) {
+        jdbcEventStore().enableGroupCommit(maxBatchSize);
+    }
+
+    /**
+     * Append events with a database function, in a single round trip. Must not be called after
+     * {@link #initialize()}.
+     *
+     * @see JdbcEventStore#enableServerSideAppend()
+     */
+    public void configureServerSideAppend() {
+        jdbcEventStore().enableServerSideAppend();
+    }
+
+    /**
+     * Lock writes per stream rather than globally, so that appends to unrelated streams can run in parallel.
+     * Must not be called after {@link #initialize()}.
+     *
+     * @see JdbcEventStore#enableStripedLocking(int)
+     */
+    public void configureStripedLocking(int stripes) {
+        jdbcEventStore().enableStripedLocking(stripes);
+    }
+
+    /**
+     * Keep the most recent events in memory, so that readers of the tail of the log don't all need to query
+     * the database. The cache is kept up to date with notifications from the message group. Must not be
+     * called after {@link #initialize()}.
+     *
+     * @see JdbcEventStore#enableTailCache(int, long)
+     */
+    public void configureTailCache(int maxEvents, long maxBytes) {
+        jdbcEventStore().enableTailCache(maxEvents, maxBytes);
+    }
+
+    /**
+     * Send reads to a read replica of the database. Must not be called after {@link #initialize()}.
+     *
+     * @see JdbcEventStore#enableReadReplica(DataSource, long)
+     */
+    public void configureReadReplica(DataSource replicaDataSource, long maxWaitMs) {
+        jdbcEventStore().enableReadReplica(replicaDataSource, maxWaitMs);
+    }
+
+    /**
+     * Read large time ranges on several connections at once. Must not be called after {@link #initialize()}.
+     *
+     * @see JdbcEventStore#enableParallelRangeScans(int, int)
+     */
+    public void configureParallelRangeScans(int parallelism, int chunkSize) {
+        jdbcEventStore().enableParallelRangeScans(parallelism, chunkSize);
+    }
+
+    /**
+     * Set the way new payloads are stored. Must not be called after {@link #initialize()}.
+     *
+     * @see JdbcEventStore#setPayloadCodec(PayloadCodec)
+     */
+    public void configurePayloadCodec(PayloadCodec codec) {
+        jdbcEventStore().setPayloadCodec(codec);
+    }
+
+    /**
+     * Read archived events from segment files in given directory. Must not be called after
+     * {@link #initialize()}.
+     *
+     * @see JdbcEventStore#enableArchive(Path)
+     */
+    public void configureArchive(Path directory) {
+        jdbcEventStore().enableArchive(directory);
+    }
+
+    /**
+     * Set the policy of taking snapshots with {@link SnapshotStore#saveSnapshotIfDue}. Must not be called
+     * after {@link #initialize()}.
+     */
+    public void configureSnapshotPolicy(SnapshotPolicy policy) {
+        jdbcSnapshotStore().setPolicy(policy);
+    }
+
+    /**
+     * Sync the embedded store in the background at given interval rather than on every save. Must not be
+     * called after {@link #initialize()}.
+     *
+     * @see FileEventStore#setFsyncInterval(long)
+     */
+    public void configureFsyncInterval(long fsyncIntervalMs) {
+        fileEventStore().setFsyncInterval(fsyncIntervalMs);
+    }
+
     /**
      * <p>
-     * Creates thread pools for message group and heartbeat. Initializes JGroups cluster. Registers JMX MBean
-     * for event store status.
+     * Creates thread pools for message group and heartbeat. Initializes JGroups cluster (or the message group
+     * passed to the constructor). Registers JMX MBean for event store status.
      * </p>
      *
      * <p>
@@ -95,6 +282,8 @@ public class EventStoreContext {
     public void initialize() {
         try {
             messageGroup.initialize();
+            Optional.ofNullable(jdbcEventStore).flatMap(JdbcEventStore::getTailCache)
+                    .ifPresent(messageGroup::registerSubscriber);
             heartbeat.initialize();
             jmx.registerMBean();
         } catch (Exception e) {
@@ -103,18 +292,34 @@ public class EventStoreContext {
     }
 
     /**
-     * Shut down JGroups cluster and thread pools, unregister JMX MBean.
+     * Shut down JGroups cluster and thread pools, unregister JMX MBean. Close the store.
      */
     public void destroy() {
         try {
+            statusPublisher.destroy();
             messageGroup.destroy();
             heartbeat.destroy();
             jmx.unregisterMBean();
+            if (fileEventStore != null) {
+                fileEventStore.close();
+            }
+            if (jdbcEventStore != null) {
+                jdbcEventStore.close();
+            }
         } catch (Exception e) {
             throw new RuntimeException();
         }
     }
 
+    /**
+     * Create a subscription delivering all events after given event ID to the handler, driven by
+     * notifications from this context's message group. The subscription needs to be started and eventually
+     * stopped by the caller.
+     */
+    public CatchUpSubscription createSubscription(long afterEventId, EventHandler handler) {
+        return new CatchUpSubscription(eventStore, messageGroup, afterEventId, handler);
+    }
+
     public MessageGroup getMessageGroup() {
         return messageGroup;
     }
@@ -122,4 +327,28 @@ public class EventStoreContext {
     public EventStore getEventStore() {
         return eventStore;
     }
+
+    public SnapshotStore getSnapshotStore() {
+        return jdbcSnapshotStore();
+    }
+
+    private JGroupsMessageGroup jgroupsMessageGroup() {
+        Preconditions.checkState(messageGroup instanceof JGroupsMessageGroup, "Only available with JGroups");
+        return (JGroupsMessageGroup) messageGroup;
+    }
+
+    private JdbcEventStore jdbcEventStore() {
+        Preconditions.checkState(jdbcEventStore != null, "Only available with a database");
+        return jdbcEventStore;
+    }
+
+    private JdbcSnapshotStore jdbcSnapshotStore() {
+        Preconditions.checkState(snapshotStore != null, "Only available with a database");
+        return snapshotStore;
+    }
+
+    private FileEventStore fileEventStore() {
+        Preconditions.checkState(fileEventStore != null, "Only available with an embedded store");
+        return fileEventStore;
+    }
 }
@@ -0,0 +1,202 @@
+package com.oasisdigital.nges.event.file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import com.oasisdigital.nges.event.Event;
+
+/**
+ * <p>
+ * Binary layout of an event in a {@link LogSegment}. A record is a header with the length of the body and
+ * its CRC32, followed by the body: the fixed-size fields at fixed offsets, then the length-prefixed UTF-8
+ * strings. Reads of single fields, such as the transaction time or the stream ID, don't need to decode the
+ * rest.
+ * </p>
+ *
+ * <p>
+ * The last record of every save is flagged as a commit. Records after the last commit are the remains of a
+ * save interrupted by a crash, and are dropped on recovery.
+ * </p>
+ */
+class EventRecord {
+    static final int HEADER_SIZE = 8;
+
+    private static final int CRC = 4;
+    private static final int EVENT_ID = 8;
+    private static final int STREAM_ID = 16;
+    private static final int SEQUENCE = 32;
+    private static final int SECONDS = 40;
+    private static final int NANOS = 48;
+    private static final int FLAGS = 52;
+    private static final int CORRELATION_ID = 53;
+    private static final int TYPE = 69;
+    private static final int MIN_BODY_SIZE = TYPE - HEADER_SIZE + 3 * 4;
+
+    private static final byte FLAG_CORRELATION_ID = 1;
+    private static final byte FLAG_COMMIT = 2;
+
+    /**
+     * Append the record of the event to the buffer, growing it if needed.
+     *
+     * @param streamType
+     *            type of the stream, only stored with the first event of a stream, <code>null</code>
+     *            otherwise
+     * @param commit
+     *            true for the last event of a save
+     * @return the buffer the record has been appended to
+     */
+    static ByteBuffer encode(ByteBuffer buffer, Event event, String streamType, boolean commit) {
+        byte[] type = toBytes(event.getType());
+        byte[] streamTypeBytes = toBytes(streamType);
+        byte[] payload = toBytes(event.getPayload());
+        int bodySize = TYPE - HEADER_SIZE + sizeOf(type) + sizeOf(streamTypeBytes) + sizeOf(payload);
+        if (buffer.remaining() < HEADER_SIZE + bodySize) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position()
+                    + HEADER_SIZE + bodySize));
+            buffer.flip();
+            buffer = grown.put(buffer);
+        }
+        int start = buffer.position();
+        Instant transactionTime = event.getTransactionTime().toInstant();
+        UUID correlationId = event.getCorrelationId();
+
+        buffer.putInt(bodySize);
+        buffer.putInt(0); // CRC, below
+        buffer.putLong(event.getEventId());
+        buffer.putLong(event.getStreamId().getMostSignificantBits());
+        buffer.putLong(event.getStreamId().getLeastSignificantBits());
+        buffer.putLong(event.getSequence());
+        buffer.putLong(transactionTime.getEpochSecond());
+        buffer.putInt(transactionTime.getNano());
+        buffer.put((byte) ((correlationId != null ? FLAG_CORRELATION_ID : 0) | (commit ? FLAG_COMMIT : 0)));
+        buffer.putLong(correlationId != null ? correlationId.getMostSignificantBits() : 0);
+        buffer.putLong(correlationId != null ? correlationId.getLeastSignificantBits() : 0);
+        putString(buffer, type);
+        putString(buffer, streamTypeBytes);
+        putString(buffer, payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + HEADER_SIZE, bodySize);
+        buffer.putInt(start + CRC, (int) crc.getValue());
+        return buffer;
+    }
+
+    /**
+     * @return true if there is a complete, intact record of the event with given ID at the offset
+     */
+    static boolean isValid(ByteBuffer buffer, int offset, long eventId) {
+        if (offset + HEADER_SIZE + MIN_BODY_SIZE > buffer.capacity()) {
+            return false;
+        }
+        int bodySize = buffer.getInt(offset);
+        if (bodySize < MIN_BODY_SIZE || bodySize > buffer.capacity() - offset - HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.limit(offset + HEADER_SIZE + bodySize).position(offset + HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == buffer.getInt(offset + CRC) && getEventId(buffer, offset) == eventId;
+    }
+
+    /**
+     * @return true if the buffer holds anything at the offset, valid or not
+     */
+    static boolean isPresent(ByteBuffer buffer, int offset) {
+        return offset + 4 <= buffer.capacity() && buffer.getInt(offset) != 0;
+    }
+
+    static int getLength(ByteBuffer buffer, int offset) {
+        return HEADER_SIZE + buffer.getInt(offset);
+    }
+
+    static boolean isCommit(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset + FLAGS) & FLAG_COMMIT) != 0;
+    }
+
+    static long getEventId(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + EVENT_ID);
+    }
+
+    static UUID getStreamId(ByteBuffer buffer, int offset) {
+        return new UUID(buffer.getLong(offset + STREAM_ID), buffer.getLong(offset + STREAM_ID + 8));
+    }
+
+    static long getSequence(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + SEQUENCE);
+    }
+
+    static Instant getTransactionTime(ByteBuffer buffer, int offset) {
+        return Instant.ofEpochSecond(buffer.getLong(offset + SECONDS), buffer.getInt(offset + NANOS));
+    }
+
+    static String getType(ByteBuffer buffer, int offset) {
+        return getString(buffer.duplicate(), offset + TYPE);
+    }
+
+    /**
+     * @return the stream type, <code>null</code> unless it's the first event of the stream
+     */
+    static String getStreamType(ByteBuffer buffer, int offset) {
+        ByteBuffer strings = buffer.duplicate();
+        skipString(strings, offset + TYPE);
+        return getString(strings, strings.position());
+    }
+
+    static Event decode(ByteBuffer buffer, int offset, ZoneId zone) {
+        Event event = new Event();
+        event.setEventId(getEventId(buffer, offset));
+        event.setStreamId(getStreamId(buffer, offset));
+        event.setSequence(getSequence(buffer, offset));
+        event.setTransactionTime(OffsetDateTime.ofInstant(getTransactionTime(buffer, offset), zone));
+        if ((buffer.get(offset + FLAGS) & FLAG_CORRELATION_ID) != 0) {
+            event.setCorrelationId(new UUID(buffer.getLong(offset + CORRELATION_ID),
+                    buffer.getLong(offset + CORRELATION_ID + 8)));
+        }
+        ByteBuffer strings = buffer.duplicate();
+        event.setType(getString(strings, offset + TYPE));
+        skipString(strings, strings.position());
+        event.setPayload(getString(strings, strings.position()));
+        return event;
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    /**
+     * Read the string at the offset, leaving the position of the buffer right after it.
+     */
+    private static String getString(ByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        buffer.position(offset + 4);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer, int offset) {
+        buffer.position(offset + 4 + Math.max(buffer.getInt(offset), 0));
+    }
+}
@@ -0,0 +1,822 @@
+package com.oasisdigital.nges.event.file;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventFilter;
+import com.oasisdigital.nges.event.EventPage;
+import com.oasisdigital.nges.event.EventStore;
+import com.oasisdigital.nges.event.EventStoreConflict;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.EventStream;
+import com.oasisdigital.nges.event.Lease;
+import com.oasisdigital.nges.event.ReadDirection;
+import com.oasisdigital.nges.event.StreamAppend;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+import com.oasisdigital.nges.event.internal.LeaseTable;
+import com.oasisdigital.nges.event.internal.PositionTokens;
+import com.oasisdigital.nges.event.internal.SaveValidation;
+
+/**
+ * <p>
+ * Embedded event store keeping the log in memory-mapped files in a local directory, for single-process
+ * deployments without a database. The log is split into {@link LogSegment}s of {@link #setSegmentSize(int)}
+ * bytes. The position of every event and the events of every stream are indexed in memory, rebuilt from the
+ * files when the store is opened. Reads go straight to the mapped files, with no copying other than decoding
+ * the event.
+ * </p>
+ *
+ * <p>
+ * Saves are serialized on one lock and get consecutive event IDs, like with the default locking of
+ * {@link com.oasisdigital.nges.event.jdbc.JdbcEventStore}. Optimistic concurrency control, leases and
+ * {@link EventStoreStatusPublisher} notifications work the same way. By default a save returns once its
+ * events are synced to the storage device; saves running concurrently share one sync (see
+ * {@link #setFsyncInterval(long)}). Events are only visible to readers once they are synced.
+ * </p>
+ *
+ * <p>
+ * Leases are kept in memory only. Only one process can open the directory at a time. The store should be
+ * closed with {@link #close()} when it's not needed anymore.
+ * </p>
+ */
+public class FileEventStore implements EventStore, Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final String LOCK_FILE = "lock";
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Path directory;
+    private final EventStoreStatusPublisher statusPublisher;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final LeaseTable leases = new LeaseTable();
+    private final ConcurrentMap<UUID, StreamIndex> streams = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object syncLock = new Object();
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    // Copied on write, sorted by event ID
+    private volatile List<LogSegment> segments;
+    private volatile long writtenEventId;
+    private volatile long committedEventId;
+    private long syncedEventId; // guarded by syncLock
+    private OffsetDateTime lastTransactionTime; // guarded by writeLock
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE); // guarded by writeLock
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long fsyncIntervalMs;
+    private ScheduledExecutorService syncExecutor;
+    private boolean closed;
+
+    /**
+     * Open the store in given directory, creating it if needed. The directory is locked until the store is
+     * closed.
+     */
+    public FileEventStore(Path directory, EventStoreStatusPublisher statusPublisher)
+            throws EventStoreException {
+        this.directory = Preconditions.checkNotNull(directory);
+        this.statusPublisher = statusPublisher;
+        try {
+            Files.createDirectories(directory);
+            this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), CREATE, WRITE);
+        } catch (IOException e) {
+            throw new EventStoreException("Unable to open " + directory, e);
+        }
+        this.lock = tryLock();
+        try {
+            recover();
+        } catch (RuntimeException e) {
+            unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * <p>
+     * Set the size of new segment files. Larger segments mean fewer files, but more disk space allocated
+     * ahead of time. A save that doesn't fit in a segment of this size gets a larger segment of its own.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. Existing segments keep their size, and the first segment is
+     * only created with the first save.
+     * </p>
+     */
+    public void setSegmentSize(int segmentSize) {
+        Preconditions.checkArgument(segmentSize >= MIN_SEGMENT_SIZE);
+
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * <p>
+     * Sync the log to the storage device in the background every <code>fsyncIntervalMs</code> instead of on
+     * every save. Saves then return as soon as their events are written to the mapped files, and the events
+     * are visible to readers right away. The events of the last interval can be lost in a power failure or
+     * an operating system crash, though not when only this process crashes.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. With 0 (the default), every save waits for its events to be
+     * synced.
+     * </p>
+     */
+    public void setFsyncInterval(long fsyncIntervalMs) {
+        Preconditions.checkArgument(fsyncIntervalMs >= 0);
+        Preconditions.checkState(syncExecutor == null, "The fsync interval is already set");
+
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        if (fsyncIntervalMs > 0) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("nges-file-sync-%d").build());
+            syncExecutor.scheduleWithFixedDelay(this::syncInBackground, fsyncIntervalMs, fsyncIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sync the remaining events and release the directory. The store must not be used after that.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (syncExecutor != null) {
+                syncExecutor.shutdownNow();
+            }
+            sync(writtenEventId);
+            unlock();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Long> save(List<Event> events, String streamType, long lastSequence)
+            throws EventStoreException {
+        return save(events, streamType, lastSequence, Collections.emptyList(), "");
+    }
+
+    @Override
+    public List<Long> save(List<Event> events, String streamType, long lastSequence,
+            Collection<String> leaseKeys, String leaseOwnerKey) throws EventStoreException {
+        SaveValidation.checkSave(events, lastSequence);
+        if (events.isEmpty()) {
+            return Collections.emptyList();
+        }
+        UUID streamId = events.get(0).getStreamId();
+        List<Long> ids;
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (!leases.verifyLeases(leaseKeys, leaseOwnerKey)) {
+                return Collections.emptyList();
+            }
+            StreamIndex stream = streams.get(streamId);
+            long _lastSequence;
+            if (lastSequence == AUTO_GENERATE_SEQUENCE) {
+                _lastSequence = stream == null ? 0 : stream.getLastSequence();
+            } else {
+                _lastSequence = lastSequence;
+            }
+            Optional<String> conflict = SaveValidation.findConflict(streamId, streamType, _lastSequence,
+                    stream == null ? null : stream.getStreamType(),
+                    stream == null ? 0 : stream.getLastSequence());
+            if (conflict.isPresent()) {
+                throw new EventStoreConflict(conflict.get());
+            }
+            Map<UUID, StreamAppend> appends = Collections.singletonMap(streamId,
+                    new StreamAppend(streamType, _lastSequence, events));
+            ids = appendLocked(appends, Collections.singletonMap(streamId, _lastSequence)).get(streamId);
+        } finally {
+            writeLock.unlock();
+        }
+        commit(ids.get(ids.size() - 1), events);
+        return ids;
+    }
+
+    @Override
+    public Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends) throws EventStoreException {
+        return saveAll(appends, Collections.emptyList(), "");
+    }
+
+    @Override
+    public Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends, Collection<String> leaseKeys,
+            String leaseOwnerKey) throws EventStoreException {
+        Map<UUID, StreamAppend> nonEmpty = SaveValidation.checkSaveAll(appends);
+        if (nonEmpty.isEmpty()) {
+            return SaveValidation.emptyIds(appends);
+        }
+        Map<UUID, List<Long>> ids;
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (!leases.verifyLeases(leaseKeys, leaseOwnerKey)) {
+                return Collections.emptyMap();
+            }
+            Map<UUID, Long> lastSequences = SaveValidation.verifyLastSequences(nonEmpty,
+                    streamId -> streams.containsKey(streamId) ? streams.get(streamId).getStreamType() : null,
+                    streamId -> streams.containsKey(streamId) ? streams.get(streamId).getLastSequence() : 0);
+            ids = appendLocked(nonEmpty, lastSequences);
+        } finally {
+            writeLock.unlock();
+        }
+        commit(ids.values().stream().flatMap(List::stream).mapToLong(Long::longValue).max().getAsLong(),
+                nonEmpty.values().stream().flatMap(append -> append.getEvents().stream())
+                        .collect(Collectors.toList()));
+        Map<UUID, List<Long>> result = SaveValidation.emptyIds(appends);
+        result.putAll(ids);
+        return result;
+    }
+
+    /**
+     * Write the events of the verified appends as one batch, in one segment, and index them. Must be called
+     * holding the write lock.
+     */
+    private Map<UUID, List<Long>> appendLocked(Map<UUID, StreamAppend> appends, Map<UUID, Long> lastSequences)
+            throws EventStoreException {
+        OffsetDateTime transactionTime = OffsetDateTime.now();
+        if (lastTransactionTime != null && transactionTime.isBefore(lastTransactionTime)) {
+            // Keep transaction times ordered by event ID, even if the clock goes back
+            transactionTime = lastTransactionTime;
+        }
+        int remaining = appends.values().stream().mapToInt(append -> append.getEvents().size()).sum();
+        long eventId = writtenEventId;
+        Map<UUID, List<Long>> ids = new LinkedHashMap<>();
+        buffer.clear();
+        for (Map.Entry<UUID, StreamAppend> entry : appends.entrySet()) {
+            StreamAppend append = entry.getValue();
+            String newStreamType = streams.containsKey(entry.getKey()) ? null : append.getStreamType();
+            long lastSequence = lastSequences.get(entry.getKey());
+            List<Long> streamIds = new ArrayList<>();
+            for (int i = 0; i < append.getEvents().size(); i++) {
+                Event event = append.getEvents().get(i);
+                event.setEventId(++eventId);
+                event.setSequence(lastSequence + i + 1);
+                event.setTransactionTime(transactionTime);
+                buffer = EventRecord.encode(buffer, event, i == 0 ? newStreamType : null, --remaining == 0);
+                streamIds.add(eventId);
+            }
+            ids.put(entry.getKey(), streamIds);
+        }
+        buffer.flip();
+
+        LogSegment segment = getLastSegment();
+        if (segment == null || segment.getRemaining() < buffer.remaining()) {
+            segment = roll(buffer.remaining());
+        }
+        segment.append(buffer);
+        appends.forEach((streamId, append) -> {
+            StreamIndex stream = streams.computeIfAbsent(streamId,
+                    id -> new StreamIndex(id, append.getStreamType()));
+            ids.get(streamId).forEach(stream::add);
+        });
+        writtenEventId = eventId;
+        lastTransactionTime = transactionTime;
+        if (fsyncIntervalMs > 0) {
+            committedEventId = eventId;
+        }
+        return ids;
+    }
+
+    /**
+     * Start a new segment for the following events, after syncing the current one. Must be called holding the
+     * write lock.
+     */
+    private LogSegment roll(int minCapacity) throws EventStoreException {
+        LogSegment last = getLastSegment();
+        List<LogSegment> segments = new ArrayList<>(this.segments);
+        if (last != null && last.getEventCount() == 0) {
+            // Not enough room in an empty segment, make it bigger
+            segments.remove(segments.size() - 1);
+        } else if (last != null) {
+            // Before the new segment is visible, so that syncing the last segment is always enough
+            last.force();
+        }
+        LogSegment next = LogSegment.create(directory, writtenEventId + 1,
+                Math.max(segmentSize, minCapacity));
+        syncDirectory();
+        segments.add(next);
+        this.segments = segments;
+        log.debug("Started segment {}", next.getFile());
+        return next;
+    }
+
+    /**
+     * Make the events up to given ID durable, if they aren't yet, and visible. Unless the store syncs in the
+     * background, wait for the sync.
+     */
+    private void commit(long eventId, List<Event> events) {
+        if (fsyncIntervalMs == 0) {
+            sync(eventId);
+        }
+        statusPublisher.publishSavedEvents(events);
+    }
+
+    /**
+     * Sync all events written so far, unless the event with given ID is synced already. Threads calling it
+     * concurrently wait for each other, and those whose events have been synced by another thread in the
+     * meantime return right away. That's how one sync serves many saves.
+     */
+    private void sync(long eventId) {
+        synchronized (syncLock) {
+            if (syncedEventId >= eventId) {
+                return;
+            }
+            // Read before the segments: every event up to this ID is in the last segment or a synced one.
+            long written = writtenEventId;
+            LogSegment last = getLastSegment();
+            if (last != null) {
+                last.force();
+            }
+            syncedEventId = written;
+            if (fsyncIntervalMs == 0) {
+                committedEventId = written;
+            }
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            sync(writtenEventId);
+        } catch (RuntimeException e) {
+            log.error("Unable to sync " + directory, e);
+        }
+    }
+
+    @Override
+    public Event getEvent(long eventId) throws EventStoreException {
+        if (eventId < 1 || eventId > committedEventId) {
+            throw new EventStoreException("No event with ID " + eventId);
+        }
+        return readEvent(eventId);
+    }
+
+    @Override
+    public Map<Long, Event> getEvents(Collection<Long> eventIds) throws EventStoreException {
+        Preconditions.checkNotNull(eventIds);
+
+        long committed = committedEventId;
+        Map<Long, Event> events = new TreeMap<>();
+        for (long eventId : eventIds) {
+            if (eventId >= 1 && eventId <= committed) {
+                events.put(eventId, readEvent(eventId));
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getLatestEvents(int limit) throws EventStoreException {
+        return getEventsForAllStreamsBackward(Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreams(long afterEventId, int limit) throws EventStoreException {
+        long committed = committedEventId;
+        List<Event> events = new ArrayList<>();
+        for (long eventId = Math.max(afterEventId, 0) + 1; eventId <= committed
+                && events.size() < limit; eventId++) {
+            events.add(readEvent(eventId));
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreams(long afterEventId, int limit, EventFilter filter)
+            throws EventStoreException {
+        if (filter.isEmpty()) {
+            return getEventsForAllStreams(afterEventId, limit);
+        }
+        long committed = committedEventId;
+        List<Event> events = new ArrayList<>();
+        for (long eventId = Math.max(afterEventId, 0) + 1; eventId <= committed
+                && events.size() < limit; eventId++) {
+            LogSegment segment = getSegment(eventId);
+            if (!filter.getStreamTypes().isEmpty() && !filter.getStreamTypes()
+                    .contains(streams.get(segment.readStreamId(eventId)).getStreamType())) {
+                continue;
+            }
+            if (!filter.getEventTypes().isEmpty()
+                    && !filter.getEventTypes().contains(segment.readType(eventId))) {
+                continue;
+            }
+            events.add(segment.read(eventId, zone));
+        }
+        return events;
+    }
+
+    /**
+     * The events are read from the mapped files as the stream is consumed, <code>fetchSize</code> makes no
+     * difference.
+     */
+    @Override
+    public Stream<Event> streamEventsForAllStreams(long afterEventId, int fetchSize)
+            throws EventStoreException {
+        Preconditions.checkArgument(fetchSize > 0);
+
+        return LongStream.rangeClosed(Math.max(afterEventId, 0) + 1, committedEventId)
+                .mapToObj(this::readEvent);
+    }
+
+    /**
+     * Transaction times never decrease with event ID in this store, so the range is found with binary search.
+     */
+    @Override
+    public Stream<Event> getEventsBetween(OffsetDateTime from, OffsetDateTime to) throws EventStoreException {
+        Instant fromInstant = Preconditions.checkNotNull(from).toInstant();
+        Instant toInstant = Preconditions.checkNotNull(to).toInstant();
+        long committed = committedEventId;
+        long fromEventId = findFirstEventAtOrAfter(fromInstant, committed);
+        long toEventId = Math.max(fromEventId, findFirstEventAtOrAfter(toInstant, committed));
+        return LongStream.range(fromEventId, toEventId).mapToObj(this::readEvent);
+    }
+
+    /**
+     * @return ID of the first event with transaction time not before <code>time</code>, or the ID after
+     *         <code>committed</code> if there is none
+     */
+    private long findFirstEventAtOrAfter(Instant time, long committed) {
+        long low = 1;
+        long high = committed + 1;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getSegment(middle).readTransactionTime(middle).isBefore(time)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public List<Event> getEventsForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException {
+        StreamIndex stream = streams.get(streamId);
+        if (stream == null) {
+            return Collections.emptyList();
+        }
+        long lastSequence = stream.getLastSequence(committedEventId);
+        List<Event> events = new ArrayList<>();
+        for (long sequence = Math.max(afterSequenceId, 0) + 1; sequence <= lastSequence
+                && events.size() < limit; sequence++) {
+            events.add(readEvent(stream.getEventId(sequence)));
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getEventsForStreamBackward(UUID streamId, long beforeSequenceId, int limit)
+            throws EventStoreException {
+        StreamIndex stream = streams.get(streamId);
+        if (stream == null) {
+            return Collections.emptyList();
+        }
+        List<Event> events = new ArrayList<>();
+        for (long sequence = Math.min(beforeSequenceId - 1, stream.getLastSequence(committedEventId));
+                sequence >= 1 && events.size() < limit; sequence--) {
+            events.add(readEvent(stream.getEventId(sequence)));
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreamsBackward(long beforeEventId, int limit)
+            throws EventStoreException {
+        List<Event> events = new ArrayList<>();
+        for (long eventId = Math.min(beforeEventId - 1, committedEventId); eventId >= 1
+                && events.size() < limit; eventId--) {
+            events.add(readEvent(eventId));
+        }
+        return events;
+    }
+
+    @Override
+    public EventPage readStream(UUID streamId, ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException {
+        Preconditions.checkNotNull(streamId);
+        Preconditions.checkNotNull(direction);
+
+        long position = positionToken == null ? PositionTokens.start(direction)
+                : PositionTokens.parseStream(positionToken, streamId);
+        List<Event> events = direction == ReadDirection.FORWARD
+                ? getEventsForStream(streamId, position, limit)
+                : getEventsForStreamBackward(streamId, position, limit);
+        return PositionTokens.toPage(events, direction, position, Event::getSequence,
+                sequence -> PositionTokens.forStream(streamId, sequence));
+    }
+
+    @Override
+    public EventPage readAllStreams(ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException {
+        Preconditions.checkNotNull(direction);
+
+        long position = positionToken == null ? PositionTokens.start(direction)
+                : PositionTokens.parseAllStreams(positionToken);
+        List<Event> events = direction == ReadDirection.FORWARD ? getEventsForAllStreams(position, limit)
+                : getEventsForAllStreamsBackward(position, limit);
+        return PositionTokens.toPage(events, direction, position, Event::getEventId,
+                PositionTokens::forAllStreams);
+    }
+
+    @Override
+    public Map<UUID, List<Event>> getEventsForStreams(Map<UUID, Long> afterSequenceIds, int limitPerStream)
+            throws EventStoreException {
+        Preconditions.checkNotNull(afterSequenceIds);
+        Preconditions.checkArgument(limitPerStream > 0);
+
+        Map<UUID, List<Event>> events = new LinkedHashMap<>();
+        afterSequenceIds.forEach((streamId, afterSequenceId) -> events.put(streamId,
+                getEventsForStream(streamId, afterSequenceId, limitPerStream)));
+        return events;
+    }
+
+    /**
+     * Same as {@link #getEventsForAllStreams(long, int)}: reading the payloads from the mapped files costs
+     * next to nothing, so they are read right away.
+     */
+    @Override
+    public List<Event> getEventHeadersForAllStreams(long afterEventId, int limit) throws EventStoreException {
+        return getEventsForAllStreams(afterEventId, limit);
+    }
+
+    /**
+     * Same as {@link #getEventsForStream(UUID, long, int)}, see
+     * {@link #getEventHeadersForAllStreams(long, int)}.
+     */
+    @Override
+    public List<Event> getEventHeadersForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException {
+        return getEventsForStream(streamId, afterSequenceId, limit);
+    }
+
+    @Override
+    public Optional<Long> getLastEventId() throws EventStoreException {
+        long committed = committedEventId;
+        return committed == 0 ? Optional.empty() : Optional.of(committed);
+    }
+
+    @Override
+    public Optional<Long> getLastSequence(UUID streamId) throws EventStoreException {
+        StreamIndex stream = streams.get(streamId);
+        long lastSequence = stream == null ? 0 : stream.getLastSequence(committedEventId);
+        return lastSequence == 0 ? Optional.empty() : Optional.of(lastSequence);
+    }
+
+    @Override
+    public long getStreamCount(String streamType) throws EventStoreException {
+        long committed = committedEventId;
+        return streams.values().stream()
+                .filter(stream -> stream.getStreamType().equals(streamType) && stream.isCommitted(committed))
+                .count();
+    }
+
+    @Override
+    public EventStream findByStreamId(UUID id) throws EventStoreException {
+        StreamIndex stream = streams.get(id);
+        long committed = committedEventId;
+        if (stream == null || !stream.isCommitted(committed)) {
+            throw new EventStoreException("No stream with ID " + id);
+        }
+        return toEventStream(stream, committed);
+    }
+
+    @Override
+    public Map<UUID, EventStream> findByStreamIds(Collection<UUID> ids) throws EventStoreException {
+        Preconditions.checkNotNull(ids);
+
+        long committed = committedEventId;
+        return ids.stream().distinct().map(streams::get)
+                .filter(stream -> stream != null && stream.isCommitted(committed))
+                .collect(Collectors.toMap(StreamIndex::getStreamId,
+                        stream -> toEventStream(stream, committed), (a, b) -> a, HashMap::new));
+    }
+
+    private EventStream toEventStream(StreamIndex stream, long committed) {
+        long lastSequence = stream.getLastSequence(committed);
+        long lastEventId = stream.getEventId(lastSequence);
+        EventStream result = new EventStream();
+        result.setStreamId(stream.getStreamId());
+        result.setStreamType(stream.getStreamType());
+        result.setLastEventId(lastEventId);
+        result.setLastTransactionTime(
+                OffsetDateTime.ofInstant(getSegment(lastEventId).readTransactionTime(lastEventId), zone));
+        result.setLastSeqNo(lastSequence);
+        return result;
+    }
+
+    // Leases are changed under the write lock, so that they can't change while a save is running.
+
+    @Override
+    public Lease lease(String leaseKey, String ownerKey, long leaseDurationMs) {
+        writeLock.lock();
+        try {
+            return leases.lease(leaseKey, ownerKey, leaseDurationMs);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Lease renewLease(String leaseKey, String ownerKey, long leaseDurationMs) {
+        writeLock.lock();
+        try {
+            return leases.renewLease(leaseKey, ownerKey, leaseDurationMs);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void release(String leaseKey, String ownerKey) {
+        writeLock.lock();
+        try {
+            leases.release(leaseKey, ownerKey);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Event readEvent(long eventId) {
+        return getSegment(eventId).read(eventId, zone);
+    }
+
+    /**
+     * @return the segment written to, <code>null</code> until the first event is saved
+     */
+    private LogSegment getLastSegment() {
+        List<LogSegment> segments = this.segments;
+        return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    }
+
+    private LogSegment getSegment(long eventId) {
+        List<LogSegment> segments = this.segments;
+        int low = 0;
+        int high = segments.size() - 1;
+        // Most reads are near the end of the log
+        if (segments.get(high).getFirstEventId() <= eventId) {
+            return segments.get(high);
+        }
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).getFirstEventId() <= eventId) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    private void checkOpen() {
+        Preconditions.checkState(!closed, "The store is closed");
+    }
+
+    /**
+     * Open the segments and rebuild the indexes.
+     */
+    private void recover() throws EventStoreException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(LogSegment::isSegment)
+                    .sorted(Comparator.comparingLong(LogSegment::parseFirstEventId))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new EventStoreException("Unable to list segments in " + directory, e);
+        }
+        List<LogSegment> segments = new ArrayList<>();
+        long nextEventId = 1;
+        for (int i = 0; i < files.size(); i++) {
+            LogSegment segment = LogSegment.open(files.get(i), i == files.size() - 1);
+            if (segment.getFirstEventId() != nextEventId) {
+                throw new EventStoreException("Segment " + segment.getFile() + " should start with event "
+                        + nextEventId);
+            }
+            index(segment);
+            segments.add(segment);
+            nextEventId += segment.getEventCount();
+        }
+        this.segments = segments;
+        this.writtenEventId = nextEventId - 1;
+        this.committedEventId = writtenEventId;
+        this.syncedEventId = writtenEventId;
+        if (writtenEventId > 0) {
+            lastTransactionTime = OffsetDateTime.ofInstant(
+                    getLastSegment().readTransactionTime(writtenEventId), zone);
+        }
+        log.info("Opened {} with {} events in {} streams", directory, writtenEventId, streams.size());
+    }
+
+    private void index(LogSegment segment) throws EventStoreException {
+        long endEventId = segment.getFirstEventId() + segment.getEventCount();
+        for (long eventId = segment.getFirstEventId(); eventId < endEventId; eventId++) {
+            UUID streamId = segment.readStreamId(eventId);
+            StreamIndex stream = streams.get(streamId);
+            if (stream == null) {
+                String streamType = segment.readStreamType(eventId);
+                if (streamType == null) {
+                    throw new EventStoreException("Event " + eventId + " in " + segment.getFile()
+                            + " belongs to an unknown stream " + streamId);
+                }
+                stream = new StreamIndex(streamId, streamType);
+                streams.put(streamId, stream);
+            }
+            if (segment.readSequence(eventId) != stream.getLastSequence() + 1) {
+                throw new EventStoreException("Event " + eventId + " in " + segment.getFile()
+                        + " is out of sequence of stream " + streamId);
+            }
+            stream.add(eventId);
+        }
+    }
+
+    private FileLock tryLock() throws EventStoreException {
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            closeQuietly(lockChannel);
+            throw new EventStoreException("The store in " + directory + " is already open");
+        }
+        return lock;
+    }
+
+    private void unlock() {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            log.warn("Unable to release the lock of " + directory, e);
+        }
+        closeQuietly(lockChannel);
+    }
+
+    /**
+     * Make the creation of a segment file durable.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform, e.g. Windows
+            log.debug("Unable to sync directory " + directory, e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more to do
+        }
+    }
+}
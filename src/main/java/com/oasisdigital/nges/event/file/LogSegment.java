@@ -0,0 +1,200 @@
+package com.oasisdigital.nges.event.file;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * <p>
+ * One file of the log of {@link FileEventStore}, holding {@link EventRecord}s of consecutive event IDs from
+ * {@link #getFirstEventId()}. The file is named after that ID, allocated up front and mapped to memory as a
+ * whole. Only the last segment is written to, by one thread at a time.
+ * </p>
+ *
+ * <p>
+ * The offsets of the records are kept in memory, so every event can be read directly by ID.
+ * </p>
+ */
+class LogSegment {
+    static final String FILE_SUFFIX = ".log";
+
+    private final Path file;
+    private final long firstEventId;
+    private final MappedByteBuffer buffer;
+    private final LongArray offsets = new LongArray();
+    private int position;
+
+    private LogSegment(Path file, long firstEventId, MappedByteBuffer buffer) {
+        this.file = file;
+        this.firstEventId = firstEventId;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create a new, empty segment. If the file of an empty segment with the same first event ID exists, it
+     * is reused and extended to the capacity.
+     */
+    static LogSegment create(Path directory, long firstEventId, int capacity) throws EventStoreException {
+        Path file = directory.resolve(String.format("%020d", firstEventId) + FILE_SUFFIX);
+        return new LogSegment(file, firstEventId, map(file, capacity));
+    }
+
+    /**
+     * <p>
+     * Open an existing segment, reading the offsets of its records.
+     * </p>
+     *
+     * <p>
+     * Only the last segment may end with records after the last commit or with garbage left by a crash. They
+     * are cleared, so that the segment can be appended to.
+     * </p>
+     */
+    static LogSegment open(Path file, boolean last) throws EventStoreException {
+        long firstEventId = parseFirstEventId(file);
+        LogSegment segment = new LogSegment(file, firstEventId, map(file, -1));
+        segment.recover(last);
+        return segment;
+    }
+
+    static boolean isSegment(Path file) {
+        return file.getFileName().toString().matches("\\d+" + FILE_SUFFIX.replace(".", "\\."));
+    }
+
+    static long parseFirstEventId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length()));
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getFirstEventId() {
+        return firstEventId;
+    }
+
+    int getEventCount() {
+        return offsets.size();
+    }
+
+    int getRemaining() {
+        return buffer.capacity() - position;
+    }
+
+    /**
+     * Append encoded records. The caller makes sure they fit.
+     */
+    void append(ByteBuffer records) {
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.put(records);
+        int offset = position;
+        while (offset < target.position()) {
+            offsets.add(offset);
+            offset += EventRecord.getLength(buffer, offset);
+        }
+        position = target.position();
+    }
+
+    Event read(long eventId, ZoneId zone) {
+        return EventRecord.decode(buffer, offsetOf(eventId), zone);
+    }
+
+    UUID readStreamId(long eventId) {
+        return EventRecord.getStreamId(buffer, offsetOf(eventId));
+    }
+
+    long readSequence(long eventId) {
+        return EventRecord.getSequence(buffer, offsetOf(eventId));
+    }
+
+    String readType(long eventId) {
+        return EventRecord.getType(buffer, offsetOf(eventId));
+    }
+
+    String readStreamType(long eventId) {
+        return EventRecord.getStreamType(buffer, offsetOf(eventId));
+    }
+
+    Instant readTransactionTime(long eventId) {
+        return EventRecord.getTransactionTime(buffer, offsetOf(eventId));
+    }
+
+    /**
+     * Write the changes to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    private int offsetOf(long eventId) {
+        return (int) offsets.get((int) (eventId - firstEventId));
+    }
+
+    private void recover(boolean last) throws EventStoreException {
+        List<Integer> uncommitted = new ArrayList<>();
+        int offset = 0;
+        while (EventRecord.isValid(buffer, offset, firstEventId + offsets.size() + uncommitted.size())) {
+            boolean commit = EventRecord.isCommit(buffer, offset);
+            uncommitted.add(offset);
+            offset += EventRecord.getLength(buffer, offset);
+            if (commit) {
+                uncommitted.forEach(offsets::add);
+                uncommitted.clear();
+                position = offset;
+            }
+        }
+        if (!last && (!uncommitted.isEmpty() || EventRecord.isPresent(buffer, offset))) {
+            throw new EventStoreException("Segment " + file + " is corrupted at offset " + offset);
+        }
+        if (last) {
+            clearFrom(position);
+        }
+    }
+
+    private void clearFrom(int offset) {
+        boolean cleared = false;
+        for (int i = offset; i < buffer.capacity(); i++) {
+            if (i % 8 == 0 && i + 8 <= buffer.capacity()) {
+                if (buffer.getLong(i) != 0) {
+                    buffer.putLong(i, 0);
+                    cleared = true;
+                }
+                i += 7;
+            } else if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+                cleared = true;
+            }
+        }
+        if (cleared) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * @param capacity
+     *            size of the mapping, the file is extended if needed; -1 for the size of the file
+     */
+    private static MappedByteBuffer map(Path file, long capacity) throws EventStoreException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            return channel.map(MapMode.READ_WRITE, 0, capacity < 0 ? channel.size() : capacity);
+        } catch (IOException e) {
+            throw new EventStoreException("Unable to map segment " + file, e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.oasisdigital.nges.event.file;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of longs with a single writer and any number of concurrent readers. Readers may read any
+ * index below a {@link #size()} they have seen.
+ */
+class LongArray {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private volatile long[] values = new long[INITIAL_CAPACITY];
+    private volatile int size;
+
+    /**
+     * Must not be called concurrently.
+     */
+    void add(long value) {
+        long[] values = this.values;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+            values[size] = value;
+            this.values = values;
+        } else {
+            values[size] = value;
+        }
+        size++;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,57 @@
+package com.oasisdigital.nges.event.file;
+
+import java.util.UUID;
+
+/**
+ * The event IDs of one stream of {@link FileEventStore}, by sequence number. Written under the write lock,
+ * read concurrently. Readers pass the ID of the last committed event to skip events that are not committed
+ * yet.
+ */
+class StreamIndex {
+    private final UUID streamId;
+    private final String streamType;
+    private final LongArray eventIds = new LongArray();
+
+    StreamIndex(UUID streamId, String streamType) {
+        this.streamId = streamId;
+        this.streamType = streamType;
+    }
+
+    UUID getStreamId() {
+        return streamId;
+    }
+
+    String getStreamType() {
+        return streamType;
+    }
+
+    /**
+     * @return the sequence number of the last event, including events that are not committed yet
+     */
+    long getLastSequence() {
+        return eventIds.size();
+    }
+
+    /**
+     * @return the sequence number of the last committed event, 0 if there is none
+     */
+    long getLastSequence(long committedEventId) {
+        int size = eventIds.size();
+        while (size > 0 && eventIds.get(size - 1) > committedEventId) {
+            size--;
+        }
+        return size;
+    }
+
+    boolean isCommitted(long committedEventId) {
+        return eventIds.size() > 0 && eventIds.get(0) <= committedEventId;
+    }
+
+    long getEventId(long sequence) {
+        return eventIds.get((int) (sequence - 1));
+    }
+
+    void add(long eventId) {
+        eventIds.add(eventId);
+    }
+}
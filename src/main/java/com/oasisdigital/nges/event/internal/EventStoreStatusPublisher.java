@@ -1,28 +1,253 @@
 package com.oasisdigital.nges.event.internal;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.oasisdigital.nges.cluster.EventUpdate;
+import com.oasisdigital.nges.cluster.EventsAppended;
 import com.oasisdigital.nges.cluster.MessageGroup;
+import com.oasisdigital.nges.event.Event;
 
 /**
+ * <p>
  * Publishes notifications to {@link MessageGroup} about the ID of the most recent event ID. Prevents
  * publishing a number that is before the last published one in order to avoid the stream from going backwards
  * in case of concurrent calls (e.g. from heartbeat and event store).
+ * </p>
+ *
+ * <p>
+ * Callers never wait for each other: every call records the highest ID seen so far, and calls made while a
+ * notification is being sent are coalesced into one notification sent right after it. With
+ * {@link #setPublishInterval(long)}, at most one notification is sent per interval, however many events are
+ * saved.
+ * </p>
+ *
+ * <p>
+ * With {@link #setMaxEventBytes(int)}, the notifications also carry the saved events, as
+ * {@link EventsAppended}, when they are small enough.
+ * </p>
  */
 public class EventStoreStatusPublisher {
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
     private final MessageGroup messageGroup;
 
-    private long lastEventId = 0;
+    private final AtomicLong lastEventId = new AtomicLong();
+    // Set by every call, cleared when a notification is sent
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long lastPublishNanos;
+    // Saved events waiting for the next notification, unless there were too many
+    private final Queue<Event> pendingEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean pendingOverflow = new AtomicBoolean();
+
+    private long publishIntervalMs;
+    private volatile int maxEventBytes;
+    private volatile ScheduledExecutorService executor;
 
     public EventStoreStatusPublisher(MessageGroup messageGroup) {
         this.messageGroup = messageGroup;
     }
 
-    public synchronized void publishLastEventIfChanged(long eventId) {
+    /**
+     * <p>
+     * Send at most one notification per <code>publishIntervalMs</code>, with the last event ID recorded by
+     * then. It is both the limit of the message rate and of the delay of a notification after a save. The
+     * first notification after a quiet period is sent right away.
+     * </p>
+     *
+     * <p>
+     * Must be called before the publisher is used. With 0 (the default), a notification is sent as soon as
+     * possible after every save.
+     * </p>
+     */
+    public synchronized void setPublishInterval(long publishIntervalMs) {
+        Preconditions.checkArgument(publishIntervalMs >= 0);
+        Preconditions.checkState(executor == null, "The publish interval is already set");
+
+        this.publishIntervalMs = publishIntervalMs;
+        this.lastPublishNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(publishIntervalMs);
+        if (publishIntervalMs > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("nges-event-update-%d").build());
+        }
+    }
+
+    public long getPublishInterval() {
+        return publishIntervalMs;
+    }
+
+    /**
+     * <p>
+     * Send the saved events along with the notification, as {@link EventsAppended}, as long as their types
+     * and payloads take up to <code>maxEventBytes</code> (approximately) in total. Receivers like
+     * {@link com.oasisdigital.nges.event.subscription.CatchUpSubscription} then don't need to query the store
+     * for them. When they take more, or when they don't form a complete range of event IDs (e.g. because of
+     * saves on other nodes), a plain {@link EventUpdate} is sent.
+     * </p>
+     *
+     * <p>
+     * Must be called before the publisher is used. With 0 (the default), only plain {@link EventUpdate}s are
+     * sent.
+     * </p>
+     */
+    public void setMaxEventBytes(int maxEventBytes) {
+        Preconditions.checkArgument(maxEventBytes >= 0);
+
+        this.maxEventBytes = maxEventBytes;
+    }
+
+    public int getMaxEventBytes() {
+        return maxEventBytes;
+    }
+
+    /**
+     * Publish the ID of the last of the events just saved, with the events if enabled by
+     * {@link #setMaxEventBytes(int)}.
+     *
+     * @param events
+     *            saved events, with their IDs and transaction times
+     */
+    public void publishSavedEvents(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        long lastEventId = events.stream().mapToLong(Event::getEventId).max().getAsLong();
+        if (maxEventBytes > 0 && !pendingOverflow.get()) {
+            addPending(events);
+        }
+        publishLastEventIfChanged(lastEventId);
+    }
+
+    private void addPending(List<Event> events) {
+        long bytes = events.stream().mapToLong(EventStoreStatusPublisher::estimateBytes).sum();
+        boolean complete = events.stream().allMatch(event -> event.getTransactionTime() != null);
+        if (complete && pendingBytes.addAndGet(bytes) > maxEventBytes) {
+            pendingBytes.addAndGet(-bytes);
+            complete = false;
+        }
+        if (!complete) {
+            // The next notification can't carry all the events, don't collect any more until it's sent
+            pendingOverflow.set(true);
+            return;
+        }
+        events.forEach(event -> pendingEvents.add(new Event(event)));
+    }
+
+    public void publishLastEventIfChanged(long eventId) {
         // It's OK to repeat the message (once could be lost, or a listener might join late), but the clock
         // cannot go backwards.
-        if (lastEventId <= eventId) {
-            messageGroup.publish(new EventUpdate(eventId));
-            lastEventId = eventId;
+        lastEventId.accumulateAndGet(eventId, Math::max);
+        requested.set(true);
+        if (executor == null) {
+            publishRequested();
+        } else if (scheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    /**
+     * Stop sending the notifications that are scheduled.
+     */
+    public synchronized void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void schedule() {
+        try {
+            scheduleTask();
+        } catch (RejectedExecutionException e) {
+            // Destroyed
+        }
+    }
+
+    private void scheduleTask() {
+        executor.schedule(() -> {
+            try {
+                if (getRemainingIntervalNanos() > 0) {
+                    // Scheduled before the last notification was sent
+                    schedule();
+                    return;
+                }
+                scheduled.set(false);
+                publishRequested();
+            } catch (RuntimeException e) {
+                log.error("Unable to publish the last event", e);
+            }
+        }, Math.max(getRemainingIntervalNanos(), 0), TimeUnit.NANOSECONDS);
+    }
+
+    private long getRemainingIntervalNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(publishIntervalMs) - (System.nanoTime() - lastPublishNanos);
+    }
+
+    /**
+     * Send a notification if there has been a call since the last one. One thread at a time sends them, the
+     * others return right away: it's up to the sending thread to check for calls made in the meantime.
+     */
+    private void publishRequested() {
+        while (requested.get() && publishing.compareAndSet(false, true)) {
+            try {
+                if (requested.getAndSet(false)) {
+                    lastPublishNanos = System.nanoTime();
+                    messageGroup.publish(createUpdate());
+                }
+            } finally {
+                publishing.set(false);
+            }
+        }
+    }
+
+    /**
+     * An {@link EventsAppended} with the pending events if they are all the events up to the last event ID,
+     * a plain {@link EventUpdate} otherwise. Called by one thread at a time.
+     */
+    private EventUpdate createUpdate() {
+        boolean overflow = pendingOverflow.getAndSet(false);
+        List<Event> events = new ArrayList<>();
+        Event event;
+        while ((event = pendingEvents.poll()) != null) {
+            events.add(event);
         }
+        pendingBytes.addAndGet(-events.stream().mapToLong(EventStoreStatusPublisher::estimateBytes).sum());
+        long eventId = lastEventId.get();
+        if (overflow || events.isEmpty()) {
+            return new EventUpdate(eventId);
+        }
+        events.sort(Comparator.comparingLong(Event::getEventId));
+        for (int i = 1; i < events.size(); i++) {
+            if (events.get(i).getEventId() != events.get(i - 1).getEventId() + 1) {
+                return new EventUpdate(eventId);
+            }
+        }
+        if (events.get(events.size() - 1).getEventId() != eventId) {
+            // Newer events are saved, but not here yet or not here at all
+            return new EventUpdate(eventId);
+        }
+        return new EventsAppended(events.get(0).getEventId() - 1, events);
+    }
+
+    private static long estimateBytes(Event event) {
+        long chars = (event.getType() == null ? 0 : event.getType().length())
+                + (event.getPayload() == null ? 0 : event.getPayload().length());
+        return 2 * chars;
     }
 }
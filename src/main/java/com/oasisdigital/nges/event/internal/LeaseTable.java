@@ -0,0 +1,67 @@
+package com.oasisdigital.nges.event.internal;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.Lease;
+import com.oasisdigital.nges.event.LeaseManager;
+
+/**
+ * Leases kept in memory, with the same semantics as the <code>lease</code> table, for event stores that don't
+ * use the database. See {@link LeaseManager} for the meaning of the operations.
+ */
+public class LeaseTable {
+    // Stored leases are never modified, callers get copies.
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    public Lease lease(String leaseKey, String ownerKey, long leaseDurationMs) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return copy(leases.compute(leaseKey, (key, lease) -> {
+            if (lease == null || lease.isOwnedBy(ownerKey) || lease.getExpirationDate().isBefore(now)) {
+                return newLease(key, ownerKey, now.plus(leaseDurationMs, ChronoUnit.MILLIS));
+            }
+            return lease;
+        }));
+    }
+
+    public Lease renewLease(String leaseKey, String ownerKey, long leaseDurationMs) {
+        OffsetDateTime now = OffsetDateTime.now();
+        Lease renewed = leases.computeIfPresent(leaseKey, (key, lease) -> lease.isOwnedBy(ownerKey)
+                ? newLease(key, ownerKey, now.plus(leaseDurationMs, ChronoUnit.MILLIS)) : lease);
+        if (renewed == null) {
+            throw new EventStoreException("No lease with key " + leaseKey);
+        }
+        return copy(renewed);
+    }
+
+    public void release(String leaseKey, String ownerKey) {
+        OffsetDateTime now = OffsetDateTime.now();
+        leases.computeIfPresent(leaseKey,
+                (key, lease) -> lease.isOwnedBy(ownerKey) ? newLease(key, ownerKey, now) : lease);
+    }
+
+    /**
+     * @return true if all of the leases are owned by the owner and not expired
+     */
+    public boolean verifyLeases(Collection<String> leaseKeys, String leaseOwnerKey) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return leaseKeys.stream().map(leases::get).allMatch(lease -> lease != null
+                && lease.isOwnedBy(leaseOwnerKey) && lease.getExpirationDate().isAfter(now));
+    }
+
+    private static Lease newLease(String leaseKey, String ownerKey, OffsetDateTime expirationDate) {
+        Lease lease = new Lease();
+        lease.setLeaseKey(leaseKey);
+        lease.setOwnerKey(ownerKey);
+        lease.setExpirationDate(expirationDate);
+        return lease;
+    }
+
+    private static Lease copy(Lease lease) {
+        return newLease(lease.getLeaseKey(), lease.getOwnerKey(), lease.getExpirationDate());
+    }
+}
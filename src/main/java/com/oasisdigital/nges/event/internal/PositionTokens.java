@@ -0,0 +1,88 @@
+package com.oasisdigital.nges.event.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventPage;
+import com.oasisdigital.nges.event.ReadDirection;
+
+/**
+ * Encodes positions in the log as the opaque tokens of {@link EventPage}. A position lies between events:
+ * forward reads return the events after it, backward reads the events before it.
+ */
+public class PositionTokens {
+    private static final String ALL_STREAMS = "all";
+    private static final String STREAM = "stream";
+
+    public static String forAllStreams(long eventId) {
+        return encode(ALL_STREAMS + ":" + eventId);
+    }
+
+    public static String forStream(UUID streamId, long sequence) {
+        return encode(STREAM + ":" + streamId + ":" + sequence);
+    }
+
+    /**
+     * Position to start reading from when there is no token: the beginning of the log for forward reads, the
+     * end for backward reads.
+     */
+    public static long start(ReadDirection direction) {
+        return direction == ReadDirection.FORWARD ? 0 : Long.MAX_VALUE;
+    }
+
+    public static long parseAllStreams(String token) {
+        String[] parts = decode(token);
+        if (parts.length != 2 || !parts[0].equals(ALL_STREAMS)) {
+            throw invalid(token);
+        }
+        return parsePosition(parts[1], token);
+    }
+
+    public static long parseStream(String token, UUID streamId) {
+        String[] parts = decode(token);
+        if (parts.length != 3 || !parts[0].equals(STREAM) || !parts[1].equals(streamId.toString())) {
+            throw invalid(token);
+        }
+        return parsePosition(parts[2], token);
+    }
+
+    /**
+     * Wrap the result of a read from <code>position</code> in a page with tokens.
+     */
+    public static EventPage toPage(List<Event> events, ReadDirection direction, long position,
+            ToLongFunction<Event> positionOf, LongFunction<String> token) {
+        long first = events.isEmpty() ? position : positionOf.applyAsLong(events.get(0));
+        long last = events.isEmpty() ? position : positionOf.applyAsLong(events.get(events.size() - 1));
+        return new EventPage(events, direction, token.apply(first), token.apply(last));
+    }
+
+    private static String encode(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(UTF_8));
+    }
+
+    private static String[] decode(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), UTF_8).split(":");
+        } catch (IllegalArgumentException e) {
+            throw invalid(token);
+        }
+    }
+
+    private static long parsePosition(String position, String token) {
+        try {
+            return Long.parseLong(position);
+        } catch (NumberFormatException e) {
+            throw invalid(token);
+        }
+    }
+
+    private static IllegalArgumentException invalid(String token) {
+        return new IllegalArgumentException("Invalid position token: " + token);
+    }
+}
@@ -0,0 +1,133 @@
+package com.oasisdigital.nges.event.internal;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStore;
+import com.oasisdigital.nges.event.MultiStreamConflict;
+import com.oasisdigital.nges.event.StreamAppend;
+
+/**
+ * Checks of the arguments of {@link EventStore#save(List, String, long)} and
+ * {@link EventStore#saveAll(Map)}, and of the expected sequences of the streams, shared by the
+ * implementations so that they fail the same way.
+ */
+public class SaveValidation {
+    /**
+     * @throws IllegalArgumentException
+     *             if the events are for more than one stream, or the last sequence is invalid
+     */
+    public static void checkSave(List<Event> events, long lastSequence) {
+        if (events.stream().map(Event::getStreamId).distinct().count() > 1) {
+            throw new IllegalArgumentException("All events should correspond to the same stream");
+        }
+        if (!isValid(lastSequence)) {
+            throw new IllegalArgumentException("Invalid lastSequence");
+        }
+    }
+
+    /**
+     * @return the appends with events, in the same order
+     * @throws IllegalArgumentException
+     *             if the events of an append are not all for its stream, or its last sequence is invalid
+     */
+    public static Map<UUID, StreamAppend> checkSaveAll(Map<UUID, StreamAppend> appends) {
+        Map<UUID, StreamAppend> nonEmpty = new LinkedHashMap<>();
+        appends.forEach((streamId, append) -> {
+            if (append.getEvents().stream().anyMatch(e -> !streamId.equals(e.getStreamId()))) {
+                throw new IllegalArgumentException(
+                        "All events should correspond to their stream: " + streamId);
+            }
+            if (!isValid(append.getLastSequence())) {
+                throw new IllegalArgumentException("Invalid lastSequence for stream: " + streamId);
+            }
+            if (!append.getEvents().isEmpty()) {
+                nonEmpty.put(streamId, append);
+            }
+        });
+        return nonEmpty;
+    }
+
+    /**
+     * Find the conflict of a save to one stream.
+     *
+     * @param lastSequence
+     *            expected last sequence, with {@link EventStore#AUTO_GENERATE_SEQUENCE} already resolved
+     * @param currentStreamType
+     *            type of the stream, null if it doesn't exist
+     * @param currentSequence
+     *            last sequence of the stream, 0 if it doesn't exist
+     */
+    public static Optional<String> findConflict(UUID streamId, String streamType, long lastSequence,
+            String currentStreamType, long currentSequence) {
+        // NEW_STREAM or AUTO_GENERATE_SEQUENCE of a new stream
+        if (lastSequence == 0 && currentStreamType != null) {
+            return Optional.of(!currentStreamType.equals(streamType)
+                    ? "Another stream with this key already exists"
+                    : "The stream already exists: " + streamId + " of type " + streamType);
+        }
+        if (lastSequence > 0 && (currentStreamType == null || currentSequence != lastSequence)) {
+            return Optional.of("Uninitialized stream or concurrent modification: " + streamId);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Verify the expected sequences of all appends of {@link EventStore#saveAll(Map)}.
+     *
+     * @param currentStreamTypes
+     *            type of a stream, null if it doesn't exist
+     * @param currentSequences
+     *            last sequence of a stream, 0 if it doesn't exist
+     * @return the last sequence of every stream before the appends, by stream ID
+     * @throws MultiStreamConflict
+     *             with the conflicts of all streams
+     */
+    public static Map<UUID, Long> verifyLastSequences(Map<UUID, StreamAppend> appends,
+            Function<UUID, String> currentStreamTypes, ToLongFunction<UUID> currentSequences) {
+        // All expected sequences are verified up front, so that all conflicts can be reported together.
+        Map<UUID, String> conflicts = new LinkedHashMap<>();
+        Map<UUID, Long> lastSequences = new LinkedHashMap<>();
+        appends.forEach((streamId, append) -> {
+            String streamType = currentStreamTypes.apply(streamId);
+            long currentSequence = currentSequences.applyAsLong(streamId);
+            if (streamType != null && !streamType.equals(append.getStreamType())) {
+                conflicts.put(streamId, "Another stream with this key already exists");
+            } else if (streamType != null && append.getLastSequence() == NEW_STREAM) {
+                conflicts.put(streamId, "The stream already exists");
+            } else if (append.getLastSequence() > 0 && append.getLastSequence() != currentSequence) {
+                conflicts.put(streamId, "Uninitialized stream or concurrent modification, expected sequence "
+                        + append.getLastSequence() + " but found " + currentSequence);
+            } else {
+                lastSequences.put(streamId, currentSequence);
+            }
+        });
+        if (!conflicts.isEmpty()) {
+            throw new MultiStreamConflict(conflicts);
+        }
+        return lastSequences;
+    }
+
+    /**
+     * @return an empty list of IDs for every stream, in the same order
+     */
+    public static Map<UUID, List<Long>> emptyIds(Map<UUID, StreamAppend> appends) {
+        Map<UUID, List<Long>> ids = new LinkedHashMap<>();
+        appends.keySet().forEach(streamId -> ids.put(streamId, Collections.emptyList()));
+        return ids;
+    }
+
+    private static boolean isValid(long lastSequence) {
+        return lastSequence == AUTO_GENERATE_SEQUENCE || lastSequence == NEW_STREAM || lastSequence > 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * Appends events with the <code>nges_append_events</code> function from
+ * <code>V3__append_events_function.sql</code>, doing all the work of an append in one round trip.
+ */
+class AppendFunctionDao {
+    private final JdbcQueries queries;
+
+    public AppendFunctionDao(ConnectionSource connectionSource) {
+        this.queries = new JdbcQueries(connectionSource);
+    }
+
+    /**
+     * Verify leases and append the events, assigning sequence numbers to them.
+     *
+     * @return IDs of the new events, or an empty list if any of the leases is missing
+     */
+    public List<Long> append(List<Event> events, String streamType, long lastSequence,
+            Collection<String> leaseKeys, String leaseOwnerKey) throws EventStoreException {
+        // @formatter:off
+        List<long[]> saved = queries.queryForList(
+                "select * from nges_append_events(?, ?, ?, ?, ?, ?, ?, ?)",
+                rs -> new long[] { rs.getLong("event_id"), rs.getLong("seq_no") },
+                events.get(0).getStreamId(),
+                streamType,
+                lastSequence,
+                new SqlArray("varchar", leaseKeys),
+                leaseOwnerKey,
+                new SqlArray("varchar", events.stream().map(Event::getType).collect(toList())),
+                new SqlArray("uuid", events.stream().map(Event::getCorrelationId).collect(toList())),
+                new SqlArray("json", events.stream().map(Event::getPayload).collect(toList())));
+        // @formatter:on
+        List<Long> ids = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            events.get(i).setSequence(saved.get(i)[1]);
+            ids.add(saved.get(i)[0]);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,299 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.BloomFilter;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * <p>
+ * Reads events from the partitions of <code>event_log</code> archived to segment files (see
+ * {@link EventLogArchiver}), for the parts of reads that fall below the partitions still in the database.
+ * </p>
+ *
+ * <p>
+ * The list of segments comes from <code>event_log_archive</code>. It is refreshed every
+ * {@link #REFRESH_INTERVAL_MS}, right away after archiving in this process, and whenever a read finds that
+ * more has been archived in the meantime (see {@link #refreshIfBehind(long)}), e.g. by another process.
+ * </p>
+ */
+class ArchivedEventLog {
+    static final long REFRESH_INTERVAL_MS = 10_000;
+
+    /**
+     * Upper bound (exclusive) of the archived event IDs in the database, as <code>archived_up_to</code>.
+     */
+    static final String ARCHIVED_UP_TO_QUERY = "select coalesce(max(to_event_id), 0) as archived_up_to "
+            + "from event_log_archive";
+
+    private final JdbcQueries queries;
+    private final Path directory;
+    private final Map<String, BloomFilter<UUID>> streamFilters = new ConcurrentHashMap<>();
+    private volatile List<EventLogSegment> segments = Collections.emptyList();
+    private volatile long refreshedAt;
+
+    ArchivedEventLog(ConnectionSource connectionSource, Path directory) {
+        this.queries = new JdbcQueries(connectionSource);
+        this.directory = directory;
+    }
+
+    /**
+     * @return upper bound (exclusive) of the archived event IDs, 0 if nothing has been archived
+     */
+    long getArchivedUpTo() throws EventStoreException {
+        List<EventLogSegment> segments = getSegments();
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).getToEventId();
+    }
+
+    /**
+     * Like {@link #getArchivedUpTo()}, but read from the database now, refreshing the list of segments if
+     * it's behind.
+     */
+    long getCurrentArchivedUpTo() throws EventStoreException {
+        long archivedUpTo = queries.queryForObject(ARCHIVED_UP_TO_QUERY, Long.class);
+        refreshIfBehind(archivedUpTo);
+        return archivedUpTo;
+    }
+
+    /**
+     * Reload the list of segments if the upper bound of archived event IDs read from the database is beyond
+     * the last segment in the list.
+     */
+    void refreshIfBehind(long archivedUpTo) throws EventStoreException {
+        if (archivedUpTo > getArchivedUpTo()) {
+            refresh();
+        }
+    }
+
+    Optional<Event> getEvent(long eventId) throws EventStoreException {
+        return Optional.ofNullable(getEvents(Collections.singleton(eventId)).get(eventId));
+    }
+
+    /**
+     * @return the archived events with given IDs, by ID
+     */
+    Map<Long, Event> getEvents(Collection<Long> eventIds) throws EventStoreException {
+        TreeSet<Long> remaining = new TreeSet<>(eventIds);
+        Map<Long, Event> result = new TreeMap<>();
+        for (EventLogSegment segment : getSegments()) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+            long last = remaining.last();
+            Long first = remaining.ceiling(segment.getFromEventId());
+            if (first == null || first >= segment.getToEventId()) {
+                continue;
+            }
+            scan(segment, event -> event.getEventId() <= last, event -> {
+                if (remaining.remove(event.getEventId())) {
+                    result.put(event.getEventId(), event);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Get a number of archived events after given event ID, up to (and including) <code>upToEventId</code>.
+     */
+    List<Event> getEventsForAllStreams(long afterEventId, long upToEventId, int limit)
+            throws EventStoreException {
+        List<Event> result = new ArrayList<>();
+        for (EventLogSegment segment : getSegments()) {
+            if (result.size() >= limit || segment.getFromEventId() > upToEventId) {
+                break;
+            }
+            if (segment.getToEventId() <= afterEventId + 1) {
+                continue;
+            }
+            scan(segment, event -> event.getEventId() <= upToEventId && result.size() < limit, event -> {
+                if (event.getEventId() > afterEventId) {
+                    result.add(event);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Stream all archived events after given event ID, up to (and including) <code>upToEventId</code>.
+     * Segments are opened one at a time. The stream must be closed.
+     */
+    Stream<Event> streamEventsForAllStreams(long afterEventId, long upToEventId) throws EventStoreException {
+        return getSegments().stream()
+                .filter(segment -> segment.getToEventId() > afterEventId + 1
+                        && segment.getFromEventId() <= upToEventId)
+                .flatMap(segment -> segment.read().filter(
+                        event -> event.getEventId() > afterEventId && event.getEventId() <= upToEventId));
+    }
+
+    /**
+     * Stream the archived events with transaction time from <code>from</code> (inclusive) to <code>to</code>
+     * (exclusive), up to (and including) <code>upToEventId</code>, sorted by event ID. Segments are opened
+     * one at a time. The stream must be closed.
+     */
+    Stream<Event> streamEventsBetween(Instant from, Instant to, long upToEventId) throws EventStoreException {
+        return getSegments().stream()
+                .filter(segment -> segment.overlaps(from, to) && segment.getFromEventId() <= upToEventId)
+                .flatMap(segment -> segment.read().filter(event -> event.getEventId() <= upToEventId
+                        && !event.getTransactionTime().toInstant().isBefore(from)
+                        && event.getTransactionTime().toInstant().isBefore(to)));
+    }
+
+    /**
+     * Get a number of archived events before given event ID, newest first.
+     */
+    List<Event> getEventsForAllStreamsBackward(long beforeEventId, int limit) throws EventStoreException {
+        List<Event> result = new ArrayList<>();
+        for (EventLogSegment segment : Lists.reverse(getSegments())) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (segment.getFromEventId() >= beforeEventId) {
+                continue;
+            }
+            Deque<Event> last = new ArrayDeque<>();
+            scan(segment, event -> event.getEventId() < beforeEventId,
+                    event -> addBounded(last, event, limit - result.size()));
+            last.descendingIterator().forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Get a number of archived events of the stream after given sequence.
+     */
+    List<Event> getEventsForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException {
+        List<Event> result = new ArrayList<>();
+        for (EventLogSegment segment : getSegments()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!mightContain(segment, streamId)) {
+                continue;
+            }
+            scan(segment, event -> result.size() < limit, event -> {
+                if (event.getStreamId().equals(streamId) && event.getSequence() > afterSequenceId) {
+                    result.add(event);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Get a number of archived events of the stream before given sequence, newest first.
+     */
+    List<Event> getEventsForStreamBackward(UUID streamId, long beforeSequenceId, int limit)
+            throws EventStoreException {
+        List<Event> result = new ArrayList<>();
+        for (EventLogSegment segment : Lists.reverse(getSegments())) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!mightContain(segment, streamId)) {
+                continue;
+            }
+            Deque<Event> last = new ArrayDeque<>();
+            scan(segment, event -> true, event -> {
+                if (event.getStreamId().equals(streamId) && event.getSequence() < beforeSequenceId) {
+                    addBounded(last, event, limit - result.size());
+                }
+            });
+            last.descendingIterator().forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Reload the list of segments, e.g. right after archiving.
+     */
+    void refresh() throws EventStoreException {
+        // @formatter:off
+        segments = queries.queryForList(
+                "select segment, from_event_id, to_event_id, from_transaction_time, to_transaction_time "
+              + "from event_log_archive order by to_event_id",
+                rs -> new EventLogSegment(rs.getString("segment"), rs.getLong("from_event_id"),
+                        rs.getLong("to_event_id"), toInstant(rs.getTimestamp("from_transaction_time")),
+                        toInstant(rs.getTimestamp("to_transaction_time")), getFile(rs.getString("segment"))));
+        // @formatter:on
+        refreshedAt = System.currentTimeMillis();
+    }
+
+    Path getFile(String segment) {
+        return directory.resolve(segment + EventLogSegment.FILE_SUFFIX);
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    private List<EventLogSegment> getSegments() throws EventStoreException {
+        if (System.currentTimeMillis() - refreshedAt > REFRESH_INTERVAL_MS) {
+            refresh();
+        }
+        return segments;
+    }
+
+    private boolean mightContain(EventLogSegment segment, UUID streamId) throws EventStoreException {
+        return streamFilters.computeIfAbsent(segment.getName(), this::loadStreamFilter)
+                .mightContain(streamId);
+    }
+
+    private BloomFilter<UUID> loadStreamFilter(String segment) throws EventStoreException {
+        byte[] bytes = queries.queryForObject("select stream_filter from event_log_archive where segment = ?",
+                byte[].class, segment);
+        try {
+            return BloomFilter.readFrom(new ByteArrayInputStream(bytes), EventLogSegment.STREAM_FUNNEL);
+        } catch (IOException e) {
+            throw new EventStoreException("Invalid stream filter of segment " + segment, e);
+        }
+    }
+
+    /**
+     * Pass the events of the segment to the consumer for as long as they match <code>condition</code>.
+     */
+    private static void scan(EventLogSegment segment, Predicate<Event> condition,
+            Consumer<Event> consumer) throws EventStoreException {
+        try (Stream<Event> events = segment.read()) {
+            Iterator<Event> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                Event event = iterator.next();
+                if (!condition.test(event)) {
+                    break;
+                }
+                consumer.accept(event);
+            }
+        }
+    }
+
+    private static void addBounded(Deque<Event> events, Event event, int limit) {
+        events.addLast(event);
+        if (events.size() > limit) {
+            events.removeFirst();
+        }
+    }
+}
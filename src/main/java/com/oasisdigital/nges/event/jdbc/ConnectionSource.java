@@ -51,6 +51,18 @@ class ConnectionSource {
         });
     }
 
+    /**
+     * Open a new connection, independent from the one bound to the current thread. The caller is responsible
+     * for closing it.
+     */
+    public Connection openConnection() throws EventStoreException {
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            throw SQLExceptionTranslation.translate(e);
+        }
+    }
+
     @FunctionalInterface
     public static interface Callback<ReturnType> {
         public ReturnType execute(Connection connection) throws SQLException, EventStoreException;
@@ -10,4 +10,8 @@ class DateConverter {
         return Optional.ofNullable(timestamp)
                 .map(ts -> OffsetDateTime.ofInstant(ts.toInstant(), ZoneId.systemDefault())).orElse(null);
     }
+
+    public static Timestamp toTimestamp(OffsetDateTime dateTime) {
+        return Optional.ofNullable(dateTime).map(dt -> Timestamp.from(dt.toInstant())).orElse(null);
+    }
 }
@@ -0,0 +1,258 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.BloomFilter;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * <p>
+ * Manages the partitions of <code>event_log</code>, when it is partitioned by event ID with
+ * <code>db_schema/optional/partition_event_log.sql</code>:
+ * </p>
+ *
+ * <ul>
+ * <li>{@link #createPartitions(long, int)} creates partitions for new events ahead of time. Inserts beyond
+ * the last partition fail, so it needs to be called regularly.</li>
+ * <li>{@link #archivePartitionsBefore(long)} exports old partitions to gzip-compressed segment files in the
+ * archive directory, records them in <code>event_log_archive</code>, and detaches and drops them. The
+ * database then only holds the recent, "hot" partitions, which keeps vacuum, index maintenance and backups
+ * fast. Partitions that may still get new events are never archived.</li>
+ * </ul>
+ *
+ * <p>
+ * All reads stay transparent: the parts falling below the hot partitions are read from the segment files
+ * (see {@link JdbcEventStore#enableArchive(Path)}). Those reads scan whole segments, so archive only events
+ * that are rarely read. Every process reading the store needs access to the segment
+ * files, e.g. on a shared volume, and the files must be backed up like the database.
+ * </p>
+ *
+ * <p>
+ * Create instances with {@link JdbcEventStore#createArchiver()}.
+ * </p>
+ */
+public class EventLogArchiver {
+    /**
+     * Expected false positive rate of the filters of stream IDs of segments.
+     */
+    static final double STREAM_FILTER_FPP = 0.01;
+
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final int MIN_EXPECTED_STREAMS = 1000;
+    private static final Pattern BOUNDS = Pattern.compile("FROM \\((.+)\\) TO \\((.+)\\)");
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ConnectionSource connectionSource;
+    private final JdbcQueries queries;
+    private final EventLogDao eventLog;
+    private final ArchivedEventLog archive;
+    private final WriteLocking writeLocking;
+
+    EventLogArchiver(ConnectionSource connectionSource, EventLogDao eventLog, ArchivedEventLog archive,
+            WriteLocking writeLocking) {
+        this.connectionSource = connectionSource;
+        this.queries = new JdbcQueries(connectionSource);
+        this.eventLog = eventLog;
+        this.archive = archive;
+        this.writeLocking = writeLocking;
+    }
+
+    /**
+     * Create partitions of <code>partitionSize</code> event IDs after the last one, until there is room for
+     * at least <code>ahead</code> such partitions of events beyond the current value of the event ID
+     * sequence.
+     *
+     * @return the number of created partitions
+     */
+    synchronized public int createPartitions(long partitionSize, int ahead) throws EventStoreException {
+        Preconditions.checkArgument(partitionSize > 0);
+        Preconditions.checkArgument(ahead > 0);
+
+        long next = getSequenceValue();
+        long target = next + partitionSize * ahead;
+        long upper = getPartitions().stream().mapToLong(Partition::getToEventId).max()
+                .orElseThrow(() -> new EventStoreException("event_log is not partitioned"));
+        Preconditions.checkState(upper != Long.MAX_VALUE, "The last partition is unbounded");
+        int created = 0;
+        while (upper <= target) {
+            String name = "event_log_" + upper;
+            queries.update("create table " + quote(name) + " partition of event_log for values from (" + upper
+                    + ") to (" + (upper + partitionSize) + ")");
+            log.info("Created partition {}", name);
+            upper += partitionSize;
+            created++;
+        }
+        return created;
+    }
+
+    /**
+     * <p>
+     * Archive every partition holding only events with IDs lower than <code>eventId</code>, oldest first.
+     * Partitions with IDs that may still be committed are skipped: those beyond the read watermark or the
+     * last committed event, and the one holding the current value of the event ID sequence.
+     * </p>
+     *
+     * <p>
+     * Each partition is locked against writes, written to a segment file, recorded, detached and dropped in
+     * one transaction. If anything fails, the partition stays in the database and can be archived again.
+     * </p>
+     *
+     * @return the segment files, one per archived partition
+     */
+    synchronized public List<Path> archivePartitionsBefore(long eventId) throws EventStoreException {
+        long upTo = Math.min(eventId, getArchivableUpTo());
+        List<Path> files = new ArrayList<>();
+        for (Partition partition : getPartitions()) {
+            if (partition.getToEventId() <= upTo) {
+                files.add(archive(partition));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return upper bound (exclusive) of the event IDs that can no longer be committed
+     */
+    private long getArchivableUpTo() throws EventStoreException {
+        // Sequence first: IDs allocated after it are beyond it, the others are below the watermark once
+        // committed or rolled back.
+        long sequenceValue = getSequenceValue();
+        long committed = Math.min(writeLocking.getReadWatermark(), eventLog.getLastEventId().orElse(0L));
+        return Math.min(committed + 1, sequenceValue);
+    }
+
+    private long getSequenceValue() throws EventStoreException {
+        return queries.queryForObject("select last_value from event_log_event_id_seq", Long.class);
+    }
+
+    private Path archive(Partition partition) throws EventStoreException {
+        Path file = archive.getFile(partition.getName());
+        log.info("Archiving partition {} to {}", partition.getName(), file);
+        try {
+            Files.createDirectories(file.getParent());
+        } catch (IOException e) {
+            throw new EventStoreException("Unable to create archive directory " + file.getParent(), e);
+        }
+        BloomFilter<UUID> streams = BloomFilter.create(EventLogSegment.STREAM_FUNNEL,
+                Math.max(MIN_EXPECTED_STREAMS, partition.getEstimatedRows()), STREAM_FILTER_FPP);
+        long count = connectionSource.inTransaction(conn -> {
+            // Waits for the writers to the partition still in progress, and keeps new ones out until it's
+            // dropped, so that nothing is committed to it after the export.
+            queries.update("lock table " + quote(partition.getName()) + " in share mode");
+            long exported = queries.queryForIterator(
+                    "select * from " + quote(partition.getName()) + " order by event_id",
+                    eventLog.createRowMapper(), EXPORT_FETCH_SIZE,
+                    events -> EventLogSegment.write(file, events, streams));
+            // The range of transaction times lets reads by time skip the segment
+            // @formatter:off
+            queries.update(
+                    "insert into event_log_archive(segment, from_event_id, to_event_id, event_count, stream_filter, "
+                  + "    from_transaction_time, to_transaction_time) "
+                  + "select ?, ?, ?, ?, ?, min(transaction_time), max(transaction_time) "
+                  + "from " + quote(partition.getName()),
+                    partition.getName(), partition.getFromEventId(), partition.getToEventId(), exported,
+                    toBytes(streams));
+            // @formatter:on
+            queries.update("alter table event_log detach partition " + quote(partition.getName()));
+            queries.update("drop table " + quote(partition.getName()));
+            return exported;
+        });
+        archive.refresh();
+        log.info("Archived {} events from partition {}", count, partition.getName());
+        return file;
+    }
+
+    /**
+     * @return the partitions of <code>event_log</code>, sorted by event ID
+     */
+    private List<Partition> getPartitions() throws EventStoreException {
+        // @formatter:off
+        List<Partition> partitions = queries.queryForList(
+                "select c.relname, c.reltuples, pg_get_expr(c.relpartbound, c.oid) as bounds "
+              + "from pg_inherits i join pg_class c on c.oid = i.inhrelid "
+              + "where i.inhparent = 'event_log'::regclass",
+                rs -> Partition.parse(rs.getString("relname"), rs.getString("bounds"),
+                        rs.getLong("reltuples")));
+        // @formatter:on
+        partitions.sort(Comparator.comparingLong(Partition::getFromEventId));
+        return partitions;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static byte[] toBytes(BloomFilter<UUID> filter) throws EventStoreException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            filter.writeTo(bytes);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new EventStoreException("Unable to serialize stream filter", e);
+        }
+    }
+
+    private static class Partition {
+        private final String name;
+        private final long fromEventId;
+        private final long toEventId;
+        private final long estimatedRows;
+
+        Partition(String name, long fromEventId, long toEventId, long estimatedRows) {
+            this.name = name;
+            this.fromEventId = fromEventId;
+            this.toEventId = toEventId;
+            this.estimatedRows = estimatedRows;
+        }
+
+        /**
+         * @param bounds
+         *            partition bounds as printed by PostgreSQL, e.g.
+         *            <code>FOR VALUES FROM ('1') TO ('1001')</code>
+         */
+        static Partition parse(String name, String bounds, long estimatedRows) throws EventStoreException {
+            Matcher matcher = BOUNDS.matcher(bounds);
+            if (!matcher.find()) {
+                throw new EventStoreException("Unexpected bounds of partition " + name + ": " + bounds);
+            }
+            return new Partition(name, parseBound(matcher.group(1), 0),
+                    parseBound(matcher.group(2), Long.MAX_VALUE), estimatedRows);
+        }
+
+        private static long parseBound(String bound, long unbounded) {
+            String value = bound.replace("'", "").trim();
+            return value.equalsIgnoreCase("MINVALUE") || value.equalsIgnoreCase("MAXVALUE") ? unbounded
+                    : Long.parseLong(value);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getFromEventId() {
+            return fromEventId;
+        }
+
+        long getToEventId() {
+            return toEventId;
+        }
+
+        long getEstimatedRows() {
+            return estimatedRows;
+        }
+    }
+}
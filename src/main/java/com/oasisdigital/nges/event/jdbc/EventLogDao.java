@@ -1,96 +1,693 @@
 package com.oasisdigital.nges.event.jdbc;
 
+import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import com.google.common.collect.Iterators;
 import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventFilter;
 import com.oasisdigital.nges.event.EventStoreException;
 
 class EventLogDao {
+    private static final String HEADER_COLUMNS =
+            "event_id, stream_id, type, correlation_id, seq_no, transaction_time";
+    /**
+     * Number of payloads loaded at once for events read with header-only queries.
+     */
+    static final int PAYLOAD_BATCH_SIZE = 100;
+    /**
+     * Number of archived events whose stream types are looked up at once, in filtered reads.
+     */
+    private static final int ARCHIVE_FILTER_BATCH_SIZE = 1000;
+
     private final JdbcQueries queries;
+    private final PayloadEncoding payloads;
+    private ArchivedEventLog archive;
 
     public EventLogDao(ConnectionSource connectionSource) {
         this.queries = new JdbcQueries(connectionSource);
+        this.payloads = new PayloadEncoding(new PayloadDictionaryDao(connectionSource));
+    }
+
+    public void setPayloadCodec(PayloadCodec codec) {
+        payloads.setCodec(codec);
+    }
+
+    public PayloadCodec getPayloadCodec() {
+        return payloads.getCodec();
+    }
+
+    /**
+     * Read the events below the partitions still in the database from their segment files, see
+     * {@link EventLogArchiver}. All reads then cover archived events too. Header-only reads return archived
+     * events with their payloads, since segments are read whole anyway.
+     */
+    public void setArchive(ArchivedEventLog archive) {
+        this.archive = archive;
     }
 
     public Event getEvent(long eventId) throws EventStoreException {
-        return queries.queryForObject("select * from event_log where event_id = ?", EventLogDao::toEvent,
-                eventId);
+        if (eventId < getArchivedUpTo()) {
+            return getArchivedEvent(eventId);
+        }
+        Optional<Event> event = queries.queryForOptionalObject("select * from event_log where event_id = ?",
+                createRowMapper(), eventId);
+        if (!event.isPresent() && eventId < getCurrentArchivedUpTo()) {
+            // Archived since the list of segments was loaded
+            return getArchivedEvent(eventId);
+        }
+        return event.orElseThrow(() -> new EventStoreException("No event with ID " + eventId));
+    }
+
+    private Event getArchivedEvent(long eventId) throws EventStoreException {
+        return archive.getEvent(eventId)
+                .orElseThrow(() -> new EventStoreException("No archived event with ID " + eventId));
+    }
+
+    /**
+     * @return the events with given IDs that exist, by ID, sorted by ID
+     */
+    public Map<Long, Event> getEvents(Collection<Long> eventIds) throws EventStoreException {
+        Map<Long, Event> result = new LinkedHashMap<>();
+        long archivedUpTo = getArchivedUpTo();
+        if (archivedUpTo > 0) {
+            result.putAll(archive.getEvents(
+                    eventIds.stream().filter(eventId -> eventId < archivedUpTo).collect(toList())));
+        }
+        queryForList("select * from event_log where event_id = any(?) order by event_id",
+                new SqlArray("bigint", eventIds)).forEach(event -> result.put(event.getEventId(), event));
+        if (archive != null && result.size() < eventIds.size()) {
+            // Some may have been archived since the list of segments was loaded
+            long currentArchivedUpTo = getCurrentArchivedUpTo();
+            if (currentArchivedUpTo > archivedUpTo) {
+                result.putAll(archive.getEvents(eventIds.stream().filter(
+                        eventId -> eventId < currentArchivedUpTo && !result.containsKey(eventId))
+                        .collect(toList())));
+                return new TreeMap<>(result);
+            }
+        }
+        return result;
     }
 
     public List<Event> getLatestEvents(int limit) throws EventStoreException {
-        return queryForList("select * from event_log order by event_id desc limit ?", limit);
+        return getEventsForAllStreamsBackward(Long.MAX_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    /**
+     * Get a number of events after given event ID, up to (and including) <code>upToEventId</code>.
+     */
+    public List<Event> getEventsForAllStreams(long afterEventId, long upToEventId, int limit)
+            throws EventStoreException {
+        return getEventsForAllStreams(afterEventId, upToEventId, limit, EventFilter.ALL);
+    }
+
+    /**
+     * Like {@link #getEventsForAllStreams(long, long, int)}, but only events matching the filter.
+     */
+    public List<Event> getEventsForAllStreams(long afterEventId, long upToEventId, int limit,
+            EventFilter filter) throws EventStoreException {
+        List<Object> filterParams = new ArrayList<>();
+        StringBuilder query = new StringBuilder("select e.* from event_log e ");
+        if (!filter.getStreamTypes().isEmpty()) {
+            query.append("join event_stream_list s on s.stream_id = e.stream_id ");
+        }
+        query.append("where e.event_id > ? and e.event_id <= ? ");
+        if (!filter.getEventTypes().isEmpty()) {
+            query.append("and e.type = any(?) ");
+            filterParams.add(new SqlArray("varchar", filter.getEventTypes()));
+        }
+        if (!filter.getStreamTypes().isEmpty()) {
+            query.append("and s.stream_type = any(?) ");
+            filterParams.add(new SqlArray("varchar", filter.getStreamTypes()));
+        }
+        query.append("order by e.event_id limit ?");
+        return readThroughArchive(afterEventId, limit,
+                (after, remaining) -> getArchivedEvents(after, upToEventId, remaining, filter),
+                query.toString(), this::createRowMapper, (after, remaining) -> {
+                    List<Object> params = new ArrayList<>(asList(after, upToEventId));
+                    params.addAll(filterParams);
+                    params.add(remaining);
+                    return params.toArray();
+                });
+    }
+
+    /**
+     * Read a number of events after given event ID, first from the archive and then from the database.
+     *
+     * @param archived
+     *            reads a number of archived events after an event ID
+     * @param query
+     *            query of the events in the database, by <code>event_id</code>, with the parameters from
+     *            <code>params</code> for an event ID to read after and a limit
+     */
+    private List<Event> readThroughArchive(long afterEventId, int limit,
+            BiFunction<Long, Integer, List<Event>> archived, String query, Supplier<RowMapper<Event>> mappers,
+            BiFunction<Long, Integer, Object[]> params) throws EventStoreException {
+        if (archive == null) {
+            return queries.queryForList(query, mappers.get(), params.apply(afterEventId, limit));
+        }
+        while (true) {
+            long archivedUpTo = getArchivedUpTo();
+            List<Event> events = new ArrayList<>();
+            if (afterEventId + 1 < archivedUpTo) {
+                events.addAll(archived.apply(afterEventId, limit));
+                if (events.size() == limit) {
+                    return events;
+                }
+            }
+            long after = Math.max(afterEventId, events.isEmpty() ? archivedUpTo - 1
+                    : Math.max(archivedUpTo - 1, events.get(events.size() - 1).getEventId()));
+            // The boundary of the archive is read along with the events, so that events archived since the
+            // list of segments was loaded are not skipped. There is one row even without events.
+            long[] currentArchivedUpTo = new long[1];
+            RowMapper<Event> mapper = mappers.get();
+            // @formatter:off
+            List<Event> hotEvents = queries.queryForList(
+                    "select a.archived_up_to, e.* "
+                  + "from (" + ArchivedEventLog.ARCHIVED_UP_TO_QUERY + ") a "
+                  + "left join lateral (" + query + ") e on true",
+                    rs -> {
+                        currentArchivedUpTo[0] = rs.getLong("archived_up_to");
+                        return rs.getObject("event_id") == null ? null : mapper.toEvent(rs);
+                    }, params.apply(after, limit - events.size()));
+            // @formatter:on
+            if (currentArchivedUpTo[0] > archivedUpTo) {
+                archive.refreshIfBehind(currentArchivedUpTo[0]);
+                continue;
+            }
+            hotEvents.stream().filter(Objects::nonNull).forEach(events::add);
+            return events;
+        }
+    }
+
+    /**
+     * Get a number of archived events matching the filter after given event ID, up to (and including)
+     * <code>upToEventId</code>.
+     */
+    private List<Event> getArchivedEvents(long afterEventId, long upToEventId, int limit, EventFilter filter)
+            throws EventStoreException {
+        if (filter.isEmpty()) {
+            return archive.getEventsForAllStreams(afterEventId, upToEventId, limit);
+        }
+        List<Event> result = new ArrayList<>();
+        try (Stream<Event> events = archive.streamEventsForAllStreams(afterEventId, upToEventId)) {
+            // Stream types are only in the database, looked up for a batch of events at a time
+            Iterator<List<Event>> batches = Iterators.partition(events
+                    .filter(event -> filter.getEventTypes().isEmpty()
+                            || filter.getEventTypes().contains(event.getType()))
+                    .iterator(), Math.max(1, Math.min(limit, ARCHIVE_FILTER_BATCH_SIZE)));
+            while (result.size() < limit && batches.hasNext()) {
+                List<Event> batch = batches.next();
+                Set<UUID> streams = filter.getStreamTypes().isEmpty() ? null
+                        : getStreamsOfTypes(batch, filter.getStreamTypes());
+                batch.stream().filter(event -> streams == null || streams.contains(event.getStreamId()))
+                        .limit(limit - result.size()).forEach(result::add);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return IDs of the streams of the events, of given types
+     */
+    private Set<UUID> getStreamsOfTypes(List<Event> events, Set<String> streamTypes)
+            throws EventStoreException {
+        return new HashSet<>(queries.queryForList(
+                "select stream_id from event_stream_list where stream_id = any(?) and stream_type = any(?)",
+                rs -> UUID.fromString(rs.getString("stream_id")),
+                new SqlArray("uuid", events.stream().map(Event::getStreamId).collect(toSet())),
+                new SqlArray("varchar", streamTypes)));
+    }
+
+    /**
+     * Stream all events after given event ID, up to (and including) <code>upToEventId</code>, reading them
+     * from a cursor <code>fetchSize</code> rows at a time. The stream must be closed.
+     */
+    public Stream<Event> streamEventsForAllStreams(long afterEventId, long upToEventId, int fetchSize)
+            throws EventStoreException {
+        long archivedUpTo = getCurrentArchivedUpTo();
+        Stream<Event> events = queries.queryForStream(
+                "select * from event_log where event_id > ? and event_id <= ? order by event_id",
+                createRowMapper(), fetchSize, Math.max(afterEventId, archivedUpTo - 1), upToEventId);
+        if (afterEventId + 1 < archivedUpTo) {
+            return Stream.concat(archive.streamEventsForAllStreams(afterEventId, upToEventId), events);
+        }
+        return events;
+    }
+
+    /**
+     * Pass all events after given event ID, up to (and including) <code>upToEventId</code>, to the consumer,
+     * reading them from a cursor <code>fetchSize</code> rows at a time. The consumer gets the same instance
+     * every time, filled with the next event.
+     *
+     * @return the number of events
+     */
+    public long forEachEvent(long afterEventId, long upToEventId, int fetchSize, Consumer<Event> consumer)
+            throws EventStoreException {
+        Event view = new Event();
+        EventRowMapper mapper = createRowMapper();
+        long count = 0;
+        long archivedUpTo = getCurrentArchivedUpTo();
+        if (afterEventId + 1 < archivedUpTo) {
+            try (Stream<Event> events = archive.streamEventsForAllStreams(afterEventId, upToEventId)) {
+                Iterator<Event> iterator = events.iterator();
+                while (iterator.hasNext()) {
+                    consumer.accept(iterator.next());
+                    count++;
+                }
+            }
+        }
+        try (Stream<Event> events = queries.queryForStream(
+                "select * from event_log where event_id > ? and event_id <= ? order by event_id", rs -> {
+                    mapper.fill(rs, view);
+                    return view;
+                }, fetchSize, Math.max(afterEventId, archivedUpTo - 1), upToEventId)) {
+            Iterator<Event> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stream events with transaction time from <code>from</code> (inclusive) to <code>to</code> (exclusive),
+     * up to (and including) <code>upToEventId</code>, sorted by event ID. The stream must be closed.
+     */
+    public Stream<Event> streamEventsBetween(Timestamp from, Timestamp to, long upToEventId, int fetchSize)
+            throws EventStoreException {
+        long archivedUpTo = getCurrentArchivedUpTo();
+        Stream<Event> events = queries.queryForStream("select * from event_log "
+                + "where transaction_time >= ? and transaction_time < ? and event_id >= ? and event_id <= ? "
+                + "order by event_id", createRowMapper(), fetchSize, from, to, archivedUpTo, upToEventId);
+        return withArchivedEventsBetween(from, to, upToEventId, archivedUpTo, events);
+    }
+
+    /**
+     * Like {@link #streamEventsBetween(Timestamp, Timestamp, long, int)}, but the events in the database are
+     * read in ranges of IDs, in parallel, with <code>rangeReader</code>.
+     */
+    public Stream<Event> streamEventsBetween(Timestamp from, Timestamp to, long upToEventId,
+            ParallelRangeReader rangeReader) throws EventStoreException {
+        long archivedUpTo = getCurrentArchivedUpTo();
+        Stream<Event> events = getEventIdRangeBetween(from, to, archivedUpTo, upToEventId)
+                .map(ids -> rangeReader.read(ids[0], ids[1],
+                        (low, high) -> getEventsBetween(from, to, low, high)))
+                .orElse(Stream.empty());
+        return withArchivedEventsBetween(from, to, upToEventId, archivedUpTo, events);
+    }
+
+    private Stream<Event> withArchivedEventsBetween(Timestamp from, Timestamp to, long upToEventId,
+            long archivedUpTo, Stream<Event> events) throws EventStoreException {
+        if (archivedUpTo == 0) {
+            return events;
+        }
+        return Stream.concat(archive.streamEventsBetween(from.toInstant(), to.toInstant(),
+                Math.min(upToEventId, archivedUpTo - 1)), events);
+    }
+
+    /**
+     * Get the events in the database with transaction time from <code>from</code> (inclusive) to
+     * <code>to</code> (exclusive), and IDs between <code>fromEventId</code> and <code>toEventId</code> (both
+     * inclusive).
+     */
+    private List<Event> getEventsBetween(Timestamp from, Timestamp to, long fromEventId, long toEventId)
+            throws EventStoreException {
+        return queryForList("select * from event_log where event_id >= ? and event_id <= ? "
+                + "and transaction_time >= ? and transaction_time < ? order by event_id", fromEventId,
+                toEventId, from, to);
     }
 
-    public List<Event> getEventsForAllStreams(long afterEventId, int limit) throws EventStoreException {
-        return queryForList("select * from event_log where event_id > ? order by event_id limit ?",
-                afterEventId, limit);
+    /**
+     * @return the lowest and the highest ID of the events in the database with transaction time from
+     *         <code>from</code> (inclusive) to <code>to</code> (exclusive), and IDs between
+     *         <code>fromEventId</code> and <code>upToEventId</code> (both inclusive)
+     */
+    private Optional<long[]> getEventIdRangeBetween(Timestamp from, Timestamp to, long fromEventId,
+            long upToEventId) throws EventStoreException {
+        return queries.queryForOptionalObject("select min(event_id), max(event_id) from event_log "
+                + "where transaction_time >= ? and transaction_time < ? and event_id >= ? and event_id <= ?",
+                rs -> rs.getObject(1) == null ? null : new long[] { rs.getLong(1), rs.getLong(2) }, from, to,
+                fromEventId, upToEventId);
     }
 
     public List<Event> getEventsForStream(UUID streamId, long afterSequenceId, int limit)
             throws EventStoreException {
-        return queryForList(
+        return withArchivedEventsForStream(streamId, afterSequenceId, limit, queryForList(
                 "select * from event_log where stream_id = ? and seq_no > ? order by seq_no limit ?",
-                streamId, afterSequenceId, limit);
+                streamId, afterSequenceId, limit));
+    }
+
+    /**
+     * Complete a number of events of a stream after given sequence, read from the database, with the archived
+     * events before them.
+     */
+    List<Event> withArchivedEventsForStream(UUID streamId, long afterSequenceId, int limit,
+            List<Event> events) throws EventStoreException {
+        // Unless the events in the database continue right after the given sequence, the ones in between may
+        // have been archived.
+        if ((!events.isEmpty() && events.get(0).getSequence() == afterSequenceId + 1)
+                || archive == null
+                || getStreamLastSequence(streamId).orElse(0L) <= afterSequenceId
+                || getCurrentArchivedUpTo() == 0) {
+            return events;
+        }
+        return prependArchivedEvents(streamId, afterSequenceId, limit, events);
+    }
+
+    /**
+     * Add the archived events of a stream after given sequence before the events read from the database.
+     */
+    private List<Event> prependArchivedEvents(UUID streamId, long afterSequenceId, int limit,
+            List<Event> events) throws EventStoreException {
+        List<Event> archived = archive.getEventsForStream(streamId, afterSequenceId, limit);
+        // Some may have been archived since they were read from the database
+        long lastArchived = archived.isEmpty() ? afterSequenceId
+                : archived.get(archived.size() - 1).getSequence();
+        events.stream().filter(event -> event.getSequence() > lastArchived).limit(limit - archived.size())
+                .forEach(archived::add);
+        return archived;
+    }
+
+    public List<Event> getEventsForStreamBackward(UUID streamId, long beforeSequenceId, int limit)
+            throws EventStoreException {
+        List<Event> events = queryForList(
+                "select * from event_log where stream_id = ? and seq_no < ? order by seq_no desc limit ?",
+                streamId, beforeSequenceId, limit);
+        long lowestSequence = events.isEmpty() ? beforeSequenceId
+                : events.get(events.size() - 1).getSequence();
+        if (events.size() == limit || lowestSequence <= 1 || archive == null
+                || (events.isEmpty() && !getStreamLastSequence(streamId).isPresent())
+                || getCurrentArchivedUpTo() == 0) {
+            return events;
+        }
+        events.addAll(archive.getEventsForStreamBackward(streamId, lowestSequence, limit - events.size()));
+        return events;
+    }
+
+    /**
+     * Get a number of events before given event ID, and up to (and including) <code>upToEventId</code>,
+     * newest first.
+     */
+    public List<Event> getEventsForAllStreamsBackward(long beforeEventId, long upToEventId, int limit)
+            throws EventStoreException {
+        List<Event> events = queryForList(
+                "select * from event_log where event_id < ? and event_id <= ? order by event_id desc limit ?",
+                beforeEventId, upToEventId, limit);
+        if (events.size() < limit && archive != null && getCurrentArchivedUpTo() > 0) {
+            long archivedUpTo = getArchivedUpTo();
+            long before = Math.min(beforeEventId,
+                    upToEventId < archivedUpTo ? upToEventId + 1 : archivedUpTo);
+            if (!events.isEmpty()) {
+                // Some may have been archived since they were read from the database
+                before = Math.min(before, events.get(events.size() - 1).getEventId());
+            }
+            events.addAll(archive.getEventsForAllStreamsBackward(before, limit - events.size()));
+        }
+        return events;
+    }
+
+    /**
+     * Get up to <code>limitPerStream</code> events of each of the streams, after the given sequence number of
+     * each stream.
+     *
+     * @return events by stream ID, in the order of the given IDs, including empty lists for streams without
+     *         events
+     */
+    public Map<UUID, List<Event>> getEventsForStreams(Map<UUID, Long> afterSequenceIds, int limitPerStream)
+            throws EventStoreException {
+        Map<UUID, List<Event>> result = new LinkedHashMap<>();
+        afterSequenceIds.keySet().forEach(streamId -> result.put(streamId, new ArrayList<>()));
+        if (archive != null) {
+            return getEventsForStreamsWithArchive(afterSequenceIds, limitPerStream, result);
+        }
+        // One index range scan per stream, rather than one scan filtered by all of them.
+        // @formatter:off
+        queryForList(
+                "select e.* from unnest(?, ?) as s(stream_id, after_seq_no) "
+              + "cross join lateral ("
+              + "  select * from event_log where stream_id = s.stream_id and seq_no > s.after_seq_no "
+              + "  order by seq_no limit ?"
+              + ") e "
+              + "order by e.stream_id, e.seq_no",
+                new SqlArray("uuid", afterSequenceIds.keySet()),
+                new SqlArray("bigint", afterSequenceIds.values()),
+                limitPerStream).forEach(event -> result.get(event.getStreamId()).add(event));
+        // @formatter:on
+        return result;
+    }
+
+    private Map<UUID, List<Event>> getEventsForStreamsWithArchive(Map<UUID, Long> afterSequenceIds,
+            int limitPerStream, Map<UUID, List<Event>> result) throws EventStoreException {
+        // Along with the events, find the streams whose events in the database don't start right after the
+        // given sequence (or are all gone), so that only those are looked up in the archive. A row per
+        // stream, even without events.
+        Set<UUID> archivedStreams = new HashSet<>();
+        EventRowMapper mapper = createRowMapper();
+        // @formatter:off
+        queries.query(
+                "select s.requested_stream_id, s.in_archive, e.* "
+              + "from ("
+              + "  select u.stream_id as requested_stream_id, u.after_seq_no, coalesce("
+              + "      (select min(seq_no) from event_log where stream_id = u.stream_id) "
+              + "          > u.after_seq_no + 1, "
+              + "      (select last_seq_no from event_stream_list where stream_id = u.stream_id) "
+              + "          > u.after_seq_no, "
+              + "      false) as in_archive "
+              + "  from unnest(?, ?) as u(stream_id, after_seq_no)"
+              + ") s "
+              + "left join lateral ("
+              + "  select * from event_log "
+              + "  where stream_id = s.requested_stream_id and seq_no > s.after_seq_no "
+              + "  order by seq_no limit ?"
+              + ") e on true "
+              + "order by s.requested_stream_id, e.seq_no",
+                rs -> {
+                    while (rs.next()) {
+                        UUID streamId = UUID.fromString(rs.getString("requested_stream_id"));
+                        if (rs.getBoolean("in_archive")) {
+                            archivedStreams.add(streamId);
+                        }
+                        if (rs.getObject("event_id") != null) {
+                            result.get(streamId).add(mapper.toEvent(rs));
+                        }
+                    }
+                    return null;
+                },
+                new SqlArray("uuid", afterSequenceIds.keySet()),
+                new SqlArray("bigint", afterSequenceIds.values()),
+                limitPerStream);
+        // @formatter:on
+        if (!archivedStreams.isEmpty() && getCurrentArchivedUpTo() > 0) {
+            for (UUID streamId : archivedStreams) {
+                result.put(streamId, prependArchivedEvents(streamId, afterSequenceIds.get(streamId),
+                        limitPerStream, result.get(streamId)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #getEventsForAllStreams(long, long, int)}, but without payloads. They are loaded on demand,
+     * see {@link LazyPayloadEvent}.
+     */
+    public List<Event> getEventHeadersForAllStreams(long afterEventId, long upToEventId, int limit)
+            throws EventStoreException {
+        return readThroughArchive(afterEventId, limit,
+                (after, remaining) -> archive.getEventsForAllStreams(after, upToEventId, remaining),
+                "select " + HEADER_COLUMNS + " from event_log "
+                        + "where event_id > ? and event_id <= ? order by event_id limit ?",
+                this::createHeaderMapper,
+                (after, remaining) -> new Object[] { after, upToEventId, remaining });
+    }
+
+    /**
+     * Like {@link #getEventsForStream(UUID, long, int)}, but without payloads. They are loaded on demand, see
+     * {@link LazyPayloadEvent}.
+     */
+    public List<Event> getEventHeadersForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException {
+        return withArchivedEventsForStream(streamId, afterSequenceId, limit,
+                queries.queryForList("select " + HEADER_COLUMNS + " from event_log "
+                        + "where stream_id = ? and seq_no > ? order by seq_no limit ?", createHeaderMapper(),
+                        streamId, afterSequenceId, limit));
+    }
+
+    /**
+     * @return payloads of the events with given IDs, by event ID
+     */
+    public Map<Long, String> getPayloads(Collection<Long> eventIds) throws EventStoreException {
+        String query = "select event_id, " + PayloadEncoding.COLUMNS
+                + " from event_log where event_id = any(?)";
+        Map<Long, String> result = queries.query(query, rs -> {
+            Map<Long, String> found = new HashMap<>();
+            RowMapper<String> mapper = payloads.createMapper();
+            while (rs.next()) {
+                found.put(rs.getLong("event_id"), mapper.toEvent(rs));
+            }
+            return found;
+        }, new SqlArray("bigint", eventIds));
+        if (archive != null && result.size() < eventIds.size() && getCurrentArchivedUpTo() > 0) {
+            // Archived since their headers were read
+            List<Long> missing = eventIds.stream().filter(eventId -> !result.containsKey(eventId))
+                    .collect(toList());
+            archive.getEvents(missing).forEach((eventId, event) -> result.put(eventId, event.getPayload()));
+        }
+        return result;
+    }
+
+    /**
+     * @return payloads of up to <code>limit</code> most recent events of given type
+     */
+    public List<String> getPayloadSamples(String eventType, int limit) throws EventStoreException {
+        return queries.queryForList("select " + PayloadEncoding.COLUMNS + " from event_log "
+                + "where type = ? order by event_id desc limit ?", payloads.createMapper(), eventType,
+                limit);
+    }
+
+    /**
+     * Train a compression dictionary for the payloads of given type, see {@link PayloadCodec#DEFLATE}.
+     */
+    public void trainPayloadDictionary(String eventType, int sampleSize) throws EventStoreException {
+        payloads.trainDictionary(eventType, getPayloadSamples(eventType, sampleSize));
     }
 
     public List<Long> save(List<Event> events) throws EventStoreException {
+        return save(events, false);
+    }
+
+    /**
+     * Like {@link #save(List)}, but uses event IDs already assigned to the events rather than generating new
+     * ones.
+     */
+    public List<Long> saveWithIds(List<Event> events) throws EventStoreException {
+        return save(events, true);
+    }
+
+    private List<Long> save(List<Event> events, boolean withIds) throws EventStoreException {
         if (events.isEmpty()) {
             return Collections.emptyList();
         }
-        List<Map<String, Object>> keyHolder = new LinkedList<>();
+        List<Map<String, Object>> keyHolder = new ArrayList<>();
         List<Object> values = new ArrayList<>();
         StringBuilder statement = new StringBuilder();
-        statement.append("insert into event_log(stream_id, type, correlation_id, seq_no, payload) values\n");
+        statement.append("insert into event_log(" + (withIds ? "event_id, " : "")
+                + "stream_id, type, correlation_id, seq_no, " + PayloadEncoding.COLUMNS + ") values\n");
         boolean first = true;
         for (Event event : events) {
             if (!first) {
                 statement.append(",\n");
             }
-            statement.append("(?, ?, ?, ?, cast(? as json))");
+            statement.append(withIds ? "(?, " : "(");
+            statement.append("?, ?, ?, ?, cast(? as json), cast(? as jsonb), ?, ?)");
+            if (withIds) {
+                values.add(event.getEventId());
+            }
             values.add(event.getStreamId());
             values.add(event.getType());
             values.add(event.getCorrelationId());
             values.add(event.getSequence());
-            values.add(event.getPayload());
+            values.addAll(asList(payloads.encode(event.getType(), event.getPayload())));
             first = false;
         }
 
-        queries.insert(statement.toString(), keyHolder, values.toArray());
+        queries.insert(statement.toString(), new String[] { "event_id", "transaction_time" }, keyHolder,
+                values.toArray());
+        for (int i = 0; i < events.size(); i++) {
+            Map<String, Object> row = keyHolder.get(i);
+            Timestamp transactionTime = (Timestamp) row.get("transaction_time");
+            events.get(i).setEventId((Long) row.get("event_id"));
+            events.get(i).setTransactionTime(DateConverter.toOffsetDateTime(transactionTime));
+        }
         return keyHolder.stream().map(k -> (Long) k.get("event_id")).collect(toList());
     }
 
+    public boolean exists(long eventId) throws EventStoreException {
+        return queries.queryForObject("select exists(select 1 from event_log where event_id = ?)",
+                Boolean.class, eventId);
+    }
+
     public Optional<Long> getLastEventId() throws EventStoreException {
         return queries.queryForOptionalObject("select max(event_id) from event_log", Long.class);
     }
 
     public Optional<Long> getLastSequence(UUID streamId) throws EventStoreException {
-        return queries.queryForOptionalObject("select max(seq_no) from event_log where stream_id = ?",
+        Optional<Long> lastSequence = queries.queryForOptionalObject(
+                "select max(seq_no) from event_log where stream_id = ?", Long.class, streamId);
+        if (!lastSequence.isPresent() && archive != null && getCurrentArchivedUpTo() > 0) {
+            // All events of the stream may have been archived
+            return getStreamLastSequence(streamId);
+        }
+        return lastSequence;
+    }
+
+    private Optional<Long> getStreamLastSequence(UUID streamId) throws EventStoreException {
+        return queries.queryForOptionalObject("select last_seq_no from event_stream_list where stream_id = ?",
                 Long.class, streamId);
     }
 
+    boolean hasArchive() {
+        return archive != null;
+    }
+
+    /**
+     * @return upper bound (exclusive) of the archived event IDs, 0 if nothing has been archived
+     */
+    private long getArchivedUpTo() throws EventStoreException {
+        return archive == null ? 0 : archive.getArchivedUpTo();
+    }
+
+    /**
+     * Like {@link #getArchivedUpTo()}, but read from the database now.
+     */
+    private long getCurrentArchivedUpTo() throws EventStoreException {
+        return archive == null ? 0 : archive.getCurrentArchivedUpTo();
+    }
+
     private List<Event> queryForList(String query, Object... params) throws EventStoreException {
-        return queries.queryForList(query, EventLogDao::toEvent, params);
-    }
-
-    private static Event toEvent(ResultSet rs) throws SQLException {
-        Event r = new Event();
-        r.setEventId(rs.getLong("event_id"));
-        r.setStreamId(UUID.fromString(rs.getString("stream_id")));
-        r.setType(rs.getString("type"));
-        r.setCorrelationId(UUID.fromString(rs.getString("correlation_id")));
-        r.setSequence(rs.getLong("seq_no"));
-        r.setTransactionTime(DateConverter.toOffsetDateTime(rs.getTimestamp("transaction_time")));
-        r.setPayload(rs.getString("payload"));
-        return r;
+        return queries.queryForList(query, createRowMapper(), params);
+    }
+
+    /**
+     * Mapper for rows of <code>event_log</code> without payloads, for one query.
+     */
+    private RowMapper<Event> createHeaderMapper() {
+        PayloadLoader loader = new PayloadLoader(this, PAYLOAD_BATCH_SIZE);
+        EventRowMapper mapper = new EventRowMapper(null);
+        return rs -> {
+            LazyPayloadEvent event = new LazyPayloadEvent(loader);
+            mapper.fill(rs, event);
+            loader.add(event);
+            return event;
+        };
+    }
+
+    /**
+     * Mapper for rows of <code>event_log</code>, for one query.
+     */
+    EventRowMapper createRowMapper() {
+        return new EventRowMapper(payloads);
     }
 }
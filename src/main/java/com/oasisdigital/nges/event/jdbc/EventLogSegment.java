@@ -0,0 +1,280 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * <p>
+ * A partition of <code>event_log</code> archived to a local file, see {@link EventLogArchiver}. The file is a
+ * gzip-compressed sequence of events sorted by event ID, with payloads stored as JSON regardless of the codec
+ * they were saved with, so it can be read without the database.
+ * </p>
+ *
+ * <p>
+ * Segments can only be read sequentially. Reads skip the segments that can't contain the events they are
+ * looking for, by the range of event IDs and the Bloom filter of stream IDs.
+ * </p>
+ */
+class EventLogSegment {
+    static final String FILE_SUFFIX = ".seg.gz";
+    static final Funnel<UUID> STREAM_FUNNEL = (streamId, into) -> into
+            .putLong(streamId.getMostSignificantBits()).putLong(streamId.getLeastSignificantBits());
+
+    private static final int MAGIC = 0x4e474553; // "NGES"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final long fromEventId;
+    private final long toEventId;
+    private final Instant fromTransactionTime;
+    private final Instant toTransactionTime;
+    private final Path file;
+
+    /**
+     * @param fromEventId
+     *            lowest event ID in the segment (inclusive)
+     * @param toEventId
+     *            upper bound of event IDs in the segment (exclusive)
+     * @param fromTransactionTime
+     *            earliest transaction time of the events in the segment, null if it's empty
+     * @param toTransactionTime
+     *            latest transaction time of the events in the segment (inclusive), null if it's empty
+     */
+    EventLogSegment(String name, long fromEventId, long toEventId, Instant fromTransactionTime,
+            Instant toTransactionTime, Path file) {
+        this.name = name;
+        this.fromEventId = fromEventId;
+        this.toEventId = toEventId;
+        this.fromTransactionTime = fromTransactionTime;
+        this.toTransactionTime = toTransactionTime;
+        this.file = file;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getFromEventId() {
+        return fromEventId;
+    }
+
+    long getToEventId() {
+        return toEventId;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    boolean contains(long eventId) {
+        return eventId >= fromEventId && eventId < toEventId;
+    }
+
+    /**
+     * @return true if the segment may have events with transaction time from <code>from</code> (inclusive)
+     *         to <code>to</code> (exclusive)
+     */
+    boolean overlaps(Instant from, Instant to) {
+        return fromTransactionTime != null && fromTransactionTime.isBefore(to)
+                && !toTransactionTime.isBefore(from);
+    }
+
+    /**
+     * Write the events to a segment file, adding their stream IDs to the filter. The file is complete (and
+     * synced to disk) when this method returns, or doesn't exist.
+     *
+     * @return the number of events written
+     */
+    static long write(Path file, Iterator<Event> events, BloomFilter<UUID> streams)
+            throws EventStoreException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long count = 0;
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(fileOut, BUFFER_SIZE);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzipOut, BUFFER_SIZE));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                while (events.hasNext()) {
+                    Event event = events.next();
+                    out.writeBoolean(true);
+                    writeEvent(out, event);
+                    streams.put(event.getStreamId());
+                    count++;
+                }
+                out.writeBoolean(false);
+                out.flush();
+                gzipOut.finish();
+                fileOut.getFD().sync();
+                out.close();
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new EventStoreException("Unable to write segment " + file, e);
+        } catch (RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Stream all events in the segment, sorted by event ID. The file is opened when the first event is read.
+     * The stream must be closed.
+     */
+    Stream<Event> read() {
+        SegmentIterator iterator = new SegmentIterator();
+        Spliterator<Event> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
+    private static void writeEvent(DataOutputStream out, Event event) throws IOException {
+        out.writeLong(event.getEventId());
+        writeUuid(out, event.getStreamId());
+        writeString(out, event.getType());
+        writeUuid(out, event.getCorrelationId());
+        out.writeLong(event.getSequence());
+        Instant transactionTime = event.getTransactionTime().toInstant();
+        out.writeLong(transactionTime.getEpochSecond());
+        out.writeInt(transactionTime.getNano());
+        writeString(out, event.getPayload());
+    }
+
+    private static Event readEvent(DataInputStream in, ZoneId zone) throws IOException {
+        Event event = new Event();
+        event.setEventId(in.readLong());
+        event.setStreamId(readUuid(in));
+        event.setType(readString(in));
+        event.setCorrelationId(readUuid(in));
+        event.setSequence(in.readLong());
+        event.setTransactionTime(
+                OffsetDateTime.ofInstant(Instant.ofEpochSecond(in.readLong(), in.readInt()), zone));
+        event.setPayload(readString(in));
+        return event;
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Nothing more to do, the original exception matters more
+        }
+    }
+
+    private class SegmentIterator implements Iterator<Event> {
+        private final ZoneId zone = ZoneId.systemDefault();
+        private InputStream fileIn;
+        private DataInputStream in;
+        private Boolean hasNext;
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    if (in == null) {
+                        open();
+                    }
+                    hasNext = in.readBoolean();
+                } catch (EOFException e) {
+                    throw new EventStoreException("Segment " + file + " is truncated", e);
+                } catch (IOException e) {
+                    throw new EventStoreException("Unable to read segment " + file, e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                hasNext = null;
+                return readEvent(in, zone);
+            } catch (IOException e) {
+                throw new EventStoreException("Unable to read segment " + file, e);
+            }
+        }
+
+        void close() {
+            try {
+                if (in != null) {
+                    in.close();
+                } else if (fileIn != null) {
+                    fileIn.close();
+                }
+            } catch (IOException e) {
+                throw new EventStoreException("Unable to close segment " + file, e);
+            }
+        }
+
+        private void open() throws IOException {
+            fileIn = Files.newInputStream(file);
+            in = new DataInputStream(
+                    new BufferedInputStream(new GZIPInputStream(fileIn, BUFFER_SIZE), BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new EventStoreException("Not a segment file: " + file);
+            }
+        }
+    }
+}
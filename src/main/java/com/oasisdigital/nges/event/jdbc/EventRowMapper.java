@@ -0,0 +1,130 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oasisdigital.nges.event.Event;
+
+/**
+ * <p>
+ * Maps rows of <code>event_log</code> to events with as little allocation per row as possible, for reads of
+ * many events:
+ * </p>
+ *
+ * <ul>
+ * <li>Column indexes are resolved once per result set rather than looked up by name for every row.</li>
+ * <li>UUIDs are taken from the driver as they are, without a round trip through a string.</li>
+ * <li>Event types are interned, so that the many events of one type share one string.</li>
+ * <li>Transaction time is only converted when it differs from the previous row. Events saved in one
+ * transaction have the same transaction time, so they share one instance.</li>
+ * </ul>
+ *
+ * <p>
+ * Not thread-safe: create one instance per query.
+ * </p>
+ */
+class EventRowMapper implements RowMapper<Event> {
+    private static final int MAX_INTERNED_TYPES = 10_000;
+    private static final Map<String, String> TYPES = new ConcurrentHashMap<>();
+
+    private final PayloadEncoding payloads;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private ResultSet resolvedFor;
+    private int eventIdColumn;
+    private int streamIdColumn;
+    private int typeColumn;
+    private int correlationIdColumn;
+    private int seqNoColumn;
+    private int transactionTimeColumn;
+    private PayloadEncoding.Columns payloadColumns;
+
+    private Timestamp lastTimestamp;
+    private OffsetDateTime lastTransactionTime;
+
+    /**
+     * @param payloads
+     *            decoder for the payload columns, or <code>null</code> to map event headers only
+     */
+    EventRowMapper(PayloadEncoding payloads) {
+        this.payloads = payloads;
+    }
+
+    @Override
+    public Event toEvent(ResultSet rs) throws SQLException {
+        Event event = new Event();
+        fill(rs, event);
+        return event;
+    }
+
+    /**
+     * Set the fields of an existing event from the current row.
+     */
+    void fill(ResultSet rs, Event event) throws SQLException {
+        if (rs != resolvedFor) {
+            resolve(rs);
+        }
+        event.setEventId(rs.getLong(eventIdColumn));
+        event.setStreamId(getUuid(rs, streamIdColumn));
+        event.setType(intern(rs.getString(typeColumn)));
+        event.setCorrelationId(getUuid(rs, correlationIdColumn));
+        event.setSequence(rs.getLong(seqNoColumn));
+        event.setTransactionTime(getTransactionTime(rs));
+        if (payloads != null) {
+            event.setPayload(payloads.decode(rs, payloadColumns));
+        }
+    }
+
+    private void resolve(ResultSet rs) throws SQLException {
+        eventIdColumn = rs.findColumn("event_id");
+        streamIdColumn = rs.findColumn("stream_id");
+        typeColumn = rs.findColumn("type");
+        correlationIdColumn = rs.findColumn("correlation_id");
+        seqNoColumn = rs.findColumn("seq_no");
+        transactionTimeColumn = rs.findColumn("transaction_time");
+        payloadColumns = payloads == null ? null : PayloadEncoding.Columns.resolve(rs);
+        resolvedFor = rs;
+    }
+
+    private OffsetDateTime getTransactionTime(ResultSet rs) throws SQLException {
+        Timestamp timestamp = rs.getTimestamp(transactionTimeColumn);
+        if (timestamp == null) {
+            return null;
+        }
+        if (!timestamp.equals(lastTimestamp)) {
+            lastTimestamp = timestamp;
+            lastTransactionTime = OffsetDateTime.ofInstant(timestamp.toInstant(), zone);
+        }
+        return lastTransactionTime;
+    }
+
+    private static UUID getUuid(ResultSet rs, int column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value == null || value instanceof UUID) {
+            return (UUID) value;
+        }
+        return UUID.fromString(value.toString());
+    }
+
+    private static String intern(String type) {
+        if (type == null) {
+            return null;
+        }
+        String interned = TYPES.get(type);
+        if (interned != null) {
+            return interned;
+        }
+        // Don't let an unusual number of types fill the memory.
+        if (TYPES.size() >= MAX_INTERNED_TYPES) {
+            return type;
+        }
+        interned = TYPES.putIfAbsent(type, type);
+        return interned == null ? type : interned;
+    }
+}
@@ -0,0 +1,287 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import com.google.common.base.Preconditions;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreConflict;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+/**
+ * <p>
+ * Bulk import of events, e.g. for migration of historical data from legacy systems. Much faster than
+ * saving through the {@link JdbcEventStore} API: events are streamed to the database with binary
+ * <code>COPY</code> into a staging table, then moved to <code>event_log</code> and
+ * <code>event_stream_list</code> with set-based SQL.
+ * </p>
+ *
+ * <p>
+ * Events are assigned sequence numbers within their streams in the order of input, continuing after the last
+ * event in the stream if it already exists. The transaction time of the events is preserved if set, or
+ * defaults to the time of import. Every batch is imported in its own transaction, locking out all other
+ * writers for its duration.
+ * </p>
+ *
+ * <p>
+ * Create instances with {@link JdbcEventStore#createImporter()}.
+ * </p>
+ */
+public class EventStoreImporter {
+    public static final int DEFAULT_BATCH_SIZE = 100_000;
+
+    private static final byte[] COPY_SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final Instant POSTGRES_EPOCH = Instant.parse("2000-01-01T00:00:00Z");
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ConnectionSource connectionSource;
+    private final JdbcQueries queries;
+    private final WriteLocking writeLocking;
+    private final EventStoreStatusPublisher statusPublisher;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private LongConsumer progressListener = imported -> {
+    };
+
+    EventStoreImporter(ConnectionSource connectionSource, WriteLocking writeLocking,
+            EventStoreStatusPublisher statusPublisher) {
+        this.connectionSource = connectionSource;
+        this.queries = new JdbcQueries(connectionSource);
+        this.writeLocking = writeLocking;
+        this.statusPublisher = statusPublisher;
+    }
+
+    /**
+     * Set the number of events imported in one transaction.
+     */
+    public void setBatchSize(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0);
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the listener notified with the total number of imported events after every committed batch.
+     */
+    public void setProgressListener(LongConsumer progressListener) {
+        this.progressListener = Preconditions.checkNotNull(progressListener);
+    }
+
+    /**
+     * Import the events.
+     *
+     * @param events
+     *            events to import, in order. Only stream ID, type, correlation ID, payload and (optionally)
+     *            transaction time are used.
+     * @param streamType
+     *            provides the stream type for each event. It must be the same for all events in a stream, and
+     *            match the type of the stream if it already exists.
+     * @return the number of imported events
+     * @throws EventStoreConflict
+     *             if stream types do not match. The batches committed before remain imported.
+     */
+    public long importEvents(Iterator<Event> events, Function<Event, String> streamType)
+            throws EventStoreException {
+        long imported = 0;
+        while (events.hasNext()) {
+            long batch = connectionSource.inTransaction(conn -> importBatch(conn, events, streamType));
+            imported += batch;
+            progressListener.accept(imported);
+        }
+        return imported;
+    }
+
+    private long importBatch(Connection conn, Iterator<Event> events, Function<Event, String> streamType)
+            throws SQLException, EventStoreException {
+        writeLocking.lockForImport();
+        queries.update("create temp table nges_import ("
+                + "ord bigint, stream_id uuid, stream_type varchar, type varchar, correlation_id uuid, "
+                + "transaction_time timestamptz, payload json) on commit drop");
+
+        long count = copy(conn, events, streamType);
+        verifyStreamTypes();
+        moveToEventLog().ifPresent(statusPublisher::publishLastEventIfChanged);
+        return count;
+    }
+
+    private long copy(Connection conn, Iterator<Event> events, Function<Event, String> streamType)
+            throws SQLException {
+        CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn("copy nges_import "
+                + "(ord, stream_id, stream_type, type, correlation_id, transaction_time, payload) "
+                + "from stdin (format binary)");
+        try {
+            DataOutputStream out = new DataOutputStream(new CopyInOutputStream(copyIn));
+            out.write(COPY_SIGNATURE);
+            out.writeInt(0); // Flags
+            out.writeInt(0); // Header extension length
+            long ord = 0;
+            while (ord < batchSize && events.hasNext()) {
+                Event event = events.next();
+                out.writeShort(7);
+                writeLong(out, ord++);
+                writeUuid(out, event.getStreamId());
+                writeString(out, streamType.apply(event));
+                writeString(out, event.getType());
+                writeUuid(out, event.getCorrelationId());
+                writeTimestamp(out, event.getTransactionTime());
+                writeString(out, event.getPayload());
+            }
+            out.writeShort(-1);
+            out.flush();
+            copyIn.endCopy();
+            return ord;
+        } catch (IOException e) {
+            throw new SQLException("Unable to write COPY data", e);
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void verifyStreamTypes() throws EventStoreException {
+        // @formatter:off
+        Optional<UUID> conflict = queries.queryForOptionalObject(
+                "select stream_id from ("
+              + "  select i.stream_id from nges_import i join event_stream_list s on s.stream_id = i.stream_id "
+              + "  where s.stream_type <> i.stream_type "
+              + "  union all "
+              + "  select stream_id from nges_import group by stream_id having count(distinct stream_type) > 1"
+              + ") conflicts limit 1",
+                UUID.class);
+        // @formatter:on
+        if (conflict.isPresent()) {
+            throw new EventStoreConflict("Another stream with this key already exists: " + conflict.get());
+        }
+    }
+
+    /**
+     * @return ID of the last imported event
+     */
+    private Optional<Long> moveToEventLog() throws EventStoreException {
+        // @formatter:off
+        return queries.queryForOptionalObject(
+                "with inserted as ("
+              + "  insert into event_log(stream_id, type, correlation_id, seq_no, transaction_time, payload) "
+              + "  select i.stream_id, i.type, i.correlation_id, "
+              + "         coalesce(s.last_seq_no, 0) + row_number() over (partition by i.stream_id order by i.ord), "
+              + "         coalesce(i.transaction_time, current_timestamp), i.payload "
+              + "  from nges_import i left join event_stream_list s on s.stream_id = i.stream_id "
+              + "  order by i.ord "
+              + "  returning event_id, stream_id, seq_no, transaction_time "
+              + "), streams as ("
+              + "  select stream_id, max(event_id) as last_event_id, max(seq_no) as last_seq_no, "
+              + "         max(transaction_time) as last_transaction_time "
+              + "  from inserted group by stream_id "
+              + "), updated as ("
+              + "  update event_stream_list s set "
+              + "    last_event_id = a.last_event_id, "
+              + "    last_transaction_time = a.last_transaction_time, "
+              + "    last_seq_no = a.last_seq_no "
+              + "  from streams a where s.stream_id = a.stream_id "
+              + "  returning s.stream_id "
+              + "), created as ("
+              + "  insert into event_stream_list(stream_id, stream_type, last_event_id, last_transaction_time, last_seq_no) "
+              + "  select a.stream_id, (select min(i.stream_type) from nges_import i where i.stream_id = a.stream_id), "
+              + "         a.last_event_id, a.last_transaction_time, a.last_seq_no "
+              + "  from streams a where not exists (select 1 from updated u where u.stream_id = a.stream_id) "
+              + "  returning stream_id "
+              + ") "
+              + "select max(last_event_id) from streams",
+                Long.class);
+        // @formatter:on
+    }
+
+    private static void writeLong(DataOutputStream out, long value) throws IOException {
+        out.writeInt(8);
+        out.writeLong(value);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(16);
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeTimestamp(DataOutputStream out, OffsetDateTime value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            // Microseconds since 2000-01-01 UTC (integer datetimes)
+            writeLong(out, ChronoUnit.MICROS.between(POSTGRES_EPOCH, value.toInstant()));
+        }
+    }
+
+    /**
+     * Buffers the data and forwards it to the <code>COPY</code> in large chunks.
+     */
+    private static class CopyInOutputStream extends OutputStream {
+        private final CopyIn copyIn;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE);
+
+        CopyInOutputStream(CopyIn copyIn) {
+            this.copyIn = copyIn;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer.write(b);
+            flushIfFull();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            buffer.write(b, off, len);
+            flushIfFull();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer.size() > 0) {
+                try {
+                    copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+                buffer.reset();
+            }
+        }
+
+        private void flushIfFull() throws IOException {
+            if (buffer.size() >= COPY_BUFFER_SIZE) {
+                flush();
+            }
+        }
+    }
+}
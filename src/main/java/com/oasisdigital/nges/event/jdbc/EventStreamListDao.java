@@ -2,7 +2,11 @@ package com.oasisdigital.nges.event.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import com.oasisdigital.nges.event.EventStoreConflict;
 import com.oasisdigital.nges.event.EventStream;
@@ -50,6 +54,15 @@ class EventStreamListDao {
                 EventStreamListDao::toEventStream, id);
     }
 
+    /**
+     * @return information about the streams that exist, by stream ID
+     */
+    public Map<UUID, EventStream> findByStreamIds(Collection<UUID> ids) throws EventStoreException {
+        return queries.queryForList("select * from event_stream_list where stream_id = any(?)",
+                EventStreamListDao::toEventStream, new SqlArray("uuid", ids)).stream()
+                .collect(Collectors.toMap(EventStream::getStreamId, Function.identity()));
+    }
+
     public void initStream(UUID streamId, String streamType) throws EventStoreException {
         boolean streamCreated = initStreamIfNeeded(streamId, streamType);
         if (!streamCreated) {
@@ -0,0 +1,54 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * Serializes all writes on a single, cluster-wide advisory lock. Events are committed strictly in the order
+ * of their IDs, so readers never need to hold back.
+ */
+class GlobalWriteLocking implements WriteLocking {
+    private static final int LOCK_KEY = 0xCAFEBABE;
+
+    private final JdbcQueries queries;
+    private final EventLogDao eventLog;
+
+    public GlobalWriteLocking(ConnectionSource connectionSource, EventLogDao eventLog) {
+        this.queries = new JdbcQueries(connectionSource);
+        this.eventLog = eventLog;
+    }
+
+    @Override
+    public void lockForAppend(Collection<UUID> streamIds, Collection<String> leaseKeys)
+            throws EventStoreException {
+        lock();
+    }
+
+    @Override
+    public void lockForLease(String leaseKey) throws EventStoreException {
+        lock();
+    }
+
+    @Override
+    public void lockForImport() throws EventStoreException {
+        lock();
+    }
+
+    @Override
+    public List<Long> insertEvents(List<Event> events) throws EventStoreException {
+        return eventLog.save(events);
+    }
+
+    @Override
+    public long getReadWatermark() {
+        return Long.MAX_VALUE;
+    }
+
+    private void lock() {
+        queries.query("select pg_advisory_xact_lock(?)", rs -> null, LOCK_KEY);
+    }
+}
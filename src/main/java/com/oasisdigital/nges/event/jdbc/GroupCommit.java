@@ -0,0 +1,147 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * <p>
+ * Gathers appends submitted concurrently from many threads into one transaction, so that they share a single
+ * acquisition of the write lock and a single commit.
+ * </p>
+ *
+ * <p>
+ * The first thread to arrive becomes the leader and executes everything that is queued at that moment; the
+ * threads arriving while it's busy wait for the next batch. Every append runs within its own savepoint, so a
+ * conflict only rolls back the append that caused it and is reported to its caller alone.
+ * </p>
+ */
+class GroupCommit {
+    private final ConnectionSource connectionSource;
+    private final BiConsumer<Collection<UUID>, Collection<String>> lock;
+    private final int maxBatchSize;
+
+    private final Queue<PendingAppend> queue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock leader = new ReentrantLock();
+
+    /**
+     * @param lock
+     *            locks for appending to given streams while verifying given leases, called once for the whole
+     *            batch
+     */
+    public GroupCommit(ConnectionSource connectionSource,
+            BiConsumer<Collection<UUID>, Collection<String>> lock, int maxBatchSize) {
+        this.connectionSource = connectionSource;
+        this.lock = lock;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Execute the append in the next group transaction and wait for it to commit.
+     *
+     * @param streamIds
+     *            streams to be appended
+     * @param leaseKeys
+     *            leases to be verified
+     * @param append
+     *            the work to do once the write lock is held; executed on whichever thread leads the batch
+     * @return the result of <code>append</code>, available only after the transaction has been committed
+     */
+    public List<Long> append(Collection<UUID> streamIds, Collection<String> leaseKeys,
+            ConnectionSource.Callback<List<Long>> append) throws EventStoreException {
+        PendingAppend pending = new PendingAppend(streamIds, leaseKeys, append);
+        queue.add(pending);
+        while (!pending.done) {
+            leader.lock();
+            try {
+                if (!pending.done) {
+                    commitBatch(drain());
+                }
+            } finally {
+                leader.unlock();
+            }
+        }
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+        return pending.result;
+    }
+
+    private List<PendingAppend> drain() {
+        List<PendingAppend> batch = new ArrayList<>();
+        PendingAppend next;
+        while (batch.size() < maxBatchSize && (next = queue.poll()) != null) {
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void commitBatch(List<PendingAppend> batch) {
+        try {
+            connectionSource.inTransaction(conn -> {
+                Set<UUID> streamIds = new LinkedHashSet<>();
+                Set<String> leaseKeys = new LinkedHashSet<>();
+                for (PendingAppend pending : batch) {
+                    streamIds.addAll(pending.streamIds);
+                    leaseKeys.addAll(pending.leaseKeys);
+                }
+                lock.accept(streamIds, leaseKeys);
+                for (PendingAppend pending : batch) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        pending.result = pending.append.execute(conn);
+                        conn.releaseSavepoint(savepoint);
+                    } catch (RuntimeException | SQLException e) {
+                        conn.rollback(savepoint);
+                        pending.failure = translate(e);
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // The whole transaction failed (e.g. on commit), so none of the appends has been saved.
+            batch.stream().filter(pending -> pending.failure == null).forEach(pending -> {
+                pending.result = null;
+                pending.failure = e;
+            });
+        } finally {
+            batch.forEach(pending -> pending.done = true);
+        }
+    }
+
+    private static RuntimeException translate(Exception e) {
+        if (e instanceof SQLException) {
+            return SQLExceptionTranslation.translate((SQLException) e);
+        } else {
+            return (RuntimeException) e;
+        }
+    }
+
+    private static class PendingAppend {
+        private final Collection<UUID> streamIds;
+        private final Collection<String> leaseKeys;
+        private final ConnectionSource.Callback<List<Long>> append;
+
+        private List<Long> result;
+        private RuntimeException failure;
+        private volatile boolean done;
+
+        PendingAppend(Collection<UUID> streamIds, Collection<String> leaseKeys,
+                ConnectionSource.Callback<List<Long>> append) {
+            this.streamIds = streamIds;
+            this.leaseKeys = leaseKeys;
+            this.append = append;
+        }
+    }
+}
@@ -1,36 +1,382 @@
 package com.oasisdigital.nges.event.jdbc;
 
-import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.stream.Collectors.toList;
 
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
+import com.google.common.base.Preconditions;
 import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventFilter;
+import com.oasisdigital.nges.event.EventPage;
 import com.oasisdigital.nges.event.EventStore;
 import com.oasisdigital.nges.event.EventStoreConflict;
 import com.oasisdigital.nges.event.EventStoreException;
 import com.oasisdigital.nges.event.EventStream;
 import com.oasisdigital.nges.event.Lease;
+import com.oasisdigital.nges.event.ReadDirection;
+import com.oasisdigital.nges.event.StreamAppend;
 import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+import com.oasisdigital.nges.event.internal.PositionTokens;
+import com.oasisdigital.nges.event.internal.SaveValidation;
+import com.oasisdigital.nges.event.subscription.EventHandler;
+
+public class JdbcEventStore implements EventStore, Closeable {
+    private static final int RANGE_FETCH_SIZE = 1000;
+    private static final long REPLICA_POLL_INTERVAL_MS = 10;
 
-public class JdbcEventStore implements EventStore {
     private final ConnectionSource connectionSource;
     private final EventLogDao eventLog;
     private final EventStreamListDao streamList;
     private final LeaseDao lease;
     private final EventStoreStatusPublisher statusPublisher;
 
+    private WriteLocking writeLocking;
+    private GroupCommit groupCommit;
+    private AppendFunctionDao appendFunction;
+    private TailCache tailCache;
+    private ParallelRangeReader rangeReader;
+    private ConnectionSource replicaConnectionSource;
+    private EventLogDao replicaEventLog;
+    private EventStreamListDao replicaStreamList;
+    private ArchivedEventLog archive;
+    private long replicaMaxWaitMs;
+    private final ThreadLocal<Boolean> readFromPrimary = ThreadLocal.withInitial(() -> false);
+    private final AtomicLong replicaFallbackCount = new AtomicLong();
+
     public JdbcEventStore(DataSource dataSource, EventStoreStatusPublisher statusPublisher) {
         this.connectionSource = new ConnectionSource(dataSource);
         this.eventLog = new EventLogDao(connectionSource);
         this.streamList = new EventStreamListDao(connectionSource);
         this.lease = new LeaseDao(connectionSource);
         this.statusPublisher = statusPublisher;
+        this.writeLocking = new GlobalWriteLocking(connectionSource, eventLog);
+    }
+
+    /**
+     * <p>
+     * Lock writes per stream instead of using one lock for the whole store. Streams (and lease keys) are
+     * hashed into the given number of advisory lock stripes, so that appends to streams in different stripes
+     * can run in parallel.
+     * </p>
+     *
+     * <p>
+     * Since events can then be committed out of the order of their IDs, {@link #getEventsForAllStreams(long,
+     * int)} only returns events below a commit-order watermark: it never returns an event while another event
+     * with a lower ID may still be committed.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used, and all processes writing to the database must use the same
+     * locking mode. Requires the functions from <code>V2__striped_locking.sql</code>. Not available with a
+     * read replica.
+     * </p>
+     *
+     * @param stripes
+     *            number of lock stripes
+     */
+    public void enableStripedLocking(int stripes) {
+        Preconditions.checkArgument(stripes > 0);
+        Preconditions.checkState(appendFunction == null, "Server-side append only supports global locking");
+        Preconditions.checkState(replicaEventLog == null, "Read replica only supports global locking");
+
+        this.writeLocking = new StripedWriteLocking(connectionSource, eventLog, stripes);
+    }
+
+    /**
+     * <p>
+     * Append events with a database function, doing the locking, lease verification, stream bookkeeping and
+     * insert in a single round trip instead of several. Conflicts are reported the same way, with
+     * {@link EventStoreConflict}.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. Requires the function from
+     * <code>V3__append_events_function.sql</code>. Not available with striped locking.
+     * </p>
+     */
+    public void enableServerSideAppend() {
+        Preconditions.checkState(writeLocking instanceof GlobalWriteLocking,
+                "Server-side append only supports global locking");
+        Preconditions.checkState(eventLog.getPayloadCodec() == PayloadCodec.JSON,
+                "Server-side append only supports the JSON payload codec");
+        Preconditions.checkState(archive == null, "Server-side append is not available with archive");
+
+        this.appendFunction = new AppendFunctionDao(connectionSource);
+    }
+
+    /**
+     * <p>
+     * Enable group commit. Calls to {@link #save(List, String, long, Collection, String)} made
+     * concurrently from many threads are then gathered into a single transaction, sharing one acquisition of
+     * the write lock and one commit. Every call still gets its own result: its own IDs, or its own
+     * {@link EventStoreConflict} without affecting the other calls in the group.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used.
+     * </p>
+     *
+     * @param maxBatchSize
+     *            maximum number of calls to save in one transaction
+     */
+    public void enableGroupCommit(int maxBatchSize) {
+        Preconditions.checkArgument(maxBatchSize > 0);
+
+        this.groupCommit = new GroupCommit(connectionSource, this::lockForAppend, maxBatchSize);
+    }
+
+    /**
+     * <p>
+     * Enable the in-memory cache of the most recent events. {@link #getEventsForAllStreams(long, int)},
+     * {@link #getLatestEvents(int)} and {@link #getEvent(long)} are then served from memory whenever the
+     * requested events are in the cache.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. The cache (see {@link #getTailCache()}) needs to be registered
+     * with the message group receiving {@link com.oasisdigital.nges.cluster.EventUpdate} notifications.
+     * </p>
+     *
+     * @param maxEvents
+     *            maximum number of events in the cache
+     * @param maxBytes
+     *            maximum (approximate) memory used by the events in the cache
+     */
+    public void enableTailCache(int maxEvents, long maxBytes) {
+        Preconditions.checkArgument(maxEvents > 0);
+        Preconditions.checkArgument(maxBytes > 0);
+
+        this.tailCache = new TailCache((afterEventId, limit) -> readEventLog()
+                .getEventsForAllStreams(afterEventId, writeLocking.getReadWatermark(), limit), maxEvents,
+                maxBytes);
+    }
+
+    public Optional<TailCache> getTailCache() {
+        return Optional.ofNullable(tailCache);
+    }
+
+    /**
+     * <p>
+     * Send reads of events and streams to a read replica of the database, keeping the primary free for
+     * writes. Only {@link #getLastEventId()}, {@link #getLastSequence(UUID)} and everything done while saving
+     * still go to the primary.
+     * </p>
+     *
+     * <p>
+     * The replica can lag behind the primary, so a reader might not see events that have just been saved.
+     * Reads that need to see a particular event, e.g. right after saving it, can be wrapped in
+     * {@link #readAfter(long, Supplier)}.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. Not available with striped locking: its read watermark comes
+     * from the primary, while the replica may replay events committed out of ID order with a gap below the
+     * watermark, so readers would skip the missing events for good.
+     * </p>
+     *
+     * @param maxWaitMs
+     *            how long {@link #readAfter(long, Supplier)} waits for the replica to catch up before it
+     *            falls back to the primary, 0 to fall back right away
+     */
+    public void enableReadReplica(DataSource replicaDataSource, long maxWaitMs) {
+        Preconditions.checkNotNull(replicaDataSource);
+        Preconditions.checkArgument(maxWaitMs >= 0);
+        Preconditions.checkState(writeLocking instanceof GlobalWriteLocking,
+                "Read replica only supports global locking");
+
+        this.replicaConnectionSource = new ConnectionSource(replicaDataSource);
+        this.replicaEventLog = new EventLogDao(replicaConnectionSource);
+        this.replicaStreamList = new EventStreamListDao(replicaConnectionSource);
+        this.replicaMaxWaitMs = maxWaitMs;
+        if (archive != null) {
+            replicaEventLog.setArchive(archive);
+        }
+    }
+
+    /**
+     * <p>
+     * Read the events archived with {@link EventLogArchiver} from the segment files in given directory. All
+     * reads then return archived events as if they were still in the database, and so does the snapshot
+     * store from {@link #createSnapshotStore()}.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. Requires <code>event_log</code> partitioned with
+     * <code>db_schema/optional/partition_event_log.sql</code>. Not available with server-side append, since
+     * the append function only looks for the last sequence of a stream in the database.
+     * </p>
+     */
+    public void enableArchive(Path directory) {
+        Preconditions.checkNotNull(directory);
+        Preconditions.checkState(appendFunction == null, "Archive is not available with server-side append");
+
+        this.archive = new ArchivedEventLog(connectionSource, directory);
+        eventLog.setArchive(archive);
+        if (replicaEventLog != null) {
+            // One list of segments for both, so that neither falls behind the other
+            replicaEventLog.setArchive(archive);
+        }
+    }
+
+    /**
+     * <p>
+     * Read large time ranges with {@link #getEventsBetween(OffsetDateTime, OffsetDateTime)} in parallel. The
+     * range of event IDs is split into chunks of <code>chunkSize</code> IDs, and up to
+     * <code>parallelism</code> chunks are read at once on separate connections. The events are still
+     * returned in order.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. The reads share up to <code>parallelism</code> threads and
+     * connections, and every read holds up to <code>parallelism * chunkSize</code> events in memory. The
+     * threads are stopped by {@link #close()}.
+     * </p>
+     */
+    public void enableParallelRangeScans(int parallelism, int chunkSize) {
+        Preconditions.checkArgument(parallelism > 0);
+        Preconditions.checkArgument(chunkSize > 0);
+
+        this.rangeReader = new ParallelRangeReader(parallelism, chunkSize);
+    }
+
+    /**
+     * Stop the threads of parallel range scans, if enabled. They must not be used after that. The database
+     * connections are up to the data source.
+     */
+    @Override
+    public void close() {
+        if (rangeReader != null) {
+            rangeReader.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Set the way new payloads are stored, see {@link PayloadCodec}. Existing payloads are always read
+     * according to the codec they were saved with, no matter the current setting.
+     * </p>
+     *
+     * <p>
+     * Must be called before the store is used. Not available with server-side append. The bulk importer
+     * always stores payloads as {@link PayloadCodec#JSON}.
+     * </p>
+     */
+    public void setPayloadCodec(PayloadCodec codec) {
+        Preconditions.checkNotNull(codec);
+        Preconditions.checkState(appendFunction == null || codec == PayloadCodec.JSON,
+                "Server-side append only supports the JSON payload codec");
+
+        eventLog.setPayloadCodec(codec);
+    }
+
+    /**
+     * Train a preset dictionary for compressing payloads of given event type with
+     * {@link PayloadCodec#DEFLATE}, from the payloads of the most recent events of that type. New payloads of
+     * that type are then compressed with the new dictionary. Works best for types with many similar, small
+     * payloads. Can be repeated at any time, e.g. when the structure of the payloads changes. Fails in the
+     * rare case that the checksum of the new dictionary collides with another one, keeping the previous
+     * dictionary, and training on a different number of payloads may succeed.
+     *
+     * @param sampleSize
+     *            number of recent payloads to train on
+     */
+    public void trainPayloadDictionary(String eventType, int sampleSize) throws EventStoreException {
+        Preconditions.checkArgument(sampleSize > 0);
+
+        eventLog.trainPayloadDictionary(eventType, sampleSize);
+    }
+
+    /**
+     * <p>
+     * Run reads that need to see at least the event with given ID, usually one that the caller has just
+     * saved (such as the last of the IDs returned by {@link #save(List, String, long)}). If the read replica
+     * (see {@link #enableReadReplica(DataSource, long)}) doesn't have that event yet, the reads wait for it
+     * or go to the primary instead.
+     * </p>
+     *
+     * <p>
+     * All reads made by the current thread within <code>reads</code> are affected. Streams must be read
+     * before it returns. Without a replica the reads simply run as they are.
+     * </p>
+     */
+    public <T> T readAfter(long minEventId, Supplier<T> reads) throws EventStoreException {
+        Preconditions.checkNotNull(reads);
+
+        if (replicaEventLog == null || readFromPrimary.get() || awaitReplica(minEventId)) {
+            return reads.get();
+        }
+        replicaFallbackCount.incrementAndGet();
+        readFromPrimary.set(true);
+        try {
+            return reads.get();
+        } finally {
+            readFromPrimary.set(false);
+        }
+    }
+
+    /**
+     * @return the number of times {@link #readAfter(long, Supplier)} had to read from the primary, because
+     *         the replica was behind
+     */
+    public long getReplicaFallbackCount() {
+        return replicaFallbackCount.get();
+    }
+
+    /**
+     * Create an importer for bulk loading of events into this store.
+     */
+    public EventStoreImporter createImporter() {
+        return new EventStoreImporter(connectionSource, writeLocking, statusPublisher);
+    }
+
+    /**
+     * Create a snapshot store reading the events after snapshots like this store, with its payload codec and
+     * archive.
+     */
+    public JdbcSnapshotStore createSnapshotStore() {
+        return new JdbcSnapshotStore(connectionSource, eventLog);
+    }
+
+    /**
+     * Create an engine for replaying the log to given handler, e.g. to rebuild a projection.
+     *
+     * @param name
+     *            name under which the progress of the replay is saved
+     */
+    public ReplayEngine createReplayEngine(String name, EventHandler handler) {
+        Preconditions.checkNotNull(name);
+        Preconditions.checkNotNull(handler);
+
+        return new ReplayEngine(name, handler, connectionSource, eventLog, writeLocking);
+    }
+
+    /**
+     * Create an archiver for creating new partitions of the log and archiving old ones. Requires
+     * {@link #enableArchive(Path)}.
+     */
+    public EventLogArchiver createArchiver() {
+        Preconditions.checkState(archive != null, "Archive is not enabled");
+
+        return new EventLogArchiver(connectionSource, eventLog, archive, writeLocking);
     }
 
     @Override
@@ -42,20 +388,25 @@ public class JdbcEventStore implements EventStore {
     @Override
     public List<Long> save(List<Event> events, String streamType, long lastSequence,
             Collection<String> leaseKeys, String leaseOwnerKey) throws EventStoreException {
-        if (countStreams(events) > 1) {
-            throw new IllegalArgumentException("All events should correspond to the same stream");
-        }
-        if (!asList(AUTO_GENERATE_SEQUENCE, NEW_STREAM).contains(lastSequence) && lastSequence <= 0) {
-            throw new IllegalArgumentException("Invalid lastSequence");
-        }
+        SaveValidation.checkSave(events, lastSequence);
         if (events.isEmpty()) {
             return Collections.emptyList();
         } else {
             try {
-                List<Long> ids = connectionSource.inTransaction(conn -> saveInTransaction(events, streamType,
-                        lastSequence, leaseKeys, leaseOwnerKey));
+                List<Long> ids;
+                if (groupCommit != null) {
+                    ids = groupCommit.append(singleton(events.get(0).getStreamId()), leaseKeys,
+                            conn -> appendLocked(events, streamType, lastSequence, leaseKeys, leaseOwnerKey));
+                } else if (appendFunction != null) {
+                    // A single statement, its own transaction
+                    ids = appendFunction.append(events, streamType, lastSequence, leaseKeys, leaseOwnerKey);
+                } else {
+                    ids = connectionSource.inTransaction(conn -> saveInTransaction(events, streamType,
+                            lastSequence, leaseKeys, leaseOwnerKey));
+                }
                 if (!ids.isEmpty()) {
-                    postEventUpdate(ids.get(ids.size() - 1));
+                    cacheSaved(events);
+                    postEventUpdate(events, ids.get(ids.size() - 1));
                 }
                 return ids;
             } catch (Exception ex) {
@@ -82,29 +433,110 @@ public class JdbcEventStore implements EventStore {
             // 2. saving batches of more than 1 event at a time so they get consistent ID blocks. Otherwise
             // it would lead to anomalies in read models, because an event with ID N could be committed
             // *after* an event with ID N+1 from another stream.
-            lockUpdates();
+            //
+            // With striped locking, only the streams sharing a stripe are serialized and point 2 is taken
+            // care of by the read watermark.
+            lockForAppend(singleton(events.get(0).getStreamId()), leaseKeys);
+            return appendLocked(events, streamType, lastSequence, leaseKeys, leaseOwnerKey);
+        });
+    }
+
+    /**
+     * Verify leases and append the events. Must be called in a transaction holding the lock from
+     * {@link #lockForAppend(Collection, Collection)}.
+     */
+    private List<Long> appendLocked(List<Event> events, String streamType, long lastSequence,
+            Collection<String> leaseKeys, String leaseOwnerKey) throws EventStoreException {
+        if (appendFunction != null) {
+            return appendFunction.append(events, streamType, lastSequence, leaseKeys, leaseOwnerKey);
+        }
+        if (!verifyLease(leaseKeys, leaseOwnerKey)) {
+            return Collections.emptyList();
+        }
+        UUID streamId = events.get(0).getStreamId();
+
+        long _lastSequence;
+        if (lastSequence == AUTO_GENERATE_SEQUENCE) {
+            _lastSequence = getLastSequence(streamId).orElse(0L);
+        } else {
+            _lastSequence = lastSequence;
+        }
+        if (_lastSequence == 0) { // NEW_STREAM or AUTO_GENERATE_SEQUENCE with none in DB
+            streamList.initStream(streamId, streamType);
+        }
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).setSequence(_lastSequence + i + 1);
+        }
+        List<Long> ids = writeLocking.insertEvents(events);
+        streamList.update(streamId, ids.get(ids.size() - 1), _lastSequence + events.size(),
+                _lastSequence);
+        return ids;
+    }
+
+    @Override
+    public Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends) throws EventStoreException {
+        return saveAll(appends, Collections.emptyList(), "");
+    }
+
+    @Override
+    public Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends, Collection<String> leaseKeys,
+            String leaseOwnerKey) throws EventStoreException {
+        Map<UUID, StreamAppend> nonEmpty = SaveValidation.checkSaveAll(appends);
+        if (nonEmpty.isEmpty()) {
+            return SaveValidation.emptyIds(appends);
+        }
+        Map<UUID, List<Long>> ids = connectionSource.inTransaction(conn -> {
+            lockForAppend(nonEmpty.keySet(), leaseKeys);
             if (!verifyLease(leaseKeys, leaseOwnerKey)) {
-                return Collections.emptyList();
+                return Collections.emptyMap();
             }
-            UUID streamId = events.get(0).getStreamId();
+            return appendAllLocked(nonEmpty);
+        });
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        List<Event> saved = nonEmpty.values().stream().flatMap(append -> append.getEvents().stream())
+                .collect(toList());
+        cacheSaved(saved);
+        postEventUpdate(saved, ids.values().stream().flatMap(List::stream).mapToLong(Long::longValue).max()
+                .getAsLong());
+        Map<UUID, List<Long>> result = SaveValidation.emptyIds(appends);
+        result.putAll(ids);
+        return result;
+    }
 
-            long _lastSequence;
-            if (lastSequence == AUTO_GENERATE_SEQUENCE) {
-                _lastSequence = getLastSequence(streamId).orElse(0L);
-            } else {
-                _lastSequence = lastSequence;
-            }
-            if (_lastSequence == 0) { // NEW_STREAM or AUTO_GENERATE_SEQUENCE with none in DB
-                streamList.initStream(streamId, streamType);
+    private Map<UUID, List<Long>> appendAllLocked(Map<UUID, StreamAppend> appends)
+            throws EventStoreException {
+        Map<UUID, EventStream> streams = streamList.findByStreamIds(appends.keySet());
+        Map<UUID, Long> lastSequences = SaveValidation.verifyLastSequences(appends,
+                streamId -> streams.containsKey(streamId) ? streams.get(streamId).getStreamType() : null,
+                streamId -> Optional.ofNullable(streams.get(streamId)).map(EventStream::getLastSeqNo)
+                        .orElse(0L));
+
+        List<Event> allEvents = new ArrayList<>();
+        appends.forEach((streamId, append) -> {
+            if (!streams.containsKey(streamId)) {
+                streamList.initStream(streamId, append.getStreamType());
             }
+            List<Event> events = append.getEvents();
             for (int i = 0; i < events.size(); i++) {
-                events.get(i).setSequence(_lastSequence + i + 1);
+                events.get(i).setSequence(lastSequences.get(streamId) + i + 1);
             }
-            List<Long> ids = eventLog.save(events);
-            streamList.update(streamId, ids.get(ids.size() - 1), _lastSequence + events.size(),
-                    _lastSequence);
-            return ids;
+            allEvents.addAll(events);
         });
+        List<Long> allIds = writeLocking.insertEvents(allEvents);
+
+        Map<UUID, List<Long>> ids = new LinkedHashMap<>();
+        int offset = 0;
+        for (Map.Entry<UUID, StreamAppend> entry : appends.entrySet()) {
+            int count = entry.getValue().getEvents().size();
+            List<Long> streamIds = new ArrayList<>(allIds.subList(offset, offset + count));
+            long lastSequence = lastSequences.get(entry.getKey());
+            streamList.update(entry.getKey(), streamIds.get(count - 1), lastSequence + count, lastSequence);
+            ids.put(entry.getKey(), streamIds);
+            offset += count;
+        }
+        return ids;
     }
 
     private boolean verifyLease(Collection<String> leaseKeys, String leaseOwnerKey) {
@@ -115,33 +547,177 @@ public class JdbcEventStore implements EventStore {
         }
     }
 
-    private void lockUpdates() {
-        new JdbcQueries(connectionSource).query("select pg_advisory_xact_lock(?)", rs -> null, 0xCAFEBABE);
+    private void lockForAppend(Collection<UUID> streamIds, Collection<String> leaseKeys) {
+        writeLocking.lockForAppend(streamIds, leaseKeys);
     }
 
-    private long countStreams(List<Event> events) {
-        return events.stream().map(Event::getStreamId).distinct().count();
+    @Override
+    public Event getEvent(long eventId) throws EventStoreException {
+        if (tailCache != null) {
+            Optional<Event> cached = tailCache.getEvent(eventId);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        return readEventLog().getEvent(eventId);
     }
 
     @Override
-    public Event getEvent(long eventId) throws EventStoreException {
-        return eventLog.getEvent(eventId);
+    public Map<Long, Event> getEvents(Collection<Long> eventIds) throws EventStoreException {
+        Preconditions.checkNotNull(eventIds);
+
+        return eventIds.isEmpty() ? Collections.emptyMap() : readEventLog().getEvents(eventIds);
     }
 
     @Override
     public List<Event> getLatestEvents(int limit) throws EventStoreException {
-        return eventLog.getLatestEvents(limit);
+        if (tailCache != null) {
+            Optional<List<Event>> cached = tailCache.getLatestEvents(limit);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        return readEventLog().getLatestEvents(limit);
     }
 
     @Override
     public List<Event> getEventsForAllStreams(long afterEventId, int limit) throws EventStoreException {
-        return eventLog.getEventsForAllStreams(afterEventId, limit);
+        if (tailCache != null) {
+            Optional<List<Event>> cached = tailCache.getEventsForAllStreams(afterEventId, limit);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        List<Event> events = readEventLog().getEventsForAllStreams(afterEventId,
+                writeLocking.getReadWatermark(), limit);
+        if (tailCache != null) {
+            tailCache.putRange(afterEventId, events);
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreams(long afterEventId, int limit, EventFilter filter)
+            throws EventStoreException {
+        if (filter.isEmpty()) {
+            return getEventsForAllStreams(afterEventId, limit);
+        }
+        return readEventLog().getEventsForAllStreams(afterEventId, writeLocking.getReadWatermark(), limit,
+                filter);
+    }
+
+    @Override
+    public Stream<Event> streamEventsForAllStreams(long afterEventId, int fetchSize)
+            throws EventStoreException {
+        Preconditions.checkArgument(fetchSize > 0);
+
+        return readEventLog().streamEventsForAllStreams(afterEventId, writeLocking.getReadWatermark(),
+                fetchSize);
+    }
+
+    /**
+     * <p>
+     * Pass all events after given event ID to the consumer, sorted by event ID. Like
+     * {@link #streamEventsForAllStreams(long, int)}, but with the least possible allocation per event, for
+     * consumers of very many events.
+     * </p>
+     *
+     * <p>
+     * The consumer gets the same, mutable instance of {@link Event} for every event, overwritten with the
+     * next one after the consumer returns. It must not keep a reference to it: anything needed later has to
+     * be copied, e.g. with {@link Event#Event(Event)}.
+     * </p>
+     *
+     * @return the number of events passed to the consumer
+     */
+    public long forEachEventForAllStreams(long afterEventId, int fetchSize, Consumer<Event> consumer)
+            throws EventStoreException {
+        Preconditions.checkArgument(fetchSize > 0);
+        Preconditions.checkNotNull(consumer);
+
+        return readEventLog().forEachEvent(afterEventId, writeLocking.getReadWatermark(), fetchSize,
+                consumer);
+    }
+
+    @Override
+    public Stream<Event> getEventsBetween(OffsetDateTime from, OffsetDateTime to) throws EventStoreException {
+        Timestamp fromTimestamp = DateConverter.toTimestamp(Preconditions.checkNotNull(from));
+        Timestamp toTimestamp = DateConverter.toTimestamp(Preconditions.checkNotNull(to));
+        long upToEventId = writeLocking.getReadWatermark();
+        EventLogDao reader = readEventLog();
+        if (rangeReader == null) {
+            return reader.streamEventsBetween(fromTimestamp, toTimestamp, upToEventId, RANGE_FETCH_SIZE);
+        }
+        return reader.streamEventsBetween(fromTimestamp, toTimestamp, upToEventId, rangeReader);
     }
 
     @Override
     public List<Event> getEventsForStream(UUID streamId, long afterSequenceId, int limit)
             throws EventStoreException {
-        return eventLog.getEventsForStream(streamId, afterSequenceId, limit);
+        return readEventLog().getEventsForStream(streamId, afterSequenceId, limit);
+    }
+
+    @Override
+    public List<Event> getEventsForStreamBackward(UUID streamId, long beforeSequenceId, int limit)
+            throws EventStoreException {
+        return readEventLog().getEventsForStreamBackward(streamId, beforeSequenceId, limit);
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreamsBackward(long beforeEventId, int limit)
+            throws EventStoreException {
+        return readEventLog().getEventsForAllStreamsBackward(beforeEventId, writeLocking.getReadWatermark(),
+                limit);
+    }
+
+    @Override
+    public EventPage readStream(UUID streamId, ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException {
+        Preconditions.checkNotNull(streamId);
+        Preconditions.checkNotNull(direction);
+
+        long position = positionToken == null ? PositionTokens.start(direction)
+                : PositionTokens.parseStream(positionToken, streamId);
+        List<Event> events = direction == ReadDirection.FORWARD
+                ? getEventsForStream(streamId, position, limit)
+                : getEventsForStreamBackward(streamId, position, limit);
+        return PositionTokens.toPage(events, direction, position, Event::getSequence,
+                sequence -> PositionTokens.forStream(streamId, sequence));
+    }
+
+    @Override
+    public EventPage readAllStreams(ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException {
+        Preconditions.checkNotNull(direction);
+
+        long position = positionToken == null ? PositionTokens.start(direction)
+                : PositionTokens.parseAllStreams(positionToken);
+        List<Event> events = direction == ReadDirection.FORWARD ? getEventsForAllStreams(position, limit)
+                : getEventsForAllStreamsBackward(position, limit);
+        return PositionTokens.toPage(events, direction, position, Event::getEventId,
+                PositionTokens::forAllStreams);
+    }
+
+    @Override
+    public Map<UUID, List<Event>> getEventsForStreams(Map<UUID, Long> afterSequenceIds, int limitPerStream)
+            throws EventStoreException {
+        Preconditions.checkNotNull(afterSequenceIds);
+        Preconditions.checkArgument(limitPerStream > 0);
+
+        return afterSequenceIds.isEmpty() ? Collections.emptyMap()
+                : readEventLog().getEventsForStreams(afterSequenceIds, limitPerStream);
+    }
+
+    @Override
+    public List<Event> getEventHeadersForAllStreams(long afterEventId, int limit) throws EventStoreException {
+        return readEventLog().getEventHeadersForAllStreams(afterEventId, writeLocking.getReadWatermark(),
+                limit);
+    }
+
+    @Override
+    public List<Event> getEventHeadersForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException {
+        return readEventLog().getEventHeadersForStream(streamId, afterSequenceId, limit);
     }
 
     @Override
@@ -156,18 +732,25 @@ public class JdbcEventStore implements EventStore {
 
     @Override
     public long getStreamCount(String streamType) throws EventStoreException {
-        return streamList.getStreamCount(streamType);
+        return readStreamList().getStreamCount(streamType);
     }
 
     @Override
     public EventStream findByStreamId(UUID id) throws EventStoreException {
-        return streamList.findByStreamId(id);
+        return readStreamList().findByStreamId(id);
+    }
+
+    @Override
+    public Map<UUID, EventStream> findByStreamIds(Collection<UUID> ids) throws EventStoreException {
+        Preconditions.checkNotNull(ids);
+
+        return ids.isEmpty() ? Collections.emptyMap() : readStreamList().findByStreamIds(ids);
     }
 
     @Override
     public Lease lease(String leaseKey, String ownerKey, long leaseDurationMs) {
         return connectionSource.inTransaction(conn -> {
-            lockUpdates();
+            writeLocking.lockForLease(leaseKey);
             return lease.createOrRenewLease(leaseKey, ownerKey, leaseDurationMs);
         });
     }
@@ -175,7 +758,7 @@ public class JdbcEventStore implements EventStore {
     @Override
     public Lease renewLease(String leaseKey, String ownerKey, long leaseDurationMs) {
         return connectionSource.inTransaction(conn -> {
-            lockUpdates();
+            writeLocking.lockForLease(leaseKey);
             return lease.renewLease(leaseKey, ownerKey, leaseDurationMs);
         });
     }
@@ -185,7 +768,47 @@ public class JdbcEventStore implements EventStore {
         lease.release(leaseKey, ownerKey);
     }
 
-    private void postEventUpdate(long lastId) {
-        statusPublisher.publishLastEventIfChanged(lastId);
+    private void cacheSaved(List<Event> events) {
+        // Events appended with the function don't come back with their transaction time.
+        if (tailCache != null && appendFunction == null) {
+            tailCache.putSaved(events);
+        }
+    }
+
+    private void postEventUpdate(List<Event> saved, long lastId) {
+        // Events appended with the function don't come back with their IDs and transaction time.
+        if (appendFunction == null) {
+            statusPublisher.publishSavedEvents(saved);
+        } else {
+            statusPublisher.publishLastEventIfChanged(lastId);
+        }
+    }
+
+    private EventLogDao readEventLog() {
+        return replicaEventLog == null || readFromPrimary.get() ? eventLog : replicaEventLog;
+    }
+
+    private EventStreamListDao readStreamList() {
+        return replicaStreamList == null || readFromPrimary.get() ? streamList : replicaStreamList;
+    }
+
+    /**
+     * @return true if the replica has the event, false if it didn't catch up in time
+     */
+    private boolean awaitReplica(long eventId) throws EventStoreException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replicaMaxWaitMs);
+        while (!replicaEventLog.exists(eventId)) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(remainingMs, REPLICA_POLL_INTERVAL_MS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
     }
 }
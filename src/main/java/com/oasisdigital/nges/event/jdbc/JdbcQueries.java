@@ -1,5 +1,6 @@
 package com.oasisdigital.nges.event.jdbc;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -7,9 +8,16 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.oasisdigital.nges.event.EventStoreException;
 
@@ -66,6 +74,62 @@ class JdbcQueries {
         } , params);
     }
 
+    /**
+     * <p>
+     * Lazily stream the results of a query, fetching <code>fetchSize</code> rows at a time with a server-side
+     * cursor instead of loading the whole result into memory.
+     * </p>
+     *
+     * <p>
+     * The cursor lives in a transaction on a dedicated connection (not the one bound to the current thread),
+     * held until the returned stream is closed. The stream must be closed, preferably with
+     * try-with-resources.
+     * </p>
+     */
+    public <T> Stream<T> queryForStream(String query, RowMapper<T> mapper, int fetchSize, Object... params)
+            throws EventStoreException {
+        Connection conn = connectionSource.openConnection();
+        PreparedStatement ps = null;
+        boolean autoCommit = true;
+        try {
+            // The PostgreSQL driver only uses a cursor outside of autocommit mode.
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            setParams(ps, params);
+            ResultSet rs = ps.executeQuery();
+            Cursor<T> cursor = new Cursor<>(conn, ps, rs, mapper, autoCommit);
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        } catch (SQLException | RuntimeException e) {
+            close(conn, ps, autoCommit);
+            throw e instanceof SQLException ? SQLExceptionTranslation.translate((SQLException) e)
+                    : (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Like {@link #queryForStream(String, RowMapper, int, Object...)}, but on the connection bound to the
+     * current thread, so that the query runs under the locks of its transaction. Must be called in a
+     * transaction. The rows are only available until <code>consumer</code> returns.
+     */
+    public <T, R> R queryForIterator(String query, RowMapper<T> mapper, int fetchSize,
+            Function<Iterator<T>, R> consumer, Object... params) throws EventStoreException {
+        return connectionSource.withConnection(conn -> {
+            if (conn.getAutoCommit()) {
+                throw new IllegalStateException("Not in a transaction");
+            }
+            try (PreparedStatement ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(fetchSize);
+                setParams(ps, params);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return consumer.apply(Spliterators.iterator(new Rows<>(rs, mapper)));
+                }
+            }
+        });
+    }
+
     public <T> T query(String query, ResultSetMapper<T> mapper, Object... params) throws EventStoreException {
         return connectionSource.withConnection(conn -> {
             try (PreparedStatement ps = conn.prepareStatement(query)) {
@@ -90,8 +154,20 @@ class JdbcQueries {
 
     public int insert(String query, List<Map<String, Object>> keyHolder, Object... params)
             throws EventStoreException {
+        return insert(query, null, keyHolder, params);
+    }
+
+    /**
+     * Like {@link #insert(String, List, Object...)}, but only returns given columns of the inserted rows
+     * rather than all of them.
+     */
+    public int insert(String query, String[] keyColumns, List<Map<String, Object>> keyHolder,
+            Object... params)
+            throws EventStoreException {
         return connectionSource.withConnection(conn -> {
-            try (PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            try (PreparedStatement ps = keyColumns == null
+                    ? conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)
+                    : conn.prepareStatement(query, keyColumns)) {
                 setParams(ps, params);
                 int result = ps.executeUpdate();
                 ResultSet keys = ps.getGeneratedKeys();
@@ -110,8 +186,89 @@ class JdbcQueries {
 
     private void setParams(PreparedStatement ps, Object... params) throws SQLException {
         for (int i = 0; i < params.length; i++) {
-            ps.setObject(i + 1, params[i]);
+            if (params[i] instanceof SqlArray) {
+                SqlArray array = (SqlArray) params[i];
+                ps.setArray(i + 1,
+                        ps.getConnection().createArrayOf(array.getTypeName(), array.getElements()));
+            } else {
+                ps.setObject(i + 1, params[i]);
+            }
+        }
+    }
+
+    /**
+     * Close the statement and the connection of a cursor. The autocommit mode the connection came with is
+     * restored first, like in {@link ConnectionSource#inTransaction}, since a pool may hand it out again.
+     */
+    private static void close(Connection conn, Statement statement, boolean autoCommit)
+            throws EventStoreException {
+        try {
+            try {
+                if (statement != null) {
+                    statement.close();
+                }
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+                conn.setAutoCommit(autoCommit);
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            throw SQLExceptionTranslation.translate(e);
+        }
+    }
+
+    /**
+     * The remaining rows of a result set, mapped one at a time.
+     */
+    private static class Rows<T> extends Spliterators.AbstractSpliterator<T> {
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+
+        Rows(ResultSet rs, RowMapper<T> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.rs = rs;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if (!rs.next()) {
+                    return false;
+                }
+                action.accept(mapper.toEvent(rs));
+                return true;
+            } catch (SQLException e) {
+                throw SQLExceptionTranslation.translate(e);
+            }
         }
     }
 
+    private static class Cursor<T> extends Rows<T> {
+        private final Connection conn;
+        private final PreparedStatement ps;
+        private final boolean autoCommit;
+        private boolean closed;
+
+        Cursor(Connection conn, PreparedStatement ps, ResultSet rs, RowMapper<T> mapper, boolean autoCommit) {
+            super(rs, mapper);
+            this.conn = conn;
+            this.ps = ps;
+            this.autoCommit = autoCommit;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            return !closed && super.tryAdvance(action);
+        }
+
+        void close() throws EventStoreException {
+            if (!closed) {
+                closed = true;
+                JdbcQueries.close(conn, ps, autoCommit);
+            }
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.Snapshot;
+import com.oasisdigital.nges.event.SnapshotAndEvents;
+import com.oasisdigital.nges.event.SnapshotPolicy;
+import com.oasisdigital.nges.event.SnapshotStore;
+
+/**
+ * {@link SnapshotStore} keeping the snapshots in the <code>snapshot</code> table, next to the event log.
+ */
+public class JdbcSnapshotStore implements SnapshotStore {
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;
+
+    private final SnapshotDao snapshots;
+
+    private SnapshotPolicy policy = SnapshotPolicy.everyEvents(DEFAULT_SNAPSHOT_INTERVAL);
+
+    /**
+     * Create a store reading the events after snapshots with the default payload codec and without the
+     * archive. Use {@link JdbcEventStore#createSnapshotStore()} to share the configuration of an event store.
+     */
+    public JdbcSnapshotStore(DataSource dataSource) {
+        this(new ConnectionSource(dataSource));
+    }
+
+    private JdbcSnapshotStore(ConnectionSource connectionSource) {
+        this(connectionSource, new EventLogDao(connectionSource));
+    }
+
+    JdbcSnapshotStore(ConnectionSource connectionSource, EventLogDao eventLog) {
+        this.snapshots = new SnapshotDao(connectionSource, eventLog);
+    }
+
+    /**
+     * Must be called before the store is used.
+     */
+    public void setPolicy(SnapshotPolicy policy) {
+        this.policy = Preconditions.checkNotNull(policy);
+    }
+
+    @Override
+    public void saveSnapshot(Snapshot snapshot) throws EventStoreException {
+        try {
+            if (!snapshots.save(snapshot)) {
+                throw new EventStoreException("No event with sequence " + snapshot.getSequence()
+                        + " in stream " + snapshot.getStreamId());
+            }
+        } catch (UniqueViolation e) {
+            // Already saved, presumably the same state
+        }
+    }
+
+    @Override
+    public boolean saveSnapshotIfDue(long snapshotSequence, long lastSequence, Supplier<Snapshot> snapshot)
+            throws EventStoreException {
+        if (!policy.shouldSnapshot(snapshotSequence, lastSequence)) {
+            return false;
+        }
+        saveSnapshot(snapshot.get());
+        return true;
+    }
+
+    @Override
+    public Optional<Snapshot> getLatestSnapshot(UUID streamId) throws EventStoreException {
+        return snapshots.getLatest(streamId);
+    }
+
+    @Override
+    public SnapshotAndEvents getLatestSnapshotAndEvents(UUID streamId, int limit) throws EventStoreException {
+        return snapshots.getLatestWithEvents(streamId, limit);
+    }
+
+    @Override
+    public void deleteSnapshots(UUID streamId, long beforeSequence) throws EventStoreException {
+        snapshots.deleteBefore(streamId, beforeSequence);
+    }
+}
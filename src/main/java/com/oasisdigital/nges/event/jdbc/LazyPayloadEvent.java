@@ -0,0 +1,41 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import com.oasisdigital.nges.event.Event;
+
+/**
+ * Event read without its payload. The payload is loaded on the first call to {@link #getPayload()}, along
+ * with the payloads of a number of following events from the same query result. Serializes as a plain
+ * {@link Event}, with the payload loaded.
+ */
+class LazyPayloadEvent extends Event {
+    private static final long serialVersionUID = 1L;
+
+    private final transient PayloadLoader loader;
+    private volatile boolean loaded;
+
+    LazyPayloadEvent(PayloadLoader loader) {
+        this.loader = loader;
+    }
+
+    @Override
+    public String getPayload() {
+        if (!loaded) {
+            loader.load(this);
+        }
+        return super.getPayload();
+    }
+
+    @Override
+    public void setPayload(String payload) {
+        super.setPayload(payload);
+        loaded = true;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    private Object writeReplace() {
+        return new Event(this);
+    }
+}
@@ -0,0 +1,160 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * <p>
+ * Reads a range of event IDs split into chunks, several chunks at a time on separate threads (and thus
+ * separate connections), and streams the events back in the order of their IDs.
+ * </p>
+ *
+ * <p>
+ * The chunks are read ahead of the consumer in a sliding window: at most <code>parallelism</code> chunks are
+ * being read or waiting to be consumed at any time, so memory use is bounded by
+ * <code>parallelism * chunkSize</code> events.
+ * </p>
+ *
+ * <p>
+ * All reads share one pool of <code>parallelism</code> threads, which are stopped after a while without
+ * reads and for good by {@link #shutdown()}. Concurrent reads take turns, so together they never use more
+ * than <code>parallelism</code> connections.
+ * </p>
+ */
+class ParallelRangeReader {
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 10;
+
+    private final int parallelism;
+    private final int chunkSize;
+    private final ThreadPoolExecutor executor;
+
+    ParallelRangeReader(int parallelism, int chunkSize) {
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, IDLE_THREAD_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("nges-range-reader-%d").build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stream the events with IDs between <code>fromEventId</code> and <code>toEventId</code> (both
+     * inclusive). The stream must be closed, otherwise chunks still being read finish in the background.
+     */
+    Stream<Event> read(long fromEventId, long toEventId, ChunkLoader loader) {
+        ChunkIterator iterator = new ChunkIterator(fromEventId, toEventId, loader);
+        Spliterator<Event> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
+    /**
+     * Stop the threads, interrupting the reads in progress. No more reads can be started after that.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private class ChunkIterator implements Iterator<Event> {
+        private final long toEventId;
+        private final ChunkLoader loader;
+        private final Deque<Future<List<Event>>> pending = new ArrayDeque<>();
+        private long nextChunkStart;
+        private Iterator<Event> current = Collections.emptyIterator();
+
+        ChunkIterator(long fromEventId, long toEventId, ChunkLoader loader) {
+            this.toEventId = toEventId;
+            this.loader = loader;
+            this.nextChunkStart = fromEventId;
+            for (int i = 0; i < parallelism; i++) {
+                submitNextChunk();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                Future<List<Event>> next = pending.poll();
+                if (next == null) {
+                    close();
+                    return false;
+                }
+                submitNextChunk();
+                current = await(next).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        void close() {
+            // Only the chunks of this read, the threads are shared
+            pending.forEach(future -> future.cancel(true));
+            pending.clear();
+        }
+
+        private void submitNextChunk() {
+            if (nextChunkStart > toEventId) {
+                return;
+            }
+            long low = nextChunkStart;
+            long high = Math.min(toEventId, low + chunkSize - 1);
+            try {
+                pending.add(executor.submit(() -> loader.load(low, high)));
+            } catch (RejectedExecutionException e) {
+                close();
+                throw new EventStoreException("The store is closed", e);
+            }
+            nextChunkStart = high + 1;
+        }
+
+        private List<Event> await(Future<List<Event>> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new EventStoreException("Interrupted while reading events", e);
+            } catch (ExecutionException e) {
+                close();
+                if (e.getCause() instanceof EventStoreException) {
+                    throw (EventStoreException) e.getCause();
+                }
+                throw new EventStoreException("Unable to read events", e.getCause());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface ChunkLoader {
+        /**
+         * Load the events with IDs between <code>fromEventId</code> and <code>toEventId</code> (both
+         * inclusive), sorted by event ID.
+         */
+        List<Event> load(long fromEventId, long toEventId) throws EventStoreException;
+    }
+}
@@ -0,0 +1,47 @@
+package com.oasisdigital.nges.event.jdbc;
+
+/**
+ * How event payloads are stored in <code>event_log</code>. Only affects new events: payloads are decoded
+ * according to the way they were stored, so the codec can be changed at any time.
+ */
+public enum PayloadCodec {
+    /**
+     * Text in the <code>payload</code> column, of type <code>json</code>. The default.
+     */
+    JSON(null),
+
+    /**
+     * Binary <code>jsonb</code> in the <code>payload_jsonb</code> column. Larger than {@link #JSON} on disk,
+     * but can be efficiently queried and indexed in the database. The payload is read back normalized, i.e.
+     * not necessarily with the original whitespace, key order or duplicate keys.
+     */
+    JSONB("jsonb"),
+
+    /**
+     * UTF-8 text compressed with deflate in the <code>payload_bytes</code> column, using the latest preset
+     * dictionary trained for the event type, if any (see {@link JdbcEventStore#trainPayloadDictionary}).
+     */
+    DEFLATE("deflate");
+
+    private final String columnValue;
+
+    private PayloadCodec(String columnValue) {
+        this.columnValue = columnValue;
+    }
+
+    /**
+     * Value stored in the <code>payload_codec</code> column.
+     */
+    String getColumnValue() {
+        return columnValue;
+    }
+
+    static PayloadCodec fromColumnValue(String value) {
+        for (PayloadCodec codec : values()) {
+            if (codec.columnValue == null ? value == null : codec.columnValue.equals(value)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown payload codec: " + value);
+    }
+}
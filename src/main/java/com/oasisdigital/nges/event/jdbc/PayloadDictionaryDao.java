@@ -0,0 +1,40 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import com.oasisdigital.nges.event.EventStoreException;
+
+class PayloadDictionaryDao {
+    private final JdbcQueries queries;
+
+    public PayloadDictionaryDao(ConnectionSource connectionSource) {
+        this.queries = new JdbcQueries(connectionSource);
+    }
+
+    public Optional<byte[]> findByChecksum(long checksum) throws EventStoreException {
+        return queries.queryForOptionalObject("select dictionary from payload_dictionary where checksum = ?",
+                byte[].class, checksum);
+    }
+
+    public Optional<byte[]> findLatestForType(String eventType) throws EventStoreException {
+        return queries.queryForOptionalObject("select dictionary from payload_dictionary "
+                + "where event_type = ? order by created desc limit 1", byte[].class, eventType);
+    }
+
+    /**
+     * @return true if the dictionary is saved under the checksum, false if another dictionary with the same
+     *         checksum already is
+     */
+    public boolean save(long checksum, String eventType, byte[] dictionary) throws EventStoreException {
+        try {
+            queries.insert(
+                    "insert into payload_dictionary(checksum, event_type, dictionary) values (?, ?, ?)",
+                    checksum, eventType, dictionary);
+            return true;
+        } catch (UniqueViolation e) {
+            // Either the same dictionary has already been saved, or another one with a colliding checksum
+            return findByChecksum(checksum).map(saved -> Arrays.equals(saved, dictionary)).orElse(false);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * Encodes payloads for storage according to the current {@link PayloadCodec}, and decodes them according to
+ * the codec they were stored with.
+ */
+class PayloadEncoding {
+    /**
+     * Columns needed to decode a payload, in the order of values returned by {@link #encode(String, String)}.
+     */
+    static final String COLUMNS = "payload, payload_jsonb, payload_bytes, payload_codec";
+
+    // Deflate only looks back 32 KB, a longer dictionary would be useless.
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private final PayloadDictionaryDao dictionaries;
+    private final Map<Long, byte[]> dictionariesByChecksum = new ConcurrentHashMap<>();
+    // Refreshed from time to time, to pick up dictionaries trained by other processes.
+    private final Cache<String, Optional<byte[]>> latestDictionaries = CacheBuilder.newBuilder()
+            .expireAfterWrite(5, TimeUnit.MINUTES).build();
+
+    private volatile PayloadCodec codec = PayloadCodec.JSON;
+
+    PayloadEncoding(PayloadDictionaryDao dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    void setCodec(PayloadCodec codec) {
+        this.codec = codec;
+    }
+
+    PayloadCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return values for {@link #COLUMNS}
+     */
+    Object[] encode(String eventType, String payload) throws EventStoreException {
+        PayloadCodec codec = this.codec;
+        switch (codec) {
+        case JSON:
+            return new Object[] { payload, null, null, null };
+        case JSONB:
+            return new Object[] { null, payload, null, codec.getColumnValue() };
+        case DEFLATE:
+            byte[] bytes = payload == null ? null : deflate(payload, getLatestDictionary(eventType));
+            return new Object[] { null, null, bytes, codec.getColumnValue() };
+        default:
+            throw new IllegalStateException("Unsupported codec: " + codec);
+        }
+    }
+
+    /**
+     * Mapper decoding the payload from rows containing {@link #COLUMNS}.
+     */
+    RowMapper<String> createMapper() {
+        return new RowMapper<String>() {
+            private ResultSet resolvedFor;
+            private Columns columns;
+
+            @Override
+            public String toEvent(ResultSet rs) throws SQLException {
+                if (rs != resolvedFor) {
+                    columns = Columns.resolve(rs);
+                    resolvedFor = rs;
+                }
+                return decode(rs, columns);
+            }
+        };
+    }
+
+    /**
+     * Decode the payload from the current row.
+     */
+    String decode(ResultSet rs, Columns columns) throws SQLException {
+        String codec = rs.getString(columns.payloadCodec);
+        switch (PayloadCodec.fromColumnValue(codec)) {
+        case JSON:
+            return rs.getString(columns.payload);
+        case JSONB:
+            return rs.getString(columns.payloadJsonb);
+        case DEFLATE:
+            byte[] bytes = rs.getBytes(columns.payloadBytes);
+            return bytes == null ? null : inflate(bytes);
+        default:
+            throw new IllegalStateException("Unsupported codec: " + codec);
+        }
+    }
+
+    /**
+     * Build a preset dictionary from sample payloads of an event type and save it, so that new payloads of
+     * that type are compressed with it.
+     *
+     * @throws EventStoreException
+     *             if another dictionary has the same checksum, since payloads only refer to their dictionary
+     *             by checksum. The previous dictionary stays in use, and training on a different sample may
+     *             succeed.
+     */
+    void trainDictionary(String eventType, List<String> samples) throws EventStoreException {
+        // Content near the end of the dictionary is the cheapest to refer to, so the samples go from the
+        // least to the most recent.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = samples.size() - 1; i >= 0; i--) {
+            byte[] sample = samples.get(i).getBytes(UTF_8);
+            out.write(sample, 0, sample.length);
+        }
+        byte[] all = out.toByteArray();
+        if (all.length == 0) {
+            return;
+        }
+        byte[] dictionary = Arrays.copyOfRange(all, Math.max(0, all.length - MAX_DICTIONARY_SIZE),
+                all.length);
+        Adler32 checksum = new Adler32();
+        checksum.update(dictionary);
+        if (!dictionaries.save(checksum.getValue(), eventType, dictionary)) {
+            throw new EventStoreException("Another payload dictionary has the same checksum: "
+                    + checksum.getValue());
+        }
+        dictionariesByChecksum.put(checksum.getValue(), dictionary);
+        latestDictionaries.put(eventType, Optional.of(dictionary));
+    }
+
+    private Optional<byte[]> getLatestDictionary(String eventType) throws EventStoreException {
+        try {
+            return latestDictionaries.get(eventType == null ? "" : eventType,
+                    () -> dictionaries.findLatestForType(eventType));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof EventStoreException) {
+                throw (EventStoreException) e.getCause();
+            }
+            throw new EventStoreException("Unable to load payload dictionary", e.getCause());
+        }
+    }
+
+    private static byte[] deflate(String payload, Optional<byte[]> dictionary) {
+        Deflater deflater = new Deflater();
+        try {
+            dictionary.ifPresent(deflater::setDictionary);
+            deflater.setInput(payload.getBytes(UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private String inflate(byte[] bytes) throws EventStoreException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(getDictionary(inflater.getAdler()));
+                } else if (length == 0 && inflater.needsInput()) {
+                    throw new EventStoreException("Truncated payload");
+                }
+                out.write(buffer, 0, length);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            throw new EventStoreException("Unable to decompress payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Indexes of {@link #COLUMNS} in a result set.
+     */
+    static class Columns {
+        private final int payload;
+        private final int payloadJsonb;
+        private final int payloadBytes;
+        private final int payloadCodec;
+
+        private Columns(int payload, int payloadJsonb, int payloadBytes, int payloadCodec) {
+            this.payload = payload;
+            this.payloadJsonb = payloadJsonb;
+            this.payloadBytes = payloadBytes;
+            this.payloadCodec = payloadCodec;
+        }
+
+        static Columns resolve(ResultSet rs) throws SQLException {
+            return new Columns(rs.findColumn("payload"), rs.findColumn("payload_jsonb"),
+                    rs.findColumn("payload_bytes"), rs.findColumn("payload_codec"));
+        }
+    }
+
+    private byte[] getDictionary(long checksum) throws EventStoreException {
+        byte[] dictionary = dictionariesByChecksum.get(checksum);
+        if (dictionary == null) {
+            dictionary = dictionaries.findByChecksum(checksum)
+                    .orElseThrow(() -> new EventStoreException("Missing payload dictionary: " + checksum));
+            dictionariesByChecksum.put(checksum, dictionary);
+        }
+        return dictionary;
+    }
+}
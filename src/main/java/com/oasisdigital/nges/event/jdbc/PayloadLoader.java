@@ -0,0 +1,46 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * Loads payloads for the events of one header-only query result. Consumers usually go through the events in
+ * order, so the payload of an event is loaded together with the payloads of the following events that haven't
+ * been loaded yet.
+ */
+class PayloadLoader {
+    private final EventLogDao eventLog;
+    private final int batchSize;
+    private final List<LazyPayloadEvent> events = new ArrayList<>();
+    private final Map<LazyPayloadEvent, Integer> positions = new IdentityHashMap<>();
+
+    PayloadLoader(EventLogDao eventLog, int batchSize) {
+        this.eventLog = eventLog;
+        this.batchSize = batchSize;
+    }
+
+    synchronized void add(LazyPayloadEvent event) {
+        positions.put(event, events.size());
+        events.add(event);
+    }
+
+    synchronized void load(LazyPayloadEvent event) throws EventStoreException {
+        if (event.isLoaded()) {
+            return;
+        }
+        List<LazyPayloadEvent> batch = new ArrayList<>(batchSize);
+        for (int i = positions.get(event); i < events.size() && batch.size() < batchSize; i++) {
+            if (!events.get(i).isLoaded()) {
+                batch.add(events.get(i));
+            }
+        }
+        List<Long> ids = new ArrayList<>(batch.size());
+        batch.forEach(e -> ids.add(e.getEventId()));
+        Map<Long, String> payloads = eventLog.getPayloads(ids);
+        batch.forEach(e -> e.setPayload(payloads.get(e.getEventId())));
+    }
+}
@@ -0,0 +1,36 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.Optional;
+
+import com.oasisdigital.nges.event.EventStoreException;
+
+class ReplayCheckpointDao {
+    private final JdbcQueries queries;
+
+    public ReplayCheckpointDao(ConnectionSource connectionSource) {
+        this.queries = new JdbcQueries(connectionSource);
+    }
+
+    public Optional<Long> getCheckpoint(String name) throws EventStoreException {
+        return queries.queryForOptionalObject("select event_id from replay_checkpoint where name = ?",
+                Long.class, name);
+    }
+
+    public void saveCheckpoint(String name, long eventId) throws EventStoreException {
+        int updated = queries.update(
+                "update replay_checkpoint set event_id = ?, updated = current_timestamp where name = ?",
+                eventId, name);
+        if (updated == 0) {
+            try {
+                queries.insert("insert into replay_checkpoint(name, event_id) values (?, ?)", name, eventId);
+            } catch (UniqueViolation e) {
+                // Inserted concurrently, try again
+                saveCheckpoint(name, eventId);
+            }
+        }
+    }
+
+    public void deleteCheckpoint(String name) throws EventStoreException {
+        queries.update("delete from replay_checkpoint where name = ?", name);
+    }
+}
@@ -2,16 +2,22 @@ package com.oasisdigital.nges.event.jdbc;
 
 import java.sql.SQLException;
 
+import com.oasisdigital.nges.event.EventStoreConflict;
 import com.oasisdigital.nges.event.EventStoreException;
 
 class SQLExceptionTranslation {
     // http://www.postgresql.org/docs/9.3/static/errcodes-appendix.html
     private static final String UNIQUE_VIOLATION = "23505";
+    // Raised by NGES database functions, see db_schema
+    private static final String NGES_CONFLICT = "NG001";
 
     public static EventStoreException translate(SQLException e) {
         if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
             return new UniqueViolation(e);
         }
+        if (NGES_CONFLICT.equals(e.getSQLState())) {
+            return new EventStoreConflict(e.getMessage(), e);
+        }
         return new EventStoreException("Unable to execute query", e);
     }
 
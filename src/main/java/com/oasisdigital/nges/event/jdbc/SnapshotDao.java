@@ -0,0 +1,102 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.Snapshot;
+import com.oasisdigital.nges.event.SnapshotAndEvents;
+
+class SnapshotDao {
+    private final JdbcQueries queries;
+    private final EventLogDao eventLog;
+
+    public SnapshotDao(ConnectionSource connectionSource, EventLogDao eventLog) {
+        this.queries = new JdbcQueries(connectionSource);
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * @return false if there is no event with the snapshot's sequence in the stream
+     */
+    public boolean save(Snapshot snapshot) throws EventStoreException {
+        // With the archive the event may be gone from event_log, but sequences of a stream have no gaps.
+        String eventExists = eventLog.hasArchive()
+                ? "select 1 from event_stream_list where stream_id = ? and ? between 1 and last_seq_no"
+                : "select 1 from event_log where stream_id = ? and seq_no = ?";
+        // @formatter:off
+        return queries.update(
+                "insert into snapshot(stream_id, seq_no, type, payload) "
+              + "select ?, ?, ?, cast(? as json) "
+              + "where exists (" + eventExists + ")",
+                snapshot.getStreamId(),
+                snapshot.getSequence(),
+                snapshot.getType(),
+                snapshot.getPayload(),
+                snapshot.getStreamId(),
+                snapshot.getSequence()) > 0;
+        // @formatter:on
+    }
+
+    public Optional<Snapshot> getLatest(UUID streamId) throws EventStoreException {
+        return queries.queryForOptionalObject(
+                "select * from snapshot where stream_id = ? order by seq_no desc limit 1",
+                SnapshotDao::toSnapshot, streamId);
+    }
+
+    public SnapshotAndEvents getLatestWithEvents(UUID streamId, int limit) throws EventStoreException {
+        // The snapshot row (if any) comes first, followed by the events after it.
+        // @formatter:off
+        SnapshotAndEvents result = queries.query(
+                "with latest as ("
+              + "  select * from snapshot where stream_id = ? order by seq_no desc limit 1"
+              + ") "
+              + "select * from ("
+              + "  select true as is_snapshot, null::bigint as event_id, stream_id, seq_no, type, "
+              + "      null::uuid as correlation_id, transaction_time, payload::text, "
+              + "      null::jsonb as payload_jsonb, null::bytea as payload_bytes, null::varchar as payload_codec "
+              + "    from latest "
+              + "  union all "
+              + "  (select false, event_id, stream_id, seq_no, type, correlation_id, transaction_time, "
+              + "      payload::text, payload_jsonb, payload_bytes, payload_codec "
+              + "    from event_log "
+              + "    where stream_id = ? and seq_no > coalesce((select seq_no from latest), 0) "
+              + "    order by seq_no limit ?)"
+              + ") rows order by is_snapshot desc, seq_no",
+                rs -> {
+                    Optional<Snapshot> snapshot = Optional.empty();
+                    List<Event> events = new ArrayList<>();
+                    EventRowMapper mapper = eventLog.createRowMapper();
+                    while (rs.next()) {
+                        if (rs.getBoolean("is_snapshot")) {
+                            snapshot = Optional.of(toSnapshot(rs));
+                        } else {
+                            events.add(mapper.toEvent(rs));
+                        }
+                    }
+                    return new SnapshotAndEvents(snapshot, events);
+                },
+                streamId,
+                streamId,
+                limit);
+        // @formatter:on
+        long afterSequence = result.getSnapshot().map(Snapshot::getSequence).orElse(0L);
+        return new SnapshotAndEvents(result.getSnapshot(),
+                eventLog.withArchivedEventsForStream(streamId, afterSequence, limit, result.getEvents()));
+    }
+
+    public void deleteBefore(UUID streamId, long beforeSequence) throws EventStoreException {
+        queries.update("delete from snapshot where stream_id = ? and seq_no < ?", streamId, beforeSequence);
+    }
+
+    private static Snapshot toSnapshot(ResultSet rs) throws SQLException {
+        return new Snapshot(UUID.fromString(rs.getString("stream_id")), rs.getLong("seq_no"),
+                rs.getString("type"), rs.getString("payload"),
+                DateConverter.toOffsetDateTime(rs.getTimestamp("transaction_time")));
+    }
+}
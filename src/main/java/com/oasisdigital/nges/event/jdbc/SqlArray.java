@@ -0,0 +1,24 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.Collection;
+
+/**
+ * Query parameter bound as an SQL array, e.g. for <code>= any(?)</code> or <code>unnest(?)</code>.
+ */
+class SqlArray {
+    private final String typeName;
+    private final Object[] elements;
+
+    public SqlArray(String typeName, Collection<?> elements) {
+        this.typeName = typeName;
+        this.elements = elements.toArray();
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public Object[] getElements() {
+        return elements;
+    }
+}
@@ -0,0 +1,87 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static java.util.stream.Collectors.toCollection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * <p>
+ * Locks writes per stream (and per lease key), hashed into a fixed number of advisory lock stripes. Appends
+ * to streams in different stripes run in parallel.
+ * </p>
+ *
+ * <p>
+ * Since transactions no longer commit in the order of event IDs, every writer registers the IDs it's about
+ * to use until it commits, and readers of the whole log stop at {@link #getReadWatermark()}, just below the
+ * lowest ID still in flight. See <code>V2__striped_locking.sql</code> for the database side.
+ * </p>
+ */
+class StripedWriteLocking implements WriteLocking {
+    private static final int LOCK_NAMESPACE = 0x4E474553; // 'NGES'
+
+    private final JdbcQueries queries;
+    private final EventLogDao eventLog;
+    private final int stripes;
+
+    public StripedWriteLocking(ConnectionSource connectionSource, EventLogDao eventLog, int stripes) {
+        this.queries = new JdbcQueries(connectionSource);
+        this.eventLog = eventLog;
+        this.stripes = stripes;
+    }
+
+    @Override
+    public void lockForAppend(Collection<UUID> streamIds, Collection<String> leaseKeys)
+            throws EventStoreException {
+        lockStripes(Stream.concat(streamIds.stream(), leaseKeys.stream()));
+    }
+
+    @Override
+    public void lockForLease(String leaseKey) throws EventStoreException {
+        lockStripes(Stream.of(leaseKey));
+    }
+
+    @Override
+    public void lockForImport() throws EventStoreException {
+        lockStripeIds(IntStream.range(0, stripes).boxed().collect(toCollection(TreeSet::new)));
+        // Like nges_allocate_event_ids, but holding the allocation lock until the end of transaction.
+        queries.query("select pg_advisory_xact_lock(?, -1)", rs -> null, LOCK_NAMESPACE);
+        queries.query("select nges_register_in_flight(case when is_called then last_value + 1 "
+                + "else last_value end) from event_log_event_id_seq", rs -> null);
+    }
+
+    @Override
+    public List<Long> insertEvents(List<Event> events) throws EventStoreException {
+        List<Long> ids = queries.queryForList("select nges_allocate_event_ids(?)", rs -> rs.getLong(1),
+                events.size());
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).setEventId(ids.get(i));
+        }
+        return eventLog.saveWithIds(events);
+    }
+
+    @Override
+    public long getReadWatermark() throws EventStoreException {
+        return queries.queryForOptionalObject("select nges_read_watermark()", Long.class).orElse(0L);
+    }
+
+    private void lockStripes(Stream<Object> keys) {
+        lockStripeIds(
+                keys.map(key -> Math.floorMod(key.hashCode(), stripes)).collect(toCollection(TreeSet::new)));
+    }
+
+    private void lockStripeIds(SortedSet<Integer> stripeIds) {
+        // Always in the same order, to avoid deadlocks between transactions locking multiple stripes.
+        queries.query(
+                "select pg_advisory_xact_lock(?, s) from (select s from unnest(?) s order by s) stripes",
+                rs -> null, LOCK_NAMESPACE, new SqlArray("integer", stripeIds));
+    }
+}
@@ -0,0 +1,333 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.Subscribe;
+import com.oasisdigital.nges.cluster.EventUpdate;
+import com.oasisdigital.nges.cluster.EventsAppended;
+import com.oasisdigital.nges.cluster.MessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.util.LogThrottle;
+
+/**
+ * <p>
+ * Bounded in-memory cache of the most recent events in the log, shared by all readers of a
+ * {@link JdbcEventStore}. Reads of the tail of the log are served from memory when the requested range is
+ * resident, instead of each reader querying the database.
+ * </p>
+ *
+ * <p>
+ * The cache always holds a contiguous range of the log: all events with IDs in
+ * <code>(lowBound, highBound]</code>, so that the absence of an ID in that range means that no such event
+ * exists. It is extended by events saved through the store, by results of reads that missed the cache, and by
+ * fetching new events when an {@link EventUpdate} arrives. When the notification is an {@link EventsAppended}
+ * that connects to the cached range, its events are added without a fetch. It must be registered with the
+ * {@link MessageGroup} receiving those notifications, otherwise it can't tell whether it's up to date and
+ * only serves reads of ranges that are full.
+ * </p>
+ *
+ * <p>
+ * The oldest events are evicted once the cache holds more than the maximum number of events, or more than
+ * the maximum (approximate) number of bytes.
+ * </p>
+ */
+public class TailCache {
+    private static final long EVENT_OVERHEAD_BYTES = 200;
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final EventLoader loader;
+    private final int maxEvents;
+    private final long maxBytes;
+    private final LogThrottle throttle = new LogThrottle(1, TimeUnit.HOURS);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Ring buffer, sorted by event ID
+    private final Event[] events;
+    private int head;
+    private int size;
+    private long bytes;
+    private long lowBound = -1;
+    private long highBound = -1;
+
+    // Unknown until the first notification
+    private volatile long knownLastEventId = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    TailCache(EventLoader loader, int maxEvents, long maxBytes) {
+        this.loader = loader;
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.events = new Event[maxEvents];
+    }
+
+    /**
+     * Events after given event ID, or empty if the cache can't answer.
+     */
+    Optional<List<Event>> getEventsForAllStreams(long afterEventId, int limit) {
+        lock.readLock().lock();
+        try {
+            if (size > 0 && afterEventId >= lowBound && afterEventId <= highBound) {
+                List<Event> result = new ArrayList<>(Math.min(limit, size));
+                for (int i = indexAfter(afterEventId); i < size && result.size() < limit; i++) {
+                    result.add(new Event(get(i)));
+                }
+                if (result.size() == limit || isUpToDate()) {
+                    return hit(result);
+                }
+            }
+            return miss();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The most recent events, newest first, or empty if the cache can't answer.
+     */
+    Optional<List<Event>> getLatestEvents(int limit) {
+        lock.readLock().lock();
+        try {
+            if (isUpToDate() && (size >= limit || lowBound == 0)) {
+                List<Event> result = new ArrayList<>(Math.min(limit, size));
+                for (int i = size - 1; i >= 0 && result.size() < limit; i--) {
+                    result.add(new Event(get(i)));
+                }
+                return hit(result);
+            }
+            return miss();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Optional<Event> getEvent(long eventId) {
+        lock.readLock().lock();
+        try {
+            int index = indexAfter(eventId - 1);
+            if (size > 0 && eventId > lowBound && index < size && get(index).getEventId() == eventId) {
+                hits.incrementAndGet();
+                return Optional.of(new Event(get(index)));
+            }
+            misses.incrementAndGet();
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add the result of a read of all events after <code>afterEventId</code>. Such a result is complete up to
+     * its last event: no more events with lower IDs can appear later.
+     */
+    void putRange(long afterEventId, List<Event> range) {
+        if (range.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (size == 0 || afterEventId > highBound) {
+                // Not connected to what we have, start over with the newer range.
+                clear();
+                lowBound = afterEventId;
+                highBound = afterEventId;
+            } else if (afterEventId < lowBound) {
+                // Older than the tail, not interesting.
+                return;
+            }
+            range.stream().filter(event -> event.getEventId() > highBound).forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add events just committed by this store. They can only be appended if they directly follow the cached
+     * range, otherwise there might be other events in between. Either way the log is known to reach their
+     * IDs, so the cache is no longer up to date if it doesn't hold them.
+     */
+    void putSaved(List<Event> saved) {
+        if (saved.isEmpty() || saved.stream().anyMatch(event -> event.getTransactionTime() == null)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (size > 0 && saved.get(0).getEventId() == highBound + 1) {
+                saved.forEach(this::add);
+            }
+            long lastSavedId = saved.stream().mapToLong(Event::getEventId).max().getAsLong();
+            if (knownLastEventId >= 0 && lastSavedId > knownLastEventId) {
+                knownLastEventId = lastSavedId;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Subscribe
+    public void onEventUpdate(EventUpdate update) {
+        long eventId = update.getEventId();
+        knownLastEventId = Math.max(knownLastEventId, eventId);
+        long afterEventId;
+        lock.readLock().lock();
+        try {
+            if (size > 0 && highBound >= eventId) {
+                return;
+            }
+            // If we're too far behind, skip straight to the tail.
+            afterEventId = Math.max(size > 0 ? highBound : 0, eventId - maxEvents);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (update instanceof EventsAppended && putAppended((EventsAppended) update)) {
+            return;
+        }
+        try {
+            putRange(afterEventId, loader.load(afterEventId, maxEvents));
+        } catch (RuntimeException e) {
+            if (throttle.throttle(e)) {
+                log.error("Unable to fill tail cache: " + e);
+            } else {
+                log.error("Unable to fill tail cache", e);
+            }
+        }
+    }
+
+    /**
+     * Add the events carried by a notification, unless there might be other events between the cached range
+     * and them.
+     *
+     * @return true if the events have been added
+     */
+    private boolean putAppended(EventsAppended update) {
+        lock.writeLock().lock();
+        try {
+            if (size == 0 || !update.connectsTo(highBound)) {
+                return false;
+            }
+            update.getEvents().stream().filter(event -> event.getEventId() > highBound).forEach(this::add);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate memory used by cached events.
+     */
+    public long getBytes() {
+        lock.readLock().lock();
+        try {
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isUpToDate() {
+        long known = knownLastEventId;
+        return size > 0 && known >= 0 && highBound >= known;
+    }
+
+    private <T> Optional<T> hit(T result) {
+        hits.incrementAndGet();
+        return Optional.of(result);
+    }
+
+    private <T> Optional<T> miss() {
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    private Event get(int i) {
+        return events[(head + i) % events.length];
+    }
+
+    /**
+     * Index of the first event with ID greater than given, or <code>size</code> if there is none.
+     */
+    private int indexAfter(long eventId) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid).getEventId() <= eventId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void add(Event event) {
+        Event copy = new Event(event);
+        long eventBytes = estimateBytes(copy);
+        while (size > 0 && (size == maxEvents || bytes + eventBytes > maxBytes)) {
+            evict();
+        }
+        events[(head + size) % events.length] = copy;
+        size++;
+        bytes += eventBytes;
+        highBound = copy.getEventId();
+        if (knownLastEventId >= 0 && highBound > knownLastEventId) {
+            knownLastEventId = highBound;
+        }
+    }
+
+    private void evict() {
+        Event oldest = events[head];
+        events[head] = null;
+        head = (head + 1) % events.length;
+        size--;
+        bytes -= estimateBytes(oldest);
+        lowBound = oldest.getEventId();
+    }
+
+    private void clear() {
+        while (size > 0) {
+            evict();
+        }
+        head = 0;
+    }
+
+    private static long estimateBytes(Event event) {
+        long chars = (event.getType() == null ? 0 : event.getType().length())
+                + (event.getPayload() == null ? 0 : event.getPayload().length());
+        return EVENT_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    @FunctionalInterface
+    interface EventLoader {
+        List<Event> load(long afterEventId, int limit) throws EventStoreException;
+    }
+}
@@ -0,0 +1,44 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+
+/**
+ * Strategy for serializing writes to the store. All methods except {@link #getReadWatermark()} must be called
+ * in a transaction, and the locks are held until its end.
+ */
+interface WriteLocking {
+
+    /**
+     * Lock before appending to given streams, verifying given leases.
+     */
+    void lockForAppend(Collection<UUID> streamIds, Collection<String> leaseKeys) throws EventStoreException;
+
+    /**
+     * Lock before creating or renewing a lease.
+     */
+    void lockForLease(String leaseKey) throws EventStoreException;
+
+    /**
+     * Lock out all other writers, e.g. before a bulk import touching any number of streams. IDs generated by
+     * the database in this transaction are safe for readers once committed.
+     */
+    void lockForImport() throws EventStoreException;
+
+    /**
+     * Insert new events to the log, keeping the order of IDs consistent with what readers may observe.
+     *
+     * @return IDs of the new events, in the same order as the input list.
+     */
+    List<Long> insertEvents(List<Event> events) throws EventStoreException;
+
+    /**
+     * @return the highest event ID that can be read without the risk of another event with a lower ID being
+     *         committed later
+     */
+    long getReadWatermark() throws EventStoreException;
+}
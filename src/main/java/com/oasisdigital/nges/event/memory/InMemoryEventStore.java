@@ -0,0 +1,623 @@
+package com.oasisdigital.nges.event.memory;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import com.google.common.base.Preconditions;
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventFilter;
+import com.oasisdigital.nges.event.EventPage;
+import com.oasisdigital.nges.event.EventStore;
+import com.oasisdigital.nges.event.EventStoreConflict;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.EventStream;
+import com.oasisdigital.nges.event.Lease;
+import com.oasisdigital.nges.event.ReadDirection;
+import com.oasisdigital.nges.event.StreamAppend;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+import com.oasisdigital.nges.event.internal.LeaseTable;
+import com.oasisdigital.nges.event.internal.PositionTokens;
+import com.oasisdigital.nges.event.internal.SaveValidation;
+import com.oasisdigital.nges.event.jdbc.JdbcEventStore;
+
+/**
+ * <p>
+ * {@link EventStore} implementation keeping everything in memory, like {@link InMemoryMessageGroup}. May be
+ * useful for tests, for benchmarks of code using the store, or for development. Nothing survives the
+ * process.
+ * </p>
+ *
+ * <p>
+ * Saves don't take locks. A save claims the next sequence numbers of its stream by swapping the head of the
+ * stream with compare-and-set, for optimistic concurrency control, and reserves a block of event IDs from a
+ * global counter. Events are visible to readers once all the events before them are written, so readers
+ * never see a part of a save or a gap that is filled later. Saves of many streams lock the heads of their
+ * streams, in a fixed order, only making saves of the same streams wait. Reads don't wait at all.
+ * </p>
+ *
+ * <p>
+ * Event IDs that were reserved by a save that lost the race for its stream are left out, so there can be
+ * holes between event IDs, like in {@link JdbcEventStore}. Conflicts, leases and
+ * {@link EventStoreStatusPublisher} notifications work the same way as there.
+ * </p>
+ */
+public class InMemoryEventStore implements EventStore {
+    // Marks the slots of event IDs that have been reserved, but not used
+    private static final Event HOLE = new Event();
+
+    private final EventStoreStatusPublisher statusPublisher;
+    private final SlotArray<Event> log = new SlotArray<>(10);
+    private final int maxEvents;
+    private final ConcurrentMap<UUID, StreamIndex> streams = new ConcurrentHashMap<>();
+    private final AtomicLong reservedEventId = new AtomicLong();
+    // All slots up to this ID are filled in, events up to it are visible
+    private final AtomicLong publishedEventId = new AtomicLong();
+    private final LeaseTable leases = new LeaseTable();
+    // Held for reading by saves with leases, for writing by changes of leases
+    private final StampedLock leaseLock = new StampedLock();
+
+    /**
+     * Create a store that doesn't publish notifications about new events.
+     */
+    public InMemoryEventStore() {
+        this(null);
+    }
+
+    public InMemoryEventStore(EventStoreStatusPublisher statusPublisher) {
+        this.statusPublisher = statusPublisher;
+        this.maxEvents = log.capacity();
+    }
+
+    /**
+     * Create a store holding at most <code>maxEvents</code> event IDs, for tests.
+     */
+    InMemoryEventStore(EventStoreStatusPublisher statusPublisher, int maxEvents) {
+        Preconditions.checkArgument(maxEvents > 0 && maxEvents <= log.capacity());
+
+        this.statusPublisher = statusPublisher;
+        this.maxEvents = maxEvents;
+    }
+
+    @Override
+    public List<Long> save(List<Event> events, String streamType, long lastSequence)
+            throws EventStoreException {
+        return save(events, streamType, lastSequence, Collections.emptyList(), "");
+    }
+
+    @Override
+    public List<Long> save(List<Event> events, String streamType, long lastSequence,
+            Collection<String> leaseKeys, String leaseOwnerKey) throws EventStoreException {
+        SaveValidation.checkSave(events, lastSequence);
+        if (events.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long stamp = leaseKeys.isEmpty() ? 0 : leaseLock.readLock();
+        try {
+            if (stamp != 0 && !leases.verifyLeases(leaseKeys, leaseOwnerKey)) {
+                return Collections.emptyList();
+            }
+            return append(events, streamType, lastSequence);
+        } finally {
+            if (stamp != 0) {
+                leaseLock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private List<Long> append(List<Event> events, String streamType, long lastSequence) {
+        UUID streamId = events.get(0).getStreamId();
+        StreamIndex stream = lastSequence > 0 ? streams.get(streamId) : getOrCreateStream(streamId);
+        if (stream == null) {
+            throw new EventStoreConflict("Uninitialized stream or concurrent modification: " + streamId);
+        }
+        int count = events.size();
+        long firstEventId = 0;
+        boolean published = false;
+        try {
+            StreamIndex.Head head;
+            while (true) {
+                head = stream.awaitUnlocked();
+                long _lastSequence = lastSequence == AUTO_GENERATE_SEQUENCE ? head.sequence : lastSequence;
+                Optional<String> conflict = SaveValidation.findConflict(streamId, streamType, _lastSequence,
+                        head.streamType, head.sequence);
+                if (conflict.isPresent()) {
+                    throw new EventStoreConflict(conflict.get());
+                }
+                if (firstEventId <= head.lastEventId) {
+                    // Event IDs must grow with sequence numbers, these are too late for the stream now
+                    if (firstEventId > 0) {
+                        fillHoles(firstEventId, count);
+                        firstEventId = 0;
+                    }
+                    firstEventId = reserve(count);
+                }
+                StreamIndex.Head claimed = new StreamIndex.Head(
+                        head.streamType != null ? head.streamType : streamType, head.sequence + count,
+                        firstEventId + count - 1, false);
+                if (stream.compareAndSetHead(head, claimed)) {
+                    break;
+                }
+            }
+
+            OffsetDateTime transactionTime = OffsetDateTime.now();
+            List<Event> stored = new ArrayList<>(count);
+            List<Long> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Event event = events.get(i);
+                event.setEventId(firstEventId + i);
+                event.setSequence(head.sequence + i + 1);
+                event.setTransactionTime(transactionTime);
+                Event copy = new Event(event);
+                stream.setEvent(copy);
+                stored.add(copy);
+                ids.add(copy.getEventId());
+            }
+            published = true;
+            publish(firstEventId, stored);
+            return ids;
+        } finally {
+            // Reserved IDs left unused would stop the published event ID, and all saves after them, for good
+            if (firstEventId > 0 && !published) {
+                fillHoles(firstEventId, count);
+            }
+        }
+    }
+
+    @Override
+    public Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends) throws EventStoreException {
+        return saveAll(appends, Collections.emptyList(), "");
+    }
+
+    @Override
+    public Map<UUID, List<Long>> saveAll(Map<UUID, StreamAppend> appends, Collection<String> leaseKeys,
+            String leaseOwnerKey) throws EventStoreException {
+        Map<UUID, StreamAppend> nonEmpty = SaveValidation.checkSaveAll(appends);
+        if (nonEmpty.isEmpty()) {
+            return SaveValidation.emptyIds(appends);
+        }
+        long stamp = leaseKeys.isEmpty() ? 0 : leaseLock.readLock();
+        try {
+            if (stamp != 0 && !leases.verifyLeases(leaseKeys, leaseOwnerKey)) {
+                return Collections.emptyMap();
+            }
+            Map<UUID, List<Long>> result = SaveValidation.emptyIds(appends);
+            result.putAll(appendAll(nonEmpty));
+            return result;
+        } finally {
+            if (stamp != 0) {
+                leaseLock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private Map<UUID, List<Long>> appendAll(Map<UUID, StreamAppend> appends) {
+        // Locked in a fixed order, so that saves of overlapping streams can't wait for each other
+        Map<UUID, StreamIndex> locked = new TreeMap<>();
+        Map<UUID, StreamIndex.Head> heads = new HashMap<>();
+        try {
+            for (UUID streamId : new TreeMap<>(appends).keySet()) {
+                StreamIndex stream = appends.get(streamId).getLastSequence() > 0 ? streams.get(streamId)
+                        : getOrCreateStream(streamId);
+                if (stream != null) {
+                    heads.put(streamId, stream.lock());
+                    locked.put(streamId, stream);
+                }
+            }
+
+            SaveValidation.verifyLastSequences(appends,
+                    streamId -> heads.getOrDefault(streamId, StreamIndex.Head.EMPTY).streamType,
+                    streamId -> heads.getOrDefault(streamId, StreamIndex.Head.EMPTY).sequence);
+
+            int count = appends.values().stream().mapToInt(append -> append.getEvents().size()).sum();
+            long firstEventId = reserve(count);
+            boolean published = false;
+            try {
+                long eventId = firstEventId;
+                OffsetDateTime transactionTime = OffsetDateTime.now();
+                List<Event> stored = new ArrayList<>(count);
+                Map<UUID, List<Long>> ids = new LinkedHashMap<>();
+                for (Map.Entry<UUID, StreamAppend> entry : appends.entrySet()) {
+                    StreamIndex stream = locked.get(entry.getKey());
+                    StreamIndex.Head head = heads.get(entry.getKey());
+                    List<Event> events = entry.getValue().getEvents();
+                    List<Long> streamIds = new ArrayList<>();
+                    for (int i = 0; i < events.size(); i++) {
+                        Event event = events.get(i);
+                        event.setEventId(eventId++);
+                        event.setSequence(head.sequence + i + 1);
+                        event.setTransactionTime(transactionTime);
+                        Event copy = new Event(event);
+                        stream.setEvent(copy);
+                        stored.add(copy);
+                        streamIds.add(copy.getEventId());
+                    }
+                    ids.put(entry.getKey(), streamIds);
+                    heads.put(entry.getKey(), new StreamIndex.Head(entry.getValue().getStreamType(),
+                            head.sequence + events.size(), eventId - 1, false));
+                }
+                unlock(locked, heads);
+                published = true;
+                publish(firstEventId, stored);
+                return ids;
+            } finally {
+                if (!published) {
+                    fillHoles(firstEventId, count);
+                }
+            }
+        } finally {
+            unlock(locked, heads);
+        }
+    }
+
+    private static void unlock(Map<UUID, StreamIndex> locked, Map<UUID, StreamIndex.Head> heads) {
+        locked.forEach((streamId, stream) -> stream.unlock(heads.get(streamId)));
+        locked.clear();
+    }
+
+    /**
+     * @return the first of <code>count</code> consecutive event IDs
+     * @throws EventStoreException
+     *             if there is no room for them, without reserving any
+     */
+    private long reserve(int count) {
+        while (true) {
+            long reserved = reservedEventId.get();
+            if (reserved + count > maxEvents) {
+                throw new EventStoreException("The store is full");
+            }
+            if (reservedEventId.compareAndSet(reserved, reserved + count)) {
+                return reserved + 1;
+            }
+        }
+    }
+
+    private void fillHoles(long firstEventId, int count) {
+        publish(firstEventId, Collections.nCopies(count, HOLE));
+    }
+
+    /**
+     * Fill in the slots of reserved event IDs and wait until they are visible to readers, that is until the
+     * saves with lower IDs running concurrently fill in theirs too.
+     */
+    private void publish(long firstEventId, List<Event> events) {
+        // The first slot last: when it's filled in, so are the others, and the events become visible at once.
+        for (int i = events.size() - 1; i >= 0; i--) {
+            log.set((int) (firstEventId + i - 1), events.get(i));
+        }
+        long lastEventId = firstEventId + events.size() - 1;
+        while (advance() < lastEventId) {
+            Thread.yield();
+        }
+        if (statusPublisher != null && events.get(0) != HOLE) {
+            statusPublisher.publishSavedEvents(events);
+        }
+    }
+
+    /**
+     * Move the published event ID over the slots filled in after it. Every writer calls it after filling in
+     * its slots, so the last one to fill in a gap moves it past the slots filled in by the others.
+     *
+     * @return the published event ID
+     */
+    private long advance() {
+        while (true) {
+            long published = publishedEventId.get();
+            long end = published;
+            while (end < reservedEventId.get() && log.get((int) end) != null) {
+                end++;
+            }
+            if (end == published || publishedEventId.compareAndSet(published, end)) {
+                return end;
+            }
+        }
+    }
+
+    private StreamIndex getOrCreateStream(UUID streamId) {
+        StreamIndex stream = streams.get(streamId);
+        if (stream == null) {
+            StreamIndex created = new StreamIndex(streamId);
+            stream = streams.putIfAbsent(streamId, created);
+            if (stream == null) {
+                stream = created;
+            }
+        }
+        return stream;
+    }
+
+    @Override
+    public Event getEvent(long eventId) throws EventStoreException {
+        Event event = eventId >= 1 && eventId <= publishedEventId.get() ? log.get((int) (eventId - 1)) : null;
+        if (event == null || event == HOLE) {
+            throw new EventStoreException("No event with ID " + eventId);
+        }
+        return new Event(event);
+    }
+
+    @Override
+    public Map<Long, Event> getEvents(Collection<Long> eventIds) throws EventStoreException {
+        Preconditions.checkNotNull(eventIds);
+
+        long published = publishedEventId.get();
+        Map<Long, Event> events = new TreeMap<>();
+        for (long eventId : eventIds) {
+            Event event = eventId >= 1 && eventId <= published ? log.get((int) (eventId - 1)) : null;
+            if (event != null && event != HOLE) {
+                events.put(eventId, new Event(event));
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getLatestEvents(int limit) throws EventStoreException {
+        return getEventsForAllStreamsBackward(Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreams(long afterEventId, int limit) throws EventStoreException {
+        return getEventsForAllStreams(afterEventId, limit, EventFilter.ALL);
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreams(long afterEventId, int limit, EventFilter filter)
+            throws EventStoreException {
+        long published = publishedEventId.get();
+        List<Event> events = new ArrayList<>();
+        for (long eventId = Math.max(afterEventId, 0) + 1; eventId <= published
+                && events.size() < limit; eventId++) {
+            Event event = log.get((int) (eventId - 1));
+            if (event != HOLE && matches(event, filter)) {
+                events.add(new Event(event));
+            }
+        }
+        return events;
+    }
+
+    private boolean matches(Event event, EventFilter filter) {
+        return (filter.getEventTypes().isEmpty() || filter.getEventTypes().contains(event.getType()))
+                && (filter.getStreamTypes().isEmpty() || filter.getStreamTypes()
+                        .contains(streams.get(event.getStreamId()).getStreamType()));
+    }
+
+    /**
+     * Only includes events visible at the time of the call, <code>fetchSize</code> makes no difference.
+     */
+    @Override
+    public Stream<Event> streamEventsForAllStreams(long afterEventId, int fetchSize)
+            throws EventStoreException {
+        Preconditions.checkArgument(fetchSize > 0);
+
+        return streamEvents(Math.max(afterEventId, 0) + 1, publishedEventId.get());
+    }
+
+    /**
+     * Transaction times of concurrent saves are not ordered by event ID, so the whole log is scanned.
+     */
+    @Override
+    public Stream<Event> getEventsBetween(OffsetDateTime from, OffsetDateTime to) throws EventStoreException {
+        Preconditions.checkNotNull(from);
+        Preconditions.checkNotNull(to);
+
+        return streamEvents(1, publishedEventId.get())
+                .filter(event -> !event.getTransactionTime().isBefore(from))
+                .filter(event -> event.getTransactionTime().isBefore(to));
+    }
+
+    private Stream<Event> streamEvents(long fromEventId, long toEventId) {
+        return LongStream.rangeClosed(fromEventId, toEventId)
+                .mapToObj(eventId -> log.get((int) (eventId - 1)))
+                .filter(event -> event != HOLE)
+                .map(Event::new);
+    }
+
+    @Override
+    public List<Event> getEventsForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException {
+        StreamIndex stream = streams.get(streamId);
+        if (stream == null) {
+            return Collections.emptyList();
+        }
+        long lastSequence = stream.getLastSequence(publishedEventId.get());
+        List<Event> events = new ArrayList<>();
+        for (long sequence = Math.max(afterSequenceId, 0) + 1; sequence <= lastSequence
+                && events.size() < limit; sequence++) {
+            events.add(new Event(stream.getEvent(sequence)));
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getEventsForStreamBackward(UUID streamId, long beforeSequenceId, int limit)
+            throws EventStoreException {
+        StreamIndex stream = streams.get(streamId);
+        if (stream == null) {
+            return Collections.emptyList();
+        }
+        List<Event> events = new ArrayList<>();
+        for (long sequence = Math.min(beforeSequenceId - 1, stream.getLastSequence(publishedEventId.get()));
+                sequence >= 1 && events.size() < limit; sequence--) {
+            events.add(new Event(stream.getEvent(sequence)));
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> getEventsForAllStreamsBackward(long beforeEventId, int limit)
+            throws EventStoreException {
+        List<Event> events = new ArrayList<>();
+        for (long eventId = Math.min(beforeEventId - 1, publishedEventId.get()); eventId >= 1
+                && events.size() < limit; eventId--) {
+            Event event = log.get((int) (eventId - 1));
+            if (event != HOLE) {
+                events.add(new Event(event));
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public EventPage readStream(UUID streamId, ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException {
+        Preconditions.checkNotNull(streamId);
+        Preconditions.checkNotNull(direction);
+
+        long position = positionToken == null ? PositionTokens.start(direction)
+                : PositionTokens.parseStream(positionToken, streamId);
+        List<Event> events = direction == ReadDirection.FORWARD
+                ? getEventsForStream(streamId, position, limit)
+                : getEventsForStreamBackward(streamId, position, limit);
+        return PositionTokens.toPage(events, direction, position, Event::getSequence,
+                sequence -> PositionTokens.forStream(streamId, sequence));
+    }
+
+    @Override
+    public EventPage readAllStreams(ReadDirection direction, String positionToken, int limit)
+            throws EventStoreException {
+        Preconditions.checkNotNull(direction);
+
+        long position = positionToken == null ? PositionTokens.start(direction)
+                : PositionTokens.parseAllStreams(positionToken);
+        List<Event> events = direction == ReadDirection.FORWARD ? getEventsForAllStreams(position, limit)
+                : getEventsForAllStreamsBackward(position, limit);
+        return PositionTokens.toPage(events, direction, position, Event::getEventId,
+                PositionTokens::forAllStreams);
+    }
+
+    @Override
+    public Map<UUID, List<Event>> getEventsForStreams(Map<UUID, Long> afterSequenceIds, int limitPerStream)
+            throws EventStoreException {
+        Preconditions.checkNotNull(afterSequenceIds);
+        Preconditions.checkArgument(limitPerStream > 0);
+
+        Map<UUID, List<Event>> events = new LinkedHashMap<>();
+        afterSequenceIds.forEach((streamId, afterSequenceId) -> events.put(streamId,
+                getEventsForStream(streamId, afterSequenceId, limitPerStream)));
+        return events;
+    }
+
+    /**
+     * Same as {@link #getEventsForAllStreams(long, int)}, the payloads are in memory anyway.
+     */
+    @Override
+    public List<Event> getEventHeadersForAllStreams(long afterEventId, int limit) throws EventStoreException {
+        return getEventsForAllStreams(afterEventId, limit);
+    }
+
+    /**
+     * Same as {@link #getEventsForStream(UUID, long, int)}, the payloads are in memory anyway.
+     */
+    @Override
+    public List<Event> getEventHeadersForStream(UUID streamId, long afterSequenceId, int limit)
+            throws EventStoreException {
+        return getEventsForStream(streamId, afterSequenceId, limit);
+    }
+
+    @Override
+    public Optional<Long> getLastEventId() throws EventStoreException {
+        long eventId = publishedEventId.get();
+        while (eventId > 0 && log.get((int) (eventId - 1)) == HOLE) {
+            eventId--;
+        }
+        return eventId == 0 ? Optional.empty() : Optional.of(eventId);
+    }
+
+    @Override
+    public Optional<Long> getLastSequence(UUID streamId) throws EventStoreException {
+        StreamIndex stream = streams.get(streamId);
+        long lastSequence = stream == null ? 0 : stream.getLastSequence(publishedEventId.get());
+        return lastSequence == 0 ? Optional.empty() : Optional.of(lastSequence);
+    }
+
+    @Override
+    public long getStreamCount(String streamType) throws EventStoreException {
+        long published = publishedEventId.get();
+        return streams.values().stream().filter(
+                stream -> streamType.equals(stream.getStreamType()) && stream.getLastSequence(published) > 0)
+                .count();
+    }
+
+    @Override
+    public EventStream findByStreamId(UUID id) throws EventStoreException {
+        StreamIndex stream = streams.get(id);
+        long lastSequence = stream == null ? 0 : stream.getLastSequence(publishedEventId.get());
+        if (lastSequence == 0) {
+            throw new EventStoreException("No stream with ID " + id);
+        }
+        return toEventStream(stream, lastSequence);
+    }
+
+    @Override
+    public Map<UUID, EventStream> findByStreamIds(Collection<UUID> ids) throws EventStoreException {
+        Preconditions.checkNotNull(ids);
+
+        long published = publishedEventId.get();
+        Map<UUID, EventStream> result = new HashMap<>();
+        for (UUID id : ids) {
+            StreamIndex stream = streams.get(id);
+            long lastSequence = stream == null ? 0 : stream.getLastSequence(published);
+            if (lastSequence > 0) {
+                result.put(id, toEventStream(stream, lastSequence));
+            }
+        }
+        return result;
+    }
+
+    private EventStream toEventStream(StreamIndex stream, long lastSequence) {
+        Event last = stream.getEvent(lastSequence);
+        EventStream result = new EventStream();
+        result.setStreamId(stream.getStreamId());
+        result.setStreamType(stream.getStreamType());
+        result.setLastEventId(last.getEventId());
+        result.setLastTransactionTime(last.getTransactionTime());
+        result.setLastSeqNo(lastSequence);
+        return result;
+    }
+
+    // Leases are changed under the write lock, so that they can't change while a save with leases is running.
+
+    @Override
+    public Lease lease(String leaseKey, String ownerKey, long leaseDurationMs) {
+        long stamp = leaseLock.writeLock();
+        try {
+            return leases.lease(leaseKey, ownerKey, leaseDurationMs);
+        } finally {
+            leaseLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Lease renewLease(String leaseKey, String ownerKey, long leaseDurationMs) {
+        long stamp = leaseLock.writeLock();
+        try {
+            return leases.renewLease(leaseKey, ownerKey, leaseDurationMs);
+        } finally {
+            leaseLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void release(String leaseKey, String ownerKey) {
+        long stamp = leaseLock.writeLock();
+        try {
+            leases.release(leaseKey, ownerKey);
+        } finally {
+            leaseLock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.oasisdigital.nges.event.memory;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Array of references that grows without copying and without locks, for any number of concurrent writers
+ * and readers. Slots are empty (<code>null</code>) until set.
+ * </p>
+ *
+ * <p>
+ * The slots are kept in buckets of growing size: the first one holds <code>2^firstBucketBits</code> slots,
+ * every next one twice as many as the one before. A bucket is allocated by the first writer that needs it.
+ * </p>
+ */
+class SlotArray<E> {
+    private final int firstBucketBits;
+    private final AtomicReferenceArray<AtomicReferenceArray<E>> buckets;
+
+    SlotArray(int firstBucketBits) {
+        Preconditions.checkArgument(firstBucketBits >= 0 && firstBucketBits < 30);
+
+        this.firstBucketBits = firstBucketBits;
+        this.buckets = new AtomicReferenceArray<>(31 - firstBucketBits);
+    }
+
+    /**
+     * @return the maximum number of slots
+     */
+    int capacity() {
+        return Integer.MAX_VALUE - (1 << firstBucketBits) + 1;
+    }
+
+    E get(int index) {
+        int position = index + (1 << firstBucketBits);
+        AtomicReferenceArray<E> bucket = buckets.get(bucketOf(position));
+        return bucket == null ? null : bucket.get(position - Integer.highestOneBit(position));
+    }
+
+    /**
+     * Set the slot with a volatile write: whatever the writer did before is visible to the readers that see
+     * the value.
+     */
+    void set(int index, E value) {
+        Preconditions.checkElementIndex(index, capacity());
+
+        int position = index + (1 << firstBucketBits);
+        int bucketIndex = bucketOf(position);
+        AtomicReferenceArray<E> bucket = buckets.get(bucketIndex);
+        if (bucket == null) {
+            AtomicReferenceArray<E> allocated = new AtomicReferenceArray<>(Integer.highestOneBit(position));
+            // Another writer may have allocated it in the meantime
+            if (!buckets.compareAndSet(bucketIndex, null, allocated)) {
+                allocated = buckets.get(bucketIndex);
+            }
+            bucket = allocated;
+        }
+        bucket.set(position - Integer.highestOneBit(position), value);
+    }
+
+    private int bucketOf(int position) {
+        return 31 - Integer.numberOfLeadingZeros(position) - firstBucketBits;
+    }
+}
@@ -0,0 +1,134 @@
+package com.oasisdigital.nges.event.memory;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.oasisdigital.nges.event.Event;
+
+/**
+ * <p>
+ * The events of one stream of {@link InMemoryEventStore}, by sequence number, and the {@link Head} of the
+ * stream. Writers claim sequence numbers by swapping the head with compare-and-set, then fill the slots of
+ * the claimed events.
+ * </p>
+ *
+ * <p>
+ * A claimed event is only visible to readers once the store has published its ID, so readers pass the ID of
+ * the last published event and skip the rest.
+ * </p>
+ */
+class StreamIndex {
+    private final UUID streamId;
+    private final AtomicReference<Head> head = new AtomicReference<>(Head.EMPTY);
+    private final SlotArray<Event> events = new SlotArray<>(2);
+
+    StreamIndex(UUID streamId) {
+        this.streamId = streamId;
+    }
+
+    UUID getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * @return the type of the stream, <code>null</code> until the first save of the stream claims it
+     */
+    String getStreamType() {
+        return head.get().streamType;
+    }
+
+    Head getHead() {
+        return head.get();
+    }
+
+    boolean compareAndSetHead(Head expected, Head head) {
+        return this.head.compareAndSet(expected, head);
+    }
+
+    /**
+     * @return the current head, once it's not locked by a save of many streams
+     */
+    Head awaitUnlocked() {
+        Head current;
+        while ((current = head.get()).locked) {
+            Thread.yield();
+        }
+        return current;
+    }
+
+    /**
+     * Lock the stream for a save of many streams, waiting for another one to finish first. Saves of a single
+     * stream wait until the stream is unlocked by {@link #unlock(Head)}.
+     *
+     * @return the head before locking
+     */
+    Head lock() {
+        while (true) {
+            Head current = awaitUnlocked();
+            if (head.compareAndSet(current, current.locked())) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Replace the head set by {@link #lock()}.
+     */
+    void unlock(Head head) {
+        this.head.set(head);
+    }
+
+    /**
+     * @return the sequence number of the last published event, 0 if there is none
+     */
+    long getLastSequence(long publishedEventId) {
+        long sequence = head.get().sequence;
+        while (sequence > 0 && !isPublished(getEvent(sequence), publishedEventId)) {
+            sequence--;
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the event with given sequence number, if it has been filled in
+     */
+    Event getEvent(long sequence) {
+        return events.get((int) (sequence - 1));
+    }
+
+    void setEvent(Event event) {
+        if (event.getSequence() > events.capacity()) {
+            throw new IllegalStateException("Too many events in stream " + streamId);
+        }
+        events.set((int) (event.getSequence() - 1), event);
+    }
+
+    private static boolean isPublished(Event event, long publishedEventId) {
+        return event != null && event.getEventId() <= publishedEventId;
+    }
+
+    /**
+     * Immutable state of a stream, swapped as a whole.
+     */
+    static class Head {
+        static final Head EMPTY = new Head(null, 0, 0, false);
+
+        final String streamType;
+        /** Sequence number of the last claimed event */
+        final long sequence;
+        /** ID of the last claimed event, event IDs grow with sequence numbers */
+        final long lastEventId;
+        final boolean locked;
+
+        Head(String streamType, long sequence, long lastEventId, boolean locked) {
+            this.streamType = streamType;
+            this.sequence = sequence;
+            this.lastEventId = lastEventId;
+            this.locked = locked;
+        }
+
+        Head locked() {
+            return new Head(streamType, sequence, lastEventId, true);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.oasisdigital.nges.event.subscription;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.eventbus.Subscribe;
+import com.oasisdigital.nges.cluster.EventUpdate;
+import com.oasisdigital.nges.cluster.EventsAppended;
+import com.oasisdigital.nges.cluster.MessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStore;
+import com.oasisdigital.nges.event.EventStoreStatusHeartbeat;
+import com.oasisdigital.nges.event.util.LogThrottle;
+
+/**
+ * <p>
+ * Delivers all events after a given position to an {@link EventHandler}: first everything already in the
+ * store ("catch-up" mode), then new events as they arrive ("live" mode).
+ * </p>
+ *
+ * <p>
+ * In catch-up mode the events are fetched in batches that grow from {@link #DEFAULT_MIN_BATCH_SIZE} up to
+ * {@link #DEFAULT_MAX_BATCH_SIZE} as long as they come back full. In live mode the subscription only polls
+ * the store when an {@link EventUpdate} from the {@link MessageGroup} announces an event after its position,
+ * so idle subscribers don't query the database at all. The {@link EventStoreStatusHeartbeat} republishes the
+ * last event ID at regular intervals, which recovers from lost notifications. If no notification arrives for
+ * {@link #DEFAULT_FALLBACK_POLL_INTERVAL} milliseconds, the subscription polls anyway.
+ * </p>
+ *
+ * <p>
+ * In live mode, the events carried by an {@link EventsAppended} notification are delivered straight away,
+ * without querying the store, as long as they follow the position of the subscription. If there is a gap
+ * between them, the subscription polls the store instead.
+ * </p>
+ *
+ * <p>
+ * The handler is called on a single thread owned by the subscription. If it throws, the subscription keeps
+ * the position of the last successfully handled event and retries on the next poll.
+ * </p>
+ */
+public class CatchUpSubscription {
+    public static final int DEFAULT_MIN_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10_000;
+    public static final long DEFAULT_FALLBACK_POLL_INTERVAL = 30_000;
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final EventStore eventStore;
+    private final MessageGroup messageGroup;
+    private final EventHandler handler;
+    private final LogThrottle throttle = new LogThrottle(1, TimeUnit.HOURS);
+    private final AtomicBoolean pollScheduled = new AtomicBoolean();
+
+    private int minBatchSize = DEFAULT_MIN_BATCH_SIZE;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long fallbackPollIntervalMs = DEFAULT_FALLBACK_POLL_INTERVAL;
+
+    private ScheduledExecutorService executor;
+
+    private volatile long position;
+    private volatile long knownLastEventId;
+    private volatile long lastNotificationNanos = System.nanoTime();
+    private volatile boolean live;
+    private volatile int batchSize;
+    private volatile long pollCount;
+    private volatile long handledCount;
+    private volatile long notifiedCount;
+
+    /**
+     * @param afterEventId
+     *            position to start from, the first event delivered to the handler is the one after it
+     */
+    public CatchUpSubscription(EventStore eventStore, MessageGroup messageGroup, long afterEventId,
+            EventHandler handler) {
+        this.eventStore = eventStore;
+        this.messageGroup = messageGroup;
+        this.handler = handler;
+        this.position = afterEventId;
+        this.knownLastEventId = afterEventId;
+    }
+
+    synchronized public void setBatchSize(int minBatchSize, int maxBatchSize) {
+        Preconditions.checkArgument(minBatchSize > 0 && minBatchSize <= maxBatchSize);
+        Preconditions.checkState(executor == null, "Must be called before start()");
+
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    synchronized public void setFallbackPollIntervalMs(long fallbackPollIntervalMs) {
+        Preconditions.checkArgument(fallbackPollIntervalMs > 0);
+        Preconditions.checkState(executor == null, "Must be called before start()");
+
+        this.fallbackPollIntervalMs = fallbackPollIntervalMs;
+    }
+
+    synchronized public void start() {
+        Preconditions.checkState(executor == null, "Already started");
+
+        batchSize = minBatchSize;
+        executor = Executors.newSingleThreadScheduledExecutor();
+        messageGroup.registerSubscriber(this);
+        schedulePoll();
+        executor.scheduleWithFixedDelay(this::pollIfNotNotified, fallbackPollIntervalMs,
+                fallbackPollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized public void stop() {
+        if (executor != null) {
+            messageGroup.unregisterSubscriber(this);
+            executor.shutdownNow();
+        }
+    }
+
+    @Subscribe
+    public void onEventUpdate(EventUpdate update) {
+        lastNotificationNanos = System.nanoTime();
+        if (update.getEventId() > knownLastEventId) {
+            knownLastEventId = update.getEventId();
+        }
+        // Nothing new for us, e.g. a heartbeat or a notification about events we have already fetched.
+        if (update.getEventId() > position) {
+            if (live && update instanceof EventsAppended) {
+                executor.execute(() -> deliver((EventsAppended) update));
+            } else {
+                schedulePoll();
+            }
+        }
+    }
+
+    /**
+     * Deliver the events of the notification, or poll if they don't follow the current position.
+     */
+    private void deliver(EventsAppended update) {
+        if (!live || !update.connectsTo(position)) {
+            poll();
+            return;
+        }
+        try {
+            for (Event event : update.getEvents()) {
+                if (event.getEventId() > position) {
+                    handler.handle(new Event(event));
+                    position = event.getEventId();
+                    handledCount++;
+                    notifiedCount++;
+                }
+            }
+        } catch (Exception e) {
+            logFailure(e);
+        }
+    }
+
+    private void schedulePoll() {
+        // At most one poll waiting at a time, a burst of notifications is handled by a single poll.
+        if (pollScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                pollScheduled.set(false);
+                poll();
+            });
+        }
+    }
+
+    private void pollIfNotNotified() {
+        long silenceMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastNotificationNanos);
+        if (silenceMs >= fallbackPollIntervalMs) {
+            poll();
+        }
+    }
+
+    private void poll() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Event> events = eventStore.getEventsForAllStreams(position, batchSize);
+                pollCount++;
+                for (Event event : events) {
+                    handler.handle(event);
+                    position = event.getEventId();
+                    handledCount++;
+                }
+                if (position > knownLastEventId) {
+                    knownLastEventId = position;
+                }
+                if (events.size() < batchSize) {
+                    // Caught up with everything visible in the store.
+                    live = true;
+                    batchSize = minBatchSize;
+                    return;
+                }
+                live = false;
+                batchSize = Math.min(batchSize * 2, maxBatchSize);
+            }
+        } catch (Exception e) {
+            // Back to small batches, in case the batch size is what's causing trouble.
+            live = false;
+            batchSize = minBatchSize;
+            logFailure(e);
+        }
+    }
+
+    private void logFailure(Exception e) {
+        if (throttle.throttle(e)) {
+            log.error("Subscription failed at event " + position + ": " + e);
+        } else {
+            log.error("Subscription failed at event " + position, e);
+        }
+    }
+
+    /**
+     * ID of the last event delivered to the handler.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * ID of the most recent event in the store, as far as the subscription knows.
+     */
+    public long getKnownLastEventId() {
+        return knownLastEventId;
+    }
+
+    /**
+     * How far behind the store the subscription is, measured in event IDs. Because event IDs may have gaps,
+     * it is an upper bound of the number of events remaining.
+     */
+    public long getLag() {
+        return Math.max(0, knownLastEventId - position);
+    }
+
+    /**
+     * True once the subscription has caught up with the store and only waits for new events.
+     */
+    public boolean isLive() {
+        return live;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of queries made to the store so far.
+     */
+    public long getPollCount() {
+        return pollCount;
+    }
+
+    /**
+     * Number of events delivered to the handler so far.
+     */
+    public long getHandledCount() {
+        return handledCount;
+    }
+
+    /**
+     * Number of events delivered to the handler from {@link EventsAppended} notifications, without querying
+     * the store.
+     */
+    public long getNotifiedCount() {
+        return notifiedCount;
+    }
+}
@@ -0,0 +1,17 @@
+package com.oasisdigital.nges.event.subscription;
+
+import com.oasisdigital.nges.event.Event;
+
+/**
+ * Receives events from a {@link CatchUpSubscription}, one at a time and in the order of event IDs. Also used
+ * by {@link com.oasisdigital.nges.event.jdbc.ReplayEngine}, which calls it from several threads at once.
+ */
+@FunctionalInterface
+public interface EventHandler {
+
+    /**
+     * Handle the event. If this method throws, the subscription stops before this event and retries it on
+     * the next poll.
+     */
+    public void handle(Event event) throws Exception;
+}
@@ -0,0 +1,209 @@
+package com.oasisdigital.nges.cluster;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.eventbus.Subscribe;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.jdbc.BaseITest;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class PostgresMessageGroupITest extends BaseITest {
+    private String channel;
+    private PostgresMessageGroup sender;
+    private PostgresMessageGroup receiver;
+    private RecordingSubscriber senderMessages;
+    private RecordingSubscriber receiverMessages;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        channel = "nges_test_" + randomUUID().toString().replace("-", "");
+        sender = createGroup();
+        receiver = createGroup();
+        senderMessages = new RecordingSubscriber();
+        receiverMessages = new RecordingSubscriber();
+        sender.registerSubscriber(senderMessages);
+        receiver.registerSubscriber(receiverMessages);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        sender.destroy();
+        receiver.destroy();
+    }
+
+    @Test
+    public void shouldDeliverToAllMembersInOrder() throws Exception {
+        for (long i = 1; i <= 100; i++) {
+            sender.publish(new EventUpdate(i));
+        }
+        sender.publish("done");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> receiverMessages.getMessages().size() == 101);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> senderMessages.getMessages().size() == 101);
+        List<Object> received = receiverMessages.getMessages();
+        for (int i = 0; i < 100; i++) {
+            assertThat(((EventUpdate) received.get(i)).getEventId(), is(i + 1L));
+        }
+        assertThat(received.get(100), is("done"));
+    }
+
+    @Test
+    public void shouldSendLargeEventsAppendedAsPlainEventUpdate() throws Exception {
+        sender.publish(new EventsAppended(0, asList(saved(1, "{}"))));
+        String largePayload = "\"" + String.join("", Collections.nCopies(8000, "x")) + "\"";
+        sender.publish(new EventsAppended(1, asList(saved(2, largePayload))));
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> receiverMessages.getMessages().size() == 2);
+        assertThat(receiverMessages.getMessages().get(0), is(instanceOf(EventsAppended.class)));
+        Object fallback = receiverMessages.getMessages().get(1);
+        assertThat(fallback, is(not(instanceOf(EventsAppended.class))));
+        assertThat(((EventUpdate) fallback).getEventId(), is(2L));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectOtherLargeMessages() throws Exception {
+        sender.publish(String.join("", Collections.nCopies(8000, "x")));
+    }
+
+    @Test
+    public void shouldIgnoreNotificationsWithClassesNotAllowed() throws Exception {
+        // Anyone with access to the database can notify, not only the group
+        String payload = Base64.getEncoder().encodeToString(serialize(new CustomMessage("forged")));
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("select pg_notify(?, ?)")) {
+            statement.setString(1, channel);
+            statement.setString(2, payload);
+            statement.execute();
+        }
+        sender.publish(new EventUpdate(1));
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> receiverMessages.getMessages().size() == 1);
+        assertThat(receiverMessages.getMessages().get(0), is(instanceOf(EventUpdate.class)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectPublishingClassesNotAllowed() throws Exception {
+        sender.publish(new CustomMessage("text"));
+    }
+
+    @Test
+    public void shouldDeliverAllowedCustomMessages() throws Exception {
+        PostgresMessageGroup custom = new PostgresMessageGroup(dataSource);
+        custom.setChannel(channel);
+        custom.allowMessageClasses(CustomMessage.class);
+        custom.initialize();
+        try {
+            RecordingSubscriber customMessages = new RecordingSubscriber();
+            custom.registerSubscriber(customMessages);
+
+            custom.publish(new CustomMessage("text"));
+
+            await().atMost(10, TimeUnit.SECONDS).until(() -> customMessages.getMessages().size() == 1);
+            assertThat(((CustomMessage) customMessages.getMessages().get(0)).getText(), is("text"));
+        } finally {
+            custom.destroy();
+        }
+    }
+
+    @Test
+    public void shouldReconnectAfterLosingConnection() throws Exception {
+        sender.publish(new EventUpdate(1));
+        await().atMost(10, TimeUnit.SECONDS).until(() -> receiverMessages.getMessages().size() == 1);
+
+        terminateListeners();
+
+        // Whatever is sent before the listeners are back is lost, keep sending until one gets through
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            sender.publish(new EventUpdate(2));
+            return receiverMessages.getMessages().size() > 1 && senderMessages.getMessages().size() > 1;
+        });
+    }
+
+    private PostgresMessageGroup createGroup() throws Exception {
+        PostgresMessageGroup group = new PostgresMessageGroup(dataSource);
+        group.setChannel(channel);
+        group.setReconnectDelay(50);
+        group.initialize();
+        return group;
+    }
+
+    private void terminateListeners() throws Exception {
+        // @formatter:off
+        String sql = "select pg_terminate_backend(pid) "
+                + "from pg_stat_activity "
+                + "where application_name = ?";
+        // @formatter:on
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, "nges_listen_" + channel);
+            statement.execute();
+        }
+    }
+
+    private static Event saved(long eventId, String payload) {
+        Event event = new Event(randomUUID(), "TextAppended", randomUUID(), payload);
+        event.setEventId(eventId);
+        event.setSequence(1);
+        event.setTransactionTime(OffsetDateTime.now());
+        return event;
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static class CustomMessage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+
+        public CustomMessage(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public static class RecordingSubscriber {
+        private final List<Object> messages = new ArrayList<>();
+
+        @Subscribe
+        public synchronized void on(Object message) {
+            messages.add(message);
+        }
+
+        public synchronized List<Object> getMessages() {
+            return new ArrayList<>(messages);
+        }
+    }
+}
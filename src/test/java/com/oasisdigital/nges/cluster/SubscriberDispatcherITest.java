@@ -0,0 +1,226 @@
+package com.oasisdigital.nges.cluster;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.eventbus.Subscribe;
+import com.oasisdigital.nges.event.TestGroups;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class SubscriberDispatcherITest {
+    private SubscriberDispatcher dispatcher;
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void shouldDeliverToMethodsOfMatchingAndInheritedTypes() throws Exception {
+        dispatcher = new SubscriberDispatcher(2, 16, BackpressurePolicy.BLOCK);
+        SpecificSubscriber subscriber = new SpecificSubscriber();
+        dispatcher.register(subscriber);
+        dispatcher.register(subscriber);
+
+        dispatcher.post(new EventUpdate(1));
+        dispatcher.post("text");
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getMessages().size() == 3);
+        // Both methods for the update, which one comes first is up to reflection
+        assertThat(subscriber.getMessages().subList(2, 3), contains("any:text"));
+        assertThat(subscriber.getMessages().containsAll(asList("update:1", "any:1")), is(true));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectUnknownSubscriberOnUnregister() {
+        dispatcher = new SubscriberDispatcher(1, 16, BackpressurePolicy.BLOCK);
+        dispatcher.unregister(new RecordingSubscriber());
+    }
+
+    @Test
+    public void shouldNotDelayOtherSubscribersBehindSlowOne() throws Exception {
+        dispatcher = new SubscriberDispatcher(2, 8, BackpressurePolicy.DROP);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingSubscriber slow = new GatedSubscriber(gate);
+        RecordingSubscriber fast = new RecordingSubscriber();
+        dispatcher.register(slow);
+        dispatcher.register(fast);
+
+        for (long i = 1; i <= 100; i++) {
+            dispatcher.post(new EventUpdate(i));
+            // Keep up with the fast one, so that only the slow one drops messages
+            int delivered = (int) i;
+            await().atMost(5, TimeUnit.SECONDS).pollInterval(1, TimeUnit.MILLISECONDS)
+                    .until(() -> fast.getEventIds().size() == delivered);
+        }
+
+        SubscriberStats slowStats = statsOf(slow);
+        assertThat(slowStats.getDropped(), is(greaterThan(0L)));
+        assertThat(slowStats.getQueueDepth(), is(slowStats.getQueueCapacity()));
+        assertThat(statsOf(fast).getDelivered(), is(100L));
+
+        gate.countDown();
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> statsOf(slow).getDelivered() + statsOf(slow).getDropped() == 100);
+        assertThat(statsOf(slow).getQueueDepth(), is(0));
+        assertThat(isAscending(slow.getEventIds()), is(true));
+    }
+
+    @Test
+    public void shouldBlockPosterUntilThereIsRoom() throws Exception {
+        dispatcher = new SubscriberDispatcher(1, 4, BackpressurePolicy.BLOCK);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingSubscriber slow = new GatedSubscriber(gate);
+        dispatcher.register(slow);
+
+        ExecutorService poster = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> posted = poster.submit(() -> {
+                for (long i = 1; i <= 20; i++) {
+                    dispatcher.post(new EventUpdate(i));
+                }
+            });
+            Thread.sleep(200);
+            assertThat(posted.isDone(), is(false));
+
+            gate.countDown();
+            posted.get(5, TimeUnit.SECONDS);
+        } finally {
+            poster.shutdown();
+        }
+        await().atMost(5, TimeUnit.SECONDS).until(() -> slow.getEventIds().size() == 20);
+        assertThat(isAscending(slow.getEventIds()), is(true));
+        assertThat(statsOf(slow).getDropped(), is(0L));
+        assertThat(statsOf(slow).getMaxLatencyMicros(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void shouldKeepOrderOfEveryPosterForEverySubscriber() throws Exception {
+        dispatcher = new SubscriberDispatcher(4, 64, BackpressurePolicy.BLOCK);
+        List<RecordingSubscriber> subscribers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            subscribers.add(subscriber);
+            dispatcher.register(subscriber);
+        }
+
+        int posters = 4;
+        int messagesPerPoster = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(posters);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < posters; p++) {
+                long offset = p * 1_000_000L;
+                futures.add(executor.submit(() -> {
+                    for (long i = 1; i <= messagesPerPoster; i++) {
+                        dispatcher.post(new EventUpdate(offset + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (RecordingSubscriber subscriber : subscribers) {
+            await().atMost(10, TimeUnit.SECONDS)
+                    .until(() -> subscriber.getEventIds().size() == posters * messagesPerPoster);
+            long[] last = new long[posters];
+            for (long eventId : subscriber.getEventIds()) {
+                int p = (int) (eventId / 1_000_000L);
+                assertThat(eventId, is(greaterThan(last[p])));
+                last[p] = eventId;
+            }
+        }
+    }
+
+    private SubscriberStats statsOf(Object subscriber) {
+        String name = subscriber.getClass().getName() + "@"
+                + Integer.toHexString(System.identityHashCode(subscriber));
+        return dispatcher.getStats().stream().filter(stats -> stats.getSubscriber().equals(name)).findFirst()
+                .get();
+    }
+
+    private static boolean isAscending(List<Long> eventIds) {
+        for (int i = 1; i < eventIds.size(); i++) {
+            if (eventIds.get(i) <= eventIds.get(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static class RecordingSubscriber {
+        private final List<Long> eventIds = new ArrayList<>();
+
+        @Subscribe
+        public void on(EventUpdate eventUpdate) {
+            synchronized (eventIds) {
+                eventIds.add(eventUpdate.getEventId());
+            }
+        }
+
+        public List<Long> getEventIds() {
+            synchronized (eventIds) {
+                return new ArrayList<>(eventIds);
+            }
+        }
+    }
+
+    public static class GatedSubscriber extends RecordingSubscriber {
+        private final CountDownLatch gate;
+
+        public GatedSubscriber(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        @Subscribe
+        public void on(EventUpdate eventUpdate) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.on(eventUpdate);
+        }
+    }
+
+    public static class BaseSubscriber {
+        protected final List<String> messages = new ArrayList<>();
+
+        @Subscribe
+        public synchronized void any(Object message) {
+            messages.add("any:" + (message instanceof EventUpdate ? ((EventUpdate) message).getEventId()
+                    : message));
+        }
+
+        public synchronized List<String> getMessages() {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    public static class SpecificSubscriber extends BaseSubscriber {
+        @Subscribe
+        public synchronized void update(EventUpdate eventUpdate) {
+            messages.add("update:" + eventUpdate.getEventId());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.oasisdigital.nges.event;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+/**
+ * Behavior expected from every {@link EventStore} that owns its whole log, so that event IDs start at 1.
+ * Implementations extend it with {@link #createEventStore(EventStoreStatusPublisher)} and their own tests.
+ */
+@Test(groups = TestGroups.INTEGRATION)
+public abstract class EventStoreContractITest<S extends EventStore> {
+    protected InMemoryMessageGroup messageGroup;
+    protected TestSubscriber subscriber;
+    protected S eventStore;
+
+    /**
+     * Create an empty store, called before every test.
+     */
+    protected abstract S createEventStore(EventStoreStatusPublisher statusPublisher) throws Exception;
+
+    @BeforeMethod
+    public void setUpEventStore() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        subscriber = new TestSubscriber();
+        messageGroup.registerSubscriber(subscriber);
+        eventStore = createEventStore(new EventStoreStatusPublisher(messageGroup));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDownMessageGroup() throws Exception {
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldSaveAndReadEvents() {
+        UUID streamId = randomUUID();
+        Event event = new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"abc\"}");
+
+        List<Long> ids = eventStore.save(asList(event, textAppended(streamId, "def")), "Recipe", NEW_STREAM);
+
+        assertThat(ids, contains(1L, 2L));
+        Event saved = eventStore.getEvent(1);
+        assertThat(saved.getStreamId(), is(streamId));
+        assertThat(saved.getType(), is("TextAppended"));
+        assertThat(saved.getCorrelationId(), is(event.getCorrelationId()));
+        assertThat(saved.getPayload(), is(event.getPayload()));
+        assertThat(saved.getSequence(), is(1L));
+        assertThat(saved.getTransactionTime(), is(event.getTransactionTime()));
+        assertThat(getIds(eventStore.getEventsForStream(streamId, 1, 100)), contains(2L));
+        assertThat(getIds(eventStore.getEventsForStreamBackward(streamId, Long.MAX_VALUE, 100)),
+                contains(2L, 1L));
+        assertThat(getIds(eventStore.getLatestEvents(1)), contains(2L));
+        assertThat(eventStore.getLastEventId().get(), is(2L));
+        assertThat(eventStore.getLastSequence(streamId).get(), is(2L));
+
+        EventStream stream = eventStore.findByStreamId(streamId);
+        assertThat(stream.getStreamType(), is("Recipe"));
+        assertThat(stream.getLastEventId(), is(2L));
+        assertThat(stream.getLastSeqNo(), is(2L));
+        assertThat(stream.getLastTransactionTime(), is(saved.getTransactionTime()));
+        assertThat(eventStore.getStreamCount("Recipe"), is(1L));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getLastEvent() == 2L);
+
+        // Stored events are copies
+        saved.setPayload("changed");
+        event.setPayload("changed");
+        assertThat(eventStore.getEvent(1).getPayload(), is("{\"text\": \"abc\"}"));
+    }
+
+    @Test
+    public void shouldDetectConflicts() {
+        UUID streamId = randomUUID();
+        eventStore.save(asList(textAppended(streamId, "a")), "Recipe", NEW_STREAM);
+
+        assertConflict(() -> eventStore.save(asList(textAppended(streamId, "b")), "Recipe", NEW_STREAM));
+        assertConflict(() -> eventStore.save(asList(textAppended(streamId, "b")), "Other", NEW_STREAM));
+        assertConflict(() -> eventStore.save(asList(textAppended(streamId, "b")), "Recipe", 2));
+        assertConflict(() -> eventStore.save(asList(textAppended(randomUUID(), "b")), "Recipe", 1));
+
+        eventStore.save(asList(textAppended(streamId, "b")), "Recipe", 1);
+        eventStore.save(asList(textAppended(streamId, "c")), "Recipe", AUTO_GENERATE_SEQUENCE);
+        assertThat(eventStore.getLastSequence(streamId).get(), is(3L));
+        assertThat(eventStore.getStreamCount("Recipe"), is(1L));
+    }
+
+    @Test
+    public void shouldReportAllConflictsOfSaveAll() {
+        UUID existing = randomUUID();
+        UUID created = randomUUID();
+        eventStore.save(asList(textAppended(existing, "a")), "Recipe", NEW_STREAM);
+        Map<UUID, StreamAppend> appends = new LinkedHashMap<>();
+        appends.put(existing, new StreamAppend("Recipe", 5, asList(textAppended(existing, "b"))));
+        appends.put(created, new StreamAppend("Recipe", NEW_STREAM, asList(textAppended(created, "a"))));
+
+        try {
+            eventStore.saveAll(appends);
+            throw new AssertionError("Expected a conflict");
+        } catch (MultiStreamConflict e) {
+            assertThat(e.getConflicts().keySet(), contains(existing));
+        }
+        assertThat(eventStore.getLastEventId().get(), is(1L));
+        assertThat(eventStore.getLastSequence(created).isPresent(), is(false));
+
+        appends.put(existing, new StreamAppend("Recipe", 1, asList(textAppended(existing, "b"))));
+        Map<UUID, List<Long>> ids = eventStore.saveAll(appends);
+        assertThat(ids.get(existing), contains(2L));
+        assertThat(ids.get(created), contains(3L));
+        assertThat(eventStore.getLastSequence(created).get(), is(1L));
+    }
+
+    @Test
+    public void shouldOnlySaveWithLease() {
+        UUID streamId = randomUUID();
+        eventStore.lease("key", "owner", 10000);
+
+        assertThat(eventStore.save(asList(textAppended(streamId, "a")), "Recipe", NEW_STREAM, asList("key"),
+                "other"), is(empty()));
+        assertThat(eventStore.lease("key", "other", 10000).getOwnerKey(), is("owner"));
+        assertThat(eventStore.save(asList(textAppended(streamId, "a")), "Recipe", NEW_STREAM, asList("key"),
+                "owner"), hasSize(1));
+
+        eventStore.release("key", "owner");
+        assertThat(eventStore.lease("key", "other", 10000).getOwnerKey(), is("other"));
+    }
+
+    @Test
+    public void shouldReadWithFiltersTimesAndPages() {
+        UUID recipe = randomUUID();
+        UUID order = randomUUID();
+        OffsetDateTime before = OffsetDateTime.now().minusSeconds(1);
+        eventStore.save(asList(textAppended(recipe, "a"), textAppended(recipe, "b")), "Recipe", NEW_STREAM);
+        eventStore.save(asList(new Event(order, "OrderPlaced", randomUUID(), "{}")), "Order", NEW_STREAM);
+
+        assertThat(getIds(eventStore.getEventsForAllStreams(0, 100, EventFilter.streamTypes("Order"))),
+                contains(3L));
+        assertThat(getIds(eventStore.getEventsForAllStreams(0, 100, EventFilter.eventTypes("TextAppended"))),
+                contains(1L, 2L));
+        OffsetDateTime after = OffsetDateTime.now().plusSeconds(1);
+        try (Stream<Event> events = eventStore.getEventsBetween(before, after)) {
+            assertThat(getIds(events.collect(toList())), contains(1L, 2L, 3L));
+        }
+        try (Stream<Event> events = eventStore.getEventsBetween(before.minusDays(1), before)) {
+            assertThat(events.count(), is(0L));
+        }
+
+        EventPage page = eventStore.readAllStreams(ReadDirection.FORWARD, null, 2);
+        assertThat(getIds(page.getEvents()), contains(1L, 2L));
+        page = eventStore.readAllStreams(ReadDirection.FORWARD, page.getNextToken(), 2);
+        assertThat(getIds(page.getEvents()), contains(3L));
+        page = eventStore.readStream(recipe, ReadDirection.BACKWARD, null, 1);
+        assertThat(getIds(page.getEvents()), contains(2L));
+        page = eventStore.readStream(recipe, ReadDirection.BACKWARD, page.getNextToken(), 1);
+        assertThat(getIds(page.getEvents()), contains(1L));
+    }
+
+    protected static void assertConflict(Runnable save) {
+        try {
+            save.run();
+            throw new AssertionError("Expected a conflict");
+        } catch (EventStoreConflict e) {
+            // Expected
+        }
+    }
+
+    protected static Event textAppended(UUID streamId, String text) {
+        return new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + text + "\"}");
+    }
+
+    protected static List<Long> getIds(List<Event> events) {
+        return events.stream().map(Event::getEventId).collect(toList());
+    }
+}
@@ -11,11 +11,14 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 
 import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
@@ -235,6 +238,221 @@ public class EventStoreITest extends BaseITest {
         assertThat(savedStreamIdsInOrder, consistsOfConsistentBlocks(10, 3));
     }
 
+    @Test
+    public void shouldFilterEventsByType() throws Exception {
+        long lastEventId = eventStore.getLastEventId().orElse(0L);
+        List<Long> ids = save(asList(textAppended("a"), new Event(streamId, "TextDeleted", randomUUID(), "{}"),
+                textAppended("b")));
+
+        List<Event> events = eventStore.getEventsForAllStreams(lastEventId, 100,
+                EventFilter.eventTypes("TextDeleted", "NoSuchType"));
+
+        assertThat(getIds(events), contains(ids.get(1)));
+    }
+
+    @Test
+    public void shouldFilterEventsByStreamType() throws Exception {
+        long lastEventId = eventStore.getLastEventId().orElse(0L);
+        UUID otherStreamId = randomUUID();
+        save(textAppended("a"));
+        long otherId = eventStore.save(asList(textAppended(otherStreamId, "b")), "Order", NEW_STREAM).get(0);
+        save(textAppended("c"), 1);
+
+        EventFilter filter = EventFilter.streamTypes("Order");
+        assertThat(getIds(eventStore.getEventsForAllStreams(lastEventId, 100, filter)), contains(otherId));
+
+        filter = filter.withEventTypes(asList("TextDeleted"));
+        assertThat(eventStore.getEventsForAllStreams(lastEventId, 100, filter), is(empty()));
+    }
+
+    @Test
+    public void shouldStreamEventsForAllStreams() throws Exception {
+        long lastEventId = eventStore.getLastEventId().orElse(0L);
+        List<Long> ids = save(IntStream.range(0, 25).mapToObj(i -> textAppended("" + i)).collect(toList()));
+
+        try (Stream<Event> events = eventStore.streamEventsForAllStreams(lastEventId, 10)) {
+            // Events saved after the stream is opened are not included
+            save(textAppended("late"), 25);
+
+            assertThat(getIds(events.collect(toList())), is(ids));
+        }
+    }
+
+    @Test
+    public void shouldGetEventsBetween() throws Exception {
+        save(textAppended("a"));
+        Thread.sleep(10);
+        long second = save(textAppended("b"), 1);
+        Thread.sleep(10);
+        long third = save(textAppended("c"), 2);
+        OffsetDateTime from = eventStore.getEvent(second).getTransactionTime();
+        OffsetDateTime to = eventStore.getEvent(third).getTransactionTime();
+
+        try (Stream<Event> events = eventStore.getEventsBetween(from, to)) {
+            List<Long> ids = getIds(events.filter(e -> e.getStreamId().equals(streamId)).collect(toList()));
+
+            assertThat(ids, contains(second));
+        }
+        try (Stream<Event> events = eventStore.getEventsBetween(from, to.plusNanos(1000))) {
+            assertThat(getIds(events.collect(toList())), hasItems(second, third));
+        }
+    }
+
+    @Test
+    public void shouldGetEventsForManyStreams() throws Exception {
+        UUID otherStreamId = randomUUID();
+        UUID missingStreamId = randomUUID();
+        List<Long> ids = save(asList(textAppended("a"), textAppended("b"), textAppended("c")));
+        long otherId = save(textAppended(otherStreamId, "x"));
+
+        Map<UUID, Long> afterSequenceIds = new LinkedHashMap<>();
+        afterSequenceIds.put(missingStreamId, 0L);
+        afterSequenceIds.put(otherStreamId, 0L);
+        afterSequenceIds.put(streamId, 0L);
+        Map<UUID, List<Event>> events = eventStore.getEventsForStreams(afterSequenceIds, 2);
+
+        assertThat(events.keySet(), contains(missingStreamId, otherStreamId, streamId));
+        assertThat(events.get(missingStreamId), is(empty()));
+        assertThat(getIds(events.get(otherStreamId)), contains(otherId));
+        assertThat(getIds(events.get(streamId)), is(ids.subList(0, 2)));
+        assertThat(getSequences(events.get(streamId)), contains(1L, 2L));
+
+        // Continue each stream from where it was read up to
+        afterSequenceIds.put(otherStreamId, 1L);
+        afterSequenceIds.put(streamId, 2L);
+        events = eventStore.getEventsForStreams(afterSequenceIds, 2);
+
+        assertThat(events.get(otherStreamId), is(empty()));
+        assertThat(getIds(events.get(streamId)), contains(ids.get(2)));
+        assertThat(getSequences(events.get(streamId)), contains(3L));
+    }
+
+    @Test
+    public void shouldGetEventsById() throws Exception {
+        List<Long> ids = save(asList(textAppended("a"), textAppended("b"), textAppended("c")));
+
+        Map<Long, Event> events = eventStore.getEvents(asList(ids.get(2), ids.get(0), -1L));
+
+        assertThat(events.keySet(), contains(ids.get(0), ids.get(2)));
+        assertThat(events.get(ids.get(2)).getPayload(), is("{\"text\": \"c\"}"));
+    }
+
+    @Test
+    public void shouldFindManyStreams() throws Exception {
+        UUID otherStreamId = randomUUID();
+        long id = save(textAppended("a"));
+        long otherId = save(textAppended(otherStreamId, "x"));
+
+        Map<UUID, EventStream> streams = eventStore
+                .findByStreamIds(asList(streamId, otherStreamId, randomUUID()));
+
+        assertThat(streams.size(), is(2));
+        assertThat(streams.get(streamId).getLastEventId(), is(id));
+        assertThat(streams.get(otherStreamId).getLastEventId(), is(otherId));
+    }
+
+    @Test
+    public void shouldReadStreamBackward() throws Exception {
+        List<Long> ids = save(IntStream.range(0, 5).mapToObj(i -> textAppended("" + i)).collect(toList()));
+
+        assertThat(getSequences(eventStore.getEventsForStreamBackward(streamId, Long.MAX_VALUE, 2)),
+                contains(5L, 4L));
+        assertThat(getIds(eventStore.getEventsForStreamBackward(streamId, 3, 100)),
+                contains(ids.get(1), ids.get(0)));
+    }
+
+    @Test
+    public void shouldReadAllStreamsBackward() throws Exception {
+        List<Long> ids = save(IntStream.range(0, 5).mapToObj(i -> textAppended("" + i)).collect(toList()));
+
+        assertThat(getIds(eventStore.getEventsForAllStreamsBackward(ids.get(3), 2)),
+                contains(ids.get(2), ids.get(1)));
+        assertThat(getIds(eventStore.getEventsForAllStreamsBackward(Long.MAX_VALUE, 1)),
+                contains(eventStore.getLastEventId().get()));
+    }
+
+    @Test
+    public void shouldPageStreamInBothDirections() throws Exception {
+        save(IntStream.range(0, 5).mapToObj(i -> textAppended("" + i)).collect(toList()));
+
+        EventPage last = eventStore.readStream(streamId, ReadDirection.BACKWARD, null, 2);
+        EventPage before = eventStore.readStream(streamId, ReadDirection.BACKWARD, last.getNextToken(), 2);
+        EventPage first = eventStore.readStream(streamId, ReadDirection.BACKWARD, before.getNextToken(), 2);
+        EventPage after = eventStore.readStream(streamId, ReadDirection.FORWARD, before.getPreviousToken(),
+                2);
+
+        assertThat(getSequences(last.getEvents()), contains(5L, 4L));
+        assertThat(getSequences(before.getEvents()), contains(3L, 2L));
+        assertThat(getSequences(first.getEvents()), contains(1L));
+        assertThat(getSequences(after.getEvents()), contains(4L, 5L));
+        assertThat(eventStore.readStream(streamId, ReadDirection.BACKWARD, first.getNextToken(), 2)
+                .getEvents(), is(empty()));
+    }
+
+    @Test
+    public void shouldPageAllStreams() throws Exception {
+        List<Long> ids = save(IntStream.range(0, 5).mapToObj(i -> textAppended("" + i)).collect(toList()));
+
+        EventPage latest = eventStore.readAllStreams(ReadDirection.BACKWARD, null, 5);
+        EventPage forward = eventStore.readAllStreams(ReadDirection.FORWARD, latest.getNextToken(), 3);
+        EventPage older = eventStore.readAllStreams(ReadDirection.BACKWARD, forward.getPreviousToken(), 1);
+
+        assertThat(getIds(latest.getEvents()), contains(ids.get(4), ids.get(3), ids.get(2), ids.get(1),
+                ids.get(0)));
+        assertThat(getIds(forward.getEvents()), is(ids.subList(1, 4)));
+        assertThat(getIds(older.getEvents()), contains(ids.get(0)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectTokenOfOtherStream() throws Exception {
+        save(textAppended("a"));
+        String token = eventStore.readStream(streamId, ReadDirection.FORWARD, null, 1).getNextToken();
+
+        eventStore.readStream(randomUUID(), ReadDirection.FORWARD, token, 1);
+    }
+
+    @Test
+    public void shouldSaveMultipleStreamsAtomically() throws Exception {
+        UUID otherStreamId = randomUUID();
+        save(textAppended("a"));
+
+        Map<UUID, StreamAppend> appends = new LinkedHashMap<>();
+        appends.put(streamId, new StreamAppend("Recipe", 1, asList(textAppended("b"), textAppended("c"))));
+        appends.put(otherStreamId,
+                new StreamAppend("Recipe", NEW_STREAM, asList(textAppended(otherStreamId, "x"))));
+        Map<UUID, List<Long>> ids = eventStore.saveAll(appends);
+
+        assertThat(ids.get(streamId), is(getIds(eventStore.getEventsForStream(streamId, 1, 100))));
+        assertThat(ids.get(otherStreamId), is(getIds(eventStore.getEventsForStream(otherStreamId, 0, 100))));
+        assertThat(ids.get(otherStreamId).get(0), is(ids.get(streamId).get(1) + 1));
+        assertThat(getSequences(eventStore.getEventsForStream(streamId, 0, 100)), contains(1L, 2L, 3L));
+        assertThat(eventStore.findByStreamId(otherStreamId).getLastSeqNo(), is(1L));
+    }
+
+    @Test
+    public void shouldReportConflictsForAllStreams() throws Exception {
+        UUID otherStreamId = randomUUID();
+        UUID newStreamId = randomUUID();
+        save(textAppended("a"));
+        save(textAppended(otherStreamId, "x"));
+
+        Map<UUID, StreamAppend> appends = new LinkedHashMap<>();
+        appends.put(streamId, new StreamAppend("Recipe", 5, asList(textAppended("b"))));
+        appends.put(otherStreamId,
+                new StreamAppend("Recipe", NEW_STREAM, asList(textAppended(otherStreamId, "y"))));
+        appends.put(newStreamId,
+                new StreamAppend("Recipe", NEW_STREAM, asList(textAppended(newStreamId, "z"))));
+        try {
+            eventStore.saveAll(appends);
+            throw new AssertionError("Expected conflict");
+        } catch (MultiStreamConflict e) {
+            assertThat(e.getConflicts().keySet(), contains(streamId, otherStreamId));
+        }
+
+        assertThat(eventStore.getEventsForStream(streamId, 0, 100), hasSize(1));
+        assertThat(eventStore.getEventsForStream(newStreamId, 0, 100), is(empty()));
+    }
+
     //
     // LEASE
     //
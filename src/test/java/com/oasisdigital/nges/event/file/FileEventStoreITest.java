@@ -0,0 +1,166 @@
+package com.oasisdigital.nges.event.file;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreContractITest;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+/**
+ * Runs against a temporary directory, no database needed.
+ */
+@Test(groups = TestGroups.INTEGRATION)
+public class FileEventStoreITest extends EventStoreContractITest<FileEventStore> {
+    private Path directory;
+
+    @Override
+    protected FileEventStore createEventStore(EventStoreStatusPublisher statusPublisher) throws Exception {
+        directory = Files.createTempDirectory("nges-file-store");
+        return new FileEventStore(directory, statusPublisher);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        eventStore.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRecoverEventsAndStreamsWhenReopened() throws Exception {
+        eventStore.setSegmentSize(FileEventStore.MIN_SEGMENT_SIZE);
+        List<UUID> streamIds = asList(randomUUID(), randomUUID(), randomUUID());
+        String payload = "{\"text\": \"" + String.join("", Collections.nCopies(1000, "x")) + "\"}";
+        for (int i = 0; i < 300; i++) {
+            UUID streamId = streamIds.get(i % streamIds.size());
+            eventStore.save(asList(new Event(streamId, "TextAppended", randomUUID(), payload)), "Recipe",
+                    AUTO_GENERATE_SEQUENCE);
+        }
+        List<Event> saved = eventStore.getEventsForAllStreams(0, 1000);
+
+        eventStore.close();
+        eventStore = open();
+
+        assertThat(segmentFiles().size(), is(greaterThan(1)));
+        assertThat(getIds(eventStore.getEventsForAllStreams(0, 1000)), is(getIds(saved)));
+        assertThat(eventStore.getEvent(150).getPayload(), is(payload));
+        assertThat(eventStore.getLastSequence(streamIds.get(0)).get(), is(100L));
+        assertThat(eventStore.getStreamCount("Recipe"), is(3L));
+        eventStore.save(asList(textAppended(streamIds.get(0), "next")), "Recipe", 100);
+        assertThat(eventStore.getLastEventId().get(), is(301L));
+    }
+
+    @Test
+    public void shouldDropIncompleteWritesWhenReopened() throws Exception {
+        UUID streamId = randomUUID();
+        eventStore.save(asList(textAppended(streamId, "a"), textAppended(streamId, "b")), "Recipe",
+                NEW_STREAM);
+        eventStore.close();
+
+        // Leftovers of a save interrupted by a crash
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }), 4096);
+        }
+        eventStore = open();
+
+        assertThat(getIds(eventStore.getEventsForAllStreams(0, 100)), contains(1L, 2L));
+        eventStore.save(asList(textAppended(streamId, "c")), "Recipe", 2);
+        eventStore.close();
+        eventStore = open();
+        assertThat(getIds(eventStore.getEventsForStream(streamId, 0, 100)), contains(1L, 2L, 3L));
+    }
+
+    @Test
+    public void shouldLockDirectory() {
+        try {
+            open();
+            throw new AssertionError("Expected the directory to be locked");
+        } catch (EventStoreException e) {
+            assertThat(e.getMessage().contains("already open"), is(true));
+        }
+    }
+
+    @Test
+    public void shouldSaveConcurrently() throws Exception {
+        int threads = 8;
+        int savesPerThread = 200;
+        List<UUID> streamIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            streamIds.add(randomUUID());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < savesPerThread; i++) {
+                        UUID streamId = streamIds.get((thread + i) % streamIds.size());
+                        eventStore.save(asList(textAppended(streamId, "a"), textAppended(streamId, "b")),
+                                "Recipe", AUTO_GENERATE_SEQUENCE);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long total = threads * savesPerThread * 2;
+        assertThat(eventStore.getLastEventId().get(), is(total));
+        long sequences = 0;
+        for (UUID streamId : streamIds) {
+            List<Event> events = eventStore.getEventsForStream(streamId, 0, (int) total);
+            for (int i = 0; i < events.size(); i++) {
+                assertThat(events.get(i).getSequence(), is(i + 1L));
+            }
+            sequences += events.size();
+        }
+        assertThat(sequences, is(total));
+    }
+
+    private FileEventStore open() {
+        return new FileEventStore(directory, new EventStoreStatusPublisher(messageGroup));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(LogSegment::isSegment).sorted().collect(toList());
+        }
+    }
+}
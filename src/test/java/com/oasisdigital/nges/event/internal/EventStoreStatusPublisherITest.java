@@ -0,0 +1,181 @@
+package com.oasisdigital.nges.event.internal;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.eventbus.Subscribe;
+import com.oasisdigital.nges.cluster.EventUpdate;
+import com.oasisdigital.nges.cluster.EventsAppended;
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class EventStoreStatusPublisherITest {
+    private InMemoryMessageGroup messageGroup;
+    private RecordingSubscriber subscriber;
+    private EventStoreStatusPublisher publisher;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        subscriber = new RecordingSubscriber();
+        messageGroup.registerSubscriber(subscriber);
+        publisher = new EventStoreStatusPublisher(messageGroup);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        publisher.destroy();
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldNeverPublishLowerEventId() throws Exception {
+        publisher.publishLastEventIfChanged(5);
+        publisher.publishLastEventIfChanged(3);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getEventIds().size() == 2);
+        assertThat(subscriber.getEventIds(), contains(5L, 5L));
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentCallsWithoutLosingTheLastEvent() throws Exception {
+        publishConcurrently(8, 5000);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getLastEventId() == 8 * 5000L);
+        assertThat(subscriber.isAscending(), is(true));
+    }
+
+    @Test
+    public void shouldLimitRateWithInterval() throws Exception {
+        publisher.setPublishInterval(100);
+        long start = System.nanoTime();
+
+        publishConcurrently(4, 5000);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getLastEventId() == 4 * 5000L);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // The first one right away, then one per interval at most
+        assertThat((long) subscriber.getEventIds().size(), is(lessThanOrEqualTo(elapsedMs / 100 + 2)));
+        assertThat(subscriber.isAscending(), is(true));
+    }
+
+    @Test
+    public void shouldCarrySmallEventsWithoutGaps() throws Exception {
+        publisher.setMaxEventBytes(1000);
+
+        publisher.publishSavedEvents(asList(saved(2, "{}"), saved(1, "{}")));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getUpdates().size() == 1);
+        EventsAppended appended = (EventsAppended) subscriber.getUpdates().get(0);
+        assertThat(appended.getAfterEventId(), is(0L));
+        assertThat(appended.getEventId(), is(2L));
+        assertThat(appended.getEvents().stream().map(Event::getEventId).collect(toList()), contains(1L, 2L));
+
+        // Too big
+        publisher.publishSavedEvents(asList(saved(3, String.join("", Collections.nCopies(600, "x")))));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getUpdates().size() == 2);
+        assertThat(subscriber.getUpdates().get(1), is(not(instanceOf(EventsAppended.class))));
+        assertThat(subscriber.getLastEventId(), is(3L));
+
+        // Events after a gap still make a complete range, it's up to the receiver to tell it's not connected
+        publisher.publishSavedEvents(asList(saved(5, "{}")));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getUpdates().size() == 3);
+        appended = (EventsAppended) subscriber.getUpdates().get(2);
+        assertThat(appended.getAfterEventId(), is(4L));
+        assertThat(appended.connectsTo(3), is(false));
+    }
+
+    @Test
+    public void shouldNotCarryEventsBehindTheLastEventId() throws Exception {
+        publisher.setMaxEventBytes(1000);
+        // Saved elsewhere, e.g. a heartbeat reading the store
+        publisher.publishLastEventIfChanged(10);
+        publisher.publishSavedEvents(asList(saved(9, "{}")));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.getUpdates().size() == 2);
+        assertThat(subscriber.getUpdates().get(1), is(not(instanceOf(EventsAppended.class))));
+        assertThat(subscriber.getLastEventId(), is(10L));
+    }
+
+    private static Event saved(long eventId, String payload) {
+        Event event = new Event(randomUUID(), "TextAppended", randomUUID(), payload);
+        event.setEventId(eventId);
+        event.setSequence(1);
+        event.setTransactionTime(OffsetDateTime.now());
+        return event;
+    }
+
+    private void publishConcurrently(int threads, int eventsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 1; i <= eventsPerThread; i++) {
+                        publisher.publishLastEventIfChanged((long) (i - 1) * threads + thread + 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static class RecordingSubscriber {
+        private final List<EventUpdate> updates = new ArrayList<>();
+
+        @Subscribe
+        public synchronized void on(EventUpdate eventUpdate) {
+            updates.add(eventUpdate);
+        }
+
+        public synchronized List<EventUpdate> getUpdates() {
+            return new ArrayList<>(updates);
+        }
+
+        public synchronized List<Long> getEventIds() {
+            return updates.stream().map(EventUpdate::getEventId).collect(toList());
+        }
+
+        public synchronized long getLastEventId() {
+            return updates.isEmpty() ? 0 : updates.get(updates.size() - 1).getEventId();
+        }
+
+        public synchronized boolean isAscending() {
+            List<Long> eventIds = getEventIds();
+            for (int i = 1; i < eventIds.size(); i++) {
+                if (eventIds.get(i) < eventIds.get(i - 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
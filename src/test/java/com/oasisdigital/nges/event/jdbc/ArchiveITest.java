@@ -0,0 +1,405 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventFilter.eventTypes;
+import static com.oasisdigital.nges.event.EventFilter.streamTypes;
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.Snapshot;
+import com.oasisdigital.nges.event.SnapshotAndEvents;
+import com.oasisdigital.nges.event.SnapshotStore;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+/**
+ * Runs against a copy of the schema with partitioned <code>event_log</code>, in a separate database schema so
+ * that the other tests are not affected.
+ */
+@Test(groups = TestGroups.INTEGRATION)
+public class ArchiveITest extends BaseITest {
+    private static final String SCHEMA = "nges_archive_test";
+
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private JdbcEventStore otherEventStore;
+    private Path archiveDirectory;
+    private List<Path> segments;
+    private UUID archivedStream;
+    private UUID sequenceStream;
+    private UUID splitStream;
+    private List<Event> allEvents;
+    private List<Event> splitStreamEvents;
+    private long firstHotEventId;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        try (Connection conn = dataSource.getConnection()) {
+            if (conn.getMetaData().getDatabaseMajorVersion() < 11) {
+                throw new SkipException("Partitioning event_log requires PostgreSQL 11 or later");
+            }
+        }
+        DataSource schemaDataSource = new SchemaDataSource();
+        createSchema();
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        archiveDirectory = Files.createTempDirectory("nges-archive");
+
+        // Events saved before partitioning end up in the first partition.
+        eventStore = new JdbcEventStore(schemaDataSource, new EventStoreStatusPublisher(messageGroup));
+        archivedStream = randomUUID();
+        sequenceStream = randomUUID();
+        splitStream = randomUUID();
+        save(archivedStream, 3);
+        save(sequenceStream, 2);
+        save(splitStream, 4);
+        execute(Paths.get("db_schema", "optional", "partition_event_log.sql"));
+
+        eventStore = new JdbcEventStore(schemaDataSource, new EventStoreStatusPublisher(messageGroup));
+        eventStore.enableArchive(archiveDirectory);
+
+        firstHotEventId = save(splitStream, 3).get(0);
+        allEvents = eventStore.getEventsForAllStreams(0, 100);
+        splitStreamEvents = eventStore.getEventsForStream(splitStream, 0, 100);
+
+        // Like another process, it has loaded the list of segments before archiving and doesn't know about it
+        otherEventStore = new JdbcEventStore(schemaDataSource, new EventStoreStatusPublisher(messageGroup));
+        otherEventStore.enableArchive(archiveDirectory);
+        otherEventStore.getEventsForAllStreams(0, 100);
+
+        segments = eventStore.createArchiver().archivePartitionsBefore(firstHotEventId);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (messageGroup != null) {
+            messageGroup.destroy();
+        }
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("drop schema if exists " + SCHEMA + " cascade");
+        }
+    }
+
+    @Test
+    public void shouldMoveOldPartitionToSegmentFile() throws Exception {
+        assertThat(segments, contains(archiveDirectory.resolve("event_log_legacy.seg.gz")));
+        assertThat(Files.size(segments.get(0)), is(greaterThan(0L)));
+        assertThat(new JdbcQueries(new ConnectionSource(new SchemaDataSource())).queryForObject(
+                "select to_regclass('event_log_legacy') is null", Boolean.class), is(true));
+    }
+
+    @Test
+    public void shouldReadArchivedEventsByStream() {
+        assertThat(getIds(eventStore.getEventsForStream(archivedStream, 0, 100)),
+                is(getIds(allEvents.subList(0, 3))));
+        assertEvents(eventStore.getEventsForStream(splitStream, 0, 100), splitStreamEvents);
+        assertEvents(eventStore.getEventsForStream(splitStream, 2, 3), splitStreamEvents.subList(2, 5));
+        assertEvents(eventStore.getEventsForStream(splitStream, 4, 100), splitStreamEvents.subList(4, 7));
+
+        Map<UUID, Long> afterSequenceIds = new LinkedHashMap<>();
+        afterSequenceIds.put(archivedStream, 0L);
+        afterSequenceIds.put(splitStream, 2L);
+        Map<UUID, List<Event>> events = eventStore.getEventsForStreams(afterSequenceIds, 100);
+        assertThat(getIds(events.get(archivedStream)), is(getIds(allEvents.subList(0, 3))));
+        assertEvents(events.get(splitStream), splitStreamEvents.subList(2, 7));
+    }
+
+    @Test
+    public void shouldReadEventsForStreamsAroundArchive() {
+        UUID unknownStream = randomUUID();
+        Map<UUID, Long> afterSequenceIds = new LinkedHashMap<>();
+        afterSequenceIds.put(archivedStream, 3L);
+        afterSequenceIds.put(splitStream, 4L);
+        afterSequenceIds.put(unknownStream, 0L);
+
+        Map<UUID, List<Event>> events = eventStore.getEventsForStreams(afterSequenceIds, 2);
+
+        assertThat(events.get(archivedStream), is(empty()));
+        assertEvents(events.get(splitStream), splitStreamEvents.subList(4, 6));
+        assertThat(events.get(unknownStream), is(empty()));
+        assertEvents(eventStore.getEventsForStreams(Collections.singletonMap(splitStream, 3L), 2)
+                .get(splitStream), splitStreamEvents.subList(3, 5));
+    }
+
+    @Test
+    public void shouldReadArchivedEventsByStreamBackward() {
+        List<Event> reversed = new ArrayList<>(splitStreamEvents);
+        Collections.reverse(reversed);
+
+        assertEvents(eventStore.getEventsForStreamBackward(splitStream, Long.MAX_VALUE, 100), reversed);
+        assertEvents(eventStore.getEventsForStreamBackward(splitStream, 6, 3), reversed.subList(2, 5));
+        assertEvents(eventStore.getEventsForStreamBackward(archivedStream, 3, 100),
+                asList(allEvents.get(1), allEvents.get(0)));
+        assertEvents(eventStore.getEventsForStreamBackward(archivedStream, 1, 100), Collections.emptyList());
+    }
+
+    @Test
+    public void shouldReadArchivedEventsById() {
+        assertEvents(asList(eventStore.getEvent(allEvents.get(1).getEventId())), allEvents.subList(1, 2));
+
+        Map<Long, Event> events = eventStore.getEvents(
+                asList(firstHotEventId, allEvents.get(0).getEventId(), allEvents.get(4).getEventId()));
+
+        assertThat(new ArrayList<>(events.keySet()),
+                contains(allEvents.get(0).getEventId(), allEvents.get(4).getEventId(), firstHotEventId));
+    }
+
+    @Test
+    public void shouldReadArchivedEventsForAllStreams() {
+        long lastEventId = allEvents.get(allEvents.size() - 1).getEventId();
+
+        assertEvents(eventStore.getEventsForAllStreams(0, allEvents.size()), allEvents);
+        assertEvents(eventStore.getEventsForAllStreams(allEvents.get(1).getEventId(), 3),
+                allEvents.subList(2, 5));
+        try (Stream<Event> events = eventStore.streamEventsForAllStreams(0, 10)) {
+            assertEvents(events.filter(event -> event.getEventId() <= lastEventId).collect(toList()),
+                    allEvents);
+        }
+        List<Long> ids = new ArrayList<>();
+        eventStore.forEachEventForAllStreams(0, 10, event -> ids.add(event.getEventId()));
+        assertThat(ids.subList(0, allEvents.size()), is(getIds(allEvents)));
+        assertThat(getIds(eventStore.getEventsForAllStreamsBackward(firstHotEventId + 1, 3)),
+                contains(firstHotEventId, allEvents.get(8).getEventId(), allEvents.get(7).getEventId()));
+    }
+
+    @Test
+    public void shouldReadArchivedEventsWithFilters() {
+        assertEvents(eventStore.getEventsForAllStreams(0, allEvents.size(), streamTypes("Counter")),
+                allEvents);
+        assertEvents(eventStore.getEventsForAllStreams(allEvents.get(1).getEventId(), 3,
+                eventTypes("Counted").withStreamTypes(asList("Counter"))), allEvents.subList(2, 5));
+        assertThat(eventStore.getEventsForAllStreams(0, 100, streamTypes("Other")), is(empty()));
+        assertThat(eventStore.getEventsForAllStreams(0, 100, eventTypes("Other")), is(empty()));
+    }
+
+    @Test
+    public void shouldReadArchivedEventsByTime() {
+        long lastEventId = allEvents.get(allEvents.size() - 1).getEventId();
+        OffsetDateTime from = allEvents.get(0).getTransactionTime();
+        OffsetDateTime to = allEvents.get(allEvents.size() - 1).getTransactionTime().plusNanos(1000);
+
+        try (Stream<Event> events = eventStore.getEventsBetween(from, to)) {
+            assertEvents(events.filter(event -> event.getEventId() <= lastEventId).collect(toList()),
+                    allEvents);
+        }
+        try (Stream<Event> events = eventStore.getEventsBetween(from.minusDays(2), from.minusDays(1))) {
+            assertThat(events.count(), is(0L));
+        }
+    }
+
+    @Test
+    public void shouldReadArchivedEventHeadersAndLatestEvents() {
+        List<Event> reversed = new ArrayList<>(allEvents);
+        Collections.reverse(reversed);
+        long lastEventId = allEvents.get(allEvents.size() - 1).getEventId();
+
+        assertEvents(eventStore.getEventHeadersForAllStreams(0, allEvents.size()), allEvents);
+        assertEvents(eventStore.getEventHeadersForStream(splitStream, 0, 100), splitStreamEvents);
+        assertEvents(eventStore.getLatestEvents(100).stream()
+                .filter(event -> event.getEventId() <= lastEventId).collect(toList()), reversed);
+    }
+
+    @Test
+    public void shouldSnapshotArchivedStream() {
+        SnapshotStore snapshots = eventStore.createSnapshotStore();
+        assertEvents(snapshots.getLatestSnapshotAndEvents(splitStream, 100).getEvents(), splitStreamEvents);
+
+        snapshots.saveSnapshot(new Snapshot(splitStream, 2, "Split", "{}"));
+        SnapshotAndEvents loaded = snapshots.getLatestSnapshotAndEvents(splitStream, 100);
+
+        assertThat(loaded.getSnapshot().get().getSequence(), is(2L));
+        assertEvents(loaded.getEvents(), splitStreamEvents.subList(2, 7));
+        assertEvents(snapshots.getLatestSnapshotAndEvents(splitStream, 2).getEvents(),
+                splitStreamEvents.subList(2, 4));
+    }
+
+    @Test(expectedExceptions = EventStoreException.class)
+    public void shouldNotSnapshotAfterLastEventOfArchivedStream() {
+        eventStore.createSnapshotStore().saveSnapshot(new Snapshot(archivedStream, 4, "Archived", "{}"));
+    }
+
+    @Test
+    public void shouldReadEventsArchivedByAnotherProcess() {
+        assertEvents(otherEventStore.getEventsForAllStreams(0, allEvents.size()), allEvents);
+        assertEvents(asList(otherEventStore.getEvent(allEvents.get(1).getEventId())),
+                allEvents.subList(1, 2));
+        assertEvents(otherEventStore.getEventsForStream(splitStream, 0, 100), splitStreamEvents);
+    }
+
+    @Test
+    public void shouldContinueSequenceOfArchivedStream() {
+        assertThat(eventStore.getLastSequence(sequenceStream).get(), is(2L));
+
+        save(sequenceStream, 1);
+
+        assertThat(eventStore.getEventsForStream(sequenceStream, 0, 100).stream().map(Event::getSequence)
+                .collect(toList()), contains(1L, 2L, 3L));
+    }
+
+    @Test
+    public void shouldNotArchivePartitionsThatMayGetEvents() {
+        assertThat(eventStore.createArchiver().archivePartitionsBefore(Long.MAX_VALUE), is(empty()));
+
+        List<Long> ids = save(randomUUID(), 2);
+
+        assertEvents(eventStore.getEventsForAllStreams(0, allEvents.size()), allEvents);
+        assertThat(getIds(eventStore.getEventsForAllStreams(ids.get(0) - 1, 2)), is(ids));
+    }
+
+    @Test
+    public void shouldCreatePartitionsAhead() {
+        EventLogArchiver archiver = eventStore.createArchiver();
+
+        assertThat(archiver.createPartitions(1_000_000, 1), is(1));
+        assertThat(archiver.createPartitions(1_000_000, 1), is(0));
+        assertThat(archiver.createPartitions(1_000_000, 3), is(2));
+    }
+
+    private void createSchema() throws Exception {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("drop schema if exists " + SCHEMA + " cascade");
+            statement.execute("create schema " + SCHEMA);
+        }
+        try (Stream<Path> files = Files.list(Paths.get("db_schema"))) {
+            for (Path file : files.filter(f -> f.getFileName().toString().matches("V\\d+__.*\\.sql"))
+                    .sorted((a, b) -> Integer.compare(version(a), version(b))).collect(toList())) {
+                execute(file);
+            }
+        }
+    }
+
+    private static int version(Path file) {
+        return Integer.parseInt(file.getFileName().toString().replaceAll("^V(\\d+)__.*", "$1"));
+    }
+
+    private void execute(Path file) throws Exception {
+        try (Connection conn = new SchemaDataSource().getConnection();
+                Statement statement = conn.createStatement()) {
+            statement.execute(new String(Files.readAllBytes(file), "UTF-8"));
+        }
+    }
+
+    private List<Long> save(UUID streamId, int count) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new Event(streamId, "Counted", randomUUID(), "{\"i\": " + i + "}"));
+        }
+        return eventStore.save(events, "Counter", AUTO_GENERATE_SEQUENCE);
+    }
+
+    private static void assertEvents(List<Event> actual, List<Event> expected) {
+        assertThat(getIds(actual), is(getIds(expected)));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getStreamId(), is(expected.get(i).getStreamId()));
+            assertThat(actual.get(i).getType(), is(expected.get(i).getType()));
+            assertThat(actual.get(i).getCorrelationId(), is(expected.get(i).getCorrelationId()));
+            assertThat(actual.get(i).getSequence(), is(expected.get(i).getSequence()));
+            assertThat(actual.get(i).getTransactionTime(), is(expected.get(i).getTransactionTime()));
+            assertThat(actual.get(i).getPayload(), is(expected.get(i).getPayload()));
+        }
+    }
+
+    private static List<Long> getIds(List<Event> events) {
+        return events.stream().map(Event::getEventId).collect(toList());
+    }
+
+    /**
+     * Connections from the shared data source, working in the test schema until they are closed.
+     */
+    private static class SchemaDataSource implements DataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = dataSource.getConnection();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("set search_path to " + SCHEMA);
+            }
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            try (Statement statement = connection.createStatement()) {
+                                statement.execute("reset search_path");
+                            }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            throw new SQLException("Not a wrapper");
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class EventHeadersITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private UUID streamId;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @BeforeMethod
+    public void setUpMethod() {
+        streamId = randomUUID();
+    }
+
+    @Test
+    public void shouldReadSameEventsAsFullReads() {
+        save(5);
+
+        List<Event> headers = eventStore.getEventHeadersForStream(streamId, 0, 100);
+        List<Event> events = eventStore.getEventsForStream(streamId, 0, 100);
+
+        assertThat(headers.size(), is(5));
+        for (int i = 0; i < 5; i++) {
+            assertThat(headers.get(i).getEventId(), is(events.get(i).getEventId()));
+            assertThat(headers.get(i).getStreamId(), is(events.get(i).getStreamId()));
+            assertThat(headers.get(i).getType(), is(events.get(i).getType()));
+            assertThat(headers.get(i).getCorrelationId(), is(events.get(i).getCorrelationId()));
+            assertThat(headers.get(i).getSequence(), is(events.get(i).getSequence()));
+            assertThat(headers.get(i).getTransactionTime(), is(events.get(i).getTransactionTime()));
+            assertThat(headers.get(i).getPayload(), is(events.get(i).getPayload()));
+        }
+    }
+
+    @Test
+    public void shouldLoadPayloadsInBatches() {
+        int count = EventLogDao.PAYLOAD_BATCH_SIZE + 10;
+        long start = eventStore.getLastEventId().orElse(0L);
+        save(count);
+
+        List<Event> headers = eventStore.getEventHeadersForAllStreams(start, count);
+        assertThat(isLoaded(headers.get(0)), is(false));
+
+        assertThat(headers.get(5).getPayload(), is("{\"text\": \"5\"}"));
+
+        assertThat(isLoaded(headers.get(4)), is(false));
+        assertThat(isLoaded(headers.get(5)), is(true));
+        assertThat(isLoaded(headers.get(4 + EventLogDao.PAYLOAD_BATCH_SIZE)), is(true));
+        assertThat(isLoaded(headers.get(5 + EventLogDao.PAYLOAD_BATCH_SIZE)), is(false));
+        assertThat(headers.stream().map(Event::getPayload).collect(toList()),
+                is(eventStore.getEventsForAllStreams(start, count).stream().map(Event::getPayload)
+                        .collect(toList())));
+    }
+
+    @Test
+    public void shouldSerializeWithPayload() throws Exception {
+        save(1);
+        Event header = eventStore.getEventHeadersForStream(streamId, 0, 1).get(0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(header);
+        }
+        Object deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = in.readObject();
+        }
+
+        assertThat(deserialized.getClass(), is((Object) Event.class));
+        assertThat(((Event) deserialized).getEventId(), is(header.getEventId()));
+        assertThat(((Event) deserialized).getPayload(), is("{\"text\": \"0\"}"));
+    }
+
+    private boolean isLoaded(Event event) {
+        assertThat(event, instanceOf(LazyPayloadEvent.class));
+        return ((LazyPayloadEvent) event).isLoaded();
+    }
+
+    private void save(int count) {
+        List<Event> events = IntStream.range(0, count)
+                .mapToObj(i -> new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + i + "\"}"))
+                .collect(toList());
+        eventStore.save(events, "Recipe", AUTO_GENERATE_SEQUENCE);
+    }
+}
@@ -0,0 +1,84 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class EventRowMapperITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private UUID streamId;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @BeforeMethod
+    public void setUpMethod() {
+        streamId = randomUUID();
+    }
+
+    @Test
+    public void shouldShareTypesAndTransactionTimes() {
+        save(3);
+
+        List<Event> events = eventStore.getEventsForStream(streamId, 0, 100);
+
+        assertThat(events.get(1).getType(), is(sameInstance(events.get(0).getType())));
+        assertThat(events.get(2).getTransactionTime(), is(sameInstance(events.get(0).getTransactionTime())));
+        assertThat(events.get(2).getStreamId(), is(streamId));
+    }
+
+    @Test
+    public void shouldPassReusedInstanceToConsumer() {
+        long start = eventStore.getLastEventId().orElse(0L);
+        List<Long> ids = save(5);
+        List<Event> instances = new ArrayList<>();
+        List<Event> copies = new ArrayList<>();
+
+        long count = eventStore.forEachEventForAllStreams(start, 2, event -> {
+            instances.add(event);
+            copies.add(new Event(event));
+        });
+
+        assertThat(count, is(5L));
+        assertThat(instances.get(4), is(sameInstance(instances.get(0))));
+        assertThat(copies.stream().map(Event::getEventId).collect(toList()), is(ids));
+        assertThat(copies.get(3).getPayload(), is("{\"text\": \"3\"}"));
+        assertThat(copies.get(3).getSequence(), is(4L));
+    }
+
+    private List<Long> save(int count) {
+        List<Event> events = IntStream.range(0, count)
+                .mapToObj(i -> new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + i + "\"}"))
+                .collect(toList());
+        return eventStore.save(events, "Recipe", AUTO_GENERATE_SEQUENCE);
+    }
+}
@@ -0,0 +1,105 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreConflict;
+import com.oasisdigital.nges.event.EventStream;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class EventStoreImporterITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldImportEventsInBatches() {
+        UUID existingStream = randomUUID();
+        UUID newStream = randomUUID();
+        eventStore.save(asList(textAppended(existingStream, "-")), "Recipe", NEW_STREAM);
+
+        OffsetDateTime historicalTime = OffsetDateTime.of(2010, 5, 1, 12, 30, 0, 123000, ZoneOffset.UTC);
+        List<Event> events = new ArrayList<>();
+        IntStream.range(0, 250).forEach(i -> {
+            Event event = textAppended(i % 2 == 0 ? existingStream : newStream, "" + i);
+            event.setTransactionTime(historicalTime);
+            events.add(event);
+        });
+        List<Long> progress = new ArrayList<>();
+
+        EventStoreImporter importer = eventStore.createImporter();
+        importer.setBatchSize(100);
+        importer.setProgressListener(progress::add);
+        long imported = importer.importEvents(events.iterator(), e -> "Recipe");
+
+        assertThat(imported, is(250L));
+        assertThat(progress, contains(100L, 200L, 250L));
+
+        List<Event> existingEvents = eventStore.getEventsForStream(existingStream, 0, 1000);
+        assertThat(existingEvents.size(), is(126));
+        assertThat(existingEvents.get(125).getSequence(), is(126L));
+        assertThat(existingEvents.get(1).getPayload(), is("{\"text\": \"0\"}"));
+        assertThat(existingEvents.get(1).getTransactionTime().toInstant(), is(historicalTime.toInstant()));
+
+        List<Event> newEvents = eventStore.getEventsForStream(newStream, 0, 1000);
+        assertThat(newEvents.stream().map(Event::getSequence).collect(toList()).subList(0, 3),
+                contains(1L, 2L, 3L));
+        assertThat(newEvents.size(), is(125));
+
+        EventStream stream = eventStore.findByStreamId(newStream);
+        assertThat(stream.getStreamType(), is("Recipe"));
+        assertThat(stream.getLastSeqNo(), is(125L));
+        assertThat(stream.getLastEventId(), is(newEvents.get(124).getEventId()));
+        assertThat(eventStore.findByStreamId(existingStream).getLastSeqNo(), is(126L));
+    }
+
+    @Test
+    public void shouldRejectImportToStreamOfAnotherType() {
+        UUID streamId = randomUUID();
+        eventStore.save(asList(textAppended(streamId, "-")), "Recipe", NEW_STREAM);
+
+        try {
+            eventStore.createImporter().importEvents(asList(textAppended(streamId, "x")).iterator(),
+                    e -> "Ingredient");
+            throw new AssertionError("Expected conflict");
+        } catch (EventStoreConflict e) {
+            assertThat(eventStore.getEventsForStream(streamId, 1, 100), is(empty()));
+        }
+    }
+
+    private Event textAppended(UUID streamId, String text) {
+        return new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + text + "\"}");
+    }
+}
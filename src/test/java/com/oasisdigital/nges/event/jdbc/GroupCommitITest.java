@@ -0,0 +1,92 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreConflict;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class GroupCommitITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        eventStore.enableGroupCommit(16);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldSaveConcurrentAppendsToOneStream() {
+        UUID streamId = randomUUID();
+
+        IntStream.range(0, 50).parallel().forEach(i -> eventStore.save(asList(textAppended(streamId, "" + i)),
+                "Recipe", AUTO_GENERATE_SEQUENCE));
+
+        List<Event> events = eventStore.getEventsForStream(streamId, 0, 100);
+        assertThat(events.stream().map(Event::getSequence).collect(toList()),
+                contains(LongStream.rangeClosed(1, 50).boxed().toArray()));
+        assertThat(eventStore.findByStreamId(streamId).getLastSeqNo(), is(50L));
+    }
+
+    @Test
+    public void shouldReportConflictOnlyToConflictingCaller() {
+        UUID streamId = randomUUID();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        IntStream.range(0, 20).parallel().forEach(i -> {
+            try {
+                eventStore.save(asList(textAppended(streamId, "" + i)), "Recipe", NEW_STREAM);
+            } catch (EventStoreConflict e) {
+                conflicts.incrementAndGet();
+            }
+        });
+
+        assertThat(conflicts.get(), is(19));
+        assertThat(eventStore.getEventsForStream(streamId, 0, 100), hasSize(1));
+    }
+
+    @Test
+    public void shouldReturnOwnIdsToEveryCaller() {
+        List<UUID> streamIds = IntStream.range(0, 20).mapToObj(i -> randomUUID()).collect(toList());
+
+        streamIds.parallelStream().forEach(streamId -> {
+            List<Long> ids = eventStore.save(asList(textAppended(streamId, "a"), textAppended(streamId, "b")),
+                    "Recipe", NEW_STREAM);
+            List<Event> saved = eventStore.getEventsForStream(streamId, 0, 100);
+            assertThat(ids, is(saved.stream().map(Event::getEventId).collect(toList())));
+        });
+    }
+
+    private Event textAppended(UUID streamId, String text) {
+        return new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + text + "\"}");
+    }
+}
@@ -0,0 +1,121 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.TestGroups;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class JdbcQueriesITest extends BaseITest {
+    private RecordingDataSource recordingDataSource;
+    private JdbcQueries queries;
+
+    @BeforeMethod
+    public void setUp() {
+        recordingDataSource = new RecordingDataSource();
+        queries = new JdbcQueries(new ConnectionSource(recordingDataSource));
+    }
+
+    @Test
+    public void shouldRestoreAutoCommitWhenStreamIsClosed() {
+        try (Stream<Integer> numbers = queries.queryForStream("select generate_series(1, ?)",
+                rs -> rs.getInt(1), 2, 5)) {
+            assertThat(numbers.collect(toList()), contains(1, 2, 3, 4, 5));
+        }
+
+        assertThat(recordingDataSource.autoCommitOnClose, contains(true));
+    }
+
+    @Test
+    public void shouldRestoreAutoCommitWhenQueryFails() {
+        try {
+            queries.queryForStream("select * from no_such_table", rs -> rs.getInt(1), 10);
+            throw new AssertionError("Expected the query to fail");
+        } catch (EventStoreException e) {
+            // Expected
+        }
+
+        assertThat(recordingDataSource.autoCommitOnClose, contains(true));
+    }
+
+    /**
+     * Connections from the shared data source, recording their autocommit mode as they are returned to the
+     * pool.
+     */
+    private static class RecordingDataSource implements DataSource {
+        private final List<Boolean> autoCommitOnClose = new ArrayList<>();
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = dataSource.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            autoCommitOnClose.add(connection.getAutoCommit());
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            throw new SQLException("Not a wrapper");
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class ParallelRangeScanITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private UUID streamId;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        eventStore.enableParallelRangeScans(3, 4);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @BeforeMethod
+    public void setUpMethod() {
+        streamId = randomUUID();
+    }
+
+    @Test
+    public void shouldReadChunksInOrder() {
+        List<Long> ids = save(30);
+        OffsetDateTime time = eventStore.getEvent(ids.get(0)).getTransactionTime();
+
+        try (Stream<Event> events = eventStore.getEventsBetween(time, time.plusNanos(1000))) {
+            assertThat(getIds(events.filter(e -> e.getStreamId().equals(streamId))), is(ids));
+        }
+    }
+
+    @Test
+    public void shouldStopReadingWhenClosed() {
+        List<Long> ids = save(30);
+        OffsetDateTime time = eventStore.getEvent(ids.get(0)).getTransactionTime();
+
+        try (Stream<Event> events = eventStore.getEventsBetween(time, time.plusNanos(1000))) {
+            assertThat(getIds(events.filter(e -> e.getStreamId().equals(streamId)).limit(5)),
+                    is(ids.subList(0, 5)));
+        }
+    }
+
+    @Test
+    public void shouldShareThreadsBetweenReadsUntilClosed() {
+        JdbcEventStore store = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        store.enableParallelRangeScans(2, 4);
+        List<Long> ids = save(30);
+        OffsetDateTime time = eventStore.getEvent(ids.get(0)).getTransactionTime();
+        Set<Thread> before = rangeReaderThreads();
+
+        for (int i = 0; i < 5; i++) {
+            try (Stream<Event> events = store.getEventsBetween(time, time.plusNanos(1000))) {
+                assertThat(getIds(events.filter(e -> e.getStreamId().equals(streamId))), is(ids));
+            }
+        }
+        Set<Thread> started = rangeReaderThreads();
+        started.removeAll(before);
+        assertThat(started.size(), is(lessThanOrEqualTo(2)));
+
+        store.close();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> started.stream().noneMatch(Thread::isAlive));
+        try {
+            store.getEventsBetween(time, time.plusNanos(1000)).close();
+            throw new AssertionError("Expected the store to be closed");
+        } catch (EventStoreException e) {
+            assertThat(e.getMessage(), is("The store is closed"));
+        }
+    }
+
+    @Test
+    public void shouldReadEmptyRange() {
+        OffsetDateTime time = OffsetDateTime.now().minusYears(100);
+
+        try (Stream<Event> events = eventStore.getEventsBetween(time, time.plusDays(1))) {
+            assertThat(getIds(events), is(empty()));
+        }
+    }
+
+    private List<Long> save(int count) {
+        List<Event> events = IntStream.range(0, count)
+                .mapToObj(i -> new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + i + "\"}"))
+                .collect(toList());
+        return eventStore.save(events, "Recipe", AUTO_GENERATE_SEQUENCE);
+    }
+
+    private static Set<Thread> rangeReaderThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("nges-range-reader-")).collect(toSet());
+    }
+
+    private List<Long> getIds(Stream<Event> events) {
+        return events.map(Event::getEventId).collect(toList());
+    }
+}
@@ -0,0 +1,175 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.Snapshot;
+import com.oasisdigital.nges.event.SnapshotAndEvents;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class PayloadCodecITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private UUID streamId;
+    private String eventType;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = createEventStore();
+        streamId = randomUUID();
+        eventType = "ItemAdded-" + randomUUID();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldReadMixedCodecs() {
+        List<Long> ids = save(PayloadCodec.JSON, 0, 1);
+        ids.addAll(save(PayloadCodec.JSONB, 1, 1));
+        ids.addAll(save(PayloadCodec.DEFLATE, 2, 1));
+
+        List<Event> events = eventStore.getEventsForStream(streamId, 0, 100);
+
+        assertThat(getPayloads(events), contains(payload(0), payload(1), payload(2)));
+        assertThat(getCodec(ids.get(0)), is(nullValue()));
+        assertThat(getCodec(ids.get(1)), is("jsonb"));
+        assertThat(getCodec(ids.get(2)), is("deflate"));
+        assertThat(eventStore.getEvent(ids.get(2)).getPayload(), is(payload(2)));
+    }
+
+    @Test
+    public void shouldStoreNullPayloads() {
+        eventStore.setPayloadCodec(PayloadCodec.DEFLATE);
+        eventStore.save(asList(new Event(streamId, eventType, randomUUID(), null)), "Cart",
+                AUTO_GENERATE_SEQUENCE);
+
+        assertThat(eventStore.getEventsForStream(streamId, 0, 1).get(0).getPayload(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCompressWithTrainedDictionary() {
+        save(PayloadCodec.JSON, 0, 50);
+        List<Long> plain = save(PayloadCodec.DEFLATE, 50, 1);
+        eventStore.trainPayloadDictionary(eventType, 50);
+        List<Long> trained = save(PayloadCodec.DEFLATE, 51, 1);
+
+        assertThat(getCompressedLength(trained.get(0)), lessThan(getCompressedLength(plain.get(0))));
+
+        // Readable by a store that never saw the dictionary
+        JdbcEventStore other = createEventStore();
+        assertThat(other.getEvent(trained.get(0)).getPayload(), is(payload(51)));
+        assertThat(other.getEvent(plain.get(0)).getPayload(), is(payload(50)));
+    }
+
+    @Test
+    public void shouldRefuseDictionaryWithChecksumOfAnother() throws Exception {
+        eventStore.setPayloadCodec(PayloadCodec.JSON);
+        List<String> samples = IntStream.range(0, 3).mapToObj(i -> "{\"id\": \"" + randomUUID() + "\"}")
+                .collect(toList());
+        eventStore.save(samples.stream().map(payload -> new Event(streamId, eventType, randomUUID(), payload))
+                .collect(toList()), "Cart", AUTO_GENERATE_SEQUENCE);
+        Adler32 checksum = new Adler32();
+        checksum.update(String.join("", samples).getBytes(UTF_8));
+        new JdbcQueries(new ConnectionSource(dataSource)).insert(
+                "insert into payload_dictionary(checksum, event_type, dictionary) values (?, ?, ?)",
+                checksum.getValue(), "Other-" + eventType, "other".getBytes(UTF_8));
+
+        try {
+            eventStore.trainPayloadDictionary(eventType, 3);
+            throw new AssertionError("Expected the dictionary to be refused");
+        } catch (EventStoreException e) {
+            // Expected
+        }
+        List<Long> ids = save(PayloadCodec.DEFLATE, 0, 1);
+
+        assertThat(createEventStore().getEvent(ids.get(0)).getPayload(), is(payload(0)));
+    }
+
+    @Test
+    public void shouldLoadCompressedPayloadsLazily() {
+        save(PayloadCodec.DEFLATE, 0, 3);
+
+        List<Event> headers = eventStore.getEventHeadersForStream(streamId, 0, 100);
+
+        assertThat(getPayloads(headers), contains(payload(0), payload(1), payload(2)));
+    }
+
+    @Test
+    public void shouldLoadCompressedEventsAfterSnapshot() {
+        save(PayloadCodec.DEFLATE, 0, 3);
+        JdbcSnapshotStore snapshotStore = new JdbcSnapshotStore(dataSource);
+        snapshotStore.saveSnapshot(new Snapshot(streamId, 1, "Cart", "{\"items\": 1}"));
+
+        SnapshotAndEvents loaded = snapshotStore.getLatestSnapshotAndEvents(streamId, 100);
+
+        assertThat(loaded.getSnapshot().get().getPayload(), is("{\"items\": 1}"));
+        assertThat(getPayloads(loaded.getEvents()), contains(payload(1), payload(2)));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectCodecWithServerSideAppend() {
+        eventStore.enableServerSideAppend();
+        eventStore.setPayloadCodec(PayloadCodec.JSONB);
+    }
+
+    private JdbcEventStore createEventStore() {
+        return new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+    }
+
+    private List<Long> save(PayloadCodec codec, int first, int count) {
+        eventStore.setPayloadCodec(codec);
+        List<Event> events = IntStream.range(first, first + count)
+                .mapToObj(i -> new Event(streamId, eventType, randomUUID(), payload(i))).collect(toList());
+        return eventStore.save(events, "Cart", AUTO_GENERATE_SEQUENCE);
+    }
+
+    // Formatted the way jsonb prints it, so that all codecs return the same text
+    private String payload(int i) {
+        return "{\"name\": \"Widget\", \"itemId\": \"" + i + "\", \"quantity\": 1, \"unitPrice\": \"9.99\"}";
+    }
+
+    private List<String> getPayloads(List<Event> events) {
+        return events.stream().map(Event::getPayload).collect(toList());
+    }
+
+    private String getCodec(long eventId) {
+        return new JdbcQueries(new ConnectionSource(dataSource))
+                .queryForOptionalObject("select payload_codec from event_log where event_id = ?",
+                        String.class, eventId)
+                .orElse(null);
+    }
+
+    private int getCompressedLength(long eventId) {
+        return new JdbcQueries(new ConnectionSource(dataSource))
+                .queryForOptionalObject("select length(payload_bytes) from event_log where event_id = ?",
+                        Integer.class, eventId)
+                .get();
+    }
+}
@@ -0,0 +1,208 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class ReadReplicaITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private LaggingReplica replica;
+    private UUID streamId;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        replica = new LaggingReplica();
+        streamId = randomUUID();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        replica.close();
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldReadFromReplica() throws Exception {
+        JdbcEventStore eventStore = createEventStore(0);
+        long first = save(eventStore, "a");
+        replica.freeze();
+        long second = save(eventStore, "b");
+
+        assertThat(getIds(eventStore.getEventsForStream(streamId, 0, 100)), contains(first));
+        assertThat(eventStore.findByStreamId(streamId).getLastEventId(), is(first));
+        // Writes and write-related reads still use the primary.
+        assertThat(eventStore.getLastSequence(streamId).get(), is(2L));
+        assertThat(eventStore.getLastEventId().get(), is(second));
+    }
+
+    @Test
+    public void shouldFallBackToPrimaryWhenReplicaIsBehind() throws Exception {
+        JdbcEventStore eventStore = createEventStore(50);
+        replica.freeze();
+        long id = save(eventStore, "a");
+
+        List<Event> events = eventStore.readAfter(id, () -> eventStore.getEventsForStream(streamId, 0, 100));
+
+        assertThat(getIds(events), contains(id));
+        assertThat(eventStore.getReplicaFallbackCount(), is(1L));
+        assertThat(eventStore.getEventsForStream(streamId, 0, 100), is(empty()));
+    }
+
+    @Test
+    public void shouldUseReplicaWhenItHasTheEvent() throws Exception {
+        JdbcEventStore eventStore = createEventStore(0);
+        long first = save(eventStore, "a");
+        replica.freeze();
+        save(eventStore, "b");
+
+        List<Event> events = eventStore.readAfter(first, () -> eventStore.getEventsForStream(streamId, 0, 100));
+
+        assertThat(getIds(events), contains(first));
+        assertThat(eventStore.getReplicaFallbackCount(), is(0L));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectReplicaWithStripedLocking() throws Exception {
+        JdbcEventStore eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        eventStore.enableStripedLocking(16);
+        eventStore.enableReadReplica(replica, 0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectStripedLockingWithReplica() throws Exception {
+        createEventStore(0).enableStripedLocking(16);
+    }
+
+    private JdbcEventStore createEventStore(long maxWaitMs) {
+        JdbcEventStore eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        eventStore.enableReadReplica(replica, maxWaitMs);
+        return eventStore;
+    }
+
+    private long save(JdbcEventStore eventStore, String text) {
+        Event event = new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + text + "\"}");
+        return eventStore.save(asList(event), "Recipe", AUTO_GENERATE_SEQUENCE).get(0);
+    }
+
+    private List<Long> getIds(List<Event> events) {
+        return events.stream().map(Event::getEventId).collect(toList());
+    }
+
+    /**
+     * Imitates a replica that stopped replaying at some point: a single connection stuck in a repeatable read
+     * transaction, so that it doesn't see anything committed after its snapshot was taken.
+     */
+    private static class LaggingReplica implements DataSource {
+        private final Connection connection;
+
+        LaggingReplica() throws SQLException {
+            connection = dataSource.getConnection();
+        }
+
+        void freeze() throws SQLException {
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try (Statement statement = connection.createStatement()) {
+                // The snapshot is taken by the first query in the transaction.
+                statement.execute("select 1");
+            }
+        }
+
+        void close() throws SQLException {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.close();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            // Transaction control and closing are ignored, to keep the snapshot.
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                        case "close":
+                        case "commit":
+                        case "rollback":
+                        case "setAutoCommit":
+                            return null;
+                        default:
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) {
+        }
+
+        @Override
+        public int getLoginTimeout() {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            throw new SQLException("Not a wrapper");
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) {
+            return false;
+        }
+    }
+}
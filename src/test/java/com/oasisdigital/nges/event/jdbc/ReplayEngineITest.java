@@ -0,0 +1,150 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+import com.oasisdigital.nges.event.subscription.EventHandler;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class ReplayEngineITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private List<UUID> streamIds;
+    private Map<UUID, List<Long>> handled;
+    private String name;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @BeforeMethod
+    public void setUpMethod() {
+        streamIds = IntStream.range(0, 5).mapToObj(i -> randomUUID()).collect(toList());
+        handled = new ConcurrentHashMap<>();
+        name = "test-" + randomUUID();
+    }
+
+    @Test
+    public void shouldReplayEachStreamInOrder() {
+        saveInterleaved(10);
+        ReplayEngine engine = createEngine(event -> record(event));
+
+        engine.run();
+
+        for (UUID streamId : streamIds) {
+            assertThat(handled.get(streamId), is(LongStream.rangeClosed(1, 10).boxed().collect(toList())));
+        }
+        assertThat(engine.getCheckpoint(), is(eventStore.getLastEventId().get()));
+        assertThat(engine.getHandledCount(), is(engine.getDispatchedCount()));
+    }
+
+    @Test
+    public void shouldResumeAfterLastCheckpoint() {
+        List<Long> ids = saveInterleaved(10);
+        long failingId = ids.get(35);
+        AtomicBoolean fail = new AtomicBoolean(true);
+        Set<Long> seen = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        ReplayEngine engine = createEngine(event -> {
+            if (fail.get() && event.getEventId() == failingId) {
+                throw new IllegalStateException("Failed on purpose");
+            }
+            seen.add(event.getEventId());
+        });
+
+        try {
+            engine.run();
+            throw new AssertionError("Replay should fail");
+        } catch (EventStoreException e) {
+            assertThat(e.getCause().getMessage(), is("Failed on purpose"));
+        }
+        long checkpoint = engine.getCheckpoint();
+        assertThat(checkpoint, is(lessThan(failingId)));
+
+        fail.set(false);
+        seen.clear();
+        engine.run();
+
+        assertThat(seen, hasItem(failingId));
+        assertThat(seen, everyItem(greaterThan(checkpoint)));
+        assertThat(engine.getCheckpoint(), is(eventStore.getLastEventId().get()));
+    }
+
+    @Test
+    public void shouldStartOverAfterReset() {
+        saveInterleaved(2);
+        ReplayEngine engine = createEngine(event -> record(event));
+        engine.run();
+        handled.clear();
+
+        engine.run();
+        assertThat(handled.keySet(), is(empty()));
+
+        engine.reset();
+        engine.run();
+        assertThat(handled.get(streamIds.get(0)), is(LongStream.rangeClosed(1, 2).boxed().collect(toList())));
+    }
+
+    private ReplayEngine createEngine(EventHandler handler) {
+        ReplayEngine engine = eventStore.createReplayEngine(name, handler);
+        engine.setFetchParallelism(3);
+        engine.setChunkSize(7);
+        engine.setPartitions(3, 5);
+        engine.setCheckpointInterval(10);
+        return engine;
+    }
+
+    private void record(Event event) {
+        if (streamIds.contains(event.getStreamId())) {
+            handled.computeIfAbsent(event.getStreamId(), id -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(event.getSequence());
+        }
+    }
+
+    private List<Long> saveInterleaved(int eventsPerStream) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < eventsPerStream; i++) {
+            for (UUID streamId : streamIds) {
+                Event event = new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + i + "\"}");
+                ids.addAll(eventStore.save(Collections.singletonList(event), "Recipe", AUTO_GENERATE_SEQUENCE));
+            }
+        }
+        return ids;
+    }
+}
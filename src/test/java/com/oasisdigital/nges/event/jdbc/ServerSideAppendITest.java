@@ -0,0 +1,114 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreConflict;
+import com.oasisdigital.nges.event.EventStream;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class ServerSideAppendITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private UUID streamId;
+
+    @BeforeClass
+    public void setUpClass() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        eventStore.enableServerSideAppend();
+    }
+
+    @BeforeMethod
+    public void setUpMethod() {
+        streamId = randomUUID();
+    }
+
+    @AfterClass
+    public void tearDownClass() {
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldAppendAndUpdateStream() {
+        List<Long> ids = eventStore.save(asList(textAppended("a"), textAppended("b")), "Recipe", NEW_STREAM);
+        List<Long> moreIds = eventStore.save(asList(textAppended("c")), "Recipe", 2);
+
+        List<Event> events = eventStore.getEventsForStream(streamId, 0, 100);
+        assertThat(events.stream().map(Event::getEventId).collect(toList()),
+                contains(ids.get(0), ids.get(1), moreIds.get(0)));
+        assertThat(events.stream().map(Event::getSequence).collect(toList()), contains(1L, 2L, 3L));
+        assertThat(events.get(2).getPayload(), is("{\"text\": \"c\"}"));
+
+        EventStream stream = eventStore.findByStreamId(streamId);
+        assertThat(stream.getStreamType(), is("Recipe"));
+        assertThat(stream.getLastEventId(), is(moreIds.get(0)));
+        assertThat(stream.getLastSeqNo(), is(3L));
+    }
+
+    @Test
+    public void shouldGenerateSequenceForConcurrentAppends() {
+        IntStream.range(0, 10).parallel().forEach(
+                i -> eventStore.save(asList(textAppended("" + i)), "Recipe", AUTO_GENERATE_SEQUENCE));
+
+        List<Event> events = eventStore.getEventsForStream(streamId, 0, 100);
+        assertThat(events.stream().map(Event::getSequence).collect(toList()),
+                contains(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L));
+    }
+
+    @Test(expectedExceptions = EventStoreConflict.class)
+    public void shouldRejectExistingStreamCreation() {
+        eventStore.save(asList(textAppended("a")), "Recipe", NEW_STREAM);
+        eventStore.save(asList(textAppended("b")), "Recipe", NEW_STREAM);
+    }
+
+    @Test(expectedExceptions = EventStoreConflict.class)
+    public void shouldRejectStreamOfAnotherType() {
+        eventStore.save(asList(textAppended("a")), "Recipe", NEW_STREAM);
+        eventStore.save(asList(textAppended("b")), "Ingredient", NEW_STREAM);
+    }
+
+    @Test(expectedExceptions = EventStoreConflict.class)
+    public void shouldRejectConcurrentModification() {
+        eventStore.save(asList(textAppended("a"), textAppended("b")), "Recipe", NEW_STREAM);
+        eventStore.save(asList(textAppended("c")), "Recipe", 1);
+    }
+
+    @Test
+    public void shouldNotSaveWithoutLease() {
+        String leaseKey = "Lease-" + randomUUID();
+        eventStore.lease(leaseKey, "Owner1", 2000);
+
+        assertThat(save(textAppended("a"), leaseKey, "Owner2"), is(empty()));
+        assertThat(save(textAppended("a"), leaseKey, "Owner1").size(), is(1));
+    }
+
+    private List<Long> save(Event event, String leaseKey, String leaseOwnerKey) {
+        return eventStore.save(asList(event), "Recipe", NEW_STREAM, asList(leaseKey), leaseOwnerKey);
+    }
+
+    private Event textAppended(String text) {
+        return new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + text + "\"}");
+    }
+}
@@ -0,0 +1,146 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.Snapshot;
+import com.oasisdigital.nges.event.SnapshotAndEvents;
+import com.oasisdigital.nges.event.SnapshotPolicy;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class SnapshotStoreITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private JdbcSnapshotStore snapshotStore;
+    private UUID streamId;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        snapshotStore = new JdbcSnapshotStore(dataSource);
+        snapshotStore.setPolicy(SnapshotPolicy.everyEvents(5));
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @BeforeMethod
+    public void setUpMethod() {
+        streamId = randomUUID();
+    }
+
+    @Test
+    public void shouldLoadAllEventsWithoutSnapshot() {
+        save(3);
+
+        SnapshotAndEvents loaded = snapshotStore.getLatestSnapshotAndEvents(streamId, 100);
+
+        assertThat(loaded.getSnapshot().isPresent(), is(false));
+        assertThat(getSequences(loaded.getEvents()), contains(1L, 2L, 3L));
+        assertThat(loaded.getLastSequence(), is(3L));
+    }
+
+    @Test
+    public void shouldLoadLatestSnapshotAndEventsAfterIt() {
+        save(10);
+        snapshotStore.saveSnapshot(new Snapshot(streamId, 4, "Counter", "{\"count\": 4}"));
+        snapshotStore.saveSnapshot(new Snapshot(streamId, 8, "Counter", "{\"count\": 8}"));
+
+        SnapshotAndEvents loaded = snapshotStore.getLatestSnapshotAndEvents(streamId, 100);
+
+        Snapshot snapshot = loaded.getSnapshot().get();
+        assertThat(snapshot.getSequence(), is(8L));
+        assertThat(snapshot.getType(), is("Counter"));
+        assertThat(snapshot.getPayload(), is("{\"count\": 8}"));
+        assertThat(getSequences(loaded.getEvents()), contains(9L, 10L));
+        assertThat(loaded.getEvents().get(0).getType(), is("Incremented"));
+        assertThat(loaded.getLastSequence(), is(10L));
+    }
+
+    @Test
+    public void shouldLoadSnapshotWithoutNewerEvents() {
+        save(4);
+        snapshotStore.saveSnapshot(new Snapshot(streamId, 4, "Counter", "{\"count\": 4}"));
+
+        SnapshotAndEvents loaded = snapshotStore.getLatestSnapshotAndEvents(streamId, 100);
+
+        assertThat(loaded.getSnapshot().get().getSequence(), is(4L));
+        assertThat(loaded.getEvents(), is(empty()));
+        assertThat(loaded.getLastSequence(), is(4L));
+    }
+
+    @Test
+    public void shouldIgnoreRepeatedSnapshot() {
+        save(2);
+        snapshotStore.saveSnapshot(new Snapshot(streamId, 2, "Counter", "{\"count\": 2}"));
+        snapshotStore.saveSnapshot(new Snapshot(streamId, 2, "Counter", "{\"count\": 2}"));
+
+        assertThat(snapshotStore.getLatestSnapshot(streamId).get().getSequence(), is(2L));
+    }
+
+    @Test(expectedExceptions = EventStoreException.class)
+    public void shouldRejectSnapshotAfterLastEvent() {
+        save(2);
+        snapshotStore.saveSnapshot(new Snapshot(streamId, 3, "Counter", "{\"count\": 3}"));
+    }
+
+    @Test
+    public void shouldSaveSnapshotWhenDue() {
+        save(7);
+
+        assertThat(snapshotStore.saveSnapshotIfDue(0, 4, () -> snapshot(4)), is(false));
+        assertThat(snapshotStore.saveSnapshotIfDue(0, 5, () -> snapshot(5)), is(true));
+        assertThat(snapshotStore.saveSnapshotIfDue(5, 7, () -> snapshot(7)), is(false));
+        assertThat(snapshotStore.getLatestSnapshot(streamId).get().getSequence(), is(5L));
+    }
+
+    @Test
+    public void shouldDeleteOldSnapshots() {
+        save(6);
+        snapshotStore.saveSnapshot(snapshot(3));
+        snapshotStore.saveSnapshot(snapshot(6));
+
+        snapshotStore.deleteSnapshots(streamId, 6);
+        snapshotStore.deleteSnapshots(streamId, 6);
+
+        assertThat(snapshotStore.getLatestSnapshot(streamId).get().getSequence(), is(6L));
+        assertThat(snapshotStore.getLatestSnapshotAndEvents(streamId, 100).getEvents(), is(empty()));
+    }
+
+    private Snapshot snapshot(long sequence) {
+        return new Snapshot(streamId, sequence, "Counter", "{\"count\": " + sequence + "}");
+    }
+
+    private void save(int count) {
+        List<Event> events = IntStream.range(0, count)
+                .mapToObj(i -> new Event(streamId, "Incremented", randomUUID(), "{}")).collect(toList());
+        eventStore.save(events, "Counter", AUTO_GENERATE_SEQUENCE);
+    }
+
+    private List<Long> getSequences(List<Event> events) {
+        return events.stream().map(Event::getSequence).collect(toList());
+    }
+}
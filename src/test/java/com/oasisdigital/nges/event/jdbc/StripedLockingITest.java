@@ -0,0 +1,128 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class StripedLockingITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        eventStore.enableStripedLocking(64);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldSaveConcurrentBatchesToDifferentStreamsInConsistentBlocks() {
+        List<UUID> streamIds = IntStream.range(0, 20).mapToObj(i -> randomUUID()).collect(toList());
+        long lastEventId = eventStore.getLastEventId().orElse(0L);
+
+        streamIds.parallelStream().forEach(streamId -> eventStore.save(
+                asList(textAppended(streamId, "a"), textAppended(streamId, "b"), textAppended(streamId, "c")),
+                "Recipe", NEW_STREAM));
+
+        List<Event> events = eventStore.getEventsForAllStreams(lastEventId, 100);
+        assertThat(events, hasSize(60));
+        for (int i = 0; i < events.size(); i += 3) {
+            assertThat(events.get(i + 1).getStreamId(), is(events.get(i).getStreamId()));
+            assertThat(events.get(i + 2).getStreamId(), is(events.get(i).getStreamId()));
+            assertThat(events.get(i + 2).getSequence(), is(3L));
+        }
+    }
+
+    @Test
+    public void shouldNotReadPastEventsInFlight() throws Exception {
+        long lastEventId = eventStore.getLastEventId().orElse(0L);
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Keep a transaction with the lower ID open...
+        UUID slowStream = randomUUID();
+        CompletableFuture<Void> slowWriter = CompletableFuture.runAsync(() -> {
+            ConnectionSource connectionSource = new ConnectionSource(dataSource);
+            StripedWriteLocking locking = new StripedWriteLocking(connectionSource,
+                    new EventLogDao(connectionSource), 64);
+            connectionSource.inTransaction(conn -> {
+                Event event = textAppended(slowStream, "slow");
+                event.setSequence(1);
+                locking.insertEvents(asList(event));
+                inserted.countDown();
+                awaitUninterruptibly(release);
+                return null;
+            });
+        });
+        inserted.await();
+
+        // ... while an event with a higher ID is committed.
+        UUID fastStream = randomUUID();
+        eventStore.save(asList(textAppended(fastStream, "fast")), "Recipe", NEW_STREAM);
+
+        List<Event> events = eventStore.getEventsForAllStreams(lastEventId, 100);
+        assertThat(events, is(empty()));
+
+        release.countDown();
+        slowWriter.get();
+
+        events = eventStore.getEventsForAllStreams(lastEventId, 100);
+        assertThat(events.stream().map(Event::getStreamId).collect(toList()),
+                contains(slowStream, fastStream));
+    }
+
+    @Test
+    public void shouldSerializeAppendsToOneStream() {
+        UUID streamId = randomUUID();
+        eventStore.save(asList(textAppended(streamId, "-")), "Recipe", NEW_STREAM);
+
+        IntStream.range(0, 20).parallel().forEach(i -> eventStore.save(asList(textAppended(streamId, "" + i)),
+                "Recipe", AUTO_GENERATE_SEQUENCE));
+
+        List<Event> events = eventStore.getEventsForStream(streamId, 0, 100);
+        assertThat(events.stream().map(Event::getSequence).collect(toList()),
+                contains(LongStream.rangeClosed(1, 21).boxed().toArray()));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Event textAppended(UUID streamId, String text) {
+        return new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + text + "\"}");
+    }
+}
@@ -0,0 +1,165 @@
+package com.oasisdigital.nges.event.jdbc;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.EventUpdate;
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class TailCacheITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private UUID streamId;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        streamId = randomUUID();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldServeTailFromCache() {
+        TailCache cache = enableTailCache(100, 1_000_000);
+        long start = eventStore.getLastEventId().orElse(0L);
+        List<Long> ids = save(5);
+        awaitCached(ids);
+
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+        assertThat(getIds(eventStore.getEventsForAllStreams(start, 100)), is(ids));
+        assertThat(getIds(eventStore.getEventsForAllStreams(ids.get(1), 2)),
+                contains(ids.get(2), ids.get(3)));
+        assertThat(getIds(eventStore.getLatestEvents(2)), contains(ids.get(4), ids.get(3)));
+        assertThat(eventStore.getEvent(ids.get(2)).getEventId(), is(ids.get(2)));
+        assertThat(cache.getMissCount(), is(misses));
+        assertThat(cache.getHitCount(), is(hits + 4));
+    }
+
+    @Test
+    public void shouldAppendSavedEvents() {
+        TailCache cache = enableTailCache(100, 1_000_000);
+        awaitCached(save(1));
+
+        List<Long> ids = save(3);
+
+        // Available right away, without waiting for the notification
+        long misses = cache.getMissCount();
+        List<Event> events = eventStore.getEventsForAllStreams(ids.get(0) - 1, 3);
+        assertThat(getIds(events), is(ids));
+        assertThat(events.get(2).getSequence(), is(4L));
+        assertThat(cache.getMissCount(), is(misses));
+        assertThat(events.get(2).getTransactionTime(), is(eventLogTransactionTime(ids.get(2))));
+    }
+
+    @Test
+    public void shouldNotServeRangeBehindSavedEvents() {
+        TailCache cache = new TailCache((afterEventId, limit) -> asList(), 100, 1_000_000);
+        cache.putRange(0, asList(saved(1), saved(2), saved(3)));
+        cache.onEventUpdate(new EventUpdate(3));
+
+        // Saved after events of another process, it doesn't connect to the cached range
+        cache.putSaved(asList(saved(5)));
+
+        assertThat(cache.getEventsForAllStreams(3, 10).isPresent(), is(false));
+        assertThat(cache.getLatestEvents(1).isPresent(), is(false));
+    }
+
+    @Test
+    public void shouldEvictOldestEvents() {
+        TailCache cache = enableTailCache(10, 1_000_000);
+        long start = eventStore.getLastEventId().orElse(0L);
+        List<Long> ids = save(30);
+        awaitCached(ids);
+
+        assertThat(cache.getSize(), is(10));
+        long misses = cache.getMissCount();
+        assertThat(getIds(eventStore.getEventsForAllStreams(start, 100)), is(ids));
+        assertThat(cache.getMissCount(), is(misses + 1));
+    }
+
+    @Test
+    public void shouldEvictByBytes() {
+        TailCache cache = enableTailCache(100, 2_000);
+        List<Long> ids = save(30);
+        awaitCached(ids);
+
+        assertThat(cache.getBytes(), lessThanOrEqualTo(2_000L));
+        assertThat(cache.getSize(), is(lessThanOrEqualTo(9)));
+    }
+
+    @Test
+    public void shouldNotExposeCachedInstances() {
+        enableTailCache(100, 1_000_000);
+        List<Long> ids = save(1);
+        awaitCached(ids);
+
+        eventStore.getEvent(ids.get(0)).setPayload("{}");
+
+        assertThat(eventStore.getEvent(ids.get(0)).getPayload(), is("{\"text\": \"0\"}"));
+    }
+
+    private TailCache enableTailCache(int maxEvents, long maxBytes) {
+        eventStore.enableTailCache(maxEvents, maxBytes);
+        TailCache cache = eventStore.getTailCache().get();
+        messageGroup.registerSubscriber(cache);
+        return cache;
+    }
+
+    private void awaitCached(List<Long> ids) {
+        TailCache cache = eventStore.getTailCache().get();
+        long last = ids.get(ids.size() - 1);
+        await().atMost(10, TimeUnit.SECONDS)
+                .until(() -> cache.getEventsForAllStreams(last - 1, 1).isPresent());
+    }
+
+    private OffsetDateTime eventLogTransactionTime(long eventId) {
+        return new EventLogDao(new ConnectionSource(dataSource)).getEvent(eventId).getTransactionTime();
+    }
+
+    private List<Long> save(int count) {
+        List<Event> events = IntStream.range(0, count)
+                .mapToObj(i -> new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + i + "\"}"))
+                .collect(toList());
+        return eventStore.save(events, "Recipe", AUTO_GENERATE_SEQUENCE);
+    }
+
+    private Event saved(long eventId) {
+        Event event = new Event(streamId, "TextAppended", randomUUID(), "{}");
+        event.setEventId(eventId);
+        event.setSequence(eventId);
+        event.setTransactionTime(OffsetDateTime.now());
+        return event;
+    }
+
+    private List<Long> getIds(List<Event> events) {
+        return events.stream().map(Event::getEventId).collect(toList());
+    }
+}
@@ -0,0 +1,164 @@
+package com.oasisdigital.nges.event.memory;
+
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static com.oasisdigital.nges.event.EventStore.NEW_STREAM;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.EventStoreConflict;
+import com.oasisdigital.nges.event.EventStoreContractITest;
+import com.oasisdigital.nges.event.EventStoreException;
+import com.oasisdigital.nges.event.StreamAppend;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+
+/**
+ * No database needed.
+ */
+@Test(groups = TestGroups.INTEGRATION)
+public class InMemoryEventStoreITest extends EventStoreContractITest<InMemoryEventStore> {
+    @Override
+    protected InMemoryEventStore createEventStore(EventStoreStatusPublisher statusPublisher) {
+        return new InMemoryEventStore(statusPublisher);
+    }
+
+    @Test
+    public void shouldStayConsistentUnderConcurrentSaves() throws Exception {
+        int threads = 8;
+        int savesPerThread = 2000;
+        List<UUID> streamIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            streamIds.add(randomUUID());
+            eventStore.save(asList(textAppended(streamIds.get(i), "first")), "Recipe", NEW_STREAM);
+        }
+        AtomicLong conflicts = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            // Saves of two events are never seen half done, and visible events are never out of order
+            Future<?> reader = executor.submit(() -> {
+                long lastEventId = 0;
+                while (!done.get()) {
+                    for (Event event : eventStore.getEventsForAllStreams(lastEventId, 1000)) {
+                        assertThat(event.getEventId(), is(greaterThan(lastEventId)));
+                        if (event.getPayload().contains("first-of-two")) {
+                            assertThat(eventStore.getEvent(event.getEventId() + 1).getSequence(),
+                                    is(event.getSequence() + 1));
+                        }
+                        lastEventId = event.getEventId();
+                    }
+                }
+            });
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(executor.submit(() -> {
+                    Random random = new Random();
+                    for (int i = 0; i < savesPerThread; i++) {
+                        UUID streamId = streamIds.get(random.nextInt(streamIds.size()));
+                        UUID otherId = streamIds.get(random.nextInt(streamIds.size()));
+                        try {
+                            switch (i % 3) {
+                            case 0:
+                                eventStore.save(asList(textAppended(streamId, "first-of-two"),
+                                        textAppended(streamId, "second")), "Recipe", AUTO_GENERATE_SEQUENCE);
+                                break;
+                            case 1:
+                                long lastSequence = eventStore.getLastSequence(streamId).get();
+                                eventStore.save(asList(textAppended(streamId, "expected")), "Recipe",
+                                        lastSequence);
+                                break;
+                            default:
+                                Map<UUID, StreamAppend> appends = new LinkedHashMap<>();
+                                appends.put(streamId, new StreamAppend("Recipe", AUTO_GENERATE_SEQUENCE,
+                                        asList(textAppended(streamId, "all"))));
+                                appends.put(otherId, new StreamAppend("Recipe", AUTO_GENERATE_SEQUENCE,
+                                        asList(textAppended(otherId, "all"))));
+                                eventStore.saveAll(appends);
+                            }
+                        } catch (EventStoreConflict e) {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            done.set(true);
+            reader.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        long streamEvents = 0;
+        for (UUID streamId : streamIds) {
+            List<Event> events = eventStore.getEventsForStream(streamId, 0, Integer.MAX_VALUE);
+            for (int i = 0; i < events.size(); i++) {
+                assertThat(events.get(i).getSequence(), is(i + 1L));
+                if (i > 0) {
+                    assertThat(events.get(i).getEventId(), is(greaterThan(events.get(i - 1).getEventId())));
+                }
+            }
+            assertThat(eventStore.findByStreamId(streamId).getLastSeqNo(), is((long) events.size()));
+            streamEvents += events.size();
+        }
+        List<Event> all = eventStore.getEventsForAllStreams(0, Integer.MAX_VALUE);
+        assertThat((long) all.size(), is(streamEvents));
+        assertThat(all.get(all.size() - 1).getEventId(), is(eventStore.getLastEventId().get()));
+        // Every save of the first kind succeeds, the others only conflict with each other
+        assertThat(streamEvents, is(greaterThan(threads * savesPerThread / 3 * 2L)));
+        assertThat(conflicts.get() < threads * savesPerThread, is(true));
+    }
+
+    @Test
+    public void shouldKeepSavingAfterRunningOutOfRoom() {
+        InMemoryEventStore smallStore = new InMemoryEventStore(null, 5);
+        UUID streamId = randomUUID();
+        UUID otherId = randomUUID();
+        smallStore.save(asList(textAppended(streamId, "a"), textAppended(streamId, "b"),
+                textAppended(streamId, "c")), "Recipe", NEW_STREAM);
+
+        assertFull(() -> smallStore.save(asList(textAppended(otherId, "d"), textAppended(otherId, "e"),
+                textAppended(otherId, "f")), "Recipe", NEW_STREAM));
+        Map<UUID, StreamAppend> appends = new LinkedHashMap<>();
+        appends.put(streamId, new StreamAppend("Recipe", 3, asList(textAppended(streamId, "d"))));
+        appends.put(otherId, new StreamAppend("Recipe", NEW_STREAM,
+                asList(textAppended(otherId, "e"), textAppended(otherId, "f"))));
+        assertFull(() -> smallStore.saveAll(appends));
+
+        // Nothing was reserved by the saves that didn't fit
+        assertThat(smallStore.save(asList(textAppended(otherId, "d"), textAppended(otherId, "e")), "Recipe",
+                NEW_STREAM), contains(4L, 5L));
+        assertThat(getIds(smallStore.getEventsForAllStreams(0, 10)), contains(1L, 2L, 3L, 4L, 5L));
+    }
+
+    private static void assertFull(Runnable save) {
+        try {
+            save.run();
+            throw new AssertionError("Expected the store to be full");
+        } catch (EventStoreConflict e) {
+            throw new AssertionError("Expected the store to be full", e);
+        } catch (EventStoreException e) {
+            assertThat(e.getMessage(), is("The store is full"));
+        }
+    }
+}
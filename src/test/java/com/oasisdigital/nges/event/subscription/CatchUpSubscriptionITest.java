@@ -0,0 +1,147 @@
+package com.oasisdigital.nges.event.subscription;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.oasisdigital.nges.event.EventStore.AUTO_GENERATE_SEQUENCE;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.oasisdigital.nges.cluster.InMemoryMessageGroup;
+import com.oasisdigital.nges.event.Event;
+import com.oasisdigital.nges.event.TestGroups;
+import com.oasisdigital.nges.event.internal.EventStoreStatusPublisher;
+import com.oasisdigital.nges.event.jdbc.BaseITest;
+import com.oasisdigital.nges.event.jdbc.JdbcEventStore;
+
+@Test(groups = TestGroups.INTEGRATION)
+public class CatchUpSubscriptionITest extends BaseITest {
+    private InMemoryMessageGroup messageGroup;
+    private JdbcEventStore eventStore;
+    private CatchUpSubscription subscription;
+    private List<Long> handled;
+    private UUID streamId;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        messageGroup = new InMemoryMessageGroup();
+        messageGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(messageGroup));
+        handled = new CopyOnWriteArrayList<>();
+        streamId = randomUUID();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        subscription.stop();
+        messageGroup.destroy();
+    }
+
+    @Test
+    public void shouldCatchUpAndFollowLiveEvents() {
+        long start = eventStore.getLastEventId().orElse(0L);
+        List<Long> ids = save(25);
+
+        subscription = new CatchUpSubscription(eventStore, messageGroup, start, this::handle);
+        subscription.setBatchSize(4, 16);
+        subscription.start();
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.isLive());
+        assertThat(handled, is(ids));
+        // Growing batches: 4 + 8 + 16, not 25 / 4 polls
+        assertThat(subscription.getPollCount(), lessThan(5L));
+
+        List<Long> liveIds = save(3);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> handled.size() == 28);
+        assertThat(handled.subList(25, 28), is(liveIds));
+        assertThat(subscription.getPosition(), is(liveIds.get(2)));
+        assertThat(subscription.getLag(), is(0L));
+    }
+
+    @Test
+    public void shouldPollWithoutNotifications() throws Exception {
+        long start = eventStore.getLastEventId().orElse(0L);
+        // Notifications about these events go to a different group and never reach the subscription
+        InMemoryMessageGroup otherGroup = new InMemoryMessageGroup();
+        otherGroup.initialize();
+        eventStore = new JdbcEventStore(dataSource, new EventStoreStatusPublisher(otherGroup));
+
+        subscription = new CatchUpSubscription(eventStore, messageGroup, start, this::handle);
+        subscription.setFallbackPollIntervalMs(100);
+        subscription.start();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.isLive());
+
+        List<Long> ids = save(2);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> handled.size() == 2);
+        assertThat(handled, is(ids));
+        otherGroup.destroy();
+    }
+
+    @Test
+    public void shouldRetryFailedEvent() {
+        long start = eventStore.getLastEventId().orElse(0L);
+        List<Long> ids = save(3);
+        AtomicBoolean failed = new AtomicBoolean();
+
+        subscription = new CatchUpSubscription(eventStore, messageGroup, start, e -> {
+            if (e.getEventId() == ids.get(1) && failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Simulated failure");
+            }
+            handled.add(e.getEventId());
+        });
+        subscription.setFallbackPollIntervalMs(100);
+        subscription.start();
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> handled.size() == 3);
+        assertThat(handled, is(ids));
+    }
+
+    @Test
+    public void shouldDeliverEventsFromNotifications() {
+        EventStoreStatusPublisher publisher = new EventStoreStatusPublisher(messageGroup);
+        publisher.setMaxEventBytes(10000);
+        eventStore = new JdbcEventStore(dataSource, publisher);
+        long start = eventStore.getLastEventId().orElse(0L);
+        subscription = new CatchUpSubscription(eventStore, messageGroup, start, this::handle);
+        subscription.start();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.isLive());
+        long pollCount = subscription.getPollCount();
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.addAll(save(2));
+            await().atMost(10, TimeUnit.SECONDS).until(() -> handled.size() == ids.size());
+        }
+
+        assertThat(handled, is(ids));
+        // The first save might follow a hole in event IDs left by another test
+        assertThat(subscription.getNotifiedCount(), greaterThanOrEqualTo(8L));
+        assertThat(subscription.getPollCount(), lessThanOrEqualTo(pollCount + 1));
+    }
+
+    private void handle(Event event) {
+        handled.add(event.getEventId());
+    }
+
+    private List<Long> save(int count) {
+        List<Event> events = IntStream.range(0, count)
+                .mapToObj(i -> new Event(streamId, "TextAppended", randomUUID(), "{\"text\": \"" + i + "\"}"))
+                .collect(toList());
+        return eventStore.save(events, "Recipe", AUTO_GENERATE_SEQUENCE);
+    }
+}